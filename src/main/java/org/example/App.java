@@ -24,7 +24,8 @@ public class App
                 "(v + 2) * 3 > 100 || (v / 3) != 4",
                 "(v + 2) * '3'",
                 "math.sin(0.8 + \"0x55\")",
-                "v - -v + 2"
+                "v - -v + 2",
+                "getMeasuringValue(0, 1, 2, startTime, endTime, 0).filterAbove(10).sum() > v"
         };
 
         for (String s : strings)
@@ -49,6 +50,7 @@ public class App
         String classQuantity = "Quantity";
         String classSamplePointList = "SamplePointList";
         String classMath = "math";
+        String classWindow = "window";
 
         //ClassDictionary
         Class c = classDictionary.lookup(Class.TYPE_NUMBER);
@@ -71,6 +73,9 @@ public class App
         c = new Class(classMath);
         classDictionary.add(c);
 
+        c = new Class(classWindow);
+        classDictionary.add(c);
+
         ArrayList<IElement.Param> params;
         FunctionElement e;
 
@@ -82,7 +87,8 @@ public class App
         params.add(new IElement.Param("测量编号", "测量编号", Class.TYPE_NUMBER));
         params.add(new IElement.Param("开始时间", "开始时间", Class.TYPE_STRING));
         params.add(new IElement.Param("结束时间", "结束时间", Class.TYPE_STRING,  null));
-        funcFactory.registerFunctionElement("查询测量点用量", "","getQuantity", "从一个测量点中查询用量", params, classDictionary.lookup(classQuantity));
+        funcFactory.registerFunctionElement("查询测量点用量", "","getQuantity", "从一个测量点中查询用量", params, classDictionary.lookup(classQuantity),
+                new FunctionCost(50, 1, 0));
 
         //getMeasuringValue
         params = new ArrayList<>();
@@ -93,13 +99,14 @@ public class App
         params.add(new IElement.Param("结束时间", "结束时间", Class.TYPE_STRING,  null));
         params.add(new IElement.Param("分组规则", "分组规则, 值0表示全部,1表示时,2表示天,3表示月,4表示年", Class.TYPE_NUMBER,  null));
         funcFactory.registerFunctionElement("查询采集数据", "","getMeasuringValue", "根据分组查询采集数据, 当分组规则不为0时, 每个分组仅返回第一条数据",
-                params, classDictionary.lookup(classSamplePointList));
+                params, classDictionary.lookup(classSamplePointList), new FunctionCost(50, 1, 1, 3, 4, 5));
 
         //getMeasureParamValue
         params = new ArrayList<>();
         params.add(new IElement.Param("测量点id", "测量点id, 0表示本测量点", Class.TYPE_NUMBER));
         params.add(new IElement.Param("属性名称", "属性名称", Class.TYPE_STRING));
-        funcFactory.registerFunctionElement("查询测量点属性值", "","getMeasureParamValue", "查询测量点属性值", params, classDictionary.lookup(Class.TYPE_STRING));
+        funcFactory.registerFunctionElement("查询测量点属性值", "","getMeasureParamValue", "查询测量点属性值", params, classDictionary.lookup(Class.TYPE_STRING),
+                new FunctionCost(20, 1, 0));
 
         //getQuantityByContainer
         params = new ArrayList<>();
@@ -108,13 +115,15 @@ public class App
         params.add(new IElement.Param("测量项名称", "测量项名称", Class.TYPE_STRING));
         params.add(new IElement.Param("开始时间", "开始时间", Class.TYPE_STRING));
         params.add(new IElement.Param("结束时间", "结束时间", Class.TYPE_STRING,  null));
-        funcFactory.registerFunctionElement("根据容器查询测量点用量", "","getQuantityByContainer", "根据容器查询测量点用量", params, classDictionary.lookup(classQuantity));
+        funcFactory.registerFunctionElement("根据容器查询测量点用量", "","getQuantityByContainer", "根据容器查询测量点用量", params, classDictionary.lookup(classQuantity),
+                new FunctionCost(50, 20, 0));
 
         //getRentalAreaProperty
         params = new ArrayList<>();
         params.add(new IElement.Param("场地id", "场地id, 场地id", Class.TYPE_NUMBER));
         params.add(new IElement.Param("属性名称", "属性名称", Class.TYPE_STRING));
-        funcFactory.registerFunctionElement("获取指定场地的属性值", "","getRentalAreaProperty", "获取指定场地的属性值", params, classDictionary.lookup(Class.TYPE_STRING));
+        funcFactory.registerFunctionElement("获取指定场地的属性值", "","getRentalAreaProperty", "获取指定场地的属性值", params, classDictionary.lookup(Class.TYPE_STRING),
+                new FunctionCost(20, 1, 0));
 
         /* math */
         //math.abs
@@ -189,6 +198,96 @@ public class App
         funcFactory.registerFunctionElement("反正弦函数", "math","asin", "反正弦函数", params, classDictionary.lookup(Class.TYPE_NUMBER));
 
 
+        /* SamplePointList, 聚合及过滤均遍历调用对象的每个样本 */
+        FunctionCost scan = new FunctionCost(1, 0, 1);
+        //SamplePointList.sum()
+        funcFactory.registerFunctionElement("求和", classSamplePointList,"sum", "求所有样本值的和", new ArrayList<IElement.Param>(), classDictionary.lookup(Class.TYPE_NUMBER), scan);
+
+        //SamplePointList.avg()
+        funcFactory.registerFunctionElement("求平均值", classSamplePointList,"avg", "求所有样本值的平均值, 没有样本时为 NaN", new ArrayList<IElement.Param>(), classDictionary.lookup(Class.TYPE_NUMBER), scan);
+
+        //SamplePointList.min()
+        funcFactory.registerFunctionElement("求最小值", classSamplePointList,"min", "求样本值的最小值, 没有样本时为 NaN", new ArrayList<IElement.Param>(), classDictionary.lookup(Class.TYPE_NUMBER), scan);
+
+        //SamplePointList.max()
+        funcFactory.registerFunctionElement("求最大值", classSamplePointList,"max", "求样本值的最大值, 没有样本时为 NaN", new ArrayList<IElement.Param>(), classDictionary.lookup(Class.TYPE_NUMBER), scan);
+
+        //SamplePointList.count()
+        funcFactory.registerFunctionElement("求样本数", classSamplePointList,"count", "求样本个数", new ArrayList<IElement.Param>(), classDictionary.lookup(Class.TYPE_NUMBER), scan);
+
+        //SamplePointList.first()
+        funcFactory.registerFunctionElement("第一个值", classSamplePointList,"first", "第一个样本的值, 没有样本时为 NaN", new ArrayList<IElement.Param>(), classDictionary.lookup(Class.TYPE_NUMBER), scan);
+
+        //SamplePointList.last()
+        funcFactory.registerFunctionElement("最后一个值", classSamplePointList,"last", "最后一个样本的值, 没有样本时为 NaN", new ArrayList<IElement.Param>(), classDictionary.lookup(Class.TYPE_NUMBER), scan);
+
+        //SamplePointList.filterAbove(d)
+        params = new ArrayList<>();
+        params.add(new IElement.Param("下限", "仅保留值大于下限的样本", Class.TYPE_NUMBER));
+        funcFactory.registerFunctionElement("过滤小值", classSamplePointList,"filterAbove", "仅保留值大于下限的样本", params, classDictionary.lookup(classSamplePointList), scan);
+
+        //SamplePointList.filterBelow(d)
+        params = new ArrayList<>();
+        params.add(new IElement.Param("上限", "仅保留值小于上限的样本", Class.TYPE_NUMBER));
+        funcFactory.registerFunctionElement("过滤大值", classSamplePointList,"filterBelow", "仅保留值小于上限的样本", params, classDictionary.lookup(classSamplePointList), scan);
+
+        //SamplePointList.filterBetween(d1, d2)
+        params = new ArrayList<>();
+        params.add(new IElement.Param("下限", "下限(包含)", Class.TYPE_NUMBER));
+        params.add(new IElement.Param("上限", "上限(包含)", Class.TYPE_NUMBER));
+        funcFactory.registerFunctionElement("按范围过滤", classSamplePointList,"filterBetween", "仅保留值在 [下限, 上限] 内的样本", params, classDictionary.lookup(classSamplePointList), scan);
+
+
+        /* window, 仅在流求值中可用 */
+        //window.sum(d, ms)
+        params = new ArrayList<>();
+        params.add(new IElement.Param("值", "加入窗口的值", Class.TYPE_NUMBER));
+        params.add(new IElement.Param("毫秒数", "窗口的时间长度(毫秒)", Class.TYPE_NUMBER));
+        funcFactory.registerFunctionElement("时间窗口求和", classWindow,"sum", "求最近一段时间内样本值的和", params, classDictionary.lookup(Class.TYPE_NUMBER));
+
+        //window.avg(d, ms)
+        params = new ArrayList<>();
+        params.add(new IElement.Param("值", "加入窗口的值", Class.TYPE_NUMBER));
+        params.add(new IElement.Param("毫秒数", "窗口的时间长度(毫秒)", Class.TYPE_NUMBER));
+        funcFactory.registerFunctionElement("时间窗口平均值", classWindow,"avg", "求最近一段时间内样本值的平均值, 窗口为空时为 NaN", params, classDictionary.lookup(Class.TYPE_NUMBER));
+
+        //window.min(d, ms)
+        params = new ArrayList<>();
+        params.add(new IElement.Param("值", "加入窗口的值", Class.TYPE_NUMBER));
+        params.add(new IElement.Param("毫秒数", "窗口的时间长度(毫秒)", Class.TYPE_NUMBER));
+        funcFactory.registerFunctionElement("时间窗口最小值", classWindow,"min", "求最近一段时间内样本值的最小值, 窗口为空时为 NaN", params, classDictionary.lookup(Class.TYPE_NUMBER));
+
+        //window.max(d, ms)
+        params = new ArrayList<>();
+        params.add(new IElement.Param("值", "加入窗口的值", Class.TYPE_NUMBER));
+        params.add(new IElement.Param("毫秒数", "窗口的时间长度(毫秒)", Class.TYPE_NUMBER));
+        funcFactory.registerFunctionElement("时间窗口最大值", classWindow,"max", "求最近一段时间内样本值的最大值, 窗口为空时为 NaN", params, classDictionary.lookup(Class.TYPE_NUMBER));
+
+        //window.sumN(d, n)
+        params = new ArrayList<>();
+        params.add(new IElement.Param("值", "加入窗口的值", Class.TYPE_NUMBER));
+        params.add(new IElement.Param("样本数", "窗口的样本个数", Class.TYPE_NUMBER));
+        funcFactory.registerFunctionElement("样本数窗口求和", classWindow,"sumN", "求最近若干个样本值的和", params, classDictionary.lookup(Class.TYPE_NUMBER));
+
+        //window.avgN(d, n)
+        params = new ArrayList<>();
+        params.add(new IElement.Param("值", "加入窗口的值", Class.TYPE_NUMBER));
+        params.add(new IElement.Param("样本数", "窗口的样本个数", Class.TYPE_NUMBER));
+        funcFactory.registerFunctionElement("样本数窗口平均值", classWindow,"avgN", "求最近若干个样本值的平均值, 窗口为空时为 NaN", params, classDictionary.lookup(Class.TYPE_NUMBER));
+
+        //window.minN(d, n)
+        params = new ArrayList<>();
+        params.add(new IElement.Param("值", "加入窗口的值", Class.TYPE_NUMBER));
+        params.add(new IElement.Param("样本数", "窗口的样本个数", Class.TYPE_NUMBER));
+        funcFactory.registerFunctionElement("样本数窗口最小值", classWindow,"minN", "求最近若干个样本值的最小值, 窗口为空时为 NaN", params, classDictionary.lookup(Class.TYPE_NUMBER));
+
+        //window.maxN(d, n)
+        params = new ArrayList<>();
+        params.add(new IElement.Param("值", "加入窗口的值", Class.TYPE_NUMBER));
+        params.add(new IElement.Param("样本数", "窗口的样本个数", Class.TYPE_NUMBER));
+        funcFactory.registerFunctionElement("样本数窗口最大值", classWindow,"maxN", "求最近若干个样本值的最大值, 窗口为空时为 NaN", params, classDictionary.lookup(Class.TYPE_NUMBER));
+
+
         //varFactory
         varFactory.registerVariableElement("当前值",  "", "v", "当前值", classDictionary.lookup(Class.TYPE_NUMBER));
         varFactory.registerVariableElement("起始时间",  "", "startTime", "起始时间", classDictionary.lookup(Class.TYPE_STRING));
@@ -3,7 +3,7 @@ package org.example.analyzer;
 import javafx.util.Pair;
 import org.example.analyzer.element.*;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -11,20 +11,59 @@ public class Analyzer
 {
     public static Pair<IElement, String> toElement(String e, FunctionElementFactory funcFactory, VariableElementFactory varFactory, ClassDictionary classDictionary)
     {
+        return toElement(e, null, funcFactory, varFactory, classDictionary);
+    }
+
+    //limits 为 null 时不限制
+    public static Pair<IElement, String> toElement(String e, CompileLimits limits, FunctionElementFactory funcFactory, VariableElementFactory varFactory, ClassDictionary classDictionary)
+    {
+        long deadline = Long.MAX_VALUE;
+        int maxTokens = 0;
+        if (limits != null)
+        {
+            deadline = limits.deadline(System.nanoTime());
+            maxTokens = limits.getMaxTokens();
+            int maxChars = limits.getMaxChars();
+            //超长的表达式在复制之前拒绝, 位置为超出上限的第一个字符
+            if (CompileLimits.exceeded(e.length(), maxChars))
+            {
+                int line = 1, column = 0;
+                for (int i = 0; i < maxChars; i++)
+                {
+                    if (e.charAt(i) == '\n')
+                    {
+                        line++;
+                        column = 0;
+                    }
+                    else
+                    {
+                        column++;
+                    }
+                }
+                return new Pair<>(null, limits.reject(CompileLimits.LIMIT_CHARS, line, column, maxChars));
+            }
+        }
+
         //词法解析
         SimpleLexicalAnalyzer.Scanner scanner = new SimpleLexicalAnalyzer.Scanner();
         char[] chars = new char[e.length() + 1];
         e.getChars(0, e.length(), chars, 0);
         chars[e.length()] = '\0';
-        List<LexicalToken> tokens = new LinkedList<>();
+        List<LexicalToken> tokens = new ArrayList<>();     //语法分析按下标访问
         for (int i = 0; i < chars.length; i++)
         {
             SimpleLexicalAnalyzer.Scanner.WriteResult r = scanner.write(chars[i]);
             if (r.isOk)
             {
                 if (r.lexeme != null)
+                {
                     tokens.add(r.lexeme);
+                    if (CompileLimits.exceeded(tokens.size(), maxTokens))
+                        return new Pair<>(null, limits.reject(CompileLimits.LIMIT_TOKENS, r.lexeme.line, r.lexeme.position, maxTokens));
+                }
                 i -= r.retract;
+                if ((i & 0x3FF) == 0 && deadline != Long.MAX_VALUE && System.nanoTime() > deadline)
+                    return new Pair<>(null, limits.reject(CompileLimits.LIMIT_TIME, r.line, r.position, limits.getMaxMillis()));
             }
             else
             {
@@ -33,6 +72,7 @@ public class Analyzer
         }
 
         SimpleSyntaxAnalyzer syntaxAnalyzer = new SimpleSyntaxAnalyzer();
+        syntaxAnalyzer.setLimits(limits, deadline);
         Pair<IElement, String> ret = syntaxAnalyzer.analyze(tokens, funcFactory, varFactory, classDictionary);
         if (ret.getKey() != null)
         {
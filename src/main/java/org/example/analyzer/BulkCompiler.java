@@ -0,0 +1,217 @@
+package org.example.analyzer;
+
+import javafx.util.Pair;
+import org.example.analyzer.element.ClassDictionary;
+import org.example.analyzer.element.FunctionElementFactory;
+import org.example.analyzer.element.IElement;
+import org.example.analyzer.element.Registry;
+import org.example.analyzer.element.VariableElementFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+*   批量编译: 在 ForkJoinPool 中并行调用 Analyzer.toElement
+*   语法分析的状态表与产生式表为所有线程共用的只读数据
+*   每次 compile 取一次注册表快照, 整批表达式的函数/变量定义及接收规则都按该快照查找,
+*   编译期间发布的修改(如热更新)不会使同一批的结果依据不同的定义
+*   结果与输入一一对应, 编译失败的项 key 为 null, value 为错误提示
+* */
+public class BulkCompiler
+{
+    private static final int THRESHOLD = 64;        //每个任务至少编译的表达式个数
+
+    private final ForkJoinPool pool;
+    private final ClassDictionary classDictionary;
+    private volatile CompileLimits limits = null;
+
+    public static class Result
+    {
+        private final List<Pair<IElement, String>> items;
+        private final int failed;
+        private final long elapsedNanos;
+        private final int parallelism;
+
+        Result(List<Pair<IElement, String>> items, int failed, long elapsedNanos, int parallelism)
+        {
+            this.items = items;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+            this.parallelism = parallelism;
+        }
+
+        //与输入顺序一致的编译结果
+        public List<Pair<IElement, String>> getItems()
+        {
+            return items;
+        }
+
+        public int getFailed()
+        {
+            return failed;
+        }
+
+        public long getElapsedNanos()
+        {
+            return elapsedNanos;
+        }
+
+        public int getParallelism()
+        {
+            return parallelism;
+        }
+
+        //每秒编译的表达式个数
+        public double getThroughput()
+        {
+            return elapsedNanos == 0 ? 0 : items.size() * 1e9 / elapsedNanos;
+        }
+    }
+
+    //定义都保存在注册表中, 编译时按快照另行创建工厂, funcFactory/varFactory 只为与 Analyzer 的参数一致
+    public BulkCompiler(ForkJoinPool pool, FunctionElementFactory funcFactory, VariableElementFactory varFactory, ClassDictionary classDictionary)
+    {
+        this.pool = pool;
+        this.classDictionary = classDictionary;
+    }
+
+    //每个表达式的资源上限, 为 null 时不限制
+    public void setLimits(CompileLimits limits)
+    {
+        this.limits = limits;
+    }
+
+    public CompileLimits getLimits()
+    {
+        return limits;
+    }
+
+    public Result compile(Collection<String> expressions)
+    {
+        return compile(expressions.toArray(new String[0]));
+    }
+
+    //逐个取出表达式后统一编译
+    public Result compile(Iterable<String> expressions)
+    {
+        ArrayList<String> list = new ArrayList<>();
+        for (String e : expressions)
+            list.add(e);
+        return compile(list.toArray(new String[0]));
+    }
+
+    public Result compile(String[] expressions)
+    {
+        return compile(expressions, Registry.current());
+    }
+
+    //按 registry 快照编译, 用于与同一快照计算出的 RegistryVersion 保持一致
+    public Result compile(String[] expressions, Registry registry)
+    {
+        //各任务只写入自己区间内的下标, invoke 返回后对当前线程可见
+        List<Pair<IElement, String>> results = new ArrayList<>(Collections.nCopies(expressions.length, (Pair<IElement, String>) null));
+        Snapshot snapshot = new Snapshot(registry);
+
+        long start = System.nanoTime();
+        if (expressions.length > 0)
+            pool.invoke(new Task(snapshot, expressions, results, 0, expressions.length));
+        long elapsed = System.nanoTime() - start;
+
+        int failed = 0;
+        for (Pair<IElement, String> r : results)
+        {
+            if (r.getKey() == null)
+                failed++;
+        }
+        return new Result(results, failed, elapsed, pool.getParallelism());
+    }
+
+    /*
+    * 分别以 1 ~ maxParallelism 个线程编译同一批表达式, 用于评估吞吐量随核数的扩展
+    * 每个线程数先编译一遍预热, 再计时编译一遍
+    * */
+    public static List<Result> measureScaling(String[] expressions, int maxParallelism,
+                                              FunctionElementFactory funcFactory, VariableElementFactory varFactory, ClassDictionary classDictionary)
+    {
+        ArrayList<Result> ret = new ArrayList<>();
+        for (int n = 1; n <= maxParallelism; n++)
+        {
+            ForkJoinPool pool = new ForkJoinPool(n);
+            try
+            {
+                BulkCompiler compiler = new BulkCompiler(pool, funcFactory, varFactory, classDictionary);
+                compiler.compile(expressions);
+                ret.add(compiler.compile(expressions));
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+        }
+        return ret;
+    }
+
+    //按同一注册表快照查找定义的工厂及类型字典, 由一批编译的所有任务共用
+    private class Snapshot
+    {
+        final FunctionElementFactory funcFactory;
+        final VariableElementFactory varFactory;
+        final ClassDictionary classDictionary;
+
+        Snapshot(Registry registry)
+        {
+            this.funcFactory = new FunctionElementFactory(registry);
+            this.varFactory = new VariableElementFactory(registry);
+            this.classDictionary = new ClassDictionary(BulkCompiler.this.classDictionary, registry);
+        }
+    }
+
+    private class Task extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        final Snapshot snapshot;
+        final String[] expressions;
+        final List<Pair<IElement, String>> results;
+        final int from, to;
+
+        Task(Snapshot snapshot, String[] expressions, List<Pair<IElement, String>> results, int from, int to)
+        {
+            this.snapshot = snapshot;
+            this.expressions = expressions;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= THRESHOLD)
+            {
+                for (int i = from; i < to; i++)
+                    results.set(i, compileOne(snapshot, expressions[i]));
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            invokeAll(new Task(snapshot, expressions, results, from, mid), new Task(snapshot, expressions, results, mid, to));
+        }
+    }
+
+    private Pair<IElement, String> compileOne(Snapshot snapshot, String expression)
+    {
+        try
+        {
+            return Analyzer.toElement(expression, limits, snapshot.funcFactory, snapshot.varFactory, snapshot.classDictionary);
+        }
+        catch (RuntimeException e)
+        {
+            return new Pair<>(null, "编译失败: " + e);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.example.analyzer;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+*   编译的资源上限, 用于编译不可信的表达式(如用户在界面上输入的公式)
+*   各项上限为 0 时不限制; 词法分析、语法分析的过程中逐步检查, 超出时立即返回带位置的错误
+*   嵌套层数为语法分析栈的深度, 括号、一元操作符、函数调用等未闭合的结构各占一层或两层
+*   节点数为规约的次数, 不少于生成的元素个数
+*   同一个对象可以在多个线程中共用, 并统计各项上限拒绝的表达式个数
+* */
+public class CompileLimits
+{
+    public static final int LIMIT_CHARS = 0;
+    public static final int LIMIT_TOKENS = 1;
+    public static final int LIMIT_DEPTH = 2;
+    public static final int LIMIT_NODES = 3;
+    public static final int LIMIT_TIME = 4;
+
+    private static final String[] NAMES = { "长度", "词素个数", "嵌套层数", "节点数", "编译耗时" };
+
+    private volatile int maxChars = 0;
+    private volatile int maxTokens = 0;
+    private volatile int maxDepth = 0;
+    private volatile int maxNodes = 0;
+    private volatile long maxMillis = 0;
+    private final AtomicLongArray rejected = new AtomicLongArray(NAMES.length);
+
+    public CompileLimits()
+    {
+    }
+
+    public CompileLimits(int maxChars, int maxTokens, int maxDepth, int maxNodes, long maxMillis)
+    {
+        this.maxChars = maxChars;
+        this.maxTokens = maxTokens;
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+        this.maxMillis = maxMillis;
+    }
+
+    public int getMaxChars()
+    {
+        return maxChars;
+    }
+
+    public void setMaxChars(int maxChars)
+    {
+        this.maxChars = maxChars;
+    }
+
+    public int getMaxTokens()
+    {
+        return maxTokens;
+    }
+
+    public void setMaxTokens(int maxTokens)
+    {
+        this.maxTokens = maxTokens;
+    }
+
+    public int getMaxDepth()
+    {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth)
+    {
+        this.maxDepth = maxDepth;
+    }
+
+    public int getMaxNodes()
+    {
+        return maxNodes;
+    }
+
+    public void setMaxNodes(int maxNodes)
+    {
+        this.maxNodes = maxNodes;
+    }
+
+    public long getMaxMillis()
+    {
+        return maxMillis;
+    }
+
+    public void setMaxMillis(long maxMillis)
+    {
+        this.maxMillis = maxMillis;
+    }
+
+    //被 limit(LIMIT_CHARS ~ LIMIT_TIME)拒绝的表达式个数
+    public long getRejected(int limit)
+    {
+        return rejected.get(limit);
+    }
+
+    public long getRejectedTotal()
+    {
+        long n = 0;
+        for (int i = 0; i < rejected.length(); i++)
+            n += rejected.get(i);
+        return n;
+    }
+
+    public void resetRejected()
+    {
+        for (int i = 0; i < rejected.length(); i++)
+            rejected.set(i, 0);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++)
+        {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(NAMES[i]).append(' ').append(rejected.get(i));
+        }
+        return sb.toString();
+    }
+
+    //从 start(System.nanoTime)开始计时的截止时间, 不限制时为 Long.MAX_VALUE
+    long deadline(long start)
+    {
+        long ms = maxMillis;
+        return ms <= 0 ? Long.MAX_VALUE : start + ms * 1000000L;
+    }
+
+    static boolean exceeded(int value, int max)
+    {
+        return max > 0 && value > max;
+    }
+
+    //计数并返回错误提示
+    String reject(int limit, int line, int column, long max)
+    {
+        rejected.incrementAndGet(limit);
+        return "[" + line + ":" + column + "]: " + NAMES[limit] + "超过上限 " + max;
+    }
+}
@@ -33,19 +33,31 @@ public class Priority
         }
     };
 
+    public static final int NONE = 0;       //不是操作符
+
+    //操作符的优先级, 供元素在构造时预先计算; 不是操作符时为 NONE
+    public static int of(String op)
+    {
+        Integer p = s_priorities.get(op);
+        return p == null ? NONE : p;
+    }
+
     //返回 op1 的优先级是否高于 op2, (同级时返回true)
     public static boolean check(String op1, String op2)
     {
-        Integer p1 = s_priorities.get(op1);
-        Integer p2 = s_priorities.get(op2);
+        return check(of(op1), of(op2));
+    }
 
-        if (p1 == null && p2 == null)
+    //参数为 of 的返回值, 规则与 check(String, String) 相同
+    public static boolean check(int p1, int p2)
+    {
+        if (p1 == NONE && p2 == NONE)
             return false;
 
-        if (p1 == null)
+        if (p1 == NONE)
             return true;
 
-        if (p2 == null)
+        if (p2 == NONE)
             return false;
 
         return p1 <= p2;
@@ -79,7 +79,7 @@ class Production
             e.setParam(0, (IElement) attributes.get(analyzer.ATTRIBUTE_ELEMENT));
             e.setLine((int)attributes2.get(analyzer.ATTRIBUTE_POSITION_LINE));
             e.setColumn((int)attributes2.get(analyzer.ATTRIBUTE_POSITION_COLUMN));
-            final Pair<Boolean, String> err = e.checkParams(analyzer.classDictionary);
+            final Pair<Boolean, String> err = e.checkNode(analyzer.classDictionary);
             if (!err.getKey())
                 return new Result(false, err.getValue(), null);
 
@@ -118,7 +118,7 @@ class Production
             e.setParam(1, p2);
             e.setLine((int)attributes3.get(analyzer.ATTRIBUTE_POSITION_LINE));
             e.setColumn((int)attributes3.get(analyzer.ATTRIBUTE_POSITION_COLUMN));
-            final Pair<Boolean, String> err = e.checkParams(analyzer.classDictionary);
+            final Pair<Boolean, String> err = e.checkNode(analyzer.classDictionary);
             if (!err.getKey())
                 return new Result(false, err.getValue(), null);
 
@@ -156,7 +156,7 @@ class Production
             e.setParam(1, p2);
             e.setLine((int)attributes3.get(analyzer.ATTRIBUTE_POSITION_LINE));
             e.setColumn((int)attributes3.get(analyzer.ATTRIBUTE_POSITION_COLUMN));
-            final Pair<Boolean, String> err = e.checkParams(analyzer.classDictionary);
+            final Pair<Boolean, String> err = e.checkNode(analyzer.classDictionary);
             if (!err.getKey())
                 return new Result(false, err.getValue(), null);
 
@@ -333,7 +333,7 @@ class Production
                             e.setParam(i, args.get(i));
                         }
 
-                        Pair<Boolean, String> err = e.checkParams(analyzer.classDictionary);
+                        Pair<Boolean, String> err = e.checkNode(analyzer.classDictionary);
                         if (!err.getKey())
                             return new Result(false, err.getValue(), null);
                     }
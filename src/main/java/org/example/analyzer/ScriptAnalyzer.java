@@ -0,0 +1,233 @@
+package org.example.analyzer;
+
+import javafx.util.Pair;
+import org.example.analyzer.element.ClassDictionary;
+import org.example.analyzer.element.FunctionElementFactory;
+import org.example.analyzer.element.IElement;
+import org.example.analyzer.element.VariableElementFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+*   脚本分析: 一个脚本中有多个以 ';' 分隔的表达式, 逐字符读取一遍完成词法及语法分析
+*   词法分析贯穿整个脚本, 行号/列号为在脚本中的位置; 字符串中的 ';' 不作为分隔符
+*   遇到 ';' 时将已读取的记号补上 END 交给语法分析器, 每个表达式单独给出结果或错误
+*   出错的表达式跳过至下一个 ';', 不影响后续表达式; 空表达式(如连续的 ';')被忽略
+*   let 绑定之后的 ';' 属于同一个表达式, 如 let q = v * 2; q + 1 为一个表达式
+*   资源上限(CompileLimits)对每个表达式单独计算: 字符数及记号数从上一个表达式结束处开始计数, 时间从上一个表达式结束时开始计时
+* */
+public class ScriptAnalyzer
+{
+    private static final int BUFFER_SIZE = 8192;
+
+    public static class Statement
+    {
+        public final int index;     //表达式序号, 从 0 开始
+        public final int line;      //首个记号的位置
+        public final int column;
+        public final Pair<IElement, String> result;
+
+        Statement(int index, int line, int column, Pair<IElement, String> result)
+        {
+            this.index = index;
+            this.line = line;
+            this.column = column;
+            this.result = result;
+        }
+    }
+
+    //每分析完一个表达式回调一次, 回调在分析线程中按表达式顺序进行
+    public interface Handler
+    {
+        void onStatement(Statement statement);
+    }
+
+    private final FunctionElementFactory funcFactory;
+    private final VariableElementFactory varFactory;
+    private final ClassDictionary classDictionary;
+    private final SimpleSyntaxAnalyzer syntaxAnalyzer = new SimpleSyntaxAnalyzer();
+
+    public ScriptAnalyzer(FunctionElementFactory funcFactory, VariableElementFactory varFactory, ClassDictionary classDictionary)
+    {
+        this.funcFactory = funcFactory;
+        this.varFactory = varFactory;
+        this.classDictionary = classDictionary;
+    }
+
+    /*
+    * 分析 reader 中的脚本, 每个表达式通过 handler 返回, reader 不会被关闭
+    * 返回值的 key 为表达式个数, value 为出错的表达式个数
+    * */
+    public Pair<Integer, Integer> analyze(Reader reader, Handler handler) throws IOException
+    {
+        return analyze(reader, handler, null);
+    }
+
+    /*
+    * 同 analyze(reader, handler), limits 为每个表达式的资源上限, 为 null 时不限制
+    * 超出上限的表达式给出错误并跳过至下一个 ';', 不再保存其记号
+    * */
+    public Pair<Integer, Integer> analyze(Reader reader, Handler handler, CompileLimits limits) throws IOException
+    {
+        SimpleLexicalAnalyzer.Scanner scanner = new SimpleLexicalAnalyzer.Scanner();
+        ArrayList<LexicalToken> tokens = new ArrayList<>();
+        String lexicalError = null;     //当前表达式的词法错误或超出上限的错误, 出错后不再做语法分析, 直到 ';'
+        boolean rejected = false;       //当前表达式超出上限, 不再保存记号
+        int startLine = -1, startColumn = -1;     //当前表达式的起始位置, -1 表示尚未开始
+        int segment = 0;        //当前表达式中最后一个 let 绑定之后的第一个记号
+        int count = 0, failed = 0;
+
+        int maxChars = limits == null ? 0 : limits.getMaxChars();
+        int maxTokens = limits == null ? 0 : limits.getMaxTokens();
+        int chars = 0;          //当前表达式已读取的字符数
+        long deadline = limits == null ? Long.MAX_VALUE : limits.deadline(System.nanoTime());
+
+        char[] buffer = new char[BUFFER_SIZE + 1];
+        boolean eof = false;
+        while (!eof)
+        {
+            int n = reader.read(buffer, 0, BUFFER_SIZE);
+            if (n < 0)
+            {
+                //末尾补 '\0', 最后一个表达式可以不以 ';' 结尾
+                buffer[0] = '\0';
+                n = 1;
+                eof = true;
+            }
+
+            for (int i = 0; i < n; i++)
+            {
+                SimpleLexicalAnalyzer.Scanner.WriteResult r = scanner.write(buffer[i]);
+                i -= r.retract;
+                if (!eof)
+                    chars += 1 - r.retract;     //末尾补的 '\0' 不计数
+                if (limits != null && lexicalError == null)
+                {
+                    if (CompileLimits.exceeded(chars, maxChars))
+                        lexicalError = limits.reject(CompileLimits.LIMIT_CHARS, r.line, r.position, maxChars);
+                    else if ((chars & 0x3FF) == 0 && deadline != Long.MAX_VALUE && System.nanoTime() > deadline)
+                        lexicalError = limits.reject(CompileLimits.LIMIT_TIME, r.line, r.position, limits.getMaxMillis());
+                    if (lexicalError != null)
+                    {
+                        rejected = true;
+                        tokens.clear();
+                        segment = 0;
+                    }
+                }
+                if (!r.isOk)
+                {
+                    if (lexicalError == null)
+                        lexicalError = "[" + r.line + ":" + r.position + "]: 未识别标识符";
+                    if (startLine < 0)
+                    {
+                        startLine = r.line;
+                        startColumn = r.position;
+                    }
+                    continue;
+                }
+                if (r.lexeme == null)
+                    continue;
+
+                LexicalToken t = r.lexeme;
+                if (t.type != LexicalTokenType.SIGN_SEMICOLON && t.type != LexicalTokenType.END)
+                {
+                    if (startLine < 0)
+                    {
+                        startLine = t.line;
+                        startColumn = t.position;
+                    }
+                    if (rejected)
+                        continue;
+                    tokens.add(t);
+                    if (lexicalError == null && CompileLimits.exceeded(tokens.size(), maxTokens))
+                    {
+                        lexicalError = limits.reject(CompileLimits.LIMIT_TOKENS, t.line, t.position, maxTokens);
+                        rejected = true;
+                        tokens.clear();
+                        segment = 0;
+                    }
+                    continue;
+                }
+
+                if (t.type == LexicalTokenType.SIGN_SEMICOLON && SimpleSyntaxAnalyzer.isLetBinding(tokens, segment))
+                {
+                    tokens.add(t);
+                    segment = tokens.size();
+                    continue;
+                }
+
+                //表达式结束
+                if (startLine >= 0)
+                {
+                    Pair<IElement, String> result = lexicalError != null
+                            ? new Pair<IElement, String>(null, lexicalError) : analyze(tokens, t, limits, deadline);
+                    if (result.getKey() == null)
+                        failed++;
+                    handler.onStatement(new Statement(count++, startLine, startColumn, result));
+                }
+                tokens.clear();
+                segment = 0;
+                lexicalError = null;
+                rejected = false;
+                startLine = startColumn = -1;
+                chars = 0;
+                if (limits != null)
+                    deadline = limits.deadline(System.nanoTime());
+            }
+        }
+
+        //末尾的 '\0' 本身出错(如字符串未结束), 最后一个表达式没有收到 END
+        if (startLine >= 0)
+        {
+            failed++;
+            handler.onStatement(new Statement(count++, startLine, startColumn,
+                    new Pair<IElement, String>(null, lexicalError != null ? lexicalError : "表达式不完整")));
+        }
+        return new Pair<>(count, failed);
+    }
+
+    //分析整个脚本, 返回每个表达式的结果
+    public List<Statement> analyze(String script)
+    {
+        final ArrayList<Statement> ret = new ArrayList<>();
+        try
+        {
+            analyze(new StringReader(script), new Handler()
+            {
+                @Override
+                public void onStatement(Statement statement)
+                {
+                    ret.add(statement);
+                }
+            });
+        }
+        catch (IOException e)
+        {
+            //StringReader 不会抛出
+            throw new IllegalStateException(e);
+        }
+        return ret;
+    }
+
+    //对一个表达式的记号做语法分析, terminator 为结束该表达式的 ';' 或 END, deadline 为该表达式的截止时间
+    private Pair<IElement, String> analyze(ArrayList<LexicalToken> tokens, LexicalToken terminator, CompileLimits limits, long deadline)
+    {
+        LexicalToken end = new LexicalToken();
+        end.type = LexicalTokenType.END;
+        end.line = terminator.line;
+        end.position = terminator.position;
+        end.length = 1;
+        end.value = "\0";
+        tokens.add(end);
+
+        syntaxAnalyzer.setLimits(limits, deadline);
+        Pair<IElement, String> ret = syntaxAnalyzer.analyze(tokens, funcFactory, varFactory, classDictionary);
+        if (ret.getKey() != null && !syntaxAnalyzer.isFinished())
+            return new Pair<>(null, "[" + end.line + ":" + end.position + "]: 表达式不完整");
+        return ret;
+    }
+}
@@ -43,6 +43,9 @@ ARGS_BODY ->E
 ARGS_BODY ->ARGS_BODY,E
 E->-E
 
+let 表达式只能出现在表达式最外层, 由 analyze 按 ';' 切分后对每一段分别做上述分析:
+L->let id = E ; L
+L->S
 */
 public class SimpleSyntaxAnalyzer
 {
@@ -251,21 +254,44 @@ public class SimpleSyntaxAnalyzer
     final String ATTRIBUTE_ARGS = "Args";
     final String ATTRIBUTE_POSITION_LINE = "PositionLine";
     final String ATTRIBUTE_POSITION_COLUMN = "PositionColumn";
+    final String ATTRIBUTE_ERROR = "Error";     //FUNC 作为全局函数调用时才报告的错误
 
-    Map<Integer, State> mappingState = new HashMap<>();     //状态映射表, key 为 value 的id
-    Map<Integer, Production> mappingProduction = new HashMap<>();  //产生式状态映射表, key 为 value 的id
+    Map<Integer, State> mappingState = null;     //状态映射表, key 为 value 的id
+    Map<Integer, Production> mappingProduction = null;  //产生式状态映射表, key 为 value 的id
+
+    //状态表与产生式表构造后只读, 由第一个实例构造, 之后所有实例(包括不同线程中的实例)共用
+    private static volatile Map<Integer, State> s_mappingState = null;
+    private static volatile Map<Integer, Production> s_mappingProduction = null;
 
     LinkedList<State>  stackState = new LinkedList<>();    //状态栈
     LinkedList<Symbol>  stackSymbol = new LinkedList<>();     //符号栈
     LinkedList<Map<String, Object>>  stackAttribute = new LinkedList<>();     //属性栈
-    FunctionElementFactory funcFactory = new FunctionElementFactory();
-    VariableElementFactory varFactory = new VariableElementFactory();
-    ClassDictionary classDictionary = new ClassDictionary();
+    FunctionElementFactory funcFactory = null;
+    VariableElementFactory varFactory = null;
+    ClassDictionary classDictionary = null;
+    private CompileLimits limits = null;        //为 null 时不限制
+    private long deadline = Long.MAX_VALUE;
+    private int nodes = 0;      //规约次数, let 的各个绑定累计
 
     public SimpleSyntaxAnalyzer()
     {
-        initStateTable();
-        initProductionTable();
+        if (s_mappingProduction == null)
+        {
+            synchronized (SimpleSyntaxAnalyzer.class)
+            {
+                if (s_mappingProduction == null)
+                {
+                    mappingState = new HashMap<>();
+                    mappingProduction = new HashMap<>();
+                    initStateTable();
+                    initProductionTable();
+                    s_mappingState = mappingState;
+                    s_mappingProduction = mappingProduction;
+                }
+            }
+        }
+        mappingState = s_mappingState;
+        mappingProduction = s_mappingProduction;
     }
 
     private void initProductionTable()
@@ -383,7 +409,23 @@ public class SimpleSyntaxAnalyzer
         mappingProduction.put(26, new Production(26, NOTERMINAL_OBJ, new Production.LiteralConstantReducer(LexicalTokenType.STRING)));
 
         //E->FUNC
-        mappingProduction.put(27, new Production(27, NOTERMINAL_E, new Production.RedirectOperationReducer()));
+        mappingProduction.put(27, new Production(27, NOTERMINAL_E, new Production.Reducer()
+        {
+            @Override
+            Result reduce(SimpleSyntaxAnalyzer analyzer, Production production)
+            {
+                final Map<String, Object> attributes = analyzer.getAttributeFromStack(-1);
+                analyzer.pop(1);
+
+                //FUNC 在此处确定为全局函数调用, 报告 FUNC 规约时推迟的错误
+                String error = (String)attributes.get(ATTRIBUTE_ERROR);
+                if (error != null && attributes.get(ATTRIBUTE_ELEMENT) == null)
+                {
+                    return new Result(false, error, null);
+                }
+                return new Result(true, "", attributes);
+            }
+        }));
 
         //E->E.id
         mappingProduction.put(28, new Production(28, NOTERMINAL_E, new Production.MemberReducer(Production.MemberReducer.TYPE_MEMBER_VARIABLE)));
@@ -429,7 +471,19 @@ public class SimpleSyntaxAnalyzer
                 {
                     e.setLine(line);
                     e.setColumn(column);
-                    newAttributes.put(ATTRIBUTE_ELEMENT, e);
+
+                    /*
+                    * 全局函数需要参数时不记录 ATTRIBUTE_ELEMENT, 成员函数调用(如 list.sum())不受同名全局函数影响
+                    * 参数个数错误推迟到 E->FUNC, 即确定为全局函数调用时再报告
+                    * */
+                    if (!e.getParams().isEmpty())
+                    {
+                        newAttributes.put(ATTRIBUTE_ERROR, "[" + line + ":" + column + "]: 函数 '" + e.getName() + "' 不能接受 0 个参数");
+                    }
+                    else
+                    {
+                        newAttributes.put(ATTRIBUTE_ELEMENT, e);
+                    }
                 }
                 return new Result(true, "", newAttributes);
             }
@@ -481,7 +535,7 @@ public class SimpleSyntaxAnalyzer
                         e.setParam(i, args.get(i));
                     }
 
-                    Pair<Boolean, String> err = e.checkParams(analyzer.classDictionary);
+                    Pair<Boolean, String> err = e.checkNode(analyzer.classDictionary);
                     if (!err.getKey())
                         return new Result(false, err.getValue(), null);
 
@@ -850,7 +904,17 @@ public class SimpleSyntaxAnalyzer
         {
             {  LexicalTokenType.SIGN_PAREN_LEFT /*acceptLeading*/,  null/*acceptFollowing*/, null/*excludeFollowing*/, 56 /*state*/},
         };
-        argsShiftMapping[56] = argsShiftMapping[36];
+        argsShiftMapping[56] = new Object[][]
+        {
+            {  LexicalTokenType.NUMBER /*acceptLeading*/,  null/*acceptFollowing*/, null/*excludeFollowing*/, 52 /*state*/},
+            {  LexicalTokenType.ID /*acceptLeading*/,  null/*acceptFollowing*/, null/*excludeFollowing*/, 51 /*state*/},
+            {  LexicalTokenType.STRING /*acceptLeading*/,  null/*acceptFollowing*/, null/*excludeFollowing*/, 53 /*state*/},
+            {  LexicalTokenType.SIGN_MINUS /*acceptLeading*/,  null/*acceptFollowing*/, null/*excludeFollowing*/, 63 /*state*/},
+            {  LexicalTokenType.SIGN_EXCLAMDOWN /*acceptLeading*/,  null/*acceptFollowing*/, null/*excludeFollowing*/, 46 /*state*/},
+            {  LexicalTokenType.SIGN_TILDE /*acceptLeading*/,  null/*acceptFollowing*/, null/*excludeFollowing*/, 48 /*state*/},
+            {  LexicalTokenType.SIGN_PAREN_LEFT /*acceptLeading*/,  null/*acceptFollowing*/, null/*excludeFollowing*/, 43 /*state*/},
+            {  LexicalTokenType.SIGN_PAREN_RIGHT /*acceptLeading*/,  null/*acceptFollowing*/, null/*excludeFollowing*/, 57 /*state*/},
+        };
         argsShiftMapping[57] = new Object[][]{};
         argsShiftMapping[58] = new Object[][]
         {
@@ -1520,9 +1584,17 @@ public class SimpleSyntaxAnalyzer
         stackState.addFirst(s);
     }
 
+    //设置编译的资源上限, deadline 为 System.nanoTime 的截止时间, 由 Analyzer 在词法分析之前确定
+    void setLimits(CompileLimits limits, long deadline)
+    {
+        this.limits = limits;
+        this.deadline = deadline;
+    }
+
     //规约, 用 id 产生式进行规约
     Pair<Boolean, String> reduce(int id)
     {
+        nodes++;
         Production p = mappingProduction.get(id);
         assert (p != null);
         Production.Reducer.Result r = p.reduce(this);
@@ -1552,15 +1624,131 @@ public class SimpleSyntaxAnalyzer
 
     public Pair<IElement, String> analyze(List<LexicalToken> tokens, FunctionElementFactory funcFactory, VariableElementFactory varFactory, ClassDictionary classDictionary)
     {
-        if (funcFactory != null)
-            this.funcFactory = funcFactory;
+        this.funcFactory = funcFactory != null ? funcFactory : new FunctionElementFactory();
+        this.varFactory = varFactory != null ? varFactory : new VariableElementFactory();
+        this.classDictionary = classDictionary != null ? classDictionary : new ClassDictionary();
+        nodes = 0;
+
+        if (isLetBinding(tokens, 0))
+        {
+            VariableElementFactory global = this.varFactory;
+            try
+            {
+                return analyzeLet(tokens, global);
+            }
+            finally
+            {
+                this.varFactory = global;
+            }
+        }
+        return analyze(tokens);
+    }
+
+    //tokens 从 from 开始是否为 let id = ...
+    static boolean isLetBinding(List<LexicalToken> tokens, int from)
+    {
+        if (tokens.size() < from + 4)
+            return false;
+        LexicalToken t = tokens.get(from);
+        return t.type == LexicalTokenType.ID && t.value.equals("let")
+                && tokens.get(from + 1).type == LexicalTokenType.ID
+                && tokens.get(from + 2).type == LexicalTokenType.SIGN_EQUALS
+                && tokens.get(from + 3).type != LexicalTokenType.SIGN_EQUALS;
+    }
+
+    /*
+    * 依次分析各个绑定, 每个绑定分析完成后加入作用域, 供后面的绑定及结果表达式引用
+    * 绑定的类型检查与普通表达式相同, 引用处的类型为被绑定表达式的结果类型
+    * */
+    private Pair<IElement, String> analyzeLet(List<LexicalToken> tokens, VariableElementFactory global)
+    {
+        LetScope scope = new LetScope(global);
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<IElement> values = new ArrayList<>();
+        LexicalToken first = tokens.get(0);
+
+        int i = 0;
+        while (isLetBinding(tokens, i))
+        {
+            LexicalToken id = tokens.get(i + 1);
+            String position = "[" + id.line + ":" + id.position + "]: ";
+            if (names.contains(id.value))
+                return new Pair<>(null, position + "重复的绑定 '" + id.value + "'");
+            if (classDictionary.lookup(id.value) != null)
+                return new Pair<>(null, position + "'" + id.value + "' 已被申明为一个类");
+
+            int end = i + 3;
+            while (end < tokens.size() && tokens.get(end).type != LexicalTokenType.SIGN_SEMICOLON)
+                end++;
+            if (end == tokens.size())
+                return new Pair<>(null, position + "绑定 '" + id.value + "' 缺少 ';'");
+
+            //绑定表达式以 ';' 处的 END 结束
+            LexicalToken semicolon = tokens.get(end);
+            ArrayList<LexicalToken> sub = new ArrayList<>(tokens.subList(i + 3, end));
+            LexicalToken t = new LexicalToken();
+            t.type = LexicalTokenType.END;
+            t.line = semicolon.line;
+            t.position = semicolon.position;
+            t.length = 1;
+            t.value = "\0";
+            sub.add(t);
+
+            this.varFactory = scope;
+            Pair<IElement, String> r = analyze(sub);
+            if (r.getKey() == null)
+                return r;
+            if (!finished)
+                return new Pair<>(null, "[" + t.line + ":" + t.position + "]: 绑定 '" + id.value + "' 的表达式不完整");
+
+            scope.bind(id.value, names.size(), r.getKey());
+            names.add(id.value);
+            values.add(r.getKey());
+            i = end + 1;
+        }
+
+        if (i >= tokens.size() || tokens.get(i).type == LexicalTokenType.END)
+            return new Pair<>(null, "[" + first.line + ":" + first.position + "]: let 缺少结果表达式");
+
+        this.varFactory = scope;
+        Pair<IElement, String> r = analyze(tokens.subList(i, tokens.size()));
+        if (r.getKey() == null)
+            return r;
+
+        LetElement e = new LetElement(names, values, r.getKey());
+        e.setLine(first.line);
+        e.setColumn(first.position);
+        return new Pair<IElement, String>(e, "");
+    }
 
-        if (varFactory != null)
-            this.varFactory = varFactory;
+    //let 作用域: 先查找绑定, 再查找全局变量
+    private static class LetScope extends VariableElementFactory
+    {
+        private final VariableElementFactory global;
+        private final Map<String, BindingElement> bindings = new HashMap<>();
 
-        if (classDictionary != null)
-            this.classDictionary = classDictionary;
+        LetScope(VariableElementFactory global)
+        {
+            this.global = global;
+        }
 
+        void bind(String name, int slot, IElement value)
+        {
+            bindings.put(name, new BindingElement(name, slot, value));
+        }
+
+        @Override
+        public VariableElement create(String className, String varName)
+        {
+            BindingElement b = className.isEmpty() ? bindings.get(varName) : null;
+            if (b == null)
+                return global.create(className, varName);
+            return new BindingElement(varName, b.getSlot(), b.getValue());
+        }
+    }
+
+    private Pair<IElement, String> analyze(List<LexicalToken> tokens)
+    {
         stackState.clear();
         stackSymbol.clear();
         stackAttribute.clear();
@@ -1572,8 +1760,15 @@ public class SimpleSyntaxAnalyzer
 
         boolean success = true;
 
+        int maxDepth = 0, maxNodes = 0;
+        if (limits != null)
+        {
+            maxDepth = limits.getMaxDepth();
+            maxNodes = limits.getMaxNodes();
+        }
+
         int size = tokens.size();
-        for (int i = 0; i < size;)
+        for (int i = 0, step = 0; i < size; step++)
         {
             LexicalToken t1 = tokens.get(i), t2 = i < size - 1 ? tokens.get(i + 1) : null;
 
@@ -1588,6 +1783,17 @@ public class SimpleSyntaxAnalyzer
             {
                 i++;
             }
+
+            if (limits != null)
+            {
+                errString = checkLimits(t1, step, maxDepth, maxNodes);
+                if (errString != null)
+                {
+                    success = false;
+                    break;
+                }
+                errString = "";
+            }
         }
 
         if (success)
@@ -1596,4 +1802,16 @@ public class SimpleSyntaxAnalyzer
         }
         return new Pair<>(e, errString);
     }
+
+    //每次移入或规约之后检查资源上限, 未超出时返回 null
+    private String checkLimits(LexicalToken t, int step, int maxDepth, int maxNodes)
+    {
+        if (CompileLimits.exceeded(stackState.size(), maxDepth))
+            return limits.reject(CompileLimits.LIMIT_DEPTH, t.line, t.position, maxDepth);
+        if (CompileLimits.exceeded(nodes, maxNodes))
+            return limits.reject(CompileLimits.LIMIT_NODES, t.line, t.position, maxNodes);
+        if ((step & 0xFF) == 0 && deadline != Long.MAX_VALUE && System.nanoTime() > deadline)
+            return limits.reject(CompileLimits.LIMIT_TIME, t.line, t.position, limits.getMaxMillis());
+        return null;
+    }
 }
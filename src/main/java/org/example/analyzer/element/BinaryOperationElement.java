@@ -13,6 +13,7 @@ public class BinaryOperationElement extends IElement
         this.displayName = displayName;
         this.name = name;
         this.hint = hint;
+        this.priority = Priority.of(name);
         this.params.add(new IElement.Param("值1", "值1", "", null));
         this.params.add(new IElement.Param("值2", "值2", "", null));
     }
@@ -24,7 +25,7 @@ public class BinaryOperationElement extends IElement
     }
 
     @Override
-    public Pair<Boolean, String> checkParams(ClassDictionary classDictionary)
+    public Pair<Boolean, String> checkNode(ClassDictionary classDictionary)
     {
         boolean success = false;
         String errString = "";
@@ -44,25 +45,10 @@ public class BinaryOperationElement extends IElement
                 break;
             }
 
-            //重新递归检查params
-            Pair<Boolean, String> err = params.get(0).value.checkParams(classDictionary);
-            if (!err.getKey())
-            {
-                errString = err.getValue();
-                break;
-            }
-
-            err = params.get(1).value.checkParams(classDictionary);
-            if (!err.getKey())
-            {
-                errString = err.getValue();
-                break;
-            }
-
             Class t1 = params.get(0).value.resultType, t2 = params.get(1).value.resultType;
             assert (t1 != null && t2 != null);
 
-            err = t1.isAccept(name, t2.name);
+            Pair<Boolean, String> err = classDictionary.isAccept(t1, name, t2.name);
             if (!err.getKey())
             {
                 errString = "[" + line + ":" + column + "]: 类型 '" + t1.name + "': 不能接受类型 '" + t2.name + "' 作用于操作符 '" + name + "'";
@@ -81,31 +67,25 @@ public class BinaryOperationElement extends IElement
         return new Pair<Boolean, String>(success, errString);
     }
 
-    public String toExpressionString()
+    @Override
+    void expressionBefore(StringBuilder out, int index, IElement child)
     {
-        //左右参数的优先级比自身高且不是函数、字面值的情况下需要补上括号
-        String ret = "";
-        boolean l = false, r = false;
-        IElement v1 = params.get(0).value, v2 = params.get(1).value;
-        if (!Priority.check(v1.name, name) && !(v1 instanceof FunctionElement) && !(v1 instanceof LiteralConstantElement))
-            l = true;
-        if (l)
-            ret += "(";
-
-        ret += params.get(0).value.toExpressionString();
-        if (l)
-            ret += ")";
-
-        ret += " " + name + " ";
-        if (!Priority.check(v2.name, name) && !(v2 instanceof FunctionElement) && !(v2 instanceof LiteralConstantElement))
-            r = true;
-        if (r)
-            ret += "(";
+        if (needParentheses(child))
+            out.append('(');
+    }
 
-        ret += params.get(1).value.toExpressionString();
-        if (r)
-            ret += ")";
+    @Override
+    void expressionAfter(StringBuilder out, int index, IElement child)
+    {
+        if (needParentheses(child))
+            out.append(')');
+        if (index == 0)
+            out.append(' ').append(name).append(' ');
+    }
 
-        return ret;
+    //左右参数的优先级比自身高且不是函数、字面值的情况下需要补上括号
+    private boolean needParentheses(IElement v)
+    {
+        return !Priority.check(v.priority, priority) && !(v instanceof FunctionElement) && !(v instanceof LiteralConstantElement);
     }
 }
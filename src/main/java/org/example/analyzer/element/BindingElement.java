@@ -0,0 +1,49 @@
+package org.example.analyzer.element;
+
+/*
+*   let 绑定的引用, 如 let q = getQuantity(...); q * 3 中的 q
+*   结果类型为被绑定表达式的结果类型, slot 为绑定在 LetElement 中的序号
+*   求值时从 let 的求值帧中取值, 同一次求值中被绑定表达式只求值一次
+* */
+public class BindingElement extends VariableElement
+{
+    private int slot;
+    private IElement value;
+
+    public BindingElement(String varName, int slot, IElement value)
+    {
+        super("绑定 " + varName, "", varName, "let 绑定的值", value.getResultType());
+        this.slot = slot;
+        this.value = value;
+    }
+
+    //尚未确定所在 let 的引用, 由 ElementJsonReader 在读取到 let 后调用 bind
+    BindingElement(String varName, Class resultType)
+    {
+        super("绑定 " + varName, "", varName, "let 绑定的值", resultType);
+        this.slot = -1;
+    }
+
+    void bind(int slot, IElement value)
+    {
+        this.slot = slot;
+        this.value = value;
+    }
+
+    public int getSlot()
+    {
+        return slot;
+    }
+
+    //被绑定的表达式
+    public IElement getValue()
+    {
+        return value;
+    }
+
+    @Override
+    public int getType()
+    {
+        return ElementType.ELEMENT_TYPE_BINDING;
+    }
+}
@@ -2,10 +2,7 @@ package org.example.analyzer.element;
 
 import javafx.util.Pair;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 /*
 *   元素类型
@@ -36,29 +33,24 @@ public class Class
     }
 
     String name;
+    final Map<String, Map<String, String>> initial;      //构造时的接收规则, 只读; 之后的修改保存在 Registry 中
 
-    /*
-    * mappingAccept记录该类型在某个操作符下是否能接受另外一个类型，且返回何种类型的数据
-    * 一个类型在某个操作符下可接受的另一个类型可以是多个，比如 "1" + 2  和 "1" + "2" 在某些语言下都是成立的
-    * 当操作符为空时, 表示是否可以进行直接(隐式)转换
-    * 当操作符是一元运算符, 那么其它类型则为空
-    * */
-    Map<String /* 操作符 */, Map<String /*  另一个类型 */, String /* 接受后的返回类型 */ >> mappingAccept = new HashMap<>();
-
+    //accepts 为初始的接收规则, 与 addAccept 的规则相同, 但不发布新的 Registry 快照
     public Class(String name, List<Accept> accepts)
     {
         this.name = name;
-
+        HashMap<String, Map<String, String>> rules = new HashMap<>();
         for (Accept a : accepts)
         {
-            Map<String, String> set = mappingAccept.get(a.operation);
-            if (set == null)
+            Map<String, String> m = rules.get(a.operation);
+            if (m == null)
             {
-                set = new HashMap<>();
-                mappingAccept.put(a.operation, set);
+                m = new HashMap<>();
+                rules.put(a.operation, m);
             }
-            set.put(a.otherType, a.resultType);
+            m.put(a.otherType, a.resultType);
         }
+        this.initial = freeze(rules);
     }
 
     public Class(String name)
@@ -71,29 +63,33 @@ public class Class
         return name;
     }
 
+    /*
+    * 记录该类型在某个操作符下是否能接受另外一个类型，且返回何种类型的数据
+    * 当操作符为空时, 表示是否可以进行直接(隐式)转换; 当操作符是一元运算符, 那么其它类型则为空
+    * 规则保存在 Registry 的当前快照中, 每次修改发布一个新的快照; 一批修改应通过 Registry.Builder 一次发布
+    * */
     public void addAccept(String operation, String otherType, String resultType)
     {
-        Map<String, String> m = mappingAccept.get(operation);
-        if (m == null)
-        {
-            m = new HashMap<>();
-            mappingAccept.put(operation, m);
-        }
-        m.put(otherType, resultType);
+        ArrayList<Accept> list = new ArrayList<>();
+        list.add(new Accept(operation, otherType, resultType));
+        Registry.addAccepts(this, list);
     }
 
     public void removeAccept(String operation, String otherType)
     {
-        Map<String, String> m = mappingAccept.get(operation);
-        if (m != null)
-            m.remove(otherType);
+        Registry.removeAccept(this, operation, otherType);
     }
 
     public Pair<Boolean, String> isAccept(String operation, String otherType)
     {
-        Map<String, String> m = mappingAccept.get(operation);
-        String t;
-        if (m != null && (t = m.get(otherType)) != null)
+        return isAccept(Registry.current(), operation, otherType);
+    }
+
+    //按 registry 快照中的接收规则判断
+    Pair<Boolean, String> isAccept(Registry registry, String operation, String otherType)
+    {
+        String t = registry.accept(this, operation, otherType);
+        if (t != null)
         {
             return new Pair<>(true, t);
         }
@@ -105,6 +101,17 @@ public class Class
     {
         return isAccept("", otherType);
     }
+
+    //rules 的只读副本
+    static Map<String, Map<String, String>> freeze(Map<String, Map<String, String>> rules)
+    {
+        if (rules.isEmpty())
+            return Collections.emptyMap();
+        HashMap<String, Map<String, String>> ret = new HashMap<>();
+        for (Map.Entry<String, Map<String, String>> op : rules.entrySet())
+            ret.put(op.getKey(), Collections.unmodifiableMap(new HashMap<>(op.getValue())));
+        return Collections.unmodifiableMap(ret);
+    }
 }
 
 
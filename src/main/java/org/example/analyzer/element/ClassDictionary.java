@@ -1,74 +1,105 @@
 package org.example.analyzer.element;
 
+import javafx.util.Pair;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
 public class ClassDictionary
 {
-    private Map<String, Class> types = new HashMap<String, Class>()  //key 为关键字名称, value 为关键字对应的类型
+    //key 为关键字名称, value 为关键字对应的类型; 新增类型时复制后整体替换, lookup 不加锁
+    private volatile Map<String, Class> types;
+    private final Registry registry;       //查找接收规则的快照, 为 null 时使用当前快照
+
+    public ClassDictionary()
+    {
+        this.types = defaults();
+        this.registry = null;
+    }
+
+    //与 source 共用当前的类型, 接收规则按 registry 快照查找; 之后在 source 中新增的类型不可见
+    public ClassDictionary(ClassDictionary source, Registry registry)
     {
+        this.types = source.types;
+        this.registry = registry;
+    }
+
+    private static Map<String, Class> defaults()
+    {
+        return new HashMap<String, Class>()
         {
-            Class t;
-            t = new Class(Class.TYPE_NUMBER, new ArrayList<Class.Accept>()
             {
+                Class t;
+                t = new Class(Class.TYPE_NUMBER, new ArrayList<Class.Accept>()
                 {
-                    add(new Class.Accept("~", "", Class.TYPE_NUMBER));
-                    add(new Class.Accept("*", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
-                    add(new Class.Accept("/", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
-                    add(new Class.Accept("%", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
-                    add(new Class.Accept("+", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
-                    add(new Class.Accept("+", Class.TYPE_STRING, Class.TYPE_STRING));
-                    add(new Class.Accept("-", "", Class.TYPE_NUMBER));
-                    add(new Class.Accept("-", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
-                    add(new Class.Accept(">>", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
-                    add(new Class.Accept("<<", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
-                    add(new Class.Accept("&", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
-                    add(new Class.Accept("^", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
-                    add(new Class.Accept("|", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
-                    add(new Class.Accept(">", Class.TYPE_NUMBER, Class.TYPE_BOOLEAN));
-                    add(new Class.Accept(">=", Class.TYPE_NUMBER, Class.TYPE_BOOLEAN));
-                    add(new Class.Accept("<", Class.TYPE_NUMBER, Class.TYPE_BOOLEAN));
-                    add(new Class.Accept("<=", Class.TYPE_NUMBER, Class.TYPE_BOOLEAN));
-                    add(new Class.Accept("!=", Class.TYPE_NUMBER, Class.TYPE_BOOLEAN));
-                    add(new Class.Accept("==", Class.TYPE_NUMBER, Class.TYPE_BOOLEAN));
-                }
-            });
-            put(t.name, t);
+                    {
+                        add(new Class.Accept("~", "", Class.TYPE_NUMBER));
+                        add(new Class.Accept("*", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
+                        add(new Class.Accept("/", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
+                        add(new Class.Accept("%", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
+                        add(new Class.Accept("+", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
+                        add(new Class.Accept("+", Class.TYPE_STRING, Class.TYPE_STRING));
+                        add(new Class.Accept("-", "", Class.TYPE_NUMBER));
+                        add(new Class.Accept("-", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
+                        add(new Class.Accept(">>", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
+                        add(new Class.Accept("<<", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
+                        add(new Class.Accept("&", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
+                        add(new Class.Accept("^", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
+                        add(new Class.Accept("|", Class.TYPE_NUMBER, Class.TYPE_NUMBER));
+                        add(new Class.Accept(">", Class.TYPE_NUMBER, Class.TYPE_BOOLEAN));
+                        add(new Class.Accept(">=", Class.TYPE_NUMBER, Class.TYPE_BOOLEAN));
+                        add(new Class.Accept("<", Class.TYPE_NUMBER, Class.TYPE_BOOLEAN));
+                        add(new Class.Accept("<=", Class.TYPE_NUMBER, Class.TYPE_BOOLEAN));
+                        add(new Class.Accept("!=", Class.TYPE_NUMBER, Class.TYPE_BOOLEAN));
+                        add(new Class.Accept("==", Class.TYPE_NUMBER, Class.TYPE_BOOLEAN));
+                    }
+                });
+                put(t.name, t);
 
-            t = new Class(Class.TYPE_STRING, new ArrayList<Class.Accept>()
-            {
+                t = new Class(Class.TYPE_STRING, new ArrayList<Class.Accept>()
                 {
-                    add(new Class.Accept("+", Class.TYPE_STRING, Class.TYPE_STRING));
-                    add(new Class.Accept("+", Class.TYPE_NUMBER, Class.TYPE_STRING));
-                }
-            });
-            put(t.name, t);
+                    {
+                        add(new Class.Accept("+", Class.TYPE_STRING, Class.TYPE_STRING));
+                        add(new Class.Accept("+", Class.TYPE_NUMBER, Class.TYPE_STRING));
+                    }
+                });
+                put(t.name, t);
 
-            t = new Class(Class.TYPE_BOOLEAN, new ArrayList<Class.Accept>()
-            {
+                t = new Class(Class.TYPE_BOOLEAN, new ArrayList<Class.Accept>()
                 {
-                    add(new Class.Accept("||", Class.TYPE_BOOLEAN, Class.TYPE_BOOLEAN));
-                    add(new Class.Accept("&&", Class.TYPE_BOOLEAN, Class.TYPE_BOOLEAN));
-                    add(new Class.Accept("!", "", Class.TYPE_BOOLEAN));
-                }
-            });
-            put(t.name, t);
-        }
-    };
+                    {
+                        add(new Class.Accept("||", Class.TYPE_BOOLEAN, Class.TYPE_BOOLEAN));
+                        add(new Class.Accept("&&", Class.TYPE_BOOLEAN, Class.TYPE_BOOLEAN));
+                        add(new Class.Accept("!", "", Class.TYPE_BOOLEAN));
+                    }
+                });
+                put(t.name, t);
+            }
+        };
+    }
 
-    public ClassDictionary()
+    public synchronized void add(Class c)
     {
+        Map<String, Class> m = new HashMap<>(types);
+        m.put(c.name, c);
+        types = m;
+    }
 
+    public Class lookup(String name)
+    {
+        return types.get(name);
     }
 
-    public void add(Class c)
+    //c 在 operation 下是否接受 otherType, 接受时 value 为结果类型名
+    Pair<Boolean, String> isAccept(Class c, String operation, String otherType)
     {
-        types.put(c.name, c);
+        return c.isAccept(registry != null ? registry : Registry.current(), operation, otherType);
     }
 
-    public Class lookup(String name)
+    //所有类型, key 为类型名称, 只读
+    Map<String, Class> types()
     {
-        return types.get(name);
+        return types;
     }
 }
@@ -0,0 +1,609 @@
+package org.example.analyzer.element;
+
+import javafx.util.Pair;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+*   读取 ElementBinaryWriter 的编码结果
+*   打开时只解析文件头, 所需时间与元素树及符号的个数无关; 元素树按序号随机解码, 符号在第一次使用时解码
+*   get 可以在多个线程中同时调用
+*   解码直接按下标读取 ByteBuffer, 除元素本身外只为 let 分配少量对象
+*   编码中的个数与长度都先按剩余字节数校验再分配, 损坏或恶意的输入只返回错误, 不会按其中的数值分配内存
+* */
+public class ElementBinaryReader
+{
+    private static final int RECURSION_DEPTH = 64;        //递归解码的最大嵌套层数, 更深时改用显式的栈
+
+    private final ElementBuilder builder;
+    private final ByteBuffer data;
+    private final boolean positions;
+    private final long registryVersion;
+    private final int symbolCount;
+    private final int symbolTable;      //符号结束偏移表在 data 中的位置, 其后为符号区
+    private final int symbolBytes;
+    private final int treeCount;
+    private final int treeTable;        //元素树结束偏移表在 data 中的位置, 其后为元素树区
+    private final int treeBytes;
+    //已解码的符号, 第一次使用时创建; 多个线程同时解码同一个符号时结果相同, 不需要加锁
+    private volatile String[] symbols = null;
+
+    private ElementBinaryReader(ElementBuilder builder, ByteBuffer data, boolean positions, long registryVersion,
+                                int symbolCount, int symbolTable, int symbolBytes, int treeCount, int treeTable, int treeBytes)
+    {
+        this.builder = builder;
+        this.data = data;
+        this.positions = positions;
+        this.registryVersion = registryVersion;
+        this.symbolCount = symbolCount;
+        this.symbolTable = symbolTable;
+        this.symbolBytes = symbolBytes;
+        this.treeCount = treeCount;
+        this.treeTable = treeTable;
+        this.treeBytes = treeBytes;
+    }
+
+    /*
+    * 打开编码结果, data 从 position 开始读取, 不会修改 data 的 position
+    * 注册表指纹与 registryVersion 不一致时返回错误
+    * */
+    public static Pair<ElementBinaryReader, String> open(ByteBuffer data, long registryVersion,
+            FunctionElementFactory funcFactory, VariableElementFactory varFactory, ClassDictionary classDictionary)
+    {
+        ByteBuffer b = data.slice();
+        Cursor c = new Cursor(b, 0);
+        try
+        {
+            if (b.remaining() < 4 || b.getInt(0) != ElementBinaryWriter.MAGIC)
+                return new Pair<>(null, "不是元素树的二进制编码");
+            c.position = 4;
+            int format = c.varint();
+            if (format != ElementBinaryWriter.FORMAT_VERSION)
+                return new Pair<>(null, "不支持的格式版本 " + format);
+            int flags = c.varint();
+            long version = b.getLong(c.position);
+            c.position += 8;
+            if (version != registryVersion)
+                return new Pair<>(null, "注册表版本 " + RegistryVersion.toString(version) + " 与当前版本 " + RegistryVersion.toString(registryVersion) + " 不一致");
+
+            int symbolCount = b.getInt(c.position);
+            int treeCount = b.getInt(c.position + 4);
+            c.position += 8;
+
+            //偏移表每项 4 字节; 区的长度为偏移表的最后一项
+            if (symbolCount < 0 || symbolCount > (b.limit() - c.position) / 4)
+                return new Pair<>(null, "符号个数 " + symbolCount + " 超出文件长度");
+            int symbolTable = c.position;
+            int symbolBytes = symbolCount == 0 ? 0 : b.getInt(symbolTable + (symbolCount - 1) * 4);
+            int symbolData = symbolTable + symbolCount * 4;
+            if (symbolBytes < 0 || symbolBytes > b.limit() - symbolData)
+                return new Pair<>(null, "符号区长度 " + symbolBytes + " 超出文件长度");
+
+            int treeTable = symbolData + symbolBytes;
+            if (treeCount < 0 || treeCount > (b.limit() - treeTable) / 4)
+                return new Pair<>(null, "元素树个数 " + treeCount + " 超出文件长度");
+            int treeBytes = treeCount == 0 ? 0 : b.getInt(treeTable + (treeCount - 1) * 4);
+            if (treeBytes < 0 || treeBytes > b.limit() - treeTable - treeCount * 4)
+                return new Pair<>(null, "编码结果不完整");
+
+            ElementBuilder builder = new ElementBuilder(funcFactory, varFactory, classDictionary);
+            return new Pair<>(new ElementBinaryReader(builder, b, (flags & ElementBinaryWriter.FLAG_POSITIONS) != 0, version,
+                    symbolCount, symbolTable, symbolBytes, treeCount, treeTable, treeBytes), "");
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            return new Pair<>(null, "编码结果不完整");
+        }
+    }
+
+    public static Pair<ElementBinaryReader, String> open(ByteBuffer data,
+            FunctionElementFactory funcFactory, VariableElementFactory varFactory, ClassDictionary classDictionary)
+    {
+        return open(data, RegistryVersion.of(funcFactory, varFactory, classDictionary), funcFactory, varFactory, classDictionary);
+    }
+
+    //从 channel 读取全部内容后打开
+    public static Pair<ElementBinaryReader, String> readFrom(ReadableByteChannel channel,
+            FunctionElementFactory funcFactory, VariableElementFactory varFactory, ClassDictionary classDictionary) throws IOException
+    {
+        ByteBuffer b = ByteBuffer.allocate(4096);
+        while (channel.read(b) >= 0)
+        {
+            if (!b.hasRemaining())
+            {
+                ByteBuffer larger = ByteBuffer.allocate(b.capacity() << 1);
+                b.flip();
+                larger.put(b);
+                b = larger;
+            }
+        }
+        b.flip();
+        return open(b, funcFactory, varFactory, classDictionary);
+    }
+
+    public int size()
+    {
+        return treeCount;
+    }
+
+    public long getRegistryVersion()
+    {
+        return registryVersion;
+    }
+
+    public boolean hasPositions()
+    {
+        return positions;
+    }
+
+    //第 index 个元素树的编码字节数, 偏移不正确时为 -1
+    public int sizeOf(int index)
+    {
+        int start = start(index), end = end(index);
+        return start < 0 || end < 0 ? -1 : end - start;
+    }
+
+    /*
+    * 第 index 个元素树在 data 中的起始、结束位置, 序号越界或偏移不正确时为 -1
+    * 偏移表来自文件, 每次使用时校验
+    * */
+    int start(int index)
+    {
+        if (index < 0 || index >= treeCount)
+            return -1;
+        int start = index == 0 ? 0 : data.getInt(treeTable + (index - 1) * 4);
+        int end = data.getInt(treeTable + index * 4);
+        return start < 0 || start > end || end > treeBytes ? -1 : treeTable + treeCount * 4 + start;
+    }
+
+    int end(int index)
+    {
+        int start = start(index);
+        return start < 0 ? -1 : treeTable + treeCount * 4 + data.getInt(treeTable + index * 4);
+    }
+
+    //将 data 中 [start, end) 的字节复制到 dst 的 offset 处
+    void copyTo(int start, int end, byte[] dst, int offset)
+    {
+        ByteBuffer b = data.duplicate();
+        b.position(start);
+        b.get(dst, offset, end - start);
+    }
+
+    //解码第 index 个元素树, 出错时返回值的 key 为 null, value 为错误提示
+    public Pair<IElement, String> get(int index)
+    {
+        if (index < 0 || index >= size())
+            return new Pair<>(null, "元素树序号 " + index + " 越界");
+        int start = start(index), end = end(index);
+        if (start < 0 || end < 0)
+            return new Pair<>(null, "元素树 " + index + " 的偏移不正确");
+        Cursor c = new Cursor(data, start);
+        try
+        {
+            IElement e = read(c, 0);
+            if (c.position != end)
+                return new Pair<>(null, "元素树 " + index + " 的长度不正确");
+            return new Pair<>(e, "");
+        }
+        catch (ElementBuilder.BuildException e)
+        {
+            return new Pair<>(null, "[元素树 " + index + " 偏移 " + (c.position - start) + "]: " + e.getMessage());
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            return new Pair<>(null, "元素树 " + index + " 不完整");
+        }
+    }
+
+    /*
+    * 嵌套不超过 RECURSION_DEPTH 层时递归解码, 更深的子树用显式的栈解码, 可解码的深度只受堆内存限制
+    * 字节的读取顺序与编码顺序相同: 元素头(标记、位置、符号等)之后依次是各子元素
+    * */
+    private IElement read(Cursor c, int level) throws ElementBuilder.BuildException
+    {
+        if (level >= RECURSION_DEPTH)
+            return iterate(c);
+
+        int tag = c.varint();
+        int type = tag & 7;
+        int leadingKind = tag >>> 3;
+        int line = 0, column = 0;
+        if (positions)
+        {
+            line = (int) c.signed();
+            column = (int) c.signed();
+        }
+
+        IElement e;
+        switch (type)
+        {
+            case ElementType.ELEMENT_TYPE_LITERAL_CONSTANT:
+                e = literal(c);
+                break;
+
+            case ElementType.ELEMENT_TYPE_UNARY_OPERATION:
+            {
+                String name = symbol(c), displayName = symbol(c), hint = symbol(c);
+                e = builder.unary(name, displayName, hint, read(c, level + 1));
+                break;
+            }
+
+            case ElementType.ELEMENT_TYPE_BINARY_OPERATION:
+            {
+                String name = symbol(c), displayName = symbol(c), hint = symbol(c);
+                IElement left = read(c, level + 1);
+                e = builder.binary(name, displayName, hint, left, read(c, level + 1));
+                break;
+            }
+
+            case ElementType.ELEMENT_TYPE_FUNCTION:
+            {
+                String name = symbol(c);
+                Object leading = leadingKind == ElementBinaryWriter.LEADING_EXPRESSION ? read(c, level + 1) : leading(c, leadingKind);
+                int n = c.count(1);
+                ArrayList<IElement> args = new ArrayList<>(n);
+                for (int i = 0; i < n; i++)
+                    args.add(read(c, level + 1));
+                e = builder.function(name, leading, args);
+                break;
+            }
+
+            case ElementType.ELEMENT_TYPE_VARIABLE:
+            {
+                String name = symbol(c);
+                Object leading = leadingKind == ElementBinaryWriter.LEADING_EXPRESSION ? read(c, level + 1) : leading(c, leadingKind);
+                e = builder.variable(name, leading);
+                break;
+            }
+
+            case ElementType.ELEMENT_TYPE_LET:
+            {
+                int n = c.count(2);
+                ArrayList<String> names = new ArrayList<>(n);
+                ArrayList<IElement> values = new ArrayList<>(n);
+                c.lets.add(new Object[] { names, values });
+                for (int i = 0; i < n; i++)
+                {
+                    names.add(symbol(c));
+                    values.add(read(c, level + 1));
+                }
+                IElement body = read(c, level + 1);
+                c.lets.remove(c.lets.size() - 1);
+                e = new LetElement(names, values, body);
+                break;
+            }
+
+            case ElementType.ELEMENT_TYPE_BINDING:
+                e = binding(c);
+                break;
+
+            default:
+                throw new ElementBuilder.BuildException("未知元素类型 " + type);
+        }
+
+        e.setLine(line);
+        e.setColumn(column);
+        return e;
+    }
+
+    //解码 RECURSION_DEPTH 层以下的子树, Node 保存各层的状态
+    private IElement iterate(Cursor c) throws ElementBuilder.BuildException
+    {
+        ArrayList<Node> stack = new ArrayList<>();
+        Node n = begin(c);
+        IElement child = null;
+        while (true)
+        {
+            if (next(n, child, c))
+            {
+                stack.add(n);
+                n = begin(c);
+                child = null;
+                continue;
+            }
+
+            IElement e = finish(n, c);
+            if (stack.isEmpty())
+                return e;
+            n = stack.remove(stack.size() - 1);
+            child = e;
+        }
+    }
+
+    //解码中的元素
+    private static class Node
+    {
+        int type;
+        int leadingKind;
+        int line;
+        int column;
+        String name;
+        String displayName;
+        String hint;
+        Object leading;                 //类名或调用对象表达式
+        boolean leadingRead;
+        int count = -1;                 //函数的参数个数或 let 的绑定个数, -1 为尚未读取
+        ArrayList<IElement> children;   //函数的参数、二元运算的操作数或 let 绑定的值
+        ArrayList<String> names;        //let 的绑定名称
+        IElement element;               //字面值及绑定引用在元素头中即已确定
+    }
+
+    //读取元素头
+    private Node begin(Cursor c) throws ElementBuilder.BuildException
+    {
+        Node n = new Node();
+        int tag = c.varint();
+        n.type = tag & 7;
+        n.leadingKind = tag >>> 3;
+        if (positions)
+        {
+            n.line = (int) c.signed();
+            n.column = (int) c.signed();
+        }
+
+        switch (n.type)
+        {
+            case ElementType.ELEMENT_TYPE_LITERAL_CONSTANT:
+                n.element = literal(c);
+                break;
+
+            case ElementType.ELEMENT_TYPE_UNARY_OPERATION:
+            case ElementType.ELEMENT_TYPE_BINARY_OPERATION:
+                n.name = symbol(c);
+                n.displayName = symbol(c);
+                n.hint = symbol(c);
+                n.children = new ArrayList<>(2);
+                break;
+
+            case ElementType.ELEMENT_TYPE_FUNCTION:
+            case ElementType.ELEMENT_TYPE_VARIABLE:
+                n.name = symbol(c);
+                break;
+
+            case ElementType.ELEMENT_TYPE_LET:
+                n.count = c.count(2);
+                n.names = new ArrayList<>(n.count);
+                n.children = new ArrayList<>(n.count);
+                c.lets.add(new Object[] { n.names, n.children });
+                break;
+
+            case ElementType.ELEMENT_TYPE_BINDING:
+                n.element = binding(c);
+                break;
+
+            default:
+                throw new ElementBuilder.BuildException("未知元素类型 " + n.type);
+        }
+        return n;
+    }
+
+    /*
+    * child 为刚解码完成的子元素(第一次调用时为 null)
+    * 还需要解码子元素时返回 true, 此时 c 位于子元素的开始; 所有子元素都已解码时返回 false
+    * */
+    private boolean next(Node n, IElement child, Cursor c) throws ElementBuilder.BuildException
+    {
+        switch (n.type)
+        {
+            case ElementType.ELEMENT_TYPE_UNARY_OPERATION:
+            case ElementType.ELEMENT_TYPE_BINARY_OPERATION:
+                if (child != null)
+                    n.children.add(child);
+                return n.children.size() < (n.type == ElementType.ELEMENT_TYPE_UNARY_OPERATION ? 1 : 2);
+
+            case ElementType.ELEMENT_TYPE_FUNCTION:
+            case ElementType.ELEMENT_TYPE_VARIABLE:
+                if (!n.leadingRead)
+                {
+                    if (n.leadingKind == ElementBinaryWriter.LEADING_EXPRESSION && child == null)
+                        return true;
+                    n.leading = n.leadingKind == ElementBinaryWriter.LEADING_EXPRESSION ? child : leading(c, n.leadingKind);
+                    n.leadingRead = true;
+                    child = null;
+                }
+                if (n.type == ElementType.ELEMENT_TYPE_VARIABLE)
+                    return false;
+                if (n.count < 0)
+                {
+                    n.count = c.count(1);
+                    n.children = new ArrayList<>(n.count);
+                }
+                if (child != null)
+                    n.children.add(child);
+                return n.children.size() < n.count;
+
+            case ElementType.ELEMENT_TYPE_LET:
+                //依次为各绑定的名称及值, 最后是结果表达式
+                if (child != null)
+                {
+                    if (n.children.size() == n.count)
+                    {
+                        n.element = child;
+                        c.lets.remove(c.lets.size() - 1);
+                        return false;
+                    }
+                    n.children.add(child);
+                }
+                if (n.children.size() < n.count)
+                    n.names.add(symbol(c));
+                return true;
+        }
+        return false;
+    }
+
+    private IElement finish(Node n, Cursor c) throws ElementBuilder.BuildException
+    {
+        IElement e = build(n, c);
+        e.setLine(n.line);
+        e.setColumn(n.column);
+        return e;
+    }
+
+    private IElement build(Node n, Cursor c) throws ElementBuilder.BuildException
+    {
+        switch (n.type)
+        {
+            case ElementType.ELEMENT_TYPE_UNARY_OPERATION:
+                return builder.unary(n.name, n.displayName, n.hint, n.children.get(0));
+
+            case ElementType.ELEMENT_TYPE_BINARY_OPERATION:
+                return builder.binary(n.name, n.displayName, n.hint, n.children.get(0), n.children.get(1));
+
+            case ElementType.ELEMENT_TYPE_FUNCTION:
+                return builder.function(n.name, n.leading, n.children);
+
+            case ElementType.ELEMENT_TYPE_VARIABLE:
+                return builder.variable(n.name, n.leading);
+
+            case ElementType.ELEMENT_TYPE_LET:
+                return new LetElement(n.names, n.children, n.element);
+        }
+        return n.element;
+    }
+
+    //绑定引用: 外层第 depth 个 let 的第 slot 个绑定
+    private static IElement binding(Cursor c) throws ElementBuilder.BuildException
+    {
+        int depth = c.varint();
+        int slot = c.varint();
+        if (depth < 0 || depth >= c.lets.size())
+            throw new ElementBuilder.BuildException("绑定引用不在 let 作用域内");
+        Object[] let = c.lets.get(c.lets.size() - 1 - depth);
+        @SuppressWarnings("unchecked")
+        List<String> names = (List<String>) let[0];
+        @SuppressWarnings("unchecked")
+        List<IElement> values = (List<IElement>) let[1];
+        if (slot >= values.size())
+            throw new ElementBuilder.BuildException("绑定 " + slot + " 在定义之前被引用");
+        return new BindingElement(names.get(slot), slot, values.get(slot));
+    }
+
+    private IElement literal(Cursor c) throws ElementBuilder.BuildException
+    {
+        switch (c.varint())
+        {
+            case ElementBinaryWriter.LITERAL_INTEGER:
+                return builder.literal(Long.toString(c.signed()), null, builder.type(Class.TYPE_NUMBER));
+            case ElementBinaryWriter.LITERAL_NUMBER:
+                return builder.literal(symbol(c), null, builder.type(Class.TYPE_NUMBER));
+            case ElementBinaryWriter.LITERAL_STRING:
+                return builder.literal(c.string(), null, builder.type(Class.TYPE_STRING));
+        }
+        throw new ElementBuilder.BuildException("未知字面值类型");
+    }
+
+    //调用对象不是表达式时的类名, 表达式由 read 作为子元素解码
+    private String leading(Cursor c, int kind) throws ElementBuilder.BuildException
+    {
+        switch (kind)
+        {
+            case ElementBinaryWriter.LEADING_NONE:
+                return null;
+            case ElementBinaryWriter.LEADING_CLASS:
+                return symbol(c);
+        }
+        throw new ElementBuilder.BuildException("未知调用对象类型");
+    }
+
+    private String symbol(Cursor c) throws ElementBuilder.BuildException
+    {
+        return symbol(c.varint());
+    }
+
+    int symbolCount()
+    {
+        return symbolCount;
+    }
+
+    //第 i 个符号, 第一次使用时解码
+    String symbol(int i) throws ElementBuilder.BuildException
+    {
+        if (i < 0 || i >= symbolCount)
+            throw new ElementBuilder.BuildException("符号下标 " + i + " 越界");
+        String[] decoded = symbols;
+        if (decoded == null)
+        {
+            decoded = new String[symbolCount];
+            symbols = decoded;
+        }
+        String s = decoded[i];
+        if (s == null)
+        {
+            int start = i == 0 ? 0 : data.getInt(symbolTable + (i - 1) * 4);
+            int end = data.getInt(symbolTable + i * 4);
+            if (start < 0 || start > end || end > symbolBytes)
+                throw new ElementBuilder.BuildException("符号 " + i + " 的偏移不正确");
+            byte[] bytes = new byte[end - start];
+            ByteBuffer b = data.duplicate();
+            b.position(symbolTable + symbolCount * 4 + start);
+            b.get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+            decoded[i] = s;
+        }
+        return s;
+    }
+
+    //解码位置及正在解码的 let (names, values)
+    private static class Cursor
+    {
+        final ByteBuffer data;
+        int position;
+        final ArrayList<Object[]> lets = new ArrayList<>(2);
+
+        Cursor(ByteBuffer data, int position)
+        {
+            this.data = data;
+            this.position = position;
+        }
+
+        long varlong()
+        {
+            long v = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                b = data.get(position++);
+                v |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0 && shift < 64);
+            return v;
+        }
+
+        int varint()
+        {
+            return (int) varlong();
+        }
+
+        //个数或长度, 每项至少占 minBytes 字节, 超出剩余字节数时报错
+        int count(int minBytes) throws ElementBuilder.BuildException
+        {
+            long n = varlong();
+            if (n < 0 || n > (data.limit() - position) / minBytes)
+                throw new ElementBuilder.BuildException("个数或长度 " + n + " 超出剩余的 " + (data.limit() - position) + " 字节");
+            return (int) n;
+        }
+
+        long signed()
+        {
+            long v = varlong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        String string() throws ElementBuilder.BuildException
+        {
+            int n = count(1);
+            byte[] bytes = new byte[n];
+            for (int i = 0; i < n; i++)
+                bytes[i] = data.get(position + i);
+            position += n;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package org.example.analyzer.element;
+
+import javafx.util.Pair;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+*   元素树的二进制编码, 多个元素树共用一个符号表
+*   文件结构:
+*       魔数 "ELMB" | 格式版本 | 标志 | 注册表指纹(8 字节) | 符号个数(4 字节) | 元素树个数(4 字节)
+*       | 各符号的结束偏移(4 字节)... | 符号(UTF-8)... | 各元素树的结束偏移(4 字节)... | 元素树...
+*   偏移表为定长, 读取时不必逐个解析即可定位任一符号或元素树; 偏移相对于符号区或元素树区的开始
+*   其余整数均为变长编码(每字节 7 位, 最高位表示后面还有字节), 有符号整数先做 zigzag 变换
+*   元素: 标签(元素类型 | 调用对象类型 << 3) [行号 列号] 内容
+*       字面值      字面值类型 + 整数/符号下标/字符串
+*       运算符      name、displayName、hint 的符号下标 + 操作数
+*       函数        name 的符号下标 + 调用对象 + 参数个数 + 参数
+*       变量        name 的符号下标 + 调用对象
+*       let         绑定个数 + (名称的符号下标 + 表达式)... + 结果表达式
+*       绑定引用    所在 let 向外的层数(0 为最内层) + 绑定在该 let 中的序号
+*   函数、变量的 displayName/hint 及结果类型由注册表决定, 不写入; 读取时要求注册表指纹一致
+* */
+public class ElementBinaryWriter
+{
+    static final int MAGIC = 0x454C4D42;    //"ELMB"
+    static final int FORMAT_VERSION = 2;
+    static final int FLAG_POSITIONS = 1;
+
+    static final int LEADING_NONE = 0;
+    static final int LEADING_CLASS = 1;
+    static final int LEADING_EXPRESSION = 2;
+
+    static final int LITERAL_INTEGER = 0;   //文本为整数的十进制形式的数字, 保存整数
+    static final int LITERAL_NUMBER = 1;    //其它数字(如 0x55、0.8), 文本放入符号表
+    static final int LITERAL_STRING = 2;    //字符串, 直接保存文本
+
+    private final long registryVersion;
+    private final boolean positions;
+    private final HashMap<String, Integer> symbolIndex = new HashMap<>();
+    private final ArrayList<String> symbols = new ArrayList<>();
+    private final ArrayList<LetElement> lets = new ArrayList<>();      //正在编码的 let, 用于确定绑定引用的层数
+    private ElementBinaryReader base = null;         //符号表的来源, 其中的元素树可直接复制
+
+    private byte[] body = new byte[1024];
+    private int length = 0;
+    private int[] ends = new int[16];      //每个元素树在 body 中的结束位置
+    private int count = 0;
+
+    //positions 为 true 时保存每个元素的行号、列号
+    public ElementBinaryWriter(long registryVersion, boolean positions)
+    {
+        this.registryVersion = registryVersion;
+        this.positions = positions;
+    }
+
+    /*
+    * 以 base 的符号表为初始符号表, 注册表指纹及是否保存位置与 base 相同
+    * 之后可以用 copy 直接复制 base 中的元素树编码而不必重新编码; base 中已不再使用的符号也会保留
+    * */
+    public static Pair<ElementBinaryWriter, String> extend(ElementBinaryReader base)
+    {
+        ElementBinaryWriter w = new ElementBinaryWriter(base.getRegistryVersion(), base.hasPositions());
+        try
+        {
+            for (int i = 0; i < base.symbolCount(); i++)
+            {
+                String s = base.symbol(i);
+                w.symbols.add(s);
+                if (!w.symbolIndex.containsKey(s))
+                    w.symbolIndex.put(s, i);
+            }
+        }
+        catch (ElementBuilder.BuildException e)
+        {
+            return new Pair<>(null, e.getMessage());
+        }
+        w.base = base;
+        return new Pair<>(w, "");
+    }
+
+    //复制 base 中第 index 个元素树的编码, 返回其序号; 该元素树的偏移不正确时返回 -1
+    public int copy(int index)
+    {
+        if (base == null)
+            throw new IllegalStateException("没有可复制的编码, 应由 extend 创建");
+        int start = base.start(index), end = base.end(index);
+        if (start < 0 || end < 0)
+            return -1;
+        ensure(end - start);
+        base.copyTo(start, end, body, length);
+        length += end - start;
+        return finish();
+    }
+
+    //编码一个元素树, 返回其序号
+    public int add(IElement e)
+    {
+        write(e);
+        return finish();
+    }
+
+    private int finish()
+    {
+        if (count == ends.length)
+            ends = Arrays.copyOf(ends, count << 1);
+        ends[count] = length;
+        return count++;
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    //完整的编码结果, position 为 0, limit 为长度
+    public ByteBuffer toByteBuffer()
+    {
+        ByteBuffer header = header();
+        ByteBuffer ret = ByteBuffer.allocate(header.remaining() + length);
+        ret.put(header).put(body, 0, length);
+        ret.flip();
+        return ret;
+    }
+
+    //写入 channel, 返回写入的字节数
+    public long writeTo(WritableByteChannel channel) throws IOException
+    {
+        ByteBuffer[] buffers = { header(), ByteBuffer.wrap(body, 0, length) };
+        long n = 0;
+        for (ByteBuffer b : buffers)
+        {
+            while (b.hasRemaining())
+                n += channel.write(b);
+        }
+        return n;
+    }
+
+    public static ByteBuffer encode(IElement e, long registryVersion, boolean positions)
+    {
+        ElementBinaryWriter w = new ElementBinaryWriter(registryVersion, positions);
+        w.add(e);
+        return w.toByteBuffer();
+    }
+
+    private ByteBuffer header()
+    {
+        byte[][] encoded = new byte[symbols.size()][];
+        int size = 4 + 5 + 5 + 8 + 4 + 4 + encoded.length * 4 + count * 4;
+        for (int i = 0; i < encoded.length; i++)
+        {
+            encoded[i] = symbols.get(i).getBytes(StandardCharsets.UTF_8);
+            size += encoded[i].length;
+        }
+
+        ByteBuffer b = ByteBuffer.allocate(size);
+        b.putInt(MAGIC);
+        putVarint(b, FORMAT_VERSION);
+        putVarint(b, positions ? FLAG_POSITIONS : 0);
+        b.putLong(registryVersion);
+        b.putInt(encoded.length);
+        b.putInt(count);
+        int end = 0;
+        for (byte[] s : encoded)
+        {
+            end += s.length;
+            b.putInt(end);
+        }
+        for (byte[] s : encoded)
+            b.put(s);
+        for (int i = 0; i < count; i++)
+            b.putInt(ends[i]);
+        b.flip();
+        return b;
+    }
+
+    //由 ElementTraversal 遍历, 不受嵌套深度限制
+    private void write(IElement e)
+    {
+        ElementTraversal.walk(e, true, new ElementTraversal.Visitor()
+        {
+            @Override
+            public int enter(IElement e)
+            {
+                writeHead(e);
+                return ElementTraversal.CONTINUE;
+            }
+
+            @Override
+            public void beforeChild(IElement parent, int index, IElement child)
+            {
+                if (child == null)
+                    throw new IllegalArgumentException("元素 '" + parent.getName() + "' 的参数 " + index + " 为空");
+                if (parent.getType() == ElementType.ELEMENT_TYPE_LET && index < ((LetElement) parent).getBindingCount())
+                    symbol(((LetElement) parent).getBindingName(index));
+            }
+
+            @Override
+            public void afterChild(IElement parent, int index, IElement child)
+            {
+                //函数的调用对象之后是参数个数
+                if (index < 0 && parent.getType() == ElementType.ELEMENT_TYPE_FUNCTION)
+                    varint(parent.getParams().size());
+            }
+
+            @Override
+            public boolean leave(IElement e)
+            {
+                if (e.getType() == ElementType.ELEMENT_TYPE_LET)
+                    lets.remove(lets.size() - 1);
+                return true;
+            }
+        });
+    }
+
+    //元素的标签及子元素之前的内容, 子元素(调用对象、参数、let 的绑定)由遍历依次写入
+    private void writeHead(IElement e)
+    {
+        int type = e.getType();
+        Object leading = leadingOf(e);
+        int leadingKind = leading == null ? LEADING_NONE : leading instanceof IElement ? LEADING_EXPRESSION : LEADING_CLASS;
+        varint(type | leadingKind << 3);
+        if (positions)
+        {
+            varint(zigzag(e.getLine()));
+            varint(zigzag(e.getColumn()));
+        }
+
+        switch (type)
+        {
+            case ElementType.ELEMENT_TYPE_LITERAL_CONSTANT:
+                literal(e);
+                break;
+
+            case ElementType.ELEMENT_TYPE_UNARY_OPERATION:
+            case ElementType.ELEMENT_TYPE_BINARY_OPERATION:
+                symbol(e.getName());
+                symbol(e.getDisplayName());
+                symbol(e.getHint());
+                break;
+
+            case ElementType.ELEMENT_TYPE_FUNCTION:
+                symbol(e.getName());
+                if (leadingKind == LEADING_CLASS)
+                    symbol(leading.toString());
+                if (leadingKind != LEADING_EXPRESSION)
+                    varint(e.getParams().size());
+                break;
+
+            case ElementType.ELEMENT_TYPE_VARIABLE:
+                symbol(e.getName());
+                if (leadingKind == LEADING_CLASS)
+                    symbol(leading.toString());
+                break;
+
+            case ElementType.ELEMENT_TYPE_LET:
+                varint(((LetElement) e).getBindingCount());
+                lets.add((LetElement) e);
+                break;
+
+            case ElementType.ELEMENT_TYPE_BINDING:
+            {
+                BindingElement b = (BindingElement) e;
+                int depth = 0;
+                while (depth < lets.size())
+                {
+                    LetElement let = lets.get(lets.size() - 1 - depth);
+                    if (b.getSlot() < let.getBindingCount() && let.getBindingValue(b.getSlot()) == b.getValue())
+                        break;
+                    depth++;
+                }
+                if (depth == lets.size())
+                    throw new IllegalArgumentException("绑定 '" + b.getName() + "' 不在 let 作用域内");
+                varint(depth);
+                varint(b.getSlot());
+                break;
+            }
+
+            default:
+                throw new IllegalArgumentException("未知元素类型 " + type);
+        }
+    }
+
+    private void literal(IElement e)
+    {
+        String text = e.getName();
+        if (Class.TYPE_STRING.equals(e.getResultType().getName()))
+        {
+            varint(LITERAL_STRING);
+            bytes(text.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        Object v = ((LiteralConstantElement) e).getValue();
+        double d = v instanceof Double ? (Double) v : Double.NaN;
+        if (d == Math.rint(d) && Math.abs(d) < 1e15 && Long.toString((long) d).equals(text))
+        {
+            varint(LITERAL_INTEGER);
+            varint(zigzag((long) d));
+        }
+        else
+        {
+            varint(LITERAL_NUMBER);
+            symbol(text);
+        }
+    }
+
+    private static Object leadingOf(IElement e)
+    {
+        Object l = null;
+        if (e instanceof FunctionElement)
+        {
+            FunctionElement.Leading fl = ((FunctionElement) e).getLeading();
+            l = fl instanceof FunctionElement.ExpressionLeading ? ((FunctionElement.ExpressionLeading) fl).getElement() : fl;
+        }
+        else if (e instanceof VariableElement)
+        {
+            VariableElement.Leading vl = ((VariableElement) e).getLeading();
+            l = vl instanceof VariableElement.ExpressionLeading ? ((VariableElement.ExpressionLeading) vl).getElement() : vl;
+        }
+        return l;
+    }
+
+    private void symbol(String s)
+    {
+        Integer i = symbolIndex.get(s);
+        if (i == null)
+        {
+            i = symbols.size();
+            symbols.add(s);
+            symbolIndex.put(s, i);
+        }
+        varint(i);
+    }
+
+    private void bytes(byte[] b)
+    {
+        varint(b.length);
+        ensure(b.length);
+        System.arraycopy(b, 0, body, length, b.length);
+        length += b.length;
+    }
+
+    private void varint(long v)
+    {
+        ensure(10);
+        while ((v & ~0x7FL) != 0)
+        {
+            body[length++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        body[length++] = (byte) v;
+    }
+
+    private void ensure(int n)
+    {
+        if (length + n > body.length)
+            body = Arrays.copyOf(body, Math.max(body.length << 1, length + n));
+    }
+
+    private static void putVarint(ByteBuffer b, int v)
+    {
+        while ((v & ~0x7F) != 0)
+        {
+            b.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        b.put((byte) v);
+    }
+
+    static long zigzag(long v)
+    {
+        return (v << 1) ^ (v >> 63);
+    }
+}
@@ -0,0 +1,163 @@
+package org.example.analyzer.element;
+
+import javafx.util.Pair;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+*   从持久化格式(JSON、二进制)还原元素时按当前注册表构造元素
+*   每个元素只按其直接子元素校验类型, 规则与 checkParams 相同, 子元素在之前已校验过
+*   实例类型(某个函数或变量的结果类型, 如 SamplePointList)的成员必须有调用对象表达式,
+*   缺少时报错而不是按类名调用(如没有 "leading" 的 toJson 输出)
+* */
+class ElementBuilder
+{
+    static class BuildException extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        BuildException(String message)
+        {
+            super(message);
+        }
+    }
+
+    private final FunctionElementFactory funcFactory;
+    private final VariableElementFactory varFactory;
+    private final ClassDictionary classDictionary;
+    private final Set<String> instanceTypes = new HashSet<>();      //构造时的注册表中作为结果类型的类名
+
+    ElementBuilder(FunctionElementFactory funcFactory, VariableElementFactory varFactory, ClassDictionary classDictionary)
+    {
+        this.funcFactory = funcFactory;
+        this.varFactory = varFactory;
+        this.classDictionary = classDictionary;
+        for (FunctionElement f : FunctionElementFactory.definitions().values())
+            instanceTypes.add(typeName(f.resultType));
+        for (VariableElement v : VariableElementFactory.definitions().values())
+            instanceTypes.add(typeName(v.resultType));
+    }
+
+    Class type(String name) throws BuildException
+    {
+        Class c = classDictionary.lookup(name);
+        if (c == null)
+            throw new BuildException("未知类型 '" + name + "'");
+        return c;
+    }
+
+    //hint 为 null 时与语法分析生成的提示相同
+    LiteralConstantElement literal(String name, String hint, Class type) throws BuildException
+    {
+        boolean number = Class.TYPE_NUMBER.equals(type.name);
+        if (!number && !Class.TYPE_STRING.equals(type.name))
+            throw new BuildException("字面值 '" + name + "' 的类型不正确");
+        LiteralConstantElement l = new LiteralConstantElement(name, hint != null ? hint : (number ? "数字 " : "字符串 ") + name, type);
+        if (l.getValue() == null)
+            throw new BuildException("无法识别的字面值 '" + name + "'");
+        return l;
+    }
+
+    IElement unary(String name, String displayName, String hint, IElement operand) throws BuildException
+    {
+        IElement e = new UnaryOperationElement(displayName != null ? displayName : name, name, hint != null ? hint : name);
+        e.setParam(0, operand);
+        e.resultType = accept(name, operand.resultType, "");
+        return e;
+    }
+
+    IElement binary(String name, String displayName, String hint, IElement left, IElement right) throws BuildException
+    {
+        IElement e = new BinaryOperationElement(displayName != null ? displayName : name, name, hint != null ? hint : name);
+        e.setParam(0, left);
+        e.setParam(1, right);
+        e.resultType = accept(name, left.resultType, typeName(right.resultType));
+        return e;
+    }
+
+    //leading 为调用对象: IElement 为表达式, String 为类名, null 时按 name 中的类名
+    FunctionElement function(String name, Object leading, List<IElement> args) throws BuildException
+    {
+        String[] n = splitName(name);
+        FunctionElement f = funcFactory.create(n[0], n[1]);
+        if (f == null)
+            throw new BuildException("未知函数 '" + name + "'");
+        if (f.getParams().size() != args.size())
+            throw new BuildException("函数 '" + name + "' 应有 " + f.getParams().size() + " 个参数, 实际为 " + args.size());
+        for (int i = 0; i < args.size(); i++)
+        {
+            IElement.Param p = f.getParams().get(i);
+            IElement v = args.get(i);
+            if (classDictionary.lookup(p.type) != v.resultType)
+                throw new BuildException("函数 '" + name + "' 参数 '" + p.displayName + "' 不能接收类型 '" + typeName(v.resultType) + "'");
+            f.setParam(i, v);
+        }
+        if (leading instanceof IElement)
+            f.setLeading(new FunctionElement.ExpressionLeading(receiver(name, n[0], (IElement) leading)));
+        else if (leading != null || !n[0].isEmpty())
+            f.setLeading(new FunctionElement.StringLeading(className(name, n[0], (String) leading)));
+        return f;
+    }
+
+    VariableElement variable(String name, Object leading) throws BuildException
+    {
+        String[] n = splitName(name);
+        VariableElement v = varFactory.create(n[0], n[1]);
+        if (v == null)
+            throw new BuildException("未知变量 '" + name + "'");
+        if (leading instanceof IElement)
+            v.setLeading(new VariableElement.ExpressionLeading(receiver(name, n[0], (IElement) leading)));
+        else if (leading != null || !n[0].isEmpty())
+            v.setLeading(new VariableElement.StringLeading(className(name, n[0], (String) leading)));
+        return v;
+    }
+
+    //持久化时记录的类型与按当前注册表构造出的类型不一致时报错
+    void checkType(IElement e, Class declared) throws BuildException
+    {
+        if (declared != null && declared != e.resultType)
+            throw new BuildException("元素 '" + e.name + "' 的类型 '" + declared.name + "' 与当前定义 '" + typeName(e.resultType) + "' 不一致");
+    }
+
+    private IElement receiver(String name, String className, IElement receiver) throws BuildException
+    {
+        if (receiver.resultType == null || !receiver.resultType.name.equals(className))
+            throw new BuildException("'" + name + "' 的调用对象类型为 '" + typeName(receiver.resultType) + "'");
+        return receiver;
+    }
+
+    //调用对象为类名时的类名, 缺少时按 name 中的类名, 此时不能是实例类型
+    private String className(String name, String className, String leading) throws BuildException
+    {
+        if (leading != null)
+            return leading;
+        if (instanceTypes.contains(className))
+            throw new BuildException("'" + name + "' 缺少调用对象, 类型 '" + className + "' 的成员必须由表达式调用");
+        return className;
+    }
+
+    private Class accept(String op, Class t, String other) throws BuildException
+    {
+        if (t == null)
+            throw new BuildException("操作符 '" + op + "' 的参数缺少类型");
+        Pair<Boolean, String> r = classDictionary.isAccept(t, op, other);
+        Class c = r.getKey() ? classDictionary.lookup(r.getValue()) : null;
+        if (c == null)
+            throw new BuildException("类型 '" + t.name + "' 不能接受类型 '" + other + "' 作用于操作符 '" + op + "'");
+        return c;
+    }
+
+    //name 为 类名.成员名 或 成员名
+    private static String[] splitName(String name)
+    {
+        int i = name.indexOf('.');
+        return i < 0 ? new String[] { "", name } : new String[] { name.substring(0, i), name.substring(i + 1) };
+    }
+
+    static String typeName(Class c)
+    {
+        return c == null ? "null" : c.name;
+    }
+}
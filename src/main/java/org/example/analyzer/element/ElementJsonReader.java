@@ -0,0 +1,686 @@
+package org.example.analyzer.element;
+
+import javafx.util.Pair;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+/*
+*   从 JSON 还原元素树, 不再经过词法、语法分析
+*   读取 ElementJsonWriter.writeDocument 输出的文档, 注册表指纹与当前注册表不同时拒绝读取
+*   边读取边构造元素, 不生成中间的 JSON 对象; 字段的先后顺序不限, 未知字段被忽略
+*   函数、变量按 name 从工厂中创建, 结果类型从 ClassDictionary 中查找
+*   类型只在每个元素构造时按其直接子元素校验一次, 不调用递归的 checkParams
+*   JSON 中没有源码位置, 还原出的元素行号、列号均为 0
+* */
+public class ElementJsonReader
+{
+    private static final int BUFFER_SIZE = 4096;
+
+    //JSON 格式错误或元素无法还原
+    private static class ReadException extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        ReadException(String message)
+        {
+            super(message);
+        }
+    }
+
+    //参数在读取时的内容
+    private static class ParamData
+    {
+        String displayName = "";
+        String hint = "";
+        String type = "";
+        IElement value = null;
+        int firstBinding = 0;       //读取 value 前已有的绑定引用个数
+    }
+
+    //读取中的元素对象
+    private static class ElementData
+    {
+        //读取位置: 对象开始、键、键值之后、调用对象、参数对象开始、参数的键、参数的值、参数的键值之后、参数对象之后
+        static final int START = 0;
+        static final int KEY = 1;
+        static final int NEXT = 2;
+        static final int LEADING = 3;
+        static final int PARAM_START = 4;
+        static final int PARAM_KEY = 5;
+        static final int PARAM_VALUE = 6;
+        static final int PARAM_NEXT = 7;
+        static final int PARAM_END = 8;
+
+        int state = START;
+        int type = -1;
+        String name = null;
+        String displayName = null;
+        String hint = null;
+        String resultType = null;
+        Object leading = null;
+        final ArrayList<ParamData> params = new ArrayList<>();
+        ParamData param = null;     //正在读取的参数
+        final int firstBinding;     //读取前已有的绑定引用个数
+
+        ElementData(int firstBinding)
+        {
+            this.firstBinding = firstBinding;
+        }
+    }
+
+    private final ElementBuilder builder;
+    private final long registryVersion;
+
+    private Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int length = 0;
+    private int index = 0;
+    private long offset = 0;       //已读取的字符数, 用于错误提示
+    private final StringBuilder text = new StringBuilder();     //读取字符串时复用
+    private final ArrayList<BindingElement> bindings = new ArrayList<>();     //已读取的绑定引用, 读取到所在的 let 后确定其绑定
+
+    //注册表指纹在构造时计算, 注册表变化(如热更新)后需要重新构造
+    public ElementJsonReader(FunctionElementFactory funcFactory, VariableElementFactory varFactory, ClassDictionary classDictionary)
+    {
+        this.builder = new ElementBuilder(funcFactory, varFactory, classDictionary);
+        this.registryVersion = RegistryVersion.of(funcFactory, varFactory, classDictionary);
+    }
+
+    public long getRegistryVersion()
+    {
+        return registryVersion;
+    }
+
+    //读取 writeDocument 输出的文档, 出错时返回值的 key 为 null, value 为错误提示
+    public Pair<IElement, String> read(Reader reader) throws IOException
+    {
+        reset(reader);
+        try
+        {
+            String version = null;
+            IElement e = null;
+            expect('{');
+            if (!tryConsume('}'))
+            {
+                do
+                {
+                    String key = readString();
+                    expect(':');
+                    if (key.equals("registryVersion"))
+                    {
+                        version = readString();
+                        if (!version.equals(RegistryVersion.toString(registryVersion)))
+                            return new Pair<>(null, "注册表版本 " + version + " 与当前版本 " + RegistryVersion.toString(registryVersion) + " 不一致");
+                    }
+                    else if (key.equals("element"))
+                    {
+                        //版本在元素之后时, 先读取元素, 版本不一致时丢弃
+                        e = readElement();
+                    }
+                    else
+                    {
+                        skipValue();
+                    }
+                } while (tryConsume(','));
+                expect('}');
+            }
+            if (version == null)
+                return new Pair<>(null, "文档缺少注册表版本");
+            if (e == null)
+                return new Pair<>(null, "文档缺少元素");
+            return finish(e);
+        }
+        catch (ReadException ex)
+        {
+            return new Pair<>(null, ex.getMessage());
+        }
+    }
+
+    public Pair<IElement, String> read(String document)
+    {
+        try
+        {
+            return read(new StringReader(document));
+        }
+        catch (IOException e)
+        {
+            //StringReader 不会抛出
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //读取单个元素树(不带注册表版本), 调用方需自行保证与当前注册表一致
+    public Pair<IElement, String> readElement(Reader reader) throws IOException
+    {
+        reset(reader);
+        try
+        {
+            return finish(readElement());
+        }
+        catch (ReadException ex)
+        {
+            return new Pair<>(null, ex.getMessage());
+        }
+    }
+
+    private void reset(Reader reader)
+    {
+        in = reader;
+        length = index = 0;
+        offset = 0;
+        bindings.clear();
+    }
+
+    private Pair<IElement, String> finish(IElement e) throws IOException, ReadException
+    {
+        skipWhitespace();
+        if (peek() >= 0)
+            throw error("文档结束后有多余的内容");
+        for (BindingElement b : bindings)
+        {
+            if (b.getValue() == null)
+                return new Pair<>(null, "绑定 '" + b.getName() + "' 不在 let 作用域内");
+        }
+        return new Pair<>(e, "");
+    }
+
+    /*
+    * 读取一个元素对象, 用显式的栈代替递归, 可读取的深度只受堆内存限制
+    * 遇到嵌套的元素对象(调用对象或参数的值)时压栈, 读取完成后交给上一层
+    * */
+    private IElement readElement() throws IOException, ReadException
+    {
+        ArrayList<ElementData> stack = new ArrayList<>();
+        ElementData d = new ElementData(bindings.size());
+        IElement child = null;
+        while (true)
+        {
+            if (resume(d, child))
+            {
+                stack.add(d);
+                d = new ElementData(bindings.size());
+                child = null;
+                continue;
+            }
+
+            if (d.name == null)
+                throw error("元素缺少 name");
+            IElement e = build(d.type, d.name, d.displayName, d.hint, d.resultType, d.leading, d.params, d.firstBinding);
+            if (stack.isEmpty())
+                return e;
+            d = stack.remove(stack.size() - 1);
+            child = e;
+        }
+    }
+
+    /*
+    * 继续读取 d, child 为刚读取完成的嵌套元素(第一次调用时为 null)
+    * 遇到嵌套的元素对象时返回 true, 此时尚未读取其 '{'; 对象结束时返回 false
+    * */
+    private boolean resume(ElementData d, IElement child) throws IOException, ReadException
+    {
+        while (true)
+        {
+            switch (d.state)
+            {
+                case ElementData.START:
+                    expect('{');
+                    if (tryConsume('}'))
+                        return false;
+                    d.state = ElementData.KEY;
+                    break;
+
+                case ElementData.KEY:
+                {
+                    String key = readString();
+                    expect(':');
+                    d.state = ElementData.NEXT;
+                    switch (key)
+                    {
+                        case "type":
+                            d.type = (int) readLong();
+                            break;
+                        case "name":
+                            d.name = readNullableString();
+                            break;
+                        case "displayName":
+                            d.displayName = readNullableString();
+                            break;
+                        case "hint":
+                            d.hint = readNullableString();
+                            break;
+                        case "resultType":
+                            d.resultType = readNullableString();
+                            break;
+                        case "leading":
+                            skipWhitespace();
+                            if (peek() == '{')
+                            {
+                                d.state = ElementData.LEADING;
+                                return true;
+                            }
+                            d.leading = readNullableString();
+                            break;
+                        case "params":
+                            expect('[');
+                            if (!tryConsume(']'))
+                                d.state = ElementData.PARAM_START;
+                            break;
+                        default:
+                            skipValue();
+                            break;
+                    }
+                    break;
+                }
+
+                case ElementData.NEXT:
+                    if (tryConsume(','))
+                    {
+                        d.state = ElementData.KEY;
+                        break;
+                    }
+                    expect('}');
+                    return false;
+
+                case ElementData.LEADING:
+                    d.leading = child;
+                    d.state = ElementData.NEXT;
+                    break;
+
+                case ElementData.PARAM_START:
+                    d.param = new ParamData();
+                    expect('{');
+                    d.state = tryConsume('}') ? ElementData.PARAM_END : ElementData.PARAM_KEY;
+                    break;
+
+                case ElementData.PARAM_KEY:
+                {
+                    ParamData p = d.param;
+                    String key = readString();
+                    expect(':');
+                    d.state = ElementData.PARAM_NEXT;
+                    switch (key)
+                    {
+                        case "displayName":
+                            p.displayName = readNullableString();
+                            break;
+                        case "hint":
+                            p.hint = readNullableString();
+                            break;
+                        case "type":
+                            p.type = readNullableString();
+                            break;
+                        case "value":
+                            p.firstBinding = bindings.size();
+                            d.state = ElementData.PARAM_VALUE;
+                            return true;
+                        default:
+                            skipValue();
+                            break;
+                    }
+                    break;
+                }
+
+                case ElementData.PARAM_VALUE:
+                    d.param.value = child;
+                    d.state = ElementData.PARAM_NEXT;
+                    break;
+
+                case ElementData.PARAM_NEXT:
+                    if (tryConsume(','))
+                    {
+                        d.state = ElementData.PARAM_KEY;
+                        break;
+                    }
+                    expect('}');
+                    d.state = ElementData.PARAM_END;
+                    break;
+
+                case ElementData.PARAM_END:
+                    if (d.param.value == null)
+                        d.param.firstBinding = bindings.size();
+                    d.params.add(d.param);
+                    d.param = null;
+                    if (tryConsume(','))
+                    {
+                        d.state = ElementData.PARAM_START;
+                        break;
+                    }
+                    expect(']');
+                    d.state = ElementData.NEXT;
+                    break;
+            }
+        }
+    }
+
+    private IElement build(int type, String name, String displayName, String hint, String resultType,
+                           Object leading, ArrayList<ParamData> params, int firstBinding) throws ReadException
+    {
+        try
+        {
+            Class declared = resultType == null ? null : builder.type(resultType);
+            IElement e;
+            switch (type)
+            {
+                case ElementType.ELEMENT_TYPE_LITERAL_CONSTANT:
+                    checkParamCount(name, params, 0);
+                    if (declared == null)
+                        throw error("字面值 '" + name + "' 缺少类型");
+                    e = builder.literal(name, hint, declared);
+                    break;
+
+                case ElementType.ELEMENT_TYPE_UNARY_OPERATION:
+                    checkParamCount(name, params, 1);
+                    e = builder.unary(name, displayName, hint, params.get(0).value);
+                    break;
+
+                case ElementType.ELEMENT_TYPE_BINARY_OPERATION:
+                    checkParamCount(name, params, 2);
+                    e = builder.binary(name, displayName, hint, params.get(0).value, params.get(1).value);
+                    break;
+
+                case ElementType.ELEMENT_TYPE_FUNCTION:
+                {
+                    ArrayList<IElement> args = new ArrayList<>();
+                    for (ParamData p : params)
+                    {
+                        if (p.value == null)
+                            throw error("函数 '" + name + "' 的参数 '" + p.displayName + "' 不能为空");
+                        args.add(p.value);
+                    }
+                    e = builder.function(name, leading, args);
+                    break;
+                }
+
+                case ElementType.ELEMENT_TYPE_VARIABLE:
+                    checkParamCount(name, params, 0);
+                    e = builder.variable(name, leading);
+                    break;
+
+                case ElementType.ELEMENT_TYPE_LET:
+                {
+                    if (params.isEmpty())
+                        throw error("let 缺少结果表达式");
+                    ArrayList<String> names = new ArrayList<>();
+                    ArrayList<IElement> values = new ArrayList<>();
+                    for (int i = 0; i < params.size(); i++)
+                    {
+                        if (params.get(i).value == null)
+                            throw error("let 的参数 '" + params.get(i).displayName + "' 不能为空");
+                        if (i < params.size() - 1)
+                        {
+                            names.add(params.get(i).displayName);
+                            values.add(params.get(i).value);
+                        }
+                    }
+                    e = new LetElement(names, values, params.get(params.size() - 1).value);
+                    bind(names, values, params, firstBinding);
+                    break;
+                }
+
+                case ElementType.ELEMENT_TYPE_BINDING:
+                {
+                    if (declared == null)
+                        throw error("绑定 '" + name + "' 缺少结果类型");
+                    checkParamCount(name, params, 0);
+                    BindingElement b = new BindingElement(name, declared);
+                    bindings.add(b);
+                    return b;
+                }
+
+                default:
+                    throw error("未知元素类型 " + type);
+            }
+
+            builder.checkType(e, declared);
+            return e;
+        }
+        catch (ElementBuilder.BuildException ex)
+        {
+            throw error(ex.getMessage());
+        }
+    }
+
+    //确定 let 中的绑定引用: 第 k 个参数中的引用只能引用前 k 个绑定
+    private void bind(ArrayList<String> names, ArrayList<IElement> values, ArrayList<ParamData> params, int firstBinding) throws ReadException
+    {
+        int k = 0;
+        for (int i = firstBinding; i < bindings.size(); i++)
+        {
+            BindingElement b = bindings.get(i);
+            while (k + 1 < params.size() && params.get(k + 1).firstBinding <= i)
+                k++;
+            if (b.getValue() != null)
+                continue;
+
+            int slot = names.lastIndexOf(b.getName());
+            if (slot < 0 || slot >= k)
+                continue;
+            if (values.get(slot).resultType != b.resultType)
+                throw error("绑定 '" + b.getName() + "' 的类型 '" + ElementBuilder.typeName(b.resultType) + "' 与其表达式的类型不一致");
+            b.bind(slot, values.get(slot));
+        }
+    }
+
+    private void checkParamCount(String name, ArrayList<ParamData> params, int count) throws ReadException
+    {
+        if (params.size() != count)
+            throw error("'" + name + "' 应有 " + count + " 个参数, 实际为 " + params.size());
+        for (ParamData p : params)
+        {
+            if (p.value == null)
+                throw error("'" + name + "' 的参数 '" + p.displayName + "' 不能为空");
+        }
+    }
+
+    private ReadException error(String message)
+    {
+        return new ReadException("[JSON " + (offset + index) + "]: " + message);
+    }
+
+    /* JSON 词法 */
+
+    private int peek() throws IOException
+    {
+        if (index == length)
+        {
+            offset += length;
+            length = in.read(buffer, 0, buffer.length);
+            index = 0;
+            if (length <= 0)
+            {
+                length = 0;
+                return -1;
+            }
+        }
+        return buffer[index];
+    }
+
+    private int next() throws IOException
+    {
+        int ch = peek();
+        if (ch >= 0)
+            index++;
+        return ch;
+    }
+
+    private void skipWhitespace() throws IOException
+    {
+        int ch;
+        while ((ch = peek()) == ' ' || ch == '\n' || ch == '\r' || ch == '\t')
+            index++;
+    }
+
+    private void expect(char ch) throws IOException, ReadException
+    {
+        skipWhitespace();
+        if (next() != ch)
+            throw error("缺少 '" + ch + "'");
+    }
+
+    private boolean tryConsume(char ch) throws IOException
+    {
+        skipWhitespace();
+        if (peek() != ch)
+            return false;
+        index++;
+        return true;
+    }
+
+    private String readNullableString() throws IOException, ReadException
+    {
+        skipWhitespace();
+        if (peek() == 'n')
+        {
+            readWord("null");
+            return null;
+        }
+        return readString();
+    }
+
+    private String readString() throws IOException, ReadException
+    {
+        expect('"');
+        StringBuilder sb = text;
+        sb.setLength(0);
+        while (true)
+        {
+            int ch = next();
+            if (ch < 0)
+                throw error("字符串未结束");
+            if (ch == '"')
+                return sb.toString();
+            if (ch != '\\')
+            {
+                sb.append((char) ch);
+                continue;
+            }
+
+            ch = next();
+            switch (ch)
+            {
+                case '"': case '\\': case '/': sb.append((char) ch); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                {
+                    int v = 0;
+                    for (int i = 0; i < 4; i++)
+                    {
+                        int d = Character.digit(next(), 16);
+                        if (d < 0)
+                            throw error("错误的 \\u 转义");
+                        v = v * 16 + d;
+                    }
+                    sb.append((char) v);
+                    break;
+                }
+                default:
+                    throw error("错误的转义字符");
+            }
+        }
+    }
+
+    private long readLong() throws IOException, ReadException
+    {
+        skipWhitespace();
+        boolean negative = false;
+        if (peek() == '-')
+        {
+            negative = true;
+            index++;
+        }
+        long v = 0;
+        int digits = 0;
+        int ch;
+        while ((ch = peek()) >= '0' && ch <= '9')
+        {
+            v = v * 10 + (ch - '0');
+            index++;
+            digits++;
+        }
+        if (digits == 0)
+            throw error("缺少整数");
+        return negative ? -v : v;
+    }
+
+    private void readWord(String word) throws IOException, ReadException
+    {
+        for (int i = 0; i < word.length(); i++)
+        {
+            if (next() != word.charAt(i))
+                throw error("无法识别的值");
+        }
+    }
+
+    //跳过一个任意的 JSON 值, 嵌套的对象及数组记录在 open 中, 不递归
+    private void skipValue() throws IOException, ReadException
+    {
+        StringBuilder open = new StringBuilder();
+        while (true)
+        {
+            skipWhitespace();
+            int ch = peek();
+            switch (ch)
+            {
+                case '"':
+                    readString();
+                    break;
+                case '{':
+                    index++;
+                    if (tryConsume('}'))
+                        break;
+                    open.append('{');
+                    readString();
+                    expect(':');
+                    continue;
+                case '[':
+                    index++;
+                    if (tryConsume(']'))
+                        break;
+                    open.append('[');
+                    continue;
+                case 't':
+                    readWord("true");
+                    break;
+                case 'f':
+                    readWord("false");
+                    break;
+                case 'n':
+                    readWord("null");
+                    break;
+                default:
+                    if (ch != '-' && (ch < '0' || ch > '9'))
+                        throw error("无法识别的值");
+                    while ((ch = peek()) == '-' || ch == '+' || ch == '.' || ch == 'e' || ch == 'E' || (ch >= '0' && ch <= '9'))
+                        index++;
+                    break;
+            }
+
+            //一个值结束: 结束已读完的对象及数组, 遇到 ',' 时继续读取下一个值
+            while (true)
+            {
+                if (open.length() == 0)
+                    return;
+                char top = open.charAt(open.length() - 1);
+                if (tryConsume(','))
+                {
+                    if (top == '{')
+                    {
+                        readString();
+                        expect(':');
+                    }
+                    break;
+                }
+                expect(top == '{' ? '}' : ']');
+                open.setLength(open.length() - 1);
+            }
+        }
+    }
+}
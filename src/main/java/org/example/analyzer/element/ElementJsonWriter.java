@@ -0,0 +1,246 @@
+package org.example.analyzer.element;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/*
+*   元素树的流式 JSON 输出: 遍历一次元素树, 直接写入 Appendable, 不构造 JSONObject/JSONArray
+*   输出的结构与 IElement.toJson 相同, 字段按 toJson 中的顺序输出
+*   metadata 为 false 时省略元素及参数的 displayName 与 hint (let 的绑定名称除外)
+*   leading 为 true 时额外输出函数及变量的调用对象("leading"), 供 ElementJsonReader 还原元素树
+* */
+public class ElementJsonWriter
+{
+    private final Appendable out;
+    private final boolean metadata;
+    private final boolean leading;
+
+    public ElementJsonWriter(Appendable out, boolean metadata, boolean leading)
+    {
+        this.out = out;
+        this.metadata = metadata;
+        this.leading = leading;
+    }
+
+    public ElementJsonWriter(Appendable out, boolean metadata)
+    {
+        this(out, metadata, false);
+    }
+
+    public ElementJsonWriter(Appendable out)
+    {
+        this(out, true);
+    }
+
+    /*
+    * 输出可由 ElementJsonReader 读取的文档: {"registryVersion":"...","element":{...}}
+    * 元素树包含调用对象, registryVersion 为 RegistryVersion 计算出的注册表指纹
+    * */
+    public void writeDocument(IElement e, long registryVersion) throws IOException
+    {
+        out.append('{');
+        string("registryVersion", RegistryVersion.toString(registryVersion));
+        out.append(",\"element\":");
+        write(e);
+        out.append('}');
+    }
+
+    //由 ElementTraversal 遍历, 不受嵌套深度限制
+    public void write(IElement e) throws IOException
+    {
+        JsonVisitor v = new JsonVisitor();
+        ElementTraversal.walk(e, leading, v);
+        if (v.error != null)
+            throw v.error;
+    }
+
+    /*
+    * 元素: 进入时输出各字段直到 "params":[ (调用对象为表达式时输出到 "leading":, 调用对象之后再输出 "params":[)
+    * 参数: 子元素之前输出参数的字段及 "value":, 之后输出 }; 离开元素时输出 ]}
+    * */
+    private class JsonVisitor extends ElementTraversal.Visitor
+    {
+        IOException error = null;
+
+        @Override
+        public int enter(IElement e)
+        {
+            if (error != null)
+                return ElementTraversal.STOP;
+            try
+            {
+                out.append("{\"type\":").append(Integer.toString(e.getType()));
+                field("name", e.getName());
+                if (metadata)
+                {
+                    field("displayName", e.getDisplayName());
+                    field("hint", e.getHint());
+                }
+                field("resultType", e.getResultType() != null ? e.getResultType().getName() : null);
+                if (leading && ElementTraversal.receiver(e) != null)
+                {
+                    out.append(",\"leading\":");
+                    return ElementTraversal.CONTINUE;
+                }
+                if (leading)
+                    leading(e);
+                out.append(",\"params\":[");
+            }
+            catch (IOException ex)
+            {
+                error = ex;
+                return ElementTraversal.STOP;
+            }
+            return ElementTraversal.CONTINUE;
+        }
+
+        @Override
+        public void beforeChild(IElement parent, int index, IElement child)
+        {
+            if (index < 0 || error != null)
+                return;
+            IElement.Param param = parent.getParams().get(index);
+            try
+            {
+                if (index > 0)
+                    out.append(',');
+                out.append('{');
+                if (metadata)
+                {
+                    string("displayName", param.displayName);
+                    field("hint", param.hint);
+                    field("type", param.type);
+                }
+                else if (parent.getType() == ElementType.ELEMENT_TYPE_LET)
+                {
+                    string("displayName", param.displayName);
+                    field("type", param.type);
+                }
+                else
+                {
+                    string("type", param.type);
+                }
+                if (child != null)
+                    out.append(",\"value\":");
+            }
+            catch (IOException ex)
+            {
+                error = ex;
+            }
+        }
+
+        @Override
+        public void afterChild(IElement parent, int index, IElement child)
+        {
+            if (error != null)
+                return;
+            try
+            {
+                out.append(index < 0 ? ",\"params\":[" : "}");
+            }
+            catch (IOException ex)
+            {
+                error = ex;
+            }
+        }
+
+        @Override
+        public boolean leave(IElement e)
+        {
+            if (error != null)
+                return false;
+            try
+            {
+                out.append("]}");
+            }
+            catch (IOException ex)
+            {
+                error = ex;
+                return false;
+            }
+            return true;
+        }
+    }
+
+    //写入 UTF-8 编码的 JSON, out 不会被关闭
+    public static void write(IElement e, OutputStream out, boolean metadata) throws IOException
+    {
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        new ElementJsonWriter(w, metadata).write(e);
+        w.flush();
+    }
+
+    public static String toJson(IElement e, boolean metadata)
+    {
+        StringBuilder sb = new StringBuilder(256);
+        try
+        {
+            new ElementJsonWriter(sb, metadata).write(e);
+        }
+        catch (IOException ex)
+        {
+            //StringBuilder 不会抛出
+            throw new IllegalStateException(ex);
+        }
+        return sb.toString();
+    }
+
+    //调用对象为类名时输出字符串, 为表达式时由遍历输出
+    private void leading(IElement e) throws IOException
+    {
+        Object l = null;
+        if (e instanceof FunctionElement)
+            l = ((FunctionElement) e).getLeading();
+        else if (e instanceof VariableElement)
+            l = ((VariableElement) e).getLeading();
+        if (l != null)
+            field("leading", l.toString());
+    }
+
+    private void field(String key, String value) throws IOException
+    {
+        out.append(',');
+        string(key, value);
+    }
+
+    private void string(String key, String value) throws IOException
+    {
+        out.append('"').append(key).append("\":");
+        if (value == null)
+        {
+            out.append("null");
+            return;
+        }
+
+        out.append('"');
+        int from = 0;
+        for (int i = 0; i < value.length(); i++)
+        {
+            char ch = value.charAt(i);
+            String escape = escape(ch);
+            if (escape == null)
+                continue;
+            out.append(value, from, i).append(escape);
+            from = i + 1;
+        }
+        out.append(value, from, value.length()).append('"');
+    }
+
+    //需要转义的字符返回转义序列, 否则返回 null
+    private static String escape(char ch)
+    {
+        switch (ch)
+        {
+            case '"': return "\\\"";
+            case '\\': return "\\\\";
+            case '\b': return "\\b";
+            case '\f': return "\\f";
+            case '\n': return "\\n";
+            case '\r': return "\\r";
+            case '\t': return "\\t";
+        }
+        if (ch < 0x20)
+            return String.format("\\u%04x", (int) ch);
+        return null;
+    }
+}
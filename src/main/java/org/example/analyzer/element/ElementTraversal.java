@@ -0,0 +1,111 @@
+package org.example.analyzer.element;
+
+import java.util.Arrays;
+
+/*
+*   元素树的非递归遍历: 用显式的栈代替递归, 可遍历的深度只受堆内存限制
+*   子元素依次为调用对象(序号 -1, 仅当调用对象为表达式且 receivers 为 true 时)及各参数的值(序号为参数下标)
+*   绑定引用的值属于所在的 let, 不是绑定引用的子元素; 值为 null 的参数同样通知 beforeChild/afterChild, 但不进入
+* */
+public class ElementTraversal
+{
+    public static final int CONTINUE = 0;
+    public static final int SKIP_CHILDREN = 1;      //不进入子元素, 仍会调用 leave
+    public static final int STOP = 2;               //终止遍历
+
+    private static final int DONE = Integer.MAX_VALUE;
+
+    public static abstract class Visitor
+    {
+        //进入元素, 返回 CONTINUE、SKIP_CHILDREN 或 STOP
+        public int enter(IElement e)
+        {
+            return CONTINUE;
+        }
+
+        public void beforeChild(IElement parent, int index, IElement child)
+        {
+        }
+
+        public void afterChild(IElement parent, int index, IElement child)
+        {
+        }
+
+        //离开元素, 返回 false 时终止遍历
+        public boolean leave(IElement e)
+        {
+            return true;
+        }
+    }
+
+    //深度优先遍历 root, 被 visitor 终止时返回 false
+    public static boolean walk(IElement root, boolean receivers, Visitor visitor)
+    {
+        IElement[] nodes = new IElement[16];
+        int[] next = new int[16];       //每层下一个要访问的子元素序号
+        int top = 0;
+
+        int r = visitor.enter(root);
+        if (r == STOP)
+            return false;
+        nodes[0] = root;
+        next[0] = r == SKIP_CHILDREN ? DONE : first(root, receivers);
+
+        while (top >= 0)
+        {
+            IElement e = nodes[top];
+            int i = next[top];
+            if (i >= e.params.size())
+            {
+                nodes[top--] = null;
+                if (!visitor.leave(e))
+                    return false;
+                if (top >= 0)
+                    visitor.afterChild(nodes[top], next[top] - 1, e);
+                continue;
+            }
+
+            next[top] = i + 1;
+            IElement c = i < 0 ? receiver(e) : e.params.get(i).value;
+            visitor.beforeChild(e, i, c);
+            if (c == null)
+            {
+                visitor.afterChild(e, i, null);
+                continue;
+            }
+
+            r = visitor.enter(c);
+            if (r == STOP)
+                return false;
+            if (++top == nodes.length)
+            {
+                nodes = Arrays.copyOf(nodes, top << 1);
+                next = Arrays.copyOf(next, top << 1);
+            }
+            nodes[top] = c;
+            next[top] = r == SKIP_CHILDREN ? DONE : first(c, receivers);
+        }
+        return true;
+    }
+
+    //调用对象为表达式时返回该表达式, 否则为 null
+    public static IElement receiver(IElement e)
+    {
+        if (e instanceof FunctionElement)
+        {
+            FunctionElement.Leading l = ((FunctionElement) e).getLeading();
+            return l instanceof FunctionElement.ExpressionLeading ? ((FunctionElement.ExpressionLeading) l).getElement() : null;
+        }
+        if (e instanceof VariableElement)
+        {
+            VariableElement.Leading l = ((VariableElement) e).getLeading();
+            return l instanceof VariableElement.ExpressionLeading ? ((VariableElement.ExpressionLeading) l).getElement() : null;
+        }
+        return null;
+    }
+
+    private static int first(IElement e, boolean receivers)
+    {
+        return receivers && receiver(e) != null ? -1 : 0;
+    }
+}
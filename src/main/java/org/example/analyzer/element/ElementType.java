@@ -7,4 +7,6 @@ public class ElementType
     public static final int ELEMENT_TYPE_BINARY_OPERATION = 3;
     public static final int ELEMENT_TYPE_FUNCTION = 4;
     public static final int ELEMENT_TYPE_VARIABLE = 5;
+    public static final int ELEMENT_TYPE_LET = 6;
+    public static final int ELEMENT_TYPE_BINDING = 7;
 }
@@ -0,0 +1,70 @@
+package org.example.analyzer.element;
+
+/*
+*   函数的求值开销, 随函数定义注册, 用于静态估计公式的开销(以一个普通节点的开销为 1)
+*   base: 每次调用的固定开销; 访问数据层的函数按 fanOut 倍计算
+*   fanOut: 每次调用访问数据层的次数, 如按容器查询时容器内的测量点数; 0 表示不访问数据层
+*   perSample: 每个样本的开销; 数据函数为查询出的样本, 成员函数为调用对象中的样本
+*   startParam/endParam/groupingParam: 时间窗口的开始时间、结束时间及分组规则的参数下标, -1 表示没有
+* */
+public class FunctionCost
+{
+    public static final FunctionCost DEFAULT = new FunctionCost(1);
+
+    private final double base;
+    private final int fanOut;
+    private final double perSample;
+    private final int startParam;
+    private final int endParam;
+    private final int groupingParam;
+
+    public FunctionCost(double base)
+    {
+        this(base, 0, 0);
+    }
+
+    public FunctionCost(double base, int fanOut, double perSample)
+    {
+        this(base, fanOut, perSample, -1, -1, -1);
+    }
+
+    public FunctionCost(double base, int fanOut, double perSample, int startParam, int endParam, int groupingParam)
+    {
+        this.base = base;
+        this.fanOut = fanOut;
+        this.perSample = perSample;
+        this.startParam = startParam;
+        this.endParam = endParam;
+        this.groupingParam = groupingParam;
+    }
+
+    public double getBase()
+    {
+        return base;
+    }
+
+    public int getFanOut()
+    {
+        return fanOut;
+    }
+
+    public double getPerSample()
+    {
+        return perSample;
+    }
+
+    public int getStartParam()
+    {
+        return startParam;
+    }
+
+    public int getEndParam()
+    {
+        return endParam;
+    }
+
+    public int getGroupingParam()
+    {
+        return groupingParam;
+    }
+}
@@ -9,6 +9,7 @@ public class FunctionElement extends IElement
     String className;
     String funcName;
     Leading leading = null;
+    FunctionCost cost = null;       //仅函数定义设置, 见 FunctionElementFactory.getCost
 
     public interface Leading
     {
@@ -39,6 +40,11 @@ public class FunctionElement extends IElement
             this.e = e;
         }
 
+        public IElement getElement()
+        {
+            return e;
+        }
+
         public String toString()
         {
             return e.toExpressionString();
@@ -72,6 +78,11 @@ public class FunctionElement extends IElement
         this.leading = leading;
     }
 
+    public Leading getLeading()
+    {
+        return leading;
+    }
+
     public String getClassName()
     {
         return className;
@@ -89,7 +100,7 @@ public class FunctionElement extends IElement
     }
 
     @Override
-    public Pair<Boolean, String> checkParams(ClassDictionary classDictionary)
+    public Pair<Boolean, String> checkNode(ClassDictionary classDictionary)
     {
         boolean success = true;
         String errString = "";
@@ -105,15 +116,6 @@ public class FunctionElement extends IElement
                 break;
             }
 
-            //重新递归检查params
-            Pair<Boolean, String> err = param.value.checkParams(classDictionary);
-            if (!err.getKey())
-            {
-                errString = err.getValue();
-                success = false;
-                break;
-            }
-
             //获取当前参数需要接收的类型
             Class t = classDictionary.lookup(param.type);
             if (t == null)
@@ -135,19 +137,29 @@ public class FunctionElement extends IElement
         return new Pair<>(success, errString);
     }
 
-    public String toExpressionString()
+    //调用对象为表达式时先输出调用对象, 在其之后输出函数名
+    @Override
+    void expressionEnter(StringBuilder out)
     {
-        String ret = "";
+        if (leading instanceof ExpressionLeading)
+            return;
         if (leading != null)
-            ret += leading.toString() + ".";
-        ret += funcName + "(";
-        for (int i = 0; i < params.size(); i++)
-        {
-            ret += params.get(i).value.toExpressionString();
-            if (i < params.size() - 1)
-                ret += ", ";
-        }
-        ret += ")";
-        return ret;
+            out.append(leading.toString()).append('.');
+        out.append(funcName).append('(');
+    }
+
+    @Override
+    void expressionAfter(StringBuilder out, int index, IElement child)
+    {
+        if (index < 0)
+            out.append('.').append(funcName).append('(');
+        else if (index < params.size() - 1)
+            out.append(", ");
+    }
+
+    @Override
+    void expressionLeave(StringBuilder out)
+    {
+        out.append(')');
     }
 }
@@ -1,27 +1,67 @@
 package org.example.analyzer.element;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Map;
 
+/*
+*   函数定义保存在 Registry 的当前快照中, 所有实例共用
+*   每次注册、注销发布一个新的快照; 一批修改应通过 Registry.Builder 一次发布
+*   以某个快照构造的实例只按该快照查找定义, 注册、注销仍修改当前快照
+* */
 public class FunctionElementFactory
 {
-    private static Map<String, FunctionElement> definitions = new HashMap<>();
+    private final Registry registry;       //查找定义的快照, 为 null 时使用当前快照
 
     public FunctionElementFactory()
     {
+        this(null);
+    }
 
+    public FunctionElementFactory(Registry registry)
+    {
+        this.registry = registry;
+    }
+
+    private Registry registry()
+    {
+        return registry != null ? registry : Registry.current();
     }
 
     public void registerFunctionElement(String displayName, String className, String funcName, String hint, ArrayList<IElement.Param> params, Class resultType)
+    {
+        registerFunctionElement(displayName, className, funcName, hint, params, resultType, null);
+    }
+
+    //cost 为求值开销, 为 null 时使用 FunctionCost.DEFAULT
+    public void registerFunctionElement(String displayName, String className, String funcName, String hint, ArrayList<IElement.Param> params, Class resultType,
+                                        FunctionCost cost)
     {
         FunctionElement e = new FunctionElement(displayName, className,funcName, hint, params, resultType);
-        definitions.put(e.name, e);
+        e.cost = cost;
+        Registry.putFunction(e);
+    }
+
+    public void unregisterFunctionElement(String className, String funcName)
+    {
+        Registry.removeFunction(FunctionElement.buildName(className, funcName));
+    }
+
+    //所有定义, key 为 name, 只读
+    static Map<String, FunctionElement> definitions()
+    {
+        return Registry.current().functions;
+    }
+
+    //name 为 类名.函数名, 未注册或未声明开销时返回 FunctionCost.DEFAULT
+    public FunctionCost getCost(String name)
+    {
+        FunctionElement e = registry().functions.get(name);
+        return e == null || e.cost == null ? FunctionCost.DEFAULT : e.cost;
     }
 
     public FunctionElement create(String className, String funcName)
     {
-        FunctionElement e = definitions.get(FunctionElement.buildName(className ,funcName));
+        FunctionElement e = registry().functions.get(FunctionElement.buildName(className ,funcName));
         if (e == null)
             return null;
 
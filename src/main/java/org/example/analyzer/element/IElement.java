@@ -1,8 +1,9 @@
 package org.example.analyzer.element;
 
-import com.alibaba.fastjson.JSONArray;
-import com.alibaba.fastjson.JSONObject;
 import javafx.util.Pair;
+import org.example.analyzer.Priority;
+
+import java.io.IOException;
 import java.util.ArrayList;
 
 public abstract class IElement
@@ -35,6 +36,7 @@ public abstract class IElement
     protected String hint = "";                   // 提示, 如 Math.add 提示为 将元素1的值与元素2的值相加
     protected int line = 0;
     protected int column = 0;
+    protected int priority = Priority.NONE;       //name 作为操作符的优先级, 构造时计算, 输出表达式时决定是否加括号
 
     protected ArrayList<Param> params = new ArrayList<>();
 
@@ -105,47 +107,102 @@ public abstract class IElement
         return true;
     }
 
-    //检查参数是否合法, 返回是否合法及错误提示
-    public abstract Pair<Boolean, String> checkParams(ClassDictionary classDictionary);
+    //检查整个元素树的参数是否合法, 返回是否合法及错误提示; 子元素先于父元素检查, 由 ElementTraversal 遍历, 不受嵌套深度限制
+    public Pair<Boolean, String> checkParams(ClassDictionary classDictionary)
+    {
+        CheckVisitor v = new CheckVisitor(classDictionary);
+        ElementTraversal.walk(this, false, v);
+        return v.result;
+    }
 
-    //转成表达式
-    public abstract String toExpressionString();
+    //只检查本元素的参数是否合法并确定结果类型, 子元素应已检查过(如语法分析中规约时)
+    public abstract Pair<Boolean, String> checkNode(ClassDictionary classDictionary);
 
-    public String toJson()
+    private static class CheckVisitor extends ElementTraversal.Visitor
     {
-        JSONObject root = new JSONObject();
+        private final ClassDictionary classDictionary;
+        private Pair<Boolean, String> result = new Pair<>(true, "");
 
-        toJson(this, root);
+        CheckVisitor(ClassDictionary classDictionary)
+        {
+            this.classDictionary = classDictionary;
+        }
 
-        return root.toJSONString();
+        @Override
+        public boolean leave(IElement e)
+        {
+            result = e.checkNode(classDictionary);
+            return result.getKey();
+        }
     }
 
-    private void toJson(IElement e, JSONObject dst)
+    //转成表达式
+    public String toExpressionString()
     {
-        dst.put("type", e.getType());
-        dst.put("name", e.getName());
-        dst.put("displayName", e.getDisplayName());
-        dst.put("hint", e.getHint());
-        dst.put("resultType", e.getResultType().getName());
+        StringBuilder sb = new StringBuilder();
+        writeExpression(sb);
+        return sb.toString();
+    }
 
-        JSONArray dstParams = new JSONArray();
-        ArrayList<IElement.Param> params = e.getParams();
-        for (IElement.Param param : params)
+    //将表达式追加到 out, 整个树共用一个 StringBuilder, 由 ElementTraversal 遍历, 不受嵌套深度限制
+    public void writeExpression(final StringBuilder out)
+    {
+        ElementTraversal.walk(this, true, new ElementTraversal.Visitor()
         {
-            JSONObject dstParam = new JSONObject();
-            dstParam.put("displayName", param.displayName);
-            dstParam.put("hint", param.hint);
-            dstParam.put("type", param.type);
-            if (param.value != null)
+            @Override
+            public int enter(IElement e)
             {
-                JSONObject dstParamValue = new JSONObject();
-                toJson(param.value, dstParamValue);
-                dstParam.put("value", dstParamValue);
+                e.expressionEnter(out);
+                return ElementTraversal.CONTINUE;
+            }
+
+            @Override
+            public void beforeChild(IElement parent, int index, IElement child)
+            {
+                parent.expressionBefore(out, index, child);
             }
-            dstParams.add(dstParam);
-        }
 
-        dst.put("params", dstParams);
+            @Override
+            public void afterChild(IElement parent, int index, IElement child)
+            {
+                parent.expressionAfter(out, index, child);
+            }
+
+            @Override
+            public boolean leave(IElement e)
+            {
+                e.expressionLeave(out);
+                return true;
+            }
+        });
+    }
+
+    //输出表达式的各个阶段: 进入元素、输出第 index 个子元素(-1 为调用对象)之前及之后、离开元素
+    void expressionEnter(StringBuilder out)
+    {
+    }
+
+    void expressionBefore(StringBuilder out, int index, IElement child)
+    {
+    }
+
+    void expressionAfter(StringBuilder out, int index, IElement child)
+    {
     }
-}
 
+    void expressionLeave(StringBuilder out)
+    {
+    }
+
+    //由 ElementJsonWriter 流式输出, 不受嵌套深度限制
+    public String toJson()
+    {
+        return ElementJsonWriter.toJson(this, true);
+    }
+
+    //流式输出 JSON, 结构与 toJson 相同, metadata 为 false 时省略 displayName 与 hint
+    public void writeJson(Appendable out, boolean metadata) throws IOException
+    {
+        new ElementJsonWriter(out, metadata).write(this);
+    }
+}
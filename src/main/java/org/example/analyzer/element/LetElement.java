@@ -0,0 +1,76 @@
+package org.example.analyzer.element;
+
+import javafx.util.Pair;
+
+import java.util.List;
+
+/*
+*   let 表达式: let 名称1 = 表达式1; let 名称2 = 表达式2; 表达式
+*   前面的参数依次为各个绑定(displayName 为绑定名称), 最后一个参数为结果表达式
+*   后面的绑定及结果表达式可以引用前面的绑定, 结果类型为结果表达式的类型
+* */
+public class LetElement extends IElement
+{
+    public LetElement(List<String> names, List<IElement> values, IElement body)
+    {
+        this.displayName = "let";
+        this.name = "let";
+        this.hint = "命名中间结果, 每次求值中每个绑定最多求值一次";
+        for (int i = 0; i < names.size(); i++)
+            this.params.add(new IElement.Param(names.get(i), "绑定 " + names.get(i), "", values.get(i)));
+        this.params.add(new IElement.Param("表达式", "表达式", "", body));
+        this.resultType = body.getResultType();
+    }
+
+    public int getBindingCount()
+    {
+        return params.size() - 1;
+    }
+
+    public String getBindingName(int slot)
+    {
+        return params.get(slot).displayName;
+    }
+
+    public IElement getBindingValue(int slot)
+    {
+        return params.get(slot).value;
+    }
+
+    public IElement getBody()
+    {
+        return params.get(params.size() - 1).value;
+    }
+
+    @Override
+    public int getType()
+    {
+        return ElementType.ELEMENT_TYPE_LET;
+    }
+
+    @Override
+    public Pair<Boolean, String> checkNode(ClassDictionary classDictionary)
+    {
+        for (IElement.Param p : params)
+        {
+            if (p.value == null)
+                return new Pair<>(false, "[" + line + ":" + column + "]: " + p.displayName + " 不能为空");
+        }
+        this.resultType = getBody().getResultType();
+        return new Pair<>(true, "");
+    }
+
+    @Override
+    void expressionBefore(StringBuilder out, int index, IElement child)
+    {
+        if (index < getBindingCount())
+            out.append("let ").append(getBindingName(index)).append(" = ");
+    }
+
+    @Override
+    void expressionAfter(StringBuilder out, int index, IElement child)
+    {
+        if (index < getBindingCount())
+            out.append("; ");
+    }
+}
@@ -4,6 +4,8 @@ import javafx.util.Pair;
 
 public class LiteralConstantElement extends IElement
 {
+    private Object value = null;
+
     /*
     字面值的 name 为值本身
     * */
@@ -15,6 +17,36 @@ public class LiteralConstantElement extends IElement
         this.resultType = resultType;
     }
 
+    /*
+    * 字面值对应的值, 数字为 Double, 字符串为 String, 首次调用时解析
+    * 数字无法解析时返回 null
+    * */
+    public Object getValue()
+    {
+        if (value == null && resultType != null)
+        {
+            if (Class.TYPE_NUMBER.equals(resultType.getName()))
+            {
+                try
+                {
+                    if (name.startsWith("0x") || name.startsWith("0X"))
+                        value = (double) Long.parseLong(name.substring(2), 16);
+                    else
+                        value = Double.parseDouble(name);
+                }
+                catch (NumberFormatException e)
+                {
+                    return null;
+                }
+            }
+            else if (Class.TYPE_STRING.equals(resultType.getName()))
+            {
+                value = name.replace("\\'", "'").replace("\\\"", "\"");
+            }
+        }
+        return value;
+    }
+
     @Override
     public int getType()
     {
@@ -22,13 +54,14 @@ public class LiteralConstantElement extends IElement
     }
 
     @Override
-    public Pair<Boolean, String> checkParams(ClassDictionary classDictionary)
+    public Pair<Boolean, String> checkNode(ClassDictionary classDictionary)
     {
         return new Pair<>(true, "");
     }
 
-    public String toExpressionString()
+    @Override
+    void expressionEnter(StringBuilder out)
     {
-        return name;
+        out.append(name);
     }
 }
@@ -0,0 +1,270 @@
+package org.example.analyzer.element;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/*
+*   函数、变量定义及类型接收规则的不可变快照, 当前快照由一个 volatile 引用发布
+*   读取时取当前快照, 不加锁; 修改在当前快照的副本(Builder)上进行, 完成后一次替换
+*   FunctionElementFactory/VariableElementFactory 的注册及 Class 的接收规则修改各自发布一次;
+*   热更新时在一个 Builder 上应用全部修改后只发布一次, 并发编译的线程不会读到修改了一半的注册表
+*   接收规则按 Class 对象(而不是类型名)保存, 不同 ClassDictionary 中的同名类型互不影响
+*   构造 Class 时的接收规则保存在 Class 中, 这里只保存构造之后修改过的类型的全部规则;
+*   对 Class 只持有弱引用, 不再使用的 Class(如丢弃的 ClassDictionary 中的类型)可以被回收, 其规则在之后的修改中清除
+* */
+public final class Registry
+{
+    private static volatile Registry current = new Registry(new HashMap<String, FunctionElement>(), new HashMap<String, VariableElement>(),
+            new HashMap<ClassRef, Map<String, Map<String, String>>>());
+
+    final Map<String, FunctionElement> functions;       //key 为 name
+    final Map<String, VariableElement> variables;       //key 为 name
+    /*
+    * 各类型在某个操作符下接受的另一个类型及接受后的返回类型
+    * 一个类型在某个操作符下可接受的另一个类型可以是多个，比如 "1" + 2  和 "1" + "2" 在某些语言下都是成立的
+    * 当操作符为空时, 表示是否可以进行直接(隐式)转换; 当操作符是一元运算符, 那么其它类型则为空
+    * 只包含构造之后修改过的类型, 其它类型使用 Class.initial
+    * */
+    private final Map<ClassRef, Map<String /* 操作符 */, Map<String /* 另一个类型 */, String /* 返回类型 */>>> accepts;
+
+    private Registry(Map<String, FunctionElement> functions, Map<String, VariableElement> variables, Map<ClassRef, Map<String, Map<String, String>>> accepts)
+    {
+        this.functions = Collections.unmodifiableMap(functions);
+        this.variables = Collections.unmodifiableMap(variables);
+        this.accepts = accepts;
+    }
+
+    public static Registry current()
+    {
+        return current;
+    }
+
+    //在当前快照的副本上开始一次修改, 修改完成后调用 commit 发布
+    public static Builder edit()
+    {
+        return new Builder(current);
+    }
+
+    //发布 builder 中的修改; builder 开始之后已有其它修改发布时不发布并返回 false, 调用者应重新开始
+    public static synchronized boolean commit(Builder builder)
+    {
+        if (builder.base != current)
+            return false;
+        current = builder.build();
+        return true;
+    }
+
+    //c 在 operation 下接受 otherType 时返回结果类型名, 否则返回 null
+    String accept(Class c, String operation, String otherType)
+    {
+        Map<String, String> m = accepts(c).get(operation);
+        return m == null ? null : m.get(otherType);
+    }
+
+    //c 的全部接收规则, 只读
+    Map<String, Map<String, String>> accepts(Class c)
+    {
+        Map<String, Map<String, String>> rules = accepts.isEmpty() ? null : accepts.get(new ClassRef(c));
+        return rules == null ? c.initial : rules;
+    }
+
+    /* 单个修改, 与 commit 互斥 */
+    static synchronized void putFunction(FunctionElement f)
+    {
+        Builder b = edit();
+        b.functions.put(f.name, f);
+        current = b.build();
+    }
+
+    static synchronized void removeFunction(String name)
+    {
+        Builder b = edit();
+        b.functions.remove(name);
+        current = b.build();
+    }
+
+    static synchronized void putVariable(VariableElement v)
+    {
+        Builder b = edit();
+        b.variables.put(v.name, v);
+        current = b.build();
+    }
+
+    static synchronized void removeVariable(String name)
+    {
+        Builder b = edit();
+        b.variables.remove(name);
+        current = b.build();
+    }
+
+    static synchronized void addAccepts(Class c, List<Class.Accept> list)
+    {
+        Builder b = edit();
+        for (Class.Accept a : list)
+            b.addAccept(c, a.operation, a.otherType, a.resultType);
+        current = b.build();
+    }
+
+    static synchronized void removeAccept(Class c, String operation, String otherType)
+    {
+        Builder b = edit();
+        b.removeAccept(c, operation, otherType);
+        current = b.build();
+    }
+
+    /*
+    *   接收规则的键, 弱引用 Class, 按 Class 对象比较
+    *   Class 被回收后该键不再与任何 Class 相等, 由下一次修改清除
+    * */
+    private static final class ClassRef extends WeakReference<Class>
+    {
+        private final int hash;
+
+        ClassRef(Class c)
+        {
+            super(c);
+            this.hash = System.identityHashCode(c);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof ClassRef))
+                return false;
+            Class c = get();
+            return c != null && c == ((ClassRef) o).get();
+        }
+    }
+
+    /*
+    *   注册表的可修改副本, 只在创建它的线程中使用
+    *   接收规则在第一次修改某个类型时才复制该类型的规则, 没有修改接收规则时与原快照共用
+    * */
+    public static class Builder
+    {
+        private final Registry base;
+        final HashMap<String, FunctionElement> functions;
+        final HashMap<String, VariableElement> variables;
+        private final IdentityHashMap<Class, Map<String, Map<String, String>>> copied = new IdentityHashMap<>();     //修改过的类型的规则
+        private Registry built = null;
+
+        private Builder(Registry base)
+        {
+            this.base = base;
+            this.functions = new HashMap<>(base.functions);
+            this.variables = new HashMap<>(base.variables);
+        }
+
+        //cost 为求值开销, 为 null 时使用 FunctionCost.DEFAULT
+        public void registerFunction(String displayName, String className, String funcName, String hint, ArrayList<IElement.Param> params, Class resultType,
+                                     FunctionCost cost)
+        {
+            FunctionElement e = new FunctionElement(displayName, className, funcName, hint, params, resultType);
+            e.cost = cost;
+            functions.put(e.name, e);
+            built = null;
+        }
+
+        public void unregisterFunction(String className, String funcName)
+        {
+            functions.remove(FunctionElement.buildName(className, funcName));
+            built = null;
+        }
+
+        //name 为 类名.函数名, 未注册或未声明开销时返回 FunctionCost.DEFAULT
+        public FunctionCost getCost(String name)
+        {
+            FunctionElement e = functions.get(name);
+            return e == null || e.cost == null ? FunctionCost.DEFAULT : e.cost;
+        }
+
+        public void registerVariable(String displayName, String className, String varName, String hint, Class resultType)
+        {
+            VariableElement e = new VariableElement(displayName, className, varName, hint, resultType);
+            variables.put(e.name, e);
+            built = null;
+        }
+
+        public void unregisterVariable(String className, String varName)
+        {
+            variables.remove(VariableElement.buildName(className, varName));
+            built = null;
+        }
+
+        public void addAccept(Class c, String operation, String otherType, String resultType)
+        {
+            Map<String, Map<String, String>> rules = rules(c);
+            Map<String, String> m = rules.get(operation);
+            if (m == null)
+            {
+                m = new HashMap<>();
+                rules.put(operation, m);
+            }
+            m.put(otherType, resultType);
+        }
+
+        public void removeAccept(Class c, String operation, String otherType)
+        {
+            Map<String, String> m = rules(c).get(operation);
+            if (m != null)
+                m.remove(otherType);
+        }
+
+        void clearAccepts(Class c)
+        {
+            rules(c).clear();
+        }
+
+        void clearDefinitions()
+        {
+            functions.clear();
+            variables.clear();
+            built = null;
+        }
+
+        //c 的接收规则的可修改副本
+        private Map<String, Map<String, String>> rules(Class c)
+        {
+            built = null;
+            Map<String, Map<String, String>> rules = copied.get(c);
+            if (rules == null)
+            {
+                rules = new HashMap<>();
+                for (Map.Entry<String, Map<String, String>> op : base.accepts(c).entrySet())
+                    rules.put(op.getKey(), new HashMap<>(op.getValue()));
+                copied.put(c, rules);
+            }
+            return rules;
+        }
+
+        //修改后的快照, 尚未发布
+        Registry build()
+        {
+            if (built != null)
+                return built;
+            Map<ClassRef, Map<String, Map<String, String>>> a = base.accepts;
+            if (!copied.isEmpty())
+            {
+                //复制时丢弃已回收的类型
+                a = new HashMap<>();
+                for (Map.Entry<ClassRef, Map<String, Map<String, String>>> entry : base.accepts.entrySet())
+                {
+                    if (entry.getKey().get() != null)
+                        a.put(entry.getKey(), entry.getValue());
+                }
+                for (Map.Entry<Class, Map<String, Map<String, String>>> entry : copied.entrySet())
+                    a.put(new ClassRef(entry.getKey()), Class.freeze(entry.getValue()));
+            }
+            built = new Registry(new HashMap<>(functions), new HashMap<>(variables), a);
+            return built;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.analyzer.element;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/*
+*   注册表版本: 由函数、变量定义及类型的接收规则计算出的 64 位指纹
+*   定义的内容(名称、参数类型、结果类型、接收规则)不变时指纹不变, 与注册顺序无关
+*   持久化的元素树记录生成时的指纹, 读取时指纹不同说明定义已变化, 需要重新编译
+* */
+public class RegistryVersion
+{
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    public static long of(FunctionElementFactory funcFactory, VariableElementFactory varFactory, ClassDictionary classDictionary)
+    {
+        return of(Registry.current(), classDictionary.types().values());
+    }
+
+    //registry 快照中的定义及 classDictionary 的接收规则的指纹, 与按该快照编译的元素树一致
+    public static long of(Registry registry, ClassDictionary classDictionary)
+    {
+        return of(registry, classDictionary.types().values());
+    }
+
+    //registry 中的定义及 types 的接收规则的指纹, 用于在发布之前校验尚未发布的快照
+    static long of(Registry registry, Collection<Class> types)
+    {
+        ArrayList<String> entries = new ArrayList<>();
+        for (FunctionElement f : registry.functions.values())
+        {
+            StringBuilder sb = new StringBuilder("F ").append(f.name).append('(');
+            for (IElement.Param p : f.params)
+                sb.append(p.type).append(',');
+            sb.append(')').append(typeName(f.resultType));
+            entries.add(sb.toString());
+        }
+        for (VariableElement v : registry.variables.values())
+            entries.add("V " + v.name + " " + typeName(v.resultType));
+        for (Class c : types)
+        {
+            entries.add("C " + c.name);
+            for (Map.Entry<String, Map<String, String>> op : registry.accepts(c).entrySet())
+            {
+                for (Map.Entry<String, String> a : op.getValue().entrySet())
+                    entries.add("A " + c.name + " " + op.getKey() + " " + a.getKey() + " " + a.getValue());
+            }
+        }
+        Collections.sort(entries);
+
+        long h = FNV_OFFSET;
+        for (String entry : entries)
+        {
+            for (int i = 0; i < entry.length(); i++)
+            {
+                h ^= entry.charAt(i);
+                h *= FNV_PRIME;
+            }
+            h ^= '\n';
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    public static String toString(long version)
+    {
+        return String.format("%016x", version);
+    }
+
+    private static String typeName(Class c)
+    {
+        return c == null ? "" : c.name;
+    }
+}
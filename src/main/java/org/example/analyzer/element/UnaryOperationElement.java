@@ -1,6 +1,7 @@
 package org.example.analyzer.element;
 
 import javafx.util.Pair;
+import org.example.analyzer.Priority;
 
 public class UnaryOperationElement extends IElement
 {
@@ -13,6 +14,7 @@ public class UnaryOperationElement extends IElement
         this.displayName = displayName;
         this.name = name;
         this.hint = hint;
+        this.priority = Priority.of(name);
         this.params.add(new IElement.Param("值1", "值1", "", null));
     }
 
@@ -23,7 +25,7 @@ public class UnaryOperationElement extends IElement
     }
 
     @Override
-    public Pair<Boolean, String> checkParams(ClassDictionary classDictionary)
+    public Pair<Boolean, String> checkNode(ClassDictionary classDictionary)
     {
         boolean success = false;
         String errString = "";
@@ -36,16 +38,9 @@ public class UnaryOperationElement extends IElement
                 break;
             }
 
-            //重新递归检查params
-            Pair<Boolean, String> err = params.get(0).value.checkParams(classDictionary);
-            if (!err.getKey())
-            {
-                errString = err.getValue();
-                break;
-            }
-
             Class t = params.get(0).value.resultType;
-            if (t == null || !(err = t.isAccept(name, "")).getKey())
+            Pair<Boolean, String> err = t == null ? null : classDictionary.isAccept(t, name, "");
+            if (err == null || !err.getKey())
             {
                 errString = "[" + line + ":" + column + "]: 不能接受类型 '" + params.get(0).value.resultType.name + "' 作用于操作符 '" + name + "'";
                 break;
@@ -59,21 +54,29 @@ public class UnaryOperationElement extends IElement
         return new Pair<>(success, errString);
     }
 
-    public String toExpressionString()
+    @Override
+    void expressionEnter(StringBuilder out)
     {
-        String ret = name;
-        //如果参数值不是一个函数且参数值有子参数, 需要补上()
-        boolean l = false;
-        if (! (params.get(0).value instanceof FunctionElement) && !params.get(0).value.params.isEmpty())
-            l = true;
+        out.append(name);
+    }
 
-        if (l)
-            ret += "(" ;
-        ret += params.get(0).value.toExpressionString();
-        if (l)
-            ret += ")";
+    @Override
+    void expressionBefore(StringBuilder out, int index, IElement child)
+    {
+        if (needParentheses(child))
+            out.append('(');
+    }
 
-        return ret;
+    @Override
+    void expressionAfter(StringBuilder out, int index, IElement child)
+    {
+        if (needParentheses(child))
+            out.append(')');
     }
-}
 
+    //如果参数值不是一个函数且参数值有子参数, 需要补上()
+    private static boolean needParentheses(IElement v)
+    {
+        return !(v instanceof FunctionElement) && !v.params.isEmpty();
+    }
+}
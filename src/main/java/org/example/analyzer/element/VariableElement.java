@@ -1,6 +1,7 @@
 package org.example.analyzer.element;
 
 import javafx.util.Pair;
+import org.example.analyzer.Priority;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -47,6 +48,11 @@ public class VariableElement extends IElement
             this.e = e;
         }
 
+        public IElement getElement()
+        {
+            return e;
+        }
+
         public String toString()
         {
             return e.toExpressionString();
@@ -65,6 +71,7 @@ public class VariableElement extends IElement
         this.name = buildName(className ,varName);
         this.hint = hint;
         this.resultType = resultType;
+        this.priority = Priority.of(name);
     }
 
     static String buildName(String className, String funcName)
@@ -80,6 +87,11 @@ public class VariableElement extends IElement
         this.leading = leading;
     }
 
+    public Leading getLeading()
+    {
+        return leading;
+    }
+
     public String getClassName()
     {
         return className;
@@ -97,17 +109,28 @@ public class VariableElement extends IElement
     }
 
     @Override
-    public Pair<Boolean, String> checkParams(ClassDictionary classDictionary)
+    public Pair<Boolean, String> checkNode(ClassDictionary classDictionary)
     {
         return new Pair<>(true, "");
     }
 
-    public String toExpressionString()
+    //调用对象为表达式时由遍历先输出调用对象
+    @Override
+    void expressionEnter(StringBuilder out)
+    {
+        if (leading != null && !(leading instanceof ExpressionLeading))
+            out.append(leading.toString()).append('.');
+    }
+
+    @Override
+    void expressionAfter(StringBuilder out, int index, IElement child)
+    {
+        out.append('.');
+    }
+
+    @Override
+    void expressionLeave(StringBuilder out)
     {
-        String ret = "";
-        if (leading != null)
-            ret += leading.toString() + ".";
-        ret += varName;
-        return ret;
+        out.append(varName);
     }
 }
\ No newline at end of file
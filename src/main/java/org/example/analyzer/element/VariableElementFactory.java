@@ -1,27 +1,46 @@
 package org.example.analyzer.element;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Map;
 
+/*
+*   变量定义保存在 Registry 的当前快照中, 所有实例共用
+*   以某个快照构造的实例只按该快照查找定义, 注册、注销仍修改当前快照
+* */
 public class VariableElementFactory
 {
-    private static Map<String, VariableElement> definitions = new HashMap<>();
+    private final Registry registry;       //查找定义的快照, 为 null 时使用当前快照
 
     public VariableElementFactory()
     {
+        this(null);
+    }
 
+    public VariableElementFactory(Registry registry)
+    {
+        this.registry = registry;
     }
 
     public void registerVariableElement(String displayName, String className, String varName, String hint, Class resultType)
     {
         VariableElement e = new VariableElement(displayName, className,varName, hint, resultType);
-        definitions.put(e.name, e);
+        Registry.putVariable(e);
+    }
+
+    public void unregisterVariableElement(String className, String varName)
+    {
+        Registry.removeVariable(VariableElement.buildName(className, varName));
+    }
+
+    //所有定义, key 为 name, 只读
+    static Map<String, VariableElement> definitions()
+    {
+        return Registry.current().variables;
     }
 
     public VariableElement create(String className, String varName)
     {
-        VariableElement e = definitions.get(VariableElement.buildName(className ,varName));
+        VariableElement e = (registry != null ? registry : Registry.current()).variables.get(VariableElement.buildName(className ,varName));
         if (e == null)
             return null;
 
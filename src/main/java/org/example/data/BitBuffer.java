@@ -0,0 +1,83 @@
+package org.example.data;
+
+import java.util.Arrays;
+
+/*
+*   只追加的位缓冲区, 位按高位在前的顺序写入 long 数组
+*   读取不修改缓冲区状态, 由调用方维护读取位置, 因此多个游标可以同时读取
+* */
+class BitBuffer
+{
+    private long[] words;
+    private long bitSize = 0;
+
+    BitBuffer(int capacityInWords)
+    {
+        words = new long[Math.max(capacityInWords, 1)];
+    }
+
+    long bitSize()
+    {
+        return bitSize;
+    }
+
+    //已分配的字节数
+    long capacityInBytes()
+    {
+        return 8L * words.length;
+    }
+
+    void writeBit(boolean bit)
+    {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    //写入 value 的低 count 位, count 取值 1~64
+    void writeBits(long value, int count)
+    {
+        int index = (int)(bitSize >>> 6);
+        int offset = (int)(bitSize & 63);       //当前字内已使用的位数
+        if (index + 1 >= words.length)
+            words = Arrays.copyOf(words, words.length << 1);
+
+        if (count < 64)
+            value &= (1L << count) - 1;
+
+        int free = 64 - offset;
+        if (count <= free)
+        {
+            words[index] |= value << (free - count);
+        }
+        else
+        {
+            int rest = count - free;
+            words[index] |= value >>> rest;
+            words[index + 1] |= value << (64 - rest);
+        }
+        bitSize += count;
+    }
+
+    boolean readBit(long position)
+    {
+        return (words[(int)(position >>> 6)] & (1L << (63 - (position & 63)))) != 0;
+    }
+
+    //从 position 读取 count 位(1~64), 以无符号数返回
+    long readBits(long position, int count)
+    {
+        int index = (int)(position >>> 6);
+        int offset = (int)(position & 63);
+        int free = 64 - offset;
+        long value;
+        if (count <= free)
+        {
+            value = words[index] >>> (free - count);
+        }
+        else
+        {
+            int rest = count - free;
+            value = (words[index] << rest) | (words[index + 1] >>> (64 - rest));
+        }
+        return count == 64 ? value : value & ((1L << count) - 1);
+    }
+}
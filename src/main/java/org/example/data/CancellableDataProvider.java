@@ -0,0 +1,13 @@
+package org.example.data;
+
+import javafx.util.Pair;
+
+/*
+*   可以取消的数据访问: 查询过程中定期检查 cancellation, 被取消时尽快返回错误
+*   cancellation 为 null 时与 DataProvider 的同名函数相同
+* */
+public interface CancellableDataProvider extends DataProvider
+{
+    Pair<SamplePointList, String> getMeasuringValue(long pointId, long measureCode, long measureNo, String startTime, String endTime, int grouping,
+                                                    Cancellation cancellation);
+}
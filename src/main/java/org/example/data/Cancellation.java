@@ -0,0 +1,9 @@
+package org.example.data;
+
+/*
+*   查询的取消标志, 由调用方设置, 数据层在耗时的循环中定期检查
+* */
+public interface Cancellation
+{
+    boolean isCancelled();
+}
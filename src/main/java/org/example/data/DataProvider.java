@@ -0,0 +1,17 @@
+package org.example.data;
+
+import javafx.util.Pair;
+
+/*
+*   数据访问接口, 求值时由数据类函数(getQuantity 等)调用
+*   测量点id 为 0 (本测量点) 的情况由调用方换算成实际的测量点id后再传入
+*   返回值的 key 为结果, 出错时 key 为 null, value 为错误提示
+* */
+public interface DataProvider
+{
+    //查询 [startTime, endTime) 内的用量, endTime 为空表示不限结束时间
+    Pair<Double, String> getQuantity(long pointId, long measureCode, long measureNo, String startTime, String endTime);
+
+    //按分组规则查询 [startTime, endTime) 内的采集数据, 分组规则见 Grouping
+    Pair<SamplePointList, String> getMeasuringValue(long pointId, long measureCode, long measureNo, String startTime, String endTime, int grouping);
+}
@@ -0,0 +1,56 @@
+package org.example.data;
+
+import java.util.Calendar;
+
+/*
+*   getMeasuringValue 的分组规则
+*   分组规则不为 GROUP_ALL 时, 每个分组仅返回第一条数据
+* */
+public class Grouping
+{
+    public static final int GROUP_ALL = 0;
+    public static final int GROUP_HOUR = 1;
+    public static final int GROUP_DAY = 2;
+    public static final int GROUP_MONTH = 3;
+    public static final int GROUP_YEAR = 4;
+
+    public static final int GROUP_SIZE = 5;
+
+    public static boolean isValid(int grouping)
+    {
+        return grouping >= GROUP_ALL && grouping <= GROUP_YEAR;
+    }
+
+    //返回 time 所在分组的下一个分组的起始时间(本地时区)
+    public static long nextBucket(int grouping, long time)
+    {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(time);
+        c.set(Calendar.MILLISECOND, 0);
+        c.set(Calendar.SECOND, 0);
+        c.set(Calendar.MINUTE, 0);
+        switch (grouping)
+        {
+            case GROUP_HOUR:
+                c.add(Calendar.HOUR_OF_DAY, 1);
+                break;
+            case GROUP_DAY:
+                c.set(Calendar.HOUR_OF_DAY, 0);
+                c.add(Calendar.DAY_OF_MONTH, 1);
+                break;
+            case GROUP_MONTH:
+                c.set(Calendar.HOUR_OF_DAY, 0);
+                c.set(Calendar.DAY_OF_MONTH, 1);
+                c.add(Calendar.MONTH, 1);
+                break;
+            case GROUP_YEAR:
+                c.set(Calendar.HOUR_OF_DAY, 0);
+                c.set(Calendar.DAY_OF_YEAR, 1);
+                c.add(Calendar.YEAR, 1);
+                break;
+            default:
+                return Long.MAX_VALUE;
+        }
+        return c.getTimeInMillis();
+    }
+}
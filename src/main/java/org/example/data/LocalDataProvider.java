@@ -0,0 +1,104 @@
+package org.example.data;
+
+import javafx.util.Pair;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+*   本地数据层的参考实现, 样本保存在内存中, 按 SeriesKey 分序列存放
+* */
+public class LocalDataProvider implements CancellableDataProvider
+{
+    private ConcurrentMap<SeriesKey, SampleSeries> series = new ConcurrentHashMap<>();
+
+    public LocalDataProvider()
+    {
+
+    }
+
+    //追加一个样本, 样本时间早于该序列最后一个样本时返回 false
+    public boolean append(long pointId, long measureCode, long measureNo, long time, double value)
+    {
+        SeriesKey key = new SeriesKey(pointId, measureCode, measureNo);
+        SampleSeries s = series.get(key);
+        if (s == null)
+        {
+            SampleSeries created = new SampleSeries();
+            s = series.putIfAbsent(key, created);
+            if (s == null)
+                s = created;
+        }
+        return s.append(time, value);
+    }
+
+    public SampleSeries getSeries(long pointId, long measureCode, long measureNo)
+    {
+        return series.get(new SeriesKey(pointId, measureCode, measureNo));
+    }
+
+    @Override
+    public Pair<Double, String> getQuantity(long pointId, long measureCode, long measureNo, String startTime, String endTime)
+    {
+        Pair<Long, String> start = SampleTime.parse(startTime, Long.MIN_VALUE);
+        if (start.getKey() == null)
+            return new Pair<>(null, start.getValue());
+
+        Pair<Long, String> end = SampleTime.parse(endTime, Long.MAX_VALUE);
+        if (end.getKey() == null)
+            return new Pair<>(null, end.getValue());
+
+        SampleSeries s = getSeries(pointId, measureCode, measureNo);
+        if (s == null)
+            return new Pair<>(0.0, "");
+
+        return new Pair<>(s.sum(start.getKey(), end.getKey()), "");
+    }
+
+    @Override
+    public Pair<SamplePointList, String> getMeasuringValue(long pointId, long measureCode, long measureNo, String startTime, String endTime, int grouping)
+    {
+        return getMeasuringValue(pointId, measureCode, measureNo, startTime, endTime, grouping, null);
+    }
+
+    @Override
+    public Pair<SamplePointList, String> getMeasuringValue(long pointId, long measureCode, long measureNo, String startTime, String endTime, int grouping,
+                                                           Cancellation cancellation)
+    {
+        if (!Grouping.isValid(grouping))
+            return new Pair<>(null, "未知分组规则 " + grouping);
+
+        Pair<Long, String> start = SampleTime.parse(startTime, Long.MIN_VALUE);
+        if (start.getKey() == null)
+            return new Pair<>(null, start.getValue());
+
+        Pair<Long, String> end = SampleTime.parse(endTime, Long.MAX_VALUE);
+        if (end.getKey() == null)
+            return new Pair<>(null, end.getValue());
+
+        SampleSeries s = getSeries(pointId, measureCode, measureNo);
+        if (s == null)
+            return new Pair<>(new SamplePointList(1), "");
+
+        SamplePointList ret = s.select(start.getKey(), end.getKey(), grouping, cancellation);
+        if (ret == null)
+            return new Pair<>(null, "查询已取消");
+        return new Pair<>(ret, "");
+    }
+
+    //由原始样本重建所有序列的分组索引
+    public void rebuildRollups()
+    {
+        for (SampleSeries s : series.values())
+            s.rebuildRollup();
+    }
+
+    //所有序列在某个分组规则下的分组索引占用的内存(字节)
+    public long rollupMemoryUsage(int grouping)
+    {
+        long total = 0;
+        for (SampleSeries s : series.values())
+            total += s.rollupMemoryUsage(grouping);
+        return total;
+    }
+}
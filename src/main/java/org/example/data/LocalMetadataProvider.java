@@ -0,0 +1,75 @@
+package org.example.data;
+
+import javafx.util.Pair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+*   元数据层的参考实现, 元数据保存在内存中
+*   属性按 "id/属性名称" 存放, 容器中的测量项按 "测量点id/容器名称/测量项名称" 存放
+* */
+public class LocalMetadataProvider implements MetadataProvider
+{
+    private ConcurrentMap<String, String> measureParams = new ConcurrentHashMap<>();
+    private ConcurrentMap<String, String> rentalAreaProperties = new ConcurrentHashMap<>();
+    private ConcurrentMap<String, List<SeriesKey>> containers = new ConcurrentHashMap<>();
+
+    public LocalMetadataProvider()
+    {
+
+    }
+
+    public void setMeasureParam(long pointId, String name, String value)
+    {
+        measureParams.put(pointId + "/" + name, value);
+    }
+
+    public void setRentalAreaProperty(long areaId, String name, String value)
+    {
+        rentalAreaProperties.put(areaId + "/" + name, value);
+    }
+
+    //把序列 series 加入测量点 pointId 下的容器 container, 作为测量项 item
+    public void addContainerSeries(long pointId, String container, String item, SeriesKey series)
+    {
+        String key = pointId + "/" + container + "/" + item;
+        List<SeriesKey> list = containers.get(key);
+        if (list == null)
+        {
+            List<SeriesKey> created = new CopyOnWriteArrayList<>();
+            list = containers.putIfAbsent(key, created);
+            if (list == null)
+                list = created;
+        }
+        list.add(series);
+    }
+
+    @Override
+    public Pair<String, String> getMeasureParam(long pointId, String name)
+    {
+        String v = measureParams.get(pointId + "/" + name);
+        if (v == null)
+            return new Pair<>(null, "测量点 " + pointId + " 没有属性 '" + name + "'");
+        return new Pair<>(v, "");
+    }
+
+    @Override
+    public Pair<String, String> getRentalAreaProperty(long areaId, String name)
+    {
+        String v = rentalAreaProperties.get(areaId + "/" + name);
+        if (v == null)
+            return new Pair<>(null, "场地 " + areaId + " 没有属性 '" + name + "'");
+        return new Pair<>(v, "");
+    }
+
+    @Override
+    public Pair<List<SeriesKey>, String> getContainerSeries(long pointId, String container, String item)
+    {
+        List<SeriesKey> list = containers.get(pointId + "/" + container + "/" + item);
+        return new Pair<List<SeriesKey>, String>(list == null ? new ArrayList<SeriesKey>() : new ArrayList<>(list), "");
+    }
+}
@@ -0,0 +1,22 @@
+package org.example.data;
+
+import javafx.util.Pair;
+
+import java.util.List;
+
+/*
+*   元数据访问接口: 测量点及场地的属性、测量点下容器中的测量项
+*   由 getMeasureParamValue、getRentalAreaProperty、getQuantityByContainer 调用, 测量点id 为 0 的情况由调用方换算
+*   返回值的 key 为结果, 出错时 key 为 null, value 为错误提示
+* */
+public interface MetadataProvider
+{
+    //测量点的属性值
+    Pair<String, String> getMeasureParam(long pointId, String name);
+
+    //场地的属性值
+    Pair<String, String> getRentalAreaProperty(long areaId, String name);
+
+    //测量点下名为 container 的容器中, 测量项 item 对应的各个序列; 容器中没有该测量项时为空列表
+    Pair<List<SeriesKey>, String> getContainerSeries(long pointId, String container, String item);
+}
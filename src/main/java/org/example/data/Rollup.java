@@ -0,0 +1,82 @@
+package org.example.data;
+
+import java.util.Arrays;
+
+/*
+*   SampleSeries 的分组索引
+*   每个分组规则(时/天/月/年)维护一个有序数组, 记录每个分组第一条样本在序列中的下标,
+*   样本追加时增量更新, 按分组查询时直接读取下标, 无需扫描原始样本
+* */
+class Rollup
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[][] starts = new int[Grouping.GROUP_SIZE][];
+    private int[] sizes = new int[Grouping.GROUP_SIZE];
+    private long[] bucketEnds = new long[Grouping.GROUP_SIZE];     //当前分组的结束时间(不含)
+
+    Rollup()
+    {
+        clear();
+    }
+
+    void clear()
+    {
+        for (int g = Grouping.GROUP_HOUR; g < Grouping.GROUP_SIZE; g++)
+        {
+            starts[g] = new int[INITIAL_CAPACITY];
+            sizes[g] = 0;
+            bucketEnds[g] = Long.MIN_VALUE;
+        }
+    }
+
+    //序列追加了下标为 index 的样本, 样本时间不早于之前的样本
+    void onAppend(int index, long time)
+    {
+        for (int g = Grouping.GROUP_HOUR; g < Grouping.GROUP_SIZE; g++)
+        {
+            if (time < bucketEnds[g])
+                continue;
+
+            //进入新的分组
+            if (sizes[g] == starts[g].length)
+                starts[g] = Arrays.copyOf(starts[g], sizes[g] << 1);
+            starts[g][sizes[g]++] = index;
+            bucketEnds[g] = Grouping.nextBucket(g, time);
+        }
+    }
+
+    //返回分组 grouping 中第一个下标大于 index 的位置
+    int upperBound(int grouping, int index)
+    {
+        int[] a = starts[grouping];
+        int lo = 0, hi = sizes[grouping];
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] <= index)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    int size(int grouping)
+    {
+        return sizes[grouping];
+    }
+
+    int get(int grouping, int position)
+    {
+        return starts[grouping][position];
+    }
+
+    //分组索引占用的内存(字节), 仅统计下标数组
+    long memoryUsage(int grouping)
+    {
+        if (grouping <= Grouping.GROUP_ALL || grouping >= Grouping.GROUP_SIZE)
+            return 0;
+        return 4L * starts[grouping].length;
+    }
+}
@@ -0,0 +1,287 @@
+package org.example.data;
+
+/*
+*   采集数据列表, 对应表达式中的 SamplePointList 类型
+*   按列压缩存储:
+*   时间戳使用二阶差分(delta-of-delta)编码, 等间隔采集时每个样本仅占 1 位
+*   值使用与前一个值异或(Gorilla)编码, 值不变时每个样本仅占 1 位
+*   列表只能顺序追加, 通过 Cursor 顺序解码, 解码过程中不产生逐样本的对象
+* */
+public class SamplePointList
+{
+    private BitBuffer bits;
+    private int size = 0;
+
+    //编码状态
+    private long lastTime = 0;
+    private long lastDelta = 0;
+    private long lastValueBits = 0;
+    private int lastLeading = Integer.MAX_VALUE;
+    private int lastTrailing = 0;
+
+    private long firstTime = 0;
+    private double firstValue = 0;
+
+    public SamplePointList()
+    {
+        this(16);
+    }
+
+    //capacity 为预计的样本个数
+    public SamplePointList(int capacity)
+    {
+        //等间隔、缓变数据每个样本约 2~20 位, 按每样本 16 位预留
+        bits = new BitBuffer((int)Math.min(Integer.MAX_VALUE, ((long)Math.max(capacity, 1) * 16 + 63) >>> 6));
+    }
+
+    public void add(long time, double value)
+    {
+        long valueBits = Double.doubleToRawLongBits(value);
+        if (size == 0)
+        {
+            bits.writeBits(time, 64);
+            bits.writeBits(valueBits, 64);
+            firstTime = time;
+            firstValue = value;
+        }
+        else
+        {
+            long delta = time - lastTime;
+            writeDeltaOfDelta(delta - lastDelta);
+            lastDelta = delta;
+            writeValue(valueBits);
+        }
+
+        lastTime = time;
+        lastValueBits = valueBits;
+        size++;
+    }
+
+    /*
+    * 二阶差分编码
+    * 0                 : 与上一个间隔相同
+    * 10   + 7位        : [-64, 63]
+    * 110  + 9位        : [-256, 255]
+    * 1110 + 12位       : [-2048, 2047]
+    * 1111 + 64位       : 其它
+    * */
+    private void writeDeltaOfDelta(long dod)
+    {
+        if (dod == 0)
+        {
+            bits.writeBit(false);
+        }
+        else if (dod >= -64 && dod <= 63)
+        {
+            bits.writeBits(0x2, 2);
+            bits.writeBits(dod, 7);
+        }
+        else if (dod >= -256 && dod <= 255)
+        {
+            bits.writeBits(0x6, 3);
+            bits.writeBits(dod, 9);
+        }
+        else if (dod >= -2048 && dod <= 2047)
+        {
+            bits.writeBits(0xE, 4);
+            bits.writeBits(dod, 12);
+        }
+        else
+        {
+            bits.writeBits(0xF, 4);
+            bits.writeBits(dod, 64);
+        }
+    }
+
+    /*
+    * 异或编码
+    * 0                             : 与上一个值相同
+    * 10 + 有效位                    : 有效位落在上一个值的有效位窗口内, 复用窗口
+    * 11 + 5位前导零 + 6位长度 + 有效位 : 新窗口
+    * */
+    private void writeValue(long valueBits)
+    {
+        long xor = valueBits ^ lastValueBits;
+        if (xor == 0)
+        {
+            bits.writeBit(false);
+            return;
+        }
+
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (lastLeading != Integer.MAX_VALUE && leading >= lastLeading && trailing >= lastTrailing)
+        {
+            bits.writeBits(0x2, 2);
+            bits.writeBits(xor >>> lastTrailing, 64 - lastLeading - lastTrailing);
+            return;
+        }
+
+        int length = 64 - leading - trailing;
+        bits.writeBits(0x3, 2);
+        bits.writeBits(leading, 5);
+        bits.writeBits(length - 1, 6);
+        bits.writeBits(xor >>> trailing, length);
+        lastLeading = leading;
+        lastTrailing = trailing;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public long firstTime()
+    {
+        return firstTime;
+    }
+
+    public double firstValue()
+    {
+        return firstValue;
+    }
+
+    public long lastTime()
+    {
+        return lastTime;
+    }
+
+    public double lastValue()
+    {
+        return Double.longBitsToDouble(lastValueBits);
+    }
+
+    //压缩后占用的字节数
+    public long memoryUsage()
+    {
+        return bits.capacityInBytes();
+    }
+
+    //压缩率, 以每个样本 16 字节(long + double)为基准
+    public double compressionRatio()
+    {
+        long used = (bits.bitSize() + 7) >>> 3;
+        return used == 0 ? 1 : (16.0 * size) / used;
+    }
+
+    public Cursor cursor()
+    {
+        return new Cursor(this);
+    }
+
+    /*
+    *   顺序解码游标
+    *   while (c.next()) { c.time(); c.value(); }
+    * */
+    public static class Cursor
+    {
+        private final SamplePointList list;
+        private final int size;
+        private int index = -1;
+        private long position = 0;
+
+        private long time = 0;
+        private long delta = 0;
+        private long valueBits = 0;
+        private int leading = 0;
+        private int trailing = 0;
+
+        Cursor(SamplePointList list)
+        {
+            this.list = list;
+            this.size = list.size;
+        }
+
+        public boolean next()
+        {
+            if (index + 1 >= size)
+                return false;
+
+            BitBuffer bits = list.bits;
+            index++;
+            if (index == 0)
+            {
+                time = bits.readBits(position, 64);
+                valueBits = bits.readBits(position + 64, 64);
+                position += 128;
+                return true;
+            }
+
+            //时间
+            long dod;
+            if (!bits.readBit(position))
+            {
+                position += 1;
+                dod = 0;
+            }
+            else if (!bits.readBit(position + 1))
+            {
+                dod = signExtend(bits.readBits(position + 2, 7), 7);
+                position += 9;
+            }
+            else if (!bits.readBit(position + 2))
+            {
+                dod = signExtend(bits.readBits(position + 3, 9), 9);
+                position += 12;
+            }
+            else if (!bits.readBit(position + 3))
+            {
+                dod = signExtend(bits.readBits(position + 4, 12), 12);
+                position += 16;
+            }
+            else
+            {
+                dod = bits.readBits(position + 4, 64);
+                position += 68;
+            }
+            delta += dod;
+            time += delta;
+
+            //值
+            if (!bits.readBit(position))
+            {
+                position += 1;
+            }
+            else if (!bits.readBit(position + 1))
+            {
+                int length = 64 - leading - trailing;
+                valueBits ^= bits.readBits(position + 2, length) << trailing;
+                position += 2 + length;
+            }
+            else
+            {
+                leading = (int) bits.readBits(position + 2, 5);
+                int length = (int) bits.readBits(position + 7, 6) + 1;
+                trailing = 64 - leading - length;
+                valueBits ^= bits.readBits(position + 13, length) << trailing;
+                position += 13 + length;
+            }
+            return true;
+        }
+
+        private static long signExtend(long v, int count)
+        {
+            return (v << (64 - count)) >> (64 - count);
+        }
+
+        public int index()
+        {
+            return index;
+        }
+
+        public long time()
+        {
+            return time;
+        }
+
+        public double value()
+        {
+            return Double.longBitsToDouble(valueBits);
+        }
+    }
+}
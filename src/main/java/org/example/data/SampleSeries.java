@@ -0,0 +1,170 @@
+package org.example.data;
+
+import java.util.Arrays;
+
+/*
+*   单个测量点/测量编码/测量编号的样本序列
+*   样本按时间只追加, sums[i] 为前 i 个样本值的累加和(sums[0] = 0),
+*   任意时间窗口的用量 = sums[to] - sums[from], 其中 from/to 由二分查找定位, 查询为 O(log n)
+*   追加为均摊 O(1)
+*   rollup 记录各分组规则下每个分组的第一条样本, 用于 getMeasuringValue 的分组查询
+* */
+public class SampleSeries
+{
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int CHECK_INTERVAL = 4096;      //查询时检查取消的间隔(样本数), 必须是 2 的幂
+
+    private long[] times = new long[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private double[] sums = new double[INITIAL_CAPACITY + 1];
+    private int size = 0;
+    private Rollup rollup = new Rollup();
+
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    public synchronized long getTime(int index)
+    {
+        return times[index];
+    }
+
+    public synchronized double getValue(int index)
+    {
+        return values[index];
+    }
+
+    public synchronized long firstTime()
+    {
+        return size == 0 ? Long.MIN_VALUE : times[0];
+    }
+
+    public synchronized long lastTime()
+    {
+        return size == 0 ? Long.MIN_VALUE : times[size - 1];
+    }
+
+    /*
+    * 追加一个样本, 时间必须不早于最后一个样本, 否则拒绝并返回 false
+    * 迟到的样本需要由上层先补齐再整体重建序列
+    * */
+    public synchronized boolean append(long time, double value)
+    {
+        if (size > 0 && time < times[size - 1])
+            return false;
+
+        if (size == times.length)
+        {
+            int capacity = times.length << 1;
+            times = Arrays.copyOf(times, capacity);
+            values = Arrays.copyOf(values, capacity);
+            sums = Arrays.copyOf(sums, capacity + 1);
+        }
+
+        times[size] = time;
+        values[size] = value;
+        sums[size + 1] = sums[size] + value;
+        rollup.onAppend(size, time);
+        size++;
+        return true;
+    }
+
+    //返回第一个时间 >= time 的样本下标, 不存在时返回 size
+    public synchronized int lowerBound(long time)
+    {
+        int lo = 0, hi = size;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] < time)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    //[startTime, endTime) 内样本值的和
+    public synchronized double sum(long startTime, long endTime)
+    {
+        if (endTime <= startTime)
+            return 0;
+
+        int from = lowerBound(startTime);
+        int to = lowerBound(endTime);
+        return sums[to] - sums[from];
+    }
+
+    //[startTime, endTime) 内样本的个数
+    public synchronized int count(long startTime, long endTime)
+    {
+        if (endTime <= startTime)
+            return 0;
+
+        return lowerBound(endTime) - lowerBound(startTime);
+    }
+
+    /*
+    * 按分组规则查询 [startTime, endTime) 内的样本, 分组规则不为 GROUP_ALL 时每个分组仅返回第一条
+    * 窗口的第一条样本可能落在某个分组的中间, 此时它就是该分组在窗口内的第一条;
+    * 之后的每个分组起点都直接从 rollup 读取
+    * */
+    public synchronized SamplePointList select(long startTime, long endTime, int grouping)
+    {
+        return select(startTime, endTime, grouping, null);
+    }
+
+    //每复制 CHECK_INTERVAL 个样本检查一次 cancellation, 被取消时返回 null
+    public synchronized SamplePointList select(long startTime, long endTime, int grouping, Cancellation cancellation)
+    {
+        if (endTime <= startTime)
+            return new SamplePointList(1);
+
+        int from = lowerBound(startTime);
+        int to = lowerBound(endTime);
+        if (from >= to)
+            return new SamplePointList(1);
+
+        if (grouping == Grouping.GROUP_ALL)
+        {
+            SamplePointList ret = new SamplePointList(to - from);
+            for (int i = from; i < to; i++)
+            {
+                if (((i - from) & CHECK_INTERVAL - 1) == 0 && cancellation != null && cancellation.isCancelled())
+                    return null;
+                ret.add(times[i], values[i]);
+            }
+            return ret;
+        }
+
+        int p = rollup.upperBound(grouping, from);
+        int n = rollup.size(grouping);
+        SamplePointList ret = new SamplePointList();
+        ret.add(times[from], values[from]);
+        for (int k = 1; p < n; p++, k++)
+        {
+            if ((k & CHECK_INTERVAL - 1) == 0 && cancellation != null && cancellation.isCancelled())
+                return null;
+            int i = rollup.get(grouping, p);
+            if (i >= to)
+                break;
+            ret.add(times[i], values[i]);
+        }
+        return ret;
+    }
+
+    //由原始样本重建分组索引
+    public synchronized void rebuildRollup()
+    {
+        rollup.clear();
+        for (int i = 0; i < size; i++)
+            rollup.onAppend(i, times[i]);
+    }
+
+    //分组索引在某个分组规则下占用的内存(字节)
+    public synchronized long rollupMemoryUsage(int grouping)
+    {
+        return rollup.memoryUsage(grouping);
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.data;
+
+import javafx.util.Pair;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+/*
+*   表达式中的时间参数均为字符串, 格式为 yyyy-MM-dd HH:mm:ss 或 yyyy-MM-dd
+*   数据层内部统一使用毫秒时间戳
+* */
+public class SampleTime
+{
+    static final public String FORMAT_DATETIME = "yyyy-MM-dd HH:mm:ss";
+    static final public String FORMAT_DATE = "yyyy-MM-dd";
+
+    //SimpleDateFormat 非线程安全, 每个线程各持有一份
+    private static ThreadLocal<SimpleDateFormat> s_datetime = new ThreadLocal<SimpleDateFormat>()
+    {
+        @Override
+        protected SimpleDateFormat initialValue()
+        {
+            SimpleDateFormat f = new SimpleDateFormat(FORMAT_DATETIME);
+            f.setLenient(false);
+            return f;
+        }
+    };
+
+    private static ThreadLocal<SimpleDateFormat> s_date = new ThreadLocal<SimpleDateFormat>()
+    {
+        @Override
+        protected SimpleDateFormat initialValue()
+        {
+            SimpleDateFormat f = new SimpleDateFormat(FORMAT_DATE);
+            f.setLenient(false);
+            return f;
+        }
+    };
+
+    /*
+    * 解析时间字符串, 返回值的 key 为毫秒时间戳, 解析失败时 key 为 null, value 为错误提示
+    * 参数为空时返回 defaultValue, 用于处理可省略的结束时间
+    * */
+    public static Pair<Long, String> parse(String s, long defaultValue)
+    {
+        if (s == null || s.isEmpty())
+            return new Pair<>(defaultValue, "");
+
+        try
+        {
+            if (s.length() == FORMAT_DATE.length())
+                return new Pair<>(s_date.get().parse(s).getTime(), "");
+            return new Pair<>(s_datetime.get().parse(s).getTime(), "");
+        }
+        catch (ParseException e)
+        {
+            return new Pair<>(null, "无法识别的时间 '" + s + "'");
+        }
+    }
+
+    public static String format(long time)
+    {
+        return s_datetime.get().format(time);
+    }
+}
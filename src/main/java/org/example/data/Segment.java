@@ -0,0 +1,225 @@
+package org.example.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+*   样本段文件, 通过 FileChannel.map 映射到内存, 读取时直接访问映射区, 不做拷贝
+*   文件格式(大端):
+*   头部 32 字节
+*       int  magic
+*       int  version
+*       int  capacity      可容纳的样本个数
+*       int  count         已写入的样本个数
+*       long sequence      段序号, 决定段在序列中的先后
+*       long coverSequence 合并产生的段记录被合并的最后一个段的序号, 普通段等于 sequence
+*   样本 24 字节 * capacity
+*       long   time
+*       double value
+*       double cumulative  段内从第一个样本到本样本的累加和
+*   追加时先写样本再更新 count, 进程中断时最多丢失未更新 count 的样本
+* */
+class Segment
+{
+    static final int MAGIC = 0x53454731;    //SEG1
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 24;
+
+    private static final int OFFSET_CAPACITY = 8;
+    private static final int OFFSET_COUNT = 12;
+    private static final int OFFSET_SEQUENCE = 16;
+    private static final int OFFSET_COVER_SEQUENCE = 24;
+
+    private final File file;
+    private final long sequence;
+    private long coverSequence;
+    private MappedByteBuffer buffer;
+    private boolean writable;
+    private int capacity;
+    private int count;
+
+    private Segment(File file, long sequence)
+    {
+        this.file = file;
+        this.sequence = sequence;
+    }
+
+    //创建可写的新段
+    static Segment create(File file, long sequence, long coverSequence, int capacity) throws IOException
+    {
+        Segment s = new Segment(file, sequence);
+        s.coverSequence = coverSequence;
+        s.writable = true;
+        s.capacity = capacity;
+        s.count = 0;
+        s.buffer = map(file, true, capacity);
+        s.buffer.putInt(0, MAGIC);
+        s.buffer.putInt(4, VERSION);
+        s.buffer.putInt(OFFSET_CAPACITY, capacity);
+        s.buffer.putInt(OFFSET_COUNT, 0);
+        s.buffer.putLong(OFFSET_SEQUENCE, sequence);
+        s.buffer.putLong(OFFSET_COVER_SEQUENCE, coverSequence);
+        return s;
+    }
+
+    //打开已有的段, 文件格式不正确时返回 null
+    static Segment open(File file, boolean writable) throws IOException
+    {
+        if (file.length() < HEADER_SIZE)
+            return null;
+
+        MappedByteBuffer header;
+        try (RandomAccessFile f = new RandomAccessFile(file, "r"))
+        {
+            header = f.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        }
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+            return null;
+
+        int capacity = header.getInt(OFFSET_CAPACITY);
+        int count = header.getInt(OFFSET_COUNT);
+        if (count < 0 || count > capacity || file.length() < HEADER_SIZE + (long)capacity * RECORD_SIZE)
+            return null;
+
+        Segment s = new Segment(file, header.getLong(OFFSET_SEQUENCE));
+        s.coverSequence = header.getLong(OFFSET_COVER_SEQUENCE);
+        s.writable = writable;
+        s.capacity = capacity;
+        s.count = count;
+        s.buffer = map(file, writable, writable ? capacity : count);
+        return s;
+    }
+
+    private static MappedByteBuffer map(File file, boolean writable, int records) throws IOException
+    {
+        long size = HEADER_SIZE + (long)records * RECORD_SIZE;
+        try (RandomAccessFile f = new RandomAccessFile(file, writable ? "rw" : "r"))
+        {
+            return f.getChannel().map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    File getFile()
+    {
+        return file;
+    }
+
+    long getSequence()
+    {
+        return sequence;
+    }
+
+    long getCoverSequence()
+    {
+        return coverSequence;
+    }
+
+    int getCapacity()
+    {
+        return capacity;
+    }
+
+    int size()
+    {
+        return count;
+    }
+
+    boolean isFull()
+    {
+        return count >= capacity;
+    }
+
+    boolean isWritable()
+    {
+        return writable;
+    }
+
+    //扩容, 仅可写的段可以扩容
+    void grow(int newCapacity) throws IOException
+    {
+        assert (writable && newCapacity > capacity);
+        buffer.force();
+        buffer = map(file, true, newCapacity);
+        buffer.putInt(OFFSET_CAPACITY, newCapacity);
+        capacity = newCapacity;
+    }
+
+    void force()
+    {
+        buffer.force();
+    }
+
+    //封存, 之后只读
+    void seal() throws IOException
+    {
+        if (!writable)
+            return;
+        buffer.force();
+        writable = false;
+        buffer = map(file, false, count);
+    }
+
+    void append(long time, double value)
+    {
+        assert (writable && count < capacity);
+        int offset = HEADER_SIZE + count * RECORD_SIZE;
+        double cumulative = (count == 0 ? 0 : cumulative(count - 1)) + value;
+        buffer.putLong(offset, time);
+        buffer.putDouble(offset + 8, value);
+        buffer.putDouble(offset + 16, cumulative);
+        count++;
+        buffer.putInt(OFFSET_COUNT, count);
+    }
+
+    long time(int index)
+    {
+        return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE);
+    }
+
+    double value(int index)
+    {
+        return buffer.getDouble(HEADER_SIZE + index * RECORD_SIZE + 8);
+    }
+
+    double cumulative(int index)
+    {
+        return buffer.getDouble(HEADER_SIZE + index * RECORD_SIZE + 16);
+    }
+
+    long firstTime()
+    {
+        return count == 0 ? Long.MAX_VALUE : time(0);
+    }
+
+    long lastTime()
+    {
+        return count == 0 ? Long.MIN_VALUE : time(count - 1);
+    }
+
+    //[from, to) 内样本值的和
+    double sum(int from, int to)
+    {
+        if (from >= to)
+            return 0;
+        return cumulative(to - 1) - (from == 0 ? 0 : cumulative(from - 1));
+    }
+
+    //返回第一个时间 >= time 的样本下标, 不存在时返回 size
+    int lowerBound(long time)
+    {
+        int lo = 0, hi = count;
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (time(mid) < time)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,193 @@
+package org.example.data;
+
+import javafx.util.Pair;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+*   基于段文件的数据层参考实现
+*   每个测量点/测量编码/测量编号一个子目录, 子目录名为 测量点id_测量编码_测量编号, 其下为按天切分的段文件
+*   段文件通过 FileChannel.map 映射, 重启时只需读取文件头即可提供查询, 重复读取由操作系统页缓存负责
+* */
+public class SegmentDataProvider implements CancellableDataProvider
+{
+    private final File directory;
+    private ConcurrentMap<SeriesKey, SegmentSeries> series = new ConcurrentHashMap<>();
+
+    private SegmentDataProvider(File directory)
+    {
+        this.directory = directory;
+    }
+
+    //打开目录下的数据, 目录不存在时创建
+    public static Pair<SegmentDataProvider, String> open(File directory)
+    {
+        if (!directory.exists() && !directory.mkdirs())
+            return new Pair<>(null, "无法创建目录 " + directory);
+
+        SegmentDataProvider provider = new SegmentDataProvider(directory);
+        File[] dirs = directory.listFiles();
+        if (dirs == null)
+            return new Pair<>(null, "无法读取目录 " + directory);
+
+        for (File dir : dirs)
+        {
+            SeriesKey key = parseKey(dir.getName());
+            if (!dir.isDirectory() || key == null)
+                continue;
+
+            SegmentSeries s = new SegmentSeries(dir);
+            try
+            {
+                s.load();
+            }
+            catch (IOException e)
+            {
+                return new Pair<>(null, "加载 " + dir + " 失败: " + e.getMessage());
+            }
+            provider.series.put(key, s);
+        }
+        return new Pair<>(provider, "");
+    }
+
+    private static SeriesKey parseKey(String name)
+    {
+        String[] parts = name.split("_");
+        if (parts.length != 3)
+            return null;
+        try
+        {
+            return new SeriesKey(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    private SegmentSeries getOrCreate(SeriesKey key)
+    {
+        SegmentSeries s = series.get(key);
+        if (s == null)
+        {
+            File dir = new File(directory, key.getPointId() + "_" + key.getMeasureCode() + "_" + key.getMeasureNo());
+            SegmentSeries created = new SegmentSeries(dir);
+            s = series.putIfAbsent(key, created);
+            if (s == null)
+                s = created;
+        }
+        return s;
+    }
+
+    /*
+    * 追加一个样本
+    * 返回值的 key 为是否追加成功, 样本时间早于该序列最后一个样本时为 false, 发生 IO 错误时 value 为错误提示
+    * */
+    public Pair<Boolean, String> append(long pointId, long measureCode, long measureNo, long time, double value)
+    {
+        try
+        {
+            return new Pair<>(getOrCreate(new SeriesKey(pointId, measureCode, measureNo)).append(time, value), "");
+        }
+        catch (IOException e)
+        {
+            return new Pair<>(false, e.getMessage());
+        }
+    }
+
+    //合并所有序列中的小段, 返回值的 key 为合并掉的段的个数
+    public Pair<Integer, String> compact()
+    {
+        int removed = 0;
+        for (SegmentSeries s : series.values())
+        {
+            try
+            {
+                removed += s.compact();
+            }
+            catch (IOException e)
+            {
+                return new Pair<>(removed, e.getMessage());
+            }
+        }
+        return new Pair<>(removed, "");
+    }
+
+    //将所有可写段刷到磁盘
+    public Pair<Boolean, String> flush()
+    {
+        for (SegmentSeries s : series.values())
+        {
+            try
+            {
+                s.flush();
+            }
+            catch (IOException e)
+            {
+                return new Pair<>(false, e.getMessage());
+            }
+        }
+        return new Pair<>(true, "");
+    }
+
+    //段文件的总个数
+    public int segmentCount()
+    {
+        int n = 0;
+        for (SegmentSeries s : series.values())
+            n += s.segmentCount();
+        return n;
+    }
+
+    @Override
+    public Pair<Double, String> getQuantity(long pointId, long measureCode, long measureNo, String startTime, String endTime)
+    {
+        Pair<Long, String> start = SampleTime.parse(startTime, Long.MIN_VALUE);
+        if (start.getKey() == null)
+            return new Pair<>(null, start.getValue());
+
+        Pair<Long, String> end = SampleTime.parse(endTime, Long.MAX_VALUE);
+        if (end.getKey() == null)
+            return new Pair<>(null, end.getValue());
+
+        SegmentSeries s = series.get(new SeriesKey(pointId, measureCode, measureNo));
+        if (s == null)
+            return new Pair<>(0.0, "");
+
+        return new Pair<>(s.sum(start.getKey(), end.getKey()), "");
+    }
+
+    @Override
+    public Pair<SamplePointList, String> getMeasuringValue(long pointId, long measureCode, long measureNo, String startTime, String endTime, int grouping)
+    {
+        return getMeasuringValue(pointId, measureCode, measureNo, startTime, endTime, grouping, null);
+    }
+
+    @Override
+    public Pair<SamplePointList, String> getMeasuringValue(long pointId, long measureCode, long measureNo, String startTime, String endTime, int grouping,
+                                                           Cancellation cancellation)
+    {
+        if (!Grouping.isValid(grouping))
+            return new Pair<>(null, "未知分组规则 " + grouping);
+
+        Pair<Long, String> start = SampleTime.parse(startTime, Long.MIN_VALUE);
+        if (start.getKey() == null)
+            return new Pair<>(null, start.getValue());
+
+        Pair<Long, String> end = SampleTime.parse(endTime, Long.MAX_VALUE);
+        if (end.getKey() == null)
+            return new Pair<>(null, end.getValue());
+
+        SegmentSeries s = series.get(new SeriesKey(pointId, measureCode, measureNo));
+        if (s == null)
+            return new Pair<>(new SamplePointList(1), "");
+
+        SamplePointList ret = s.select(start.getKey(), end.getKey(), grouping, cancellation);
+        if (ret == null)
+            return new Pair<>(null, "查询已取消");
+        return new Pair<>(ret, "");
+    }
+}
@@ -0,0 +1,322 @@
+package org.example.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+*   单个测量点/测量编码/测量编号在磁盘上的样本序列, 由按序号排列的若干段文件组成
+*   每个段最多覆盖一天的样本, 只有最后一个段可写
+*   查询直接读取映射区, 段内累加和使得任意窗口的用量只需定位首尾两个样本
+* */
+class SegmentSeries
+{
+    static final String SUFFIX = ".seg";
+    static final String TMP_SUFFIX = ".tmp";
+    static final int INITIAL_CAPACITY = 1024;
+    static final int MAX_CAPACITY = 1 << 16;
+    static final int CHECK_INTERVAL = 4096;     //查询时检查取消的间隔(样本数), 必须是 2 的幂
+
+    private final File directory;
+    private ArrayList<Segment> segments = new ArrayList<>();
+    private long nextSequence = 1;
+    private long activeEnd = Long.MIN_VALUE;     //可写段所在天的结束时间
+
+    SegmentSeries(File directory)
+    {
+        this.directory = directory;
+    }
+
+    //加载目录下已有的段文件, 并清理合并过程中断时遗留的文件
+    synchronized void load() throws IOException
+    {
+        segments.clear();
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+
+        ArrayList<Segment> loaded = new ArrayList<>();
+        for (File f : files)
+        {
+            if (f.getName().endsWith(TMP_SUFFIX))
+            {
+                Files.deleteIfExists(f.toPath());
+                continue;
+            }
+            if (!f.getName().endsWith(SUFFIX))
+                continue;
+
+            Segment s = Segment.open(f, false);
+            if (s != null)
+                loaded.add(s);
+        }
+
+        Collections.sort(loaded, new Comparator<Segment>()
+        {
+            @Override
+            public int compare(Segment o1, Segment o2)
+            {
+                return Long.compare(o1.getSequence(), o2.getSequence());
+            }
+        });
+
+        long cover = 0;
+        for (Segment s : loaded)
+        {
+            //已被之前的合并段包含
+            if (s.getSequence() <= cover)
+            {
+                Files.deleteIfExists(s.getFile().toPath());
+                continue;
+            }
+            cover = s.getCoverSequence();
+            nextSequence = Math.max(nextSequence, cover + 1);
+            if (s.size() == 0)
+            {
+                Files.deleteIfExists(s.getFile().toPath());
+                continue;
+            }
+            segments.add(s);
+        }
+
+        //最后一个段继续追加
+        if (!segments.isEmpty())
+        {
+            Segment last = segments.get(segments.size() - 1);
+            if (!last.isFull())
+            {
+                last = Segment.open(last.getFile(), true);
+                segments.set(segments.size() - 1, last);
+                activeEnd = Grouping.nextBucket(Grouping.GROUP_DAY, last.firstTime());
+            }
+        }
+    }
+
+    private File fileOf(long sequence)
+    {
+        return new File(directory, String.format("%019d", sequence) + SUFFIX);
+    }
+
+    synchronized int size()
+    {
+        int n = 0;
+        for (Segment s : segments)
+            n += s.size();
+        return n;
+    }
+
+    synchronized int segmentCount()
+    {
+        return segments.size();
+    }
+
+    synchronized long lastTime()
+    {
+        return segments.isEmpty() ? Long.MIN_VALUE : segments.get(segments.size() - 1).lastTime();
+    }
+
+    //追加样本, 时间早于最后一个样本时返回 false
+    synchronized boolean append(long time, double value) throws IOException
+    {
+        Segment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (active != null && time < active.lastTime())
+            return false;
+
+        if (active == null || !active.isWritable() || (active.size() > 0 && time >= activeEnd))
+        {
+            active = newSegment(active);
+        }
+        else if (active.isFull())
+        {
+            if (active.getCapacity() < MAX_CAPACITY)
+                active.grow(Math.min(active.getCapacity() << 1, MAX_CAPACITY));
+            else
+                active = newSegment(active);
+        }
+
+        if (active.size() == 0)
+            activeEnd = Grouping.nextBucket(Grouping.GROUP_DAY, time);
+        active.append(time, value);
+        return true;
+    }
+
+    private Segment newSegment(Segment previous) throws IOException
+    {
+        if (previous != null)
+            previous.seal();
+
+        if (!directory.exists() && !directory.mkdirs())
+            throw new IOException("无法创建目录 " + directory);
+
+        long sequence = nextSequence++;
+        Segment s = Segment.create(fileOf(sequence), sequence, sequence, INITIAL_CAPACITY);
+        segments.add(s);
+        return s;
+    }
+
+    //返回最后一个 firstTime < time 的段的下标, 不存在时返回 0
+    private int findSegment(long time)
+    {
+        int lo = 0, hi = segments.size();
+        while (lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (segments.get(mid).firstTime() < time)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return Math.max(lo - 1, 0);
+    }
+
+    //[startTime, endTime) 内样本值的和
+    synchronized double sum(long startTime, long endTime)
+    {
+        double total = 0;
+        if (endTime <= startTime)
+            return total;
+
+        for (int i = findSegment(startTime); i < segments.size(); i++)
+        {
+            Segment s = segments.get(i);
+            if (s.firstTime() >= endTime)
+                break;
+            if (s.lastTime() < startTime)
+                continue;
+
+            int from = s.firstTime() >= startTime ? 0 : s.lowerBound(startTime);
+            int to = s.lastTime() < endTime ? s.size() : s.lowerBound(endTime);
+            total += s.sum(from, to);
+        }
+        return total;
+    }
+
+    /*
+    * 按分组规则查询 [startTime, endTime) 内的样本
+    * 分组查询时每取到一个样本, 直接二分定位到下一个分组的起点, 不扫描分组内的其它样本
+    * 每取 CHECK_INTERVAL 个样本检查一次 cancellation(可以为 null), 被取消时返回 null
+    * */
+    synchronized SamplePointList select(long startTime, long endTime, int grouping, Cancellation cancellation)
+    {
+        SamplePointList ret = new SamplePointList();
+        if (endTime <= startTime)
+            return ret;
+
+        int i = findSegment(startTime);
+        long time = startTime;
+        while (i < segments.size())
+        {
+            Segment s = segments.get(i);
+            if (s.firstTime() >= endTime)
+                break;
+
+            int j = s.lowerBound(time);
+            if (j >= s.size())
+            {
+                i++;
+                continue;
+            }
+
+            if (grouping == Grouping.GROUP_ALL)
+            {
+                for (; j < s.size(); j++)
+                {
+                    if ((ret.size() & CHECK_INTERVAL - 1) == 0 && cancellation != null && cancellation.isCancelled())
+                        return null;
+                    long t = s.time(j);
+                    if (t >= endTime)
+                        return ret;
+                    ret.add(t, s.value(j));
+                }
+                i++;
+                continue;
+            }
+
+            if ((ret.size() & CHECK_INTERVAL - 1) == 0 && cancellation != null && cancellation.isCancelled())
+                return null;
+            long t = s.time(j);
+            if (t >= endTime)
+                break;
+            ret.add(t, s.value(j));
+            time = Grouping.nextBucket(grouping, t);
+            if (s.lastTime() < time)
+                i = findSegment(time);
+        }
+        return ret;
+    }
+
+    /*
+    * 合并相邻的小段(样本数不足 MAX_CAPACITY 的一半), 合并后的段不超过 MAX_CAPACITY
+    * 合并段先写入临时文件, 再原子地替换第一个被合并的段, 最后删除其它被合并的段;
+    * 合并段头部的 coverSequence 记录被合并的最后一个段, 中断后重新加载时据此清理遗留的段
+    * 返回合并掉的段的个数
+    * */
+    synchronized int compact() throws IOException
+    {
+        int removed = 0;
+        ArrayList<Segment> result = new ArrayList<>();
+        int i = 0;
+        while (i < segments.size())
+        {
+            int j = i;
+            int total = 0;
+            while (j < segments.size())
+            {
+                Segment s = segments.get(j);
+                if (s.isWritable() || s.size() >= MAX_CAPACITY / 2 || total + s.size() > MAX_CAPACITY)
+                    break;
+                total += s.size();
+                j++;
+            }
+
+            if (j - i < 2)
+            {
+                result.add(segments.get(i));
+                i++;
+                continue;
+            }
+
+            result.add(merge(segments.subList(i, j), total));
+            removed += j - i - 1;
+            i = j;
+        }
+        segments = result;
+        return removed;
+    }
+
+    private Segment merge(List<Segment> run, int total) throws IOException
+    {
+        Segment first = run.get(0);
+        Segment last = run.get(run.size() - 1);
+        File tmp = new File(directory, first.getFile().getName() + TMP_SUFFIX);
+        Segment merged = Segment.create(tmp, first.getSequence(), last.getCoverSequence(), total);
+        for (Segment s : run)
+        {
+            for (int k = 0; k < s.size(); k++)
+                merged.append(s.time(k), s.value(k));
+        }
+        merged.seal();
+
+        Files.move(tmp.toPath(), first.getFile().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (Segment s : run.subList(1, run.size()))
+            Files.deleteIfExists(s.getFile().toPath());
+
+        return Segment.open(first.getFile(), false);
+    }
+
+    //将可写段的内容刷到磁盘
+    synchronized void flush() throws IOException
+    {
+        if (!segments.isEmpty())
+        {
+            Segment last = segments.get(segments.size() - 1);
+            if (last.isWritable())
+                last.force();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.example.data;
+
+/*
+*   时间序列的键, 由 测量点id + 测量编码 + 测量编号 组成
+* */
+public class SeriesKey
+{
+    final private long pointId;
+    final private long measureCode;
+    final private long measureNo;
+
+    public SeriesKey(long pointId, long measureCode, long measureNo)
+    {
+        this.pointId = pointId;
+        this.measureCode = measureCode;
+        this.measureNo = measureNo;
+    }
+
+    public long getPointId()
+    {
+        return pointId;
+    }
+
+    public long getMeasureCode()
+    {
+        return measureCode;
+    }
+
+    public long getMeasureNo()
+    {
+        return measureNo;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SeriesKey key = (SeriesKey) o;
+        return pointId == key.pointId && measureCode == key.measureCode && measureNo == key.measureNo;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int h = (int)(pointId ^ (pointId >>> 32));
+        h = 31 * h + (int)(measureCode ^ (measureCode >>> 32));
+        h = 31 * h + (int)(measureNo ^ (measureNo >>> 32));
+        return h;
+    }
+
+    @Override
+    public String toString()
+    {
+        return pointId + "/" + measureCode + "/" + measureNo;
+    }
+}
@@ -0,0 +1,60 @@
+package org.example.evaluator;
+
+import javafx.util.Pair;
+
+/*
+*   按 FormulaCost 决定公式是否被接受及调度的优先级
+*   各项上限为 0 时不限制; rejectUnbounded 为 true 时拒绝时间窗口不是字面值的公式
+*   开销不超过 cheapCost 的为高优先级, 超过 expensiveCost 的为低优先级, 其余为普通优先级
+* */
+public class AdmissionPolicy
+{
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_LOW = 2;
+
+    private final double maxCost;
+    private final long maxDataCalls;
+    private final double maxSamples;
+    private final boolean rejectUnbounded;
+    private double cheapCost = 100;
+    private double expensiveCost = 100000;
+
+    public AdmissionPolicy(double maxCost, long maxDataCalls, double maxSamples, boolean rejectUnbounded)
+    {
+        this.maxCost = maxCost;
+        this.maxDataCalls = maxDataCalls;
+        this.maxSamples = maxSamples;
+        this.rejectUnbounded = rejectUnbounded;
+    }
+
+    //设置优先级的划分, 默认为 100 及 100000
+    public void setPriorityThresholds(double cheapCost, double expensiveCost)
+    {
+        this.cheapCost = cheapCost;
+        this.expensiveCost = expensiveCost;
+    }
+
+    //返回值的 key 为是否接受, 不接受时 value 为原因
+    public Pair<Boolean, String> admit(FormulaCost cost)
+    {
+        if (maxCost > 0 && cost.getCost() > maxCost)
+            return new Pair<>(false, String.format("估计开销 %.0f 超过上限 %.0f", cost.getCost(), maxCost));
+        if (maxDataCalls > 0 && cost.getDataCalls() > maxDataCalls)
+            return new Pair<>(false, "数据调用次数 " + cost.getDataCalls() + " 超过上限 " + maxDataCalls);
+        if (maxSamples > 0 && cost.getSamples() > maxSamples)
+            return new Pair<>(false, String.format("估计样本数 %.0f 超过上限 %.0f", cost.getSamples(), maxSamples));
+        if (rejectUnbounded && !cost.isBounded())
+            return new Pair<>(false, "时间窗口不是字面值, 无法估计开销");
+        return new Pair<>(true, "");
+    }
+
+    public int priority(FormulaCost cost)
+    {
+        if (cost.getCost() <= cheapCost)
+            return PRIORITY_HIGH;
+        if (cost.getCost() > expensiveCost)
+            return PRIORITY_LOW;
+        return PRIORITY_NORMAL;
+    }
+}
@@ -0,0 +1,41 @@
+package org.example.evaluator;
+
+import javafx.util.Pair;
+import org.example.data.SamplePointList;
+
+/*
+*   SamplePointList 的聚合类成员函数, 如 sum()
+* */
+public abstract class AggregateFunction implements FunctionImplementation
+{
+    public abstract SampleAggregator newAggregator();
+
+    @Override
+    public Pair<Object, String> invoke(EvaluationContext context, Object target, Object[] args)
+    {
+        return new Pair<Object, String>(aggregate((SamplePointList) target, null), "");
+    }
+
+    //遍历 list 一次, 依次经过 filters 后聚合; filters 可以为 null
+    public double aggregate(SamplePointList list, SampleFilter[] filters)
+    {
+        SampleAggregator aggregator = newAggregator();
+        SamplePointList.Cursor c = list.cursor();
+        next:
+        while (c.next())
+        {
+            long time = c.time();
+            double value = c.value();
+            if (filters != null)
+            {
+                for (SampleFilter f : filters)
+                {
+                    if (!f.accept(time, value))
+                        continue next;
+                }
+            }
+            aggregator.add(time, value);
+        }
+        return aggregator.result();
+    }
+}
@@ -0,0 +1,720 @@
+package org.example.evaluator;
+
+import javafx.util.Pair;
+import org.example.analyzer.element.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/*
+*   按列求值: 同一个表达式对一批变量取值求值, 每个变量一列(double[]), 结果为一列
+*   每个元素对整批数据执行一次循环, 而不是每行遍历一次元素树
+*   不依赖列变量的子树(如 math.sin(0.8 + 0x55)、getQuantity(...))只按标量求值一次, 再广播到整列
+*   无法按列计算的元素(字符串运算、数据函数等)退化为逐行调用 Evaluator
+*   比较结果为按位压缩的布尔掩码; && 与 || 与逐行求值一样短路: 右侧只对左侧未决定结果的行求值
+*   求值时记录需要结果的行(active), 按列计算的运算对整列计算(其余行的结果不使用), 逐行求值及常量子树只在需要的行上求值
+*   let 绑定在首次被引用时按列求值一次, 之后的引用共用该列; 只在部分行上求值过的绑定, 再次引用时补算其余的行
+* */
+public class BatchEvaluator
+{
+    private Evaluator evaluator;
+
+    public BatchEvaluator(Evaluator evaluator)
+    {
+        this.evaluator = evaluator;
+    }
+
+    /*
+    * columns 的 key 为变量的 name, 所有列的长度必须相同
+    * 未出现在 columns 中的变量从 context 中取值
+    * 返回值的 key 为结果列, 出错时 key 为 null, value 为错误提示
+    * */
+    public Pair<Column, String> evaluate(IElement e, EvaluationContext context, Map<String, double[]> columns)
+    {
+        return evaluate(e, context, columns, null);
+    }
+
+    /*
+    * times 为每行样本的时间, 逐行求值时设置为 context 的样本时间, 供窗口函数使用; 可以为 null
+    * 含窗口函数的子树每行求值一次且按行顺序求值
+    * */
+    public Pair<Column, String> evaluate(IElement e, EvaluationContext context, Map<String, double[]> columns, long[] times)
+    {
+        int rows = -1;
+        for (Map.Entry<String, double[]> entry : columns.entrySet())
+        {
+            if (rows < 0)
+                rows = entry.getValue().length;
+            else if (rows != entry.getValue().length)
+                return new Pair<>(null, "列 '" + entry.getKey() + "' 的长度与其它列不一致");
+        }
+        if (rows < 0)
+            rows = times != null ? times.length : 1;
+        if (times != null && times.length != rows)
+            return new Pair<>(null, "样本时间的个数与列的长度不一致");
+
+        Batch batch = new Batch(context, columns, times, rows);
+        batch.markDependent(e, 0);
+        return batch.evaluate(e);
+    }
+
+    //与 evaluate 相同, 结果中带有是否超出预算及超出的是哪一项
+    public EvaluationResult<Column> evaluateResult(IElement e, EvaluationContext context, Map<String, double[]> columns, long[] times)
+    {
+        return EvaluationResult.of(evaluate(e, context, columns, times), context.getBudget());
+    }
+
+    private class Batch
+    {
+        final EvaluationContext context;
+        final Map<String, double[]> columns;
+        final long[] times;
+        final int rows;
+        final IdentityHashMap<IElement, Boolean> dependent = new IdentityHashMap<>();     //子树是否依赖列变量
+        Frame frame = null;         //正在求值的 let 帧, 最内层在前
+        long[] active = null;       //需要结果的行的掩码, null 表示全部行
+        Task[] tasks = null;        //求值中的元素, 每层的 Task 复用, 第一次压栈时创建
+        int depth = 0;
+
+        Batch(EvaluationContext context, Map<String, double[]> columns, long[] times, int rows)
+        {
+            this.context = context;
+            this.columns = columns;
+            this.times = times;
+            this.rows = rows;
+        }
+
+        /*
+        * 记录每个子树是否依赖列变量, 子元素先于父元素记录
+        * 嵌套不超过 Evaluator.RECURSION_DEPTH 层时递归, 更深的子树用 ElementTraversal 后序遍历
+        * */
+        boolean markDependent(IElement e, int level)
+        {
+            if (level >= Evaluator.RECURSION_DEPTH)
+            {
+                ElementTraversal.walk(e, true, new ElementTraversal.Visitor()
+                {
+                    @Override
+                    public boolean leave(IElement e)
+                    {
+                        boolean d = dependsOnRow(e);
+                        IElement receiver = ElementTraversal.receiver(e);
+                        if (receiver != null)
+                            d |= dependent.get(receiver);
+                        for (IElement.Param p : e.getParams())
+                        {
+                            if (p.value != null)
+                                d |= dependent.get(p.value);
+                        }
+                        dependent.put(e, d);
+                        return true;
+                    }
+                });
+                return dependent.get(e);
+            }
+
+            boolean d = dependsOnRow(e);
+            IElement receiver = ElementTraversal.receiver(e);
+            if (receiver != null)
+                d |= markDependent(receiver, level + 1);
+            for (IElement.Param p : e.getParams())
+            {
+                if (p.value != null)
+                    d |= markDependent(p.value, level + 1);
+            }
+            dependent.put(e, d);
+            return d;
+        }
+
+        //元素本身(不含子元素)是否依赖每行的值
+        boolean dependsOnRow(IElement e)
+        {
+            if (e.getType() == ElementType.ELEMENT_TYPE_VARIABLE)
+                return columns.containsKey(e.getName());
+            //绑定只能在 let 求值帧中取值, 不能脱离 let 单独按标量求值
+            if (e.getType() == ElementType.ELEMENT_TYPE_BINDING)
+                return true;
+            //窗口函数每行都会改变状态, 不能当作常量只求值一次
+            return e.getType() == ElementType.ELEMENT_TYPE_FUNCTION && evaluator.getLibrary().lookup(e.getName()) instanceof WindowFunction;
+        }
+
+        Pair<Column, String> evaluate(IElement root)
+        {
+            Frame outerFrame = frame;
+            long[] outerActive = active;
+            try
+            {
+                return run(root, 0);
+            }
+            finally
+            {
+                while (depth > 0)
+                    tasks[--depth].clear();
+                frame = outerFrame;
+                active = outerActive;
+            }
+        }
+
+        /*
+        * 与 Evaluator 一样, 嵌套不超过 Evaluator.RECURSION_DEPTH 层时递归求值, 更深的子树用显式的栈求值
+        * 一元运算、&& || 以外的二元运算、let 及绑定直接递归, 其它元素按 step 逐步求值, 子元素递归求值
+        * */
+        Pair<Column, String> run(IElement e, int level)
+        {
+            if (level >= Evaluator.RECURSION_DEPTH)
+                return iterate(e);
+
+            Pair<Column, String> r = leaf(e);
+            if (r != null)
+                return r;
+
+            if (e.getType() == ElementType.ELEMENT_TYPE_UNARY_OPERATION)
+            {
+                r = run(e.getParams().get(0).value, level + 1);
+                if (r.getKey() == null)
+                    return r;
+                return unary(e, r.getKey());
+            }
+            if (e.getType() == ElementType.ELEMENT_TYPE_BINARY_OPERATION && !isLogical(e))
+            {
+                Pair<Column, String> r1 = run(e.getParams().get(0).value, level + 1);
+                if (r1.getKey() == null)
+                    return r1;
+                Pair<Column, String> r2 = run(e.getParams().get(1).value, level + 1);
+                if (r2.getKey() == null)
+                    return r2;
+                return binary(e, r1.getKey(), r2.getKey());
+            }
+            if (e.getType() == ElementType.ELEMENT_TYPE_LET)
+            {
+                frame = new Frame((LetElement) e, frame);
+                r = run(((LetElement) e).getBody(), level + 1);
+                frame = frame.previous;
+                return r;
+            }
+            if (e.getType() == ElementType.ELEMENT_TYPE_BINDING)
+            {
+                BindingElement b = (BindingElement) e;
+                int slot = b.getSlot();
+                Frame f = Frame.find(frame, slot, b.getValue());
+                if (f == null)
+                    return evaluateRows(b);
+                long[] missing = missing(f, slot);
+                if (f.values[slot] != null && (f.evaluated[slot] == null || isEmpty(missing)))
+                    return new Pair<>(f.values[slot], "");
+
+                long[] outer = active;
+                active = missing;
+                r = run(b.getValue(), level + 1);
+                active = outer;
+                if (r.getKey() == null)
+                    return r;
+                return bind(f, slot, missing, r.getKey());
+            }
+
+            Task t = push(e);
+            while (true)
+            {
+                r = step(t, r);
+                if (r != null)
+                {
+                    tasks[--depth].clear();
+                    return r;
+                }
+                r = run(t.child, level + 1);
+            }
+        }
+
+        //用显式的栈求值 e, 栈中已有的元素不受影响
+        Pair<Column, String> iterate(IElement e)
+        {
+            int base = depth;
+            Pair<Column, String> r = enter(e);
+            while (depth > base)
+            {
+                Task t = tasks[depth - 1];
+                Pair<Column, String> ret = step(t, r);
+                if (ret != null)
+                {
+                    tasks[--depth].clear();
+                    r = ret;
+                }
+                else
+                    r = enter(t.child);
+            }
+            return r;
+        }
+
+        //进入元素: 可以直接得到结果时返回结果, 否则压栈并返回 null
+        Pair<Column, String> enter(IElement e)
+        {
+            Pair<Column, String> r = leaf(e);
+            if (r == null)
+                push(e);
+            return r;
+        }
+
+        Task push(IElement e)
+        {
+            if (tasks == null)
+                tasks = new Task[16];
+            else if (depth == tasks.length)
+                tasks = Arrays.copyOf(tasks, depth << 1);
+            if (tasks[depth] == null)
+                tasks[depth] = new Task();
+            Task t = tasks[depth++];
+            t.e = e;
+            return t;
+        }
+
+        //常量子树、变量、超出预算及逐行求值的元素直接得到结果, 需要求值子元素时返回 null
+        Pair<Column, String> leaf(IElement e)
+        {
+            //常量子树: 标量求值一次后广播
+            if (!dependent.get(e))
+            {
+                Pair<Object, String> r = evaluator.evaluate(e, context);
+                if (r.getKey() == null)
+                    return new Pair<>(null, r.getValue());
+                return new Pair<>(Column.constant(r.getKey(), rows), "");
+            }
+
+            //按列求值的节点按需要结果的行数计数, 生成的列按每行 8 字节估计
+            EvaluationBudget budget = context.getBudget();
+            if (budget != null && (!budget.enterNodes(activeCount()) || !budget.allocate(8L * rows)))
+                return new Pair<>(null, Evaluator.exceeded(e, budget).getValue());
+
+            switch (e.getType())
+            {
+                case ElementType.ELEMENT_TYPE_VARIABLE:
+                    return new Pair<>(Column.of(columns.get(e.getName())), "");
+
+                case ElementType.ELEMENT_TYPE_UNARY_OPERATION:
+                case ElementType.ELEMENT_TYPE_BINARY_OPERATION:
+                case ElementType.ELEMENT_TYPE_FUNCTION:
+                case ElementType.ELEMENT_TYPE_LET:
+                case ElementType.ELEMENT_TYPE_BINDING:
+                    return null;
+            }
+            return evaluateRows(e);
+        }
+
+        boolean isLogical(IElement e)
+        {
+            return e.getName().equals("&&") || e.getName().equals("||");
+        }
+
+        /*
+        * 继续求值 t, r 为上一个子元素的结果(刚进入时为 null)
+        * 求值完成时返回结果, 需要先求值子元素时设置 t.child 并返回 null
+        * */
+        Pair<Column, String> step(Task t, Pair<Column, String> r)
+        {
+            switch (t.e.getType())
+            {
+                case ElementType.ELEMENT_TYPE_UNARY_OPERATION:
+                    return stepUnary(t, r);
+
+                case ElementType.ELEMENT_TYPE_BINARY_OPERATION:
+                    if (isLogical(t.e))
+                        return stepLogical(t, r, t.e.getName().equals("&&"));
+                    return stepBinary(t, r);
+
+                case ElementType.ELEMENT_TYPE_FUNCTION:
+                    return stepFunction(t, r);
+
+                case ElementType.ELEMENT_TYPE_LET:
+                    return stepLet(t, r);
+
+                case ElementType.ELEMENT_TYPE_BINDING:
+                    return stepBinding(t, r);
+            }
+            return evaluateRows(t.e);
+        }
+
+        Pair<Column, String> stepLet(Task t, Pair<Column, String> r)
+        {
+            if (t.step == 0)
+            {
+                frame = new Frame((LetElement) t.e, frame);
+                t.step = 1;
+                t.child = ((LetElement) t.e).getBody();
+                return null;
+            }
+            frame = frame.previous;
+            return r;
+        }
+
+        Pair<Column, String> stepBinding(Task t, Pair<Column, String> r)
+        {
+            BindingElement e = (BindingElement) t.e;
+            int slot = e.getSlot();
+            if (t.step == 0)
+            {
+                Frame f = Frame.find(frame, slot, e.getValue());
+                if (f == null)
+                    return evaluateRows(e);
+
+                long[] missing = missing(f, slot);
+                if (f.values[slot] != null && (f.evaluated[slot] == null || isEmpty(missing)))
+                    return new Pair<>(f.values[slot], "");
+
+                t.frame = f;
+                t.mask = missing;
+                t.active = active;
+                active = missing;
+                t.step = 1;
+                t.child = e.getValue();
+                return null;
+            }
+
+            active = t.active;
+            if (r.getKey() == null)
+                return r;
+            return bind(t.frame, slot, t.mask, r.getKey());
+        }
+
+        //只对尚未求值的行求值, 结果并入已有的列
+        long[] missing(Frame f, int slot)
+        {
+            return f.values[slot] == null ? active : f.evaluated[slot] == null ? null : andNot(active, f.evaluated[slot]);
+        }
+
+        //绑定在 missing 行上的值为 c
+        Pair<Column, String> bind(Frame f, int slot, long[] missing, Column c)
+        {
+            if (f.values[slot] == null || c.isConstant())
+            {
+                //常量子树对所有行的结果相同
+                f.values[slot] = c;
+                f.evaluated[slot] = c.isConstant() ? null : missing;
+            }
+            else
+            {
+                f.values[slot] = Column.select(missing, c, f.values[slot]);
+                f.evaluated[slot] = or(f.evaluated[slot], missing);
+            }
+            return new Pair<>(f.values[slot], "");
+        }
+
+        Pair<Column, String> stepUnary(Task t, Pair<Column, String> r)
+        {
+            IElement e = t.e;
+            if (t.step == 0)
+            {
+                t.step = 1;
+                t.child = e.getParams().get(0).value;
+                return null;
+            }
+            if (r.getKey() == null)
+                return r;
+            return unary(e, r.getKey());
+        }
+
+        Pair<Column, String> unary(IElement e, Column c)
+        {
+            switch (e.getName())
+            {
+                case "-":
+                    if (c.isNumber())
+                        return new Pair<>(Column.of(ColumnKernels.negate(c.toNumbers())), "");
+                    break;
+                case "~":
+                    if (c.isNumber())
+                        return new Pair<>(Column.of(ColumnKernels.bitNot(c.toNumbers())), "");
+                    break;
+                case "!":
+                    if (c.isBoolean())
+                        return new Pair<>(Column.ofMask(ColumnKernels.not(c.toMask(), rows), rows), "");
+                    break;
+            }
+            return evaluateRows(e);
+        }
+
+        Pair<Column, String> stepBinary(Task t, Pair<Column, String> r)
+        {
+            IElement e = t.e;
+            if (t.step == 0)
+            {
+                t.step = 1;
+                t.child = e.getParams().get(0).value;
+                return null;
+            }
+            if (r.getKey() == null)
+                return r;
+            if (t.step == 1)
+            {
+                t.left = r.getKey();
+                t.step = 2;
+                t.child = e.getParams().get(1).value;
+                return null;
+            }
+
+            return binary(e, t.left, r.getKey());
+        }
+
+        //数字列的算术及比较运算整列计算, 其余逐行求值
+        Pair<Column, String> binary(IElement e, Column c1, Column c2)
+        {
+            if (c1.isNumber() && c2.isNumber())
+            {
+                String op = e.getName();
+                double[] a = c1.toNumbers(), b = c2.toNumbers();
+                double[] n = ColumnKernels.arithmetic(op, a, b);
+                if (n != null)
+                    return new Pair<>(Column.of(n), "");
+                long[] l = ColumnKernels.compare(op, a, b);
+                if (l != null)
+                    return new Pair<>(Column.ofMask(l, rows), "");
+            }
+            return evaluateRows(e);
+        }
+
+        /*
+        * && 与 ||: 右侧只在左侧未决定结果的行上求值, 与逐行求值的短路一致
+        * 其它行上右侧列的值不使用, && 时这些行左侧为 false, || 时为 true, 合并后不受影响
+        * */
+        Pair<Column, String> stepLogical(Task t, Pair<Column, String> r, boolean and)
+        {
+            IElement e = t.e;
+            if (t.step == 0)
+            {
+                t.step = 1;
+                t.child = e.getParams().get(0).value;
+                return null;
+            }
+
+            if (t.step == 1)
+            {
+                if (r.getKey() == null)
+                    return r;
+                Column c1 = r.getKey();
+                if (!c1.isBoolean())
+                    return evaluateRows(e);
+
+                long[] left = c1.toMask();
+                long[] undecided = and ? ColumnKernels.and(mask(active), left) : andNot(mask(active), left);
+                if (isEmpty(undecided))
+                    return r;
+
+                t.mask = left;
+                t.active = active;
+                active = undecided;
+                t.step = 2;
+                t.child = e.getParams().get(1).value;
+                return null;
+            }
+
+            active = t.active;
+            if (r.getKey() == null)
+                return r;
+            if (!r.getKey().isBoolean())
+                return evaluateRows(e);
+
+            long[] right = r.getKey().toMask();
+            return new Pair<>(Column.ofMask(and ? ColumnKernels.and(t.mask, right) : ColumnKernels.or(t.mask, right), rows), "");
+        }
+
+        //数学函数的参数按列求值后整列计算, 其它函数逐行求值
+        Pair<Column, String> stepFunction(Task t, Pair<Column, String> r)
+        {
+            FunctionElement f = (FunctionElement) t.e;
+            if (t.step == 0)
+            {
+                FunctionImplementation impl = evaluator.getLibrary().lookup(f.getName());
+                boolean receiverDependent = f.getLeading() instanceof FunctionElement.ExpressionLeading
+                        && dependent.get(((FunctionElement.ExpressionLeading) f.getLeading()).getElement());
+                if (receiverDependent || !(impl instanceof FunctionLibrary.MathFunction || impl instanceof FunctionLibrary.BinaryMathFunction))
+                    return evaluateRows(f);
+
+                t.impl = impl;
+                t.step = 1;
+                t.child = f.getParams().get(0).value;
+                return null;
+            }
+            if (r.getKey() == null)
+                return r;
+
+            if (t.impl instanceof FunctionLibrary.MathFunction)
+            {
+                if (!r.getKey().isNumber())
+                    return evaluateRows(f);
+                return new Pair<>(Column.of(ColumnKernels.apply((FunctionLibrary.MathFunction) t.impl, r.getKey().toNumbers())), "");
+            }
+
+            if (t.step == 1)
+            {
+                t.left = r.getKey();
+                t.step = 2;
+                t.child = f.getParams().get(1).value;
+                return null;
+            }
+            if (!t.left.isNumber() || !r.getKey().isNumber())
+                return evaluateRows(f);
+            return new Pair<>(Column.of(ColumnKernels.apply((FunctionLibrary.BinaryMathFunction) t.impl,
+                    t.left.toNumbers(), r.getKey().toNumbers())), "");
+        }
+
+        //逐行求值, 用于无法按列计算的元素; 只求值需要结果的行, 其余行为 0 或 false
+        Pair<Column, String> evaluateRows(IElement e)
+        {
+            EvaluationContext rowContext = new EvaluationContext(context);
+            double[] numbers = null;
+            boolean[] booleans = null;
+            for (int i = 0; i < rows; i++)
+            {
+                if (active != null && (active[i >>> 6] & (1L << i)) == 0)
+                    continue;
+                for (Map.Entry<String, double[]> entry : columns.entrySet())
+                    rowContext.setVariable(entry.getKey(), entry.getValue()[i]);
+                if (times != null)
+                    rowContext.setSampleTime(times[i]);
+                if (frame != null)
+                    rowContext.setLetFrame(frame.toLetFrame(i));
+
+                Pair<Object, String> r = evaluator.evaluate(e, rowContext);
+                if (r.getKey() == null)
+                    return new Pair<>(null, r.getValue());
+
+                Object v = r.getKey();
+                if (v instanceof Double && booleans == null)
+                {
+                    if (numbers == null)
+                        numbers = new double[rows];
+                    numbers[i] = (Double) v;
+                }
+                else if (v instanceof Boolean && numbers == null)
+                {
+                    if (booleans == null)
+                        booleans = new boolean[rows];
+                    booleans[i] = (Boolean) v;
+                }
+                else
+                {
+                    return new Pair<>(null, "[" + e.getLine() + ":" + e.getColumn() + "]: 类型 '"
+                            + e.getResultType().getName() + "' 无法按列求值");
+                }
+            }
+            return new Pair<>(numbers != null ? Column.of(numbers) : Column.of(booleans != null ? booleans : new boolean[0]), "");
+        }
+
+        int activeCount()
+        {
+            if (active == null)
+                return rows;
+            int n = 0;
+            for (long w : active)
+                n += Long.bitCount(w);
+            return n;
+        }
+
+        //掩码, null 展开为全部行
+        long[] mask(long[] m)
+        {
+            return m != null ? m : Column.constant(true, rows).toMask();
+        }
+
+        long[] andNot(long[] a, long[] b)
+        {
+            a = mask(a);
+            long[] r = new long[a.length];
+            for (int i = 0; i < r.length; i++)
+                r[i] = a[i] & ~b[i];
+            return r;
+        }
+
+        long[] or(long[] a, long[] b)
+        {
+            return a == null || b == null ? null : ColumnKernels.or(a, b);
+        }
+
+        boolean isEmpty(long[] m)
+        {
+            if (m == null)
+                return rows == 0;
+            for (long w : m)
+            {
+                if (w != 0)
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    //按列求值中的元素
+    private static final class Task
+    {
+        IElement e;
+        int step;               //0 为刚进入, 其余含义由元素类型决定
+        IElement child;         //step 返回 null 时要求值的子元素
+        Column left;            //二元运算的左侧
+        long[] mask;            //&& 与 || 的左侧, 或绑定补算的行
+        long[] active;          //进入子元素前的 active
+        FunctionImplementation impl;
+        Frame frame;            //绑定所在的帧
+
+        void clear()
+        {
+            e = child = null;
+            left = null;
+            mask = active = null;
+            impl = null;
+            frame = null;
+            step = 0;
+        }
+    }
+
+    /*
+    *   按列求值中的 let 帧, 与 LetFrame 一样按嵌套顺序串成链表
+    *   values 为各绑定已求值的列, evaluated 为已求值的行, null 表示全部行
+    * */
+    private static class Frame
+    {
+        final LetElement let;
+        final Column[] values;
+        final long[][] evaluated;
+        final Frame previous;
+
+        Frame(LetElement let, Frame previous)
+        {
+            this.let = let;
+            this.values = new Column[let.getBindingCount()];
+            this.evaluated = new long[values.length][];
+            this.previous = previous;
+        }
+
+        static Frame find(Frame frame, int slot, Object value)
+        {
+            for (; frame != null; frame = frame.previous)
+            {
+                if (slot < frame.values.length && frame.let.getBindingValue(slot) == value)
+                    return frame;
+            }
+            return null;
+        }
+
+        //第 row 行的求值帧链, 已按列求值的绑定直接取本行的值, 其余的由 Evaluator 按需求值
+        LetFrame toLetFrame(int row)
+        {
+            ArrayList<Frame> chain = new ArrayList<>();
+            for (Frame f = this; f != null; f = f.previous)
+                chain.add(f);
+
+            LetFrame ret = null;
+            for (int i = chain.size() - 1; i >= 0; i--)
+            {
+                Frame f = chain.get(i);
+                Object[] v = new Object[f.values.length];
+                for (int j = 0; j < v.length; j++)
+                {
+                    if (f.values[j] != null && (f.evaluated[j] == null || (f.evaluated[j][row >>> 6] & (1L << row)) != 0))
+                        v[j] = f.values[j].get(row);
+                }
+                ret = new LetFrame(f.let, v, ret);
+            }
+            return ret;
+        }
+    }
+}
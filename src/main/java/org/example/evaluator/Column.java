@@ -0,0 +1,178 @@
+package org.example.evaluator;
+
+import java.util.Arrays;
+
+/*
+*   按列求值的结果列
+*   数字列为 double[], 常量列只保存一个值, 需要时再展开(广播)为整列
+*   布尔列按位压缩存储为 long[] 掩码, 第 i 行对应 mask[i >>> 6] 的第 (i & 63) 位, 最后一个字的多余位为 0
+*   比较运算直接产生掩码, && 与 || 每次运算合并 64 行
+* */
+public class Column
+{
+    public static final int KIND_CONSTANT = 0;
+    public static final int KIND_NUMBER = 1;
+    public static final int KIND_BOOLEAN = 2;
+
+    private final int kind;
+    private final int size;
+    private final Object constant;
+    private final double[] numbers;
+    private final long[] mask;
+
+    private Column(int kind, int size, Object constant, double[] numbers, long[] mask)
+    {
+        this.kind = kind;
+        this.size = size;
+        this.constant = constant;
+        this.numbers = numbers;
+        this.mask = mask;
+    }
+
+    public static Column constant(Object value, int size)
+    {
+        return new Column(KIND_CONSTANT, size, value, null, null);
+    }
+
+    public static Column of(double[] numbers)
+    {
+        return new Column(KIND_NUMBER, numbers.length, null, numbers, null);
+    }
+
+    public static Column of(boolean[] booleans)
+    {
+        long[] mask = new long[wordCount(booleans.length)];
+        for (int i = 0; i < booleans.length; i++)
+        {
+            if (booleans[i])
+                mask[i >>> 6] |= 1L << i;
+        }
+        return new Column(KIND_BOOLEAN, booleans.length, null, null, mask);
+    }
+
+    //size 行的布尔掩码, 调用者需保证最后一个字的多余位为 0
+    public static Column ofMask(long[] mask, int size)
+    {
+        return new Column(KIND_BOOLEAN, size, null, null, mask);
+    }
+
+    //mask 中的行取 a 的值, 其余行取 b 的值; a、b 同为数字列或同为布尔列
+    static Column select(long[] mask, Column a, Column b)
+    {
+        int size = b.size;
+        if (a.isBoolean())
+        {
+            long[] x = a.toMask(), y = b.toMask();
+            long[] r = new long[x.length];
+            for (int i = 0; i < r.length; i++)
+                r[i] = (x[i] & mask[i]) | (y[i] & ~mask[i]);
+            return ofMask(r, size);
+        }
+        double[] x = a.toNumbers(), r = b.toNumbers().clone();
+        for (int i = 0; i < size; i++)
+        {
+            if ((mask[i >>> 6] & (1L << i)) != 0)
+                r[i] = x[i];
+        }
+        return of(r);
+    }
+
+    static int wordCount(int size)
+    {
+        return (size + 63) >>> 6;
+    }
+
+    public int getKind()
+    {
+        return kind;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isConstant()
+    {
+        return kind == KIND_CONSTANT;
+    }
+
+    public Object getConstant()
+    {
+        return constant;
+    }
+
+    public boolean isNumber()
+    {
+        return kind == KIND_NUMBER || constant instanceof Double;
+    }
+
+    public boolean isBoolean()
+    {
+        return kind == KIND_BOOLEAN || constant instanceof Boolean;
+    }
+
+    //数字列, 常量列会被展开为整列
+    public double[] toNumbers()
+    {
+        if (kind == KIND_NUMBER)
+            return numbers;
+        double[] ret = new double[size];
+        Arrays.fill(ret, (Double) constant);
+        return ret;
+    }
+
+    //布尔掩码, 常量列会被展开为整列
+    public long[] toMask()
+    {
+        if (kind == KIND_BOOLEAN)
+            return mask;
+        long[] ret = new long[wordCount(size)];
+        if ((Boolean) constant)
+        {
+            Arrays.fill(ret, -1L);
+            if ((size & 63) != 0)
+                ret[ret.length - 1] = (1L << size) - 1;
+        }
+        return ret;
+    }
+
+    //布尔列展开为 boolean[]
+    public boolean[] toBooleans()
+    {
+        boolean[] ret = new boolean[size];
+        if (kind != KIND_BOOLEAN)
+        {
+            Arrays.fill(ret, (Boolean) constant);
+            return ret;
+        }
+        for (int i = 0; i < size; i++)
+            ret[i] = (mask[i >>> 6] & (1L << i)) != 0;
+        return ret;
+    }
+
+    //布尔列中为 true 的行数
+    public int countTrue()
+    {
+        if (kind != KIND_BOOLEAN)
+            return (Boolean) constant ? size : 0;
+        int n = 0;
+        for (long w : mask)
+            n += Long.bitCount(w);
+        return n;
+    }
+
+    //第 index 行的值
+    public Object get(int index)
+    {
+        switch (kind)
+        {
+            case KIND_NUMBER:
+                return numbers[index];
+            case KIND_BOOLEAN:
+                return (mask[index >>> 6] & (1L << index)) != 0;
+            default:
+                return constant;
+        }
+    }
+}
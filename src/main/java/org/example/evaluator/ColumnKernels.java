@@ -0,0 +1,168 @@
+package org.example.evaluator;
+
+/*
+*   按列运算的内核, 每个操作符一个独立的简单计数循环, 便于 JIT 自动向量化(SuperWord)
+*   操作符在循环外分派, 循环体内没有分支
+* */
+class ColumnKernels
+{
+    //数字运算, 位运算按 long 计算; 未知操作符返回 null
+    static double[] arithmetic(String op, double[] a, double[] b)
+    {
+        int n = a.length;
+        double[] r = new double[n];
+        switch (op)
+        {
+            case "+":
+                for (int i = 0; i < n; i++) r[i] = a[i] + b[i];
+                break;
+            case "-":
+                for (int i = 0; i < n; i++) r[i] = a[i] - b[i];
+                break;
+            case "*":
+                for (int i = 0; i < n; i++) r[i] = a[i] * b[i];
+                break;
+            case "/":
+                for (int i = 0; i < n; i++) r[i] = a[i] / b[i];
+                break;
+            case "%":
+                for (int i = 0; i < n; i++) r[i] = a[i] % b[i];
+                break;
+            case "&":
+                for (int i = 0; i < n; i++) r[i] = (long) a[i] & (long) b[i];
+                break;
+            case "|":
+                for (int i = 0; i < n; i++) r[i] = (long) a[i] | (long) b[i];
+                break;
+            case "^":
+                for (int i = 0; i < n; i++) r[i] = (long) a[i] ^ (long) b[i];
+                break;
+            case "<<":
+                for (int i = 0; i < n; i++) r[i] = (long) a[i] << (long) b[i];
+                break;
+            case ">>":
+                for (int i = 0; i < n; i++) r[i] = (long) a[i] >> (long) b[i];
+                break;
+            default:
+                return null;
+        }
+        return r;
+    }
+
+    /*
+    * 数字比较, 结果为布尔掩码; 未知操作符返回 null
+    * 每 64 行拼成一个字, 内层循环用条件表达式取位, 不产生分支
+    * */
+    static long[] compare(String op, double[] a, double[] b)
+    {
+        int n = a.length;
+        long[] r = new long[Column.wordCount(n)];
+        switch (op)
+        {
+            case ">":
+                for (int w = 0; w < r.length; w++)
+                {
+                    long bits = 0;
+                    for (int i = w << 6, end = Math.min(i + 64, n); i < end; i++) bits |= (a[i] > b[i] ? 1L : 0L) << i;
+                    r[w] = bits;
+                }
+                break;
+            case ">=":
+                for (int w = 0; w < r.length; w++)
+                {
+                    long bits = 0;
+                    for (int i = w << 6, end = Math.min(i + 64, n); i < end; i++) bits |= (a[i] >= b[i] ? 1L : 0L) << i;
+                    r[w] = bits;
+                }
+                break;
+            case "<":
+                for (int w = 0; w < r.length; w++)
+                {
+                    long bits = 0;
+                    for (int i = w << 6, end = Math.min(i + 64, n); i < end; i++) bits |= (a[i] < b[i] ? 1L : 0L) << i;
+                    r[w] = bits;
+                }
+                break;
+            case "<=":
+                for (int w = 0; w < r.length; w++)
+                {
+                    long bits = 0;
+                    for (int i = w << 6, end = Math.min(i + 64, n); i < end; i++) bits |= (a[i] <= b[i] ? 1L : 0L) << i;
+                    r[w] = bits;
+                }
+                break;
+            case "==":
+                for (int w = 0; w < r.length; w++)
+                {
+                    long bits = 0;
+                    for (int i = w << 6, end = Math.min(i + 64, n); i < end; i++) bits |= (a[i] == b[i] ? 1L : 0L) << i;
+                    r[w] = bits;
+                }
+                break;
+            case "!=":
+                for (int w = 0; w < r.length; w++)
+                {
+                    long bits = 0;
+                    for (int i = w << 6, end = Math.min(i + 64, n); i < end; i++) bits |= (a[i] != b[i] ? 1L : 0L) << i;
+                    r[w] = bits;
+                }
+                break;
+            default:
+                return null;
+        }
+        return r;
+    }
+
+    //掩码运算, 每次处理 64 行
+    static long[] and(long[] a, long[] b)
+    {
+        long[] r = new long[a.length];
+        for (int i = 0; i < r.length; i++) r[i] = a[i] & b[i];
+        return r;
+    }
+
+    static long[] or(long[] a, long[] b)
+    {
+        long[] r = new long[a.length];
+        for (int i = 0; i < r.length; i++) r[i] = a[i] | b[i];
+        return r;
+    }
+
+    //取反后清除最后一个字的多余位
+    static long[] not(long[] a, int size)
+    {
+        long[] r = new long[a.length];
+        for (int i = 0; i < r.length; i++) r[i] = ~a[i];
+        if ((size & 63) != 0)
+            r[r.length - 1] &= (1L << size) - 1;
+        return r;
+    }
+
+    static double[] negate(double[] a)
+    {
+        double[] r = new double[a.length];
+        for (int i = 0; i < r.length; i++) r[i] = -a[i];
+        return r;
+    }
+
+    static double[] bitNot(double[] a)
+    {
+        double[] r = new double[a.length];
+        for (int i = 0; i < r.length; i++) r[i] = ~(long) a[i];
+        return r;
+    }
+
+    static double[] apply(FunctionLibrary.MathFunction f, double[] a)
+    {
+        double[] r = new double[a.length];
+        for (int i = 0; i < r.length; i++) r[i] = f.apply(a[i]);
+        return r;
+    }
+
+    static double[] apply(FunctionLibrary.BinaryMathFunction f, double[] a, double[] b)
+    {
+        double[] r = new double[a.length];
+        for (int i = 0; i < r.length; i++) r[i] = f.apply(a[i], b[i]);
+        return r;
+    }
+}
@@ -0,0 +1,150 @@
+package org.example.evaluator;
+
+import org.example.data.Cancellation;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+*   求值预算: 截止时间、求值节点数、数据调用次数及估计分配的内存, 各项上限为 0 时不限制
+*   设置在 EvaluationContext 上, 求值器在每个节点、每次数据调用及生成样本列表、字符串、列时计数
+*   截止时间每 CHECK_INTERVAL 个节点检查一次; cancel 可以在其它线程中调用
+*   预算同时作为数据层的取消标志, 超出预算或被取消后正在进行的查询也会尽快返回
+*   超出后求值返回 key 为 null 的结果; Evaluator 及 BatchEvaluator 的 evaluateResult 返回的 EvaluationResult 中带有超出的是哪一项
+*   复制的 EvaluationContext 共用同一个预算, 计数可以在多个线程中同时进行
+* */
+public class EvaluationBudget implements Cancellation
+{
+    public static final int EXCEEDED_NONE = 0;
+    public static final int EXCEEDED_CANCELLED = 1;
+    public static final int EXCEEDED_DEADLINE = 2;
+    public static final int EXCEEDED_NODES = 3;
+    public static final int EXCEEDED_DATA_CALLS = 4;
+    public static final int EXCEEDED_ALLOCATION = 5;
+
+    private static final int CHECK_INTERVAL = 64;     //必须是 2 的幂
+
+    private final long deadline;        //System.nanoTime, 不限制时为 Long.MAX_VALUE
+    private final long timeoutMillis;
+    private final long maxNodes;
+    private final long maxDataCalls;
+    private final long maxAllocation;   //字节
+
+    private final AtomicLong nodes = new AtomicLong();
+    private final AtomicLong dataCalls = new AtomicLong();
+    private final AtomicLong allocated = new AtomicLong();
+    private volatile int exceeded = EXCEEDED_NONE;
+
+    //从构造时开始计时
+    public EvaluationBudget(long timeoutMillis, long maxNodes, long maxDataCalls, long maxAllocation)
+    {
+        this.timeoutMillis = timeoutMillis;
+        this.deadline = timeoutMillis > 0 ? System.nanoTime() + timeoutMillis * 1000000L : Long.MAX_VALUE;
+        this.maxNodes = maxNodes;
+        this.maxDataCalls = maxDataCalls;
+        this.maxAllocation = maxAllocation;
+    }
+
+    //取消求值, 已经超出预算时保留原来的原因
+    public void cancel()
+    {
+        exceed(EXCEEDED_CANCELLED);
+    }
+
+    @Override
+    public boolean isCancelled()
+    {
+        if (exceeded != EXCEEDED_NONE)
+            return true;
+        if (deadline != Long.MAX_VALUE && System.nanoTime() > deadline)
+        {
+            exceed(EXCEEDED_DEADLINE);
+            return true;
+        }
+        return false;
+    }
+
+    public boolean isExceeded()
+    {
+        return exceeded != EXCEEDED_NONE;
+    }
+
+    //EXCEEDED_NONE ~ EXCEEDED_ALLOCATION, 多项超出时为最先超出的一项
+    public int getExceeded()
+    {
+        return exceeded;
+    }
+
+    public String getReason()
+    {
+        switch (exceeded)
+        {
+            case EXCEEDED_CANCELLED:
+                return "求值已取消";
+            case EXCEEDED_DEADLINE:
+                return "求值耗时超过上限 " + timeoutMillis + " 毫秒";
+            case EXCEEDED_NODES:
+                return "求值节点数超过上限 " + maxNodes;
+            case EXCEEDED_DATA_CALLS:
+                return "数据调用次数超过上限 " + maxDataCalls;
+            case EXCEEDED_ALLOCATION:
+                return "估计内存超过上限 " + maxAllocation + " 字节";
+        }
+        return "";
+    }
+
+    public long getNodes()
+    {
+        return nodes.get();
+    }
+
+    public long getDataCalls()
+    {
+        return dataCalls.get();
+    }
+
+    public long getAllocated()
+    {
+        return allocated.get();
+    }
+
+    //求值 n 个节点(按列求值时为行数), 超出预算时返回 false
+    boolean enterNodes(long n)
+    {
+        long c = nodes.addAndGet(n);
+        if (exceeded != EXCEEDED_NONE)
+            return false;
+        if (maxNodes > 0 && c > maxNodes)
+            return exceed(EXCEEDED_NODES);
+        if ((n > 1 || (c & CHECK_INTERVAL - 1) == 0) && deadline != Long.MAX_VALUE && System.nanoTime() > deadline)
+            return exceed(EXCEEDED_DEADLINE);
+        return true;
+    }
+
+    boolean enterDataCall()
+    {
+        long c = dataCalls.incrementAndGet();
+        if (exceeded != EXCEEDED_NONE)
+            return false;
+        if (maxDataCalls > 0 && c > maxDataCalls)
+            return exceed(EXCEEDED_DATA_CALLS);
+        return true;
+    }
+
+    boolean allocate(long bytes)
+    {
+        long c = allocated.addAndGet(bytes);
+        if (exceeded != EXCEEDED_NONE)
+            return false;
+        if (maxAllocation > 0 && c > maxAllocation)
+            return exceed(EXCEEDED_ALLOCATION);
+        return true;
+    }
+
+    //记录最先超出的一项, 返回 false 便于直接作为检查结果
+    private synchronized boolean exceed(int kind)
+    {
+        if (exceeded == EXCEEDED_NONE)
+            exceeded = kind;
+        return false;
+    }
+}
@@ -0,0 +1,149 @@
+package org.example.evaluator;
+
+import org.example.data.DataProvider;
+import org.example.data.MetadataProvider;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+*   单次求值的上下文: 变量值、数据层、元数据层及本测量点
+*   流求值时还包括当前样本的时间及窗口函数的状态
+* */
+public class EvaluationContext
+{
+    private Map<String, Object> variables = new HashMap<>();     //key 为变量的 name, 如 v, math.PI
+    private DataProvider dataProvider = null;
+    private MetadataProvider metadataProvider = null;
+    private long pointId = 0;      //本测量点id, 数据类函数的测量点id为 0 时使用
+    private long sampleTime = 0;    //当前样本的时间, 窗口函数使用
+    private WindowStore windowStore = null;     //窗口函数的状态, 仅流求值时设置
+    private LetFrame letFrame = null;       //正在求值的 let 表达式, 求值结束后恢复
+    private EvaluationBudget budget = null;     //求值预算, 为 null 时不限制
+    private Evaluator.Stack stack = null;       //求值器的栈, 同一上下文多次求值时复用, 不复制
+
+    public EvaluationContext()
+    {
+
+    }
+
+    public EvaluationContext(DataProvider dataProvider, long pointId)
+    {
+        this.dataProvider = dataProvider;
+        this.pointId = pointId;
+    }
+
+    //复制一份上下文, 变量表为独立的副本, 窗口状态及预算与原上下文共用, 不复制 let 求值帧
+    public EvaluationContext(EvaluationContext other)
+    {
+        this.variables = new HashMap<>(other.variables);
+        this.dataProvider = other.dataProvider;
+        this.metadataProvider = other.metadataProvider;
+        this.pointId = other.pointId;
+        this.sampleTime = other.sampleTime;
+        this.windowStore = other.windowStore;
+        this.budget = other.budget;
+    }
+
+    public void setVariable(String name, Object value)
+    {
+        variables.put(name, value);
+    }
+
+    public Object getVariable(String name)
+    {
+        return variables.get(name);
+    }
+
+    public boolean hasVariable(String name)
+    {
+        return variables.containsKey(name);
+    }
+
+    public DataProvider getDataProvider()
+    {
+        return dataProvider;
+    }
+
+    public void setDataProvider(DataProvider dataProvider)
+    {
+        this.dataProvider = dataProvider;
+    }
+
+    public MetadataProvider getMetadataProvider()
+    {
+        return metadataProvider;
+    }
+
+    public void setMetadataProvider(MetadataProvider metadataProvider)
+    {
+        this.metadataProvider = metadataProvider;
+    }
+
+    public long getPointId()
+    {
+        return pointId;
+    }
+
+    public void setPointId(long pointId)
+    {
+        this.pointId = pointId;
+    }
+
+    public long getSampleTime()
+    {
+        return sampleTime;
+    }
+
+    public void setSampleTime(long sampleTime)
+    {
+        this.sampleTime = sampleTime;
+    }
+
+    public WindowStore getWindowStore()
+    {
+        return windowStore;
+    }
+
+    public void setWindowStore(WindowStore windowStore)
+    {
+        this.windowStore = windowStore;
+    }
+
+    public EvaluationBudget getBudget()
+    {
+        return budget;
+    }
+
+    public void setBudget(EvaluationBudget budget)
+    {
+        this.budget = budget;
+    }
+
+    LetFrame getLetFrame()
+    {
+        return letFrame;
+    }
+
+    void setLetFrame(LetFrame letFrame)
+    {
+        this.letFrame = letFrame;
+    }
+
+    Evaluator.Stack getStack()
+    {
+        return stack;
+    }
+
+    void setStack(Evaluator.Stack stack)
+    {
+        this.stack = stack;
+    }
+
+    //测量点id为 0 时表示本测量点
+    public long resolvePointId(double id)
+    {
+        long v = (long) id;
+        return v == 0 ? pointId : v;
+    }
+}
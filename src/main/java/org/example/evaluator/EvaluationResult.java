@@ -0,0 +1,63 @@
+package org.example.evaluator;
+
+import javafx.util.Pair;
+
+/*
+*   带类型的求值结果: 成功、出错、超出预算三种情况
+*   超出预算时 getExceeded 为 EvaluationBudget.EXCEEDED_CANCELLED ~ EXCEEDED_ALLOCATION, 调用方不必再查询预算
+* */
+public class EvaluationResult<T>
+{
+    private final T value;
+    private final String error;
+    private final int exceeded;
+
+    private EvaluationResult(T value, String error, int exceeded)
+    {
+        this.value = value;
+        this.error = error;
+        this.exceeded = exceeded;
+    }
+
+    //r 为 evaluate 的返回值, 结果为 null 且预算已超出时为超出预算
+    static <T> EvaluationResult<T> of(Pair<T, String> r, EvaluationBudget budget)
+    {
+        if (r.getKey() != null)
+            return new EvaluationResult<>(r.getKey(), "", EvaluationBudget.EXCEEDED_NONE);
+        int exceeded = budget != null ? budget.getExceeded() : EvaluationBudget.EXCEEDED_NONE;
+        return new EvaluationResult<>(null, r.getValue(), exceeded);
+    }
+
+    public boolean isOk()
+    {
+        return value != null;
+    }
+
+    public boolean isExceeded()
+    {
+        return exceeded != EvaluationBudget.EXCEEDED_NONE;
+    }
+
+    //成功时为结果, 否则为 null
+    public T getValue()
+    {
+        return value;
+    }
+
+    //成功时为空字符串
+    public String getError()
+    {
+        return error;
+    }
+
+    //EXCEEDED_NONE 表示没有超出预算
+    public int getExceeded()
+    {
+        return exceeded;
+    }
+
+    public Pair<T, String> toPair()
+    {
+        return new Pair<>(value, error);
+    }
+}
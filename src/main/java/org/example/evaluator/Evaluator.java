@@ -0,0 +1,636 @@
+package org.example.evaluator;
+
+import javafx.util.Pair;
+import org.example.analyzer.element.*;
+import org.example.data.SamplePointList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+*   表达式求值器, 对已通过 checkParams 的元素树求值
+*   运行时值的类型: Number/Quantity 为 Double, String 为 String, Boolean 为 Boolean, SamplePointList 为 SamplePointList
+* */
+public class Evaluator
+{
+    static final int RECURSION_DEPTH = 64;        //递归求值的最大嵌套层数, 更深时改用显式的栈
+
+    private FunctionLibrary library;
+
+    public Evaluator(FunctionLibrary library)
+    {
+        this.library = library;
+    }
+
+    public FunctionLibrary getLibrary()
+    {
+        return library;
+    }
+
+    /*
+    * 求值, 返回值的 key 为结果, 出错时 key 为 null, value 为错误提示
+    * context 设置了预算时, 超出预算后返回错误; 需要区分是否因预算中止时使用 evaluateResult
+    * 嵌套较深的子树用显式的栈代替递归, 可求值的深度只受堆内存限制; 栈保存在 context 中, 逐行求值时不重复分配
+    * */
+    public Pair<Object, String> evaluate(IElement e, EvaluationContext context)
+    {
+        LetFrame outer = context.getLetFrame();
+        Stack stack = context.getStack();
+        context.setStack(null);     //求值中再次使用同一上下文时另建栈
+        if (stack == null)
+            stack = new Stack();
+        try
+        {
+            return run(e, context, stack, 0);
+        }
+        finally
+        {
+            while (stack.depth > 0)
+                stack.pop();
+            context.setStack(stack);
+            context.setLetFrame(outer);
+        }
+    }
+
+    /*
+    * 嵌套不超过 RECURSION_DEPTH 层时递归求值, 更深的子树用显式的栈求值
+    * 函数调用按 step 逐步求值, 子元素同样递归求值
+    * */
+    private Pair<Object, String> run(IElement e, EvaluationContext context, Stack stack, int level)
+    {
+        if (level >= RECURSION_DEPTH)
+            return iterate(e, context, stack);
+
+        EvaluationBudget budget = context.getBudget();
+        if (budget != null && !budget.enterNodes(1))
+            return exceeded(e, budget);
+
+        int type = e.getType();
+        switch (type)
+        {
+            case ElementType.ELEMENT_TYPE_LITERAL_CONSTANT:
+                return literal(e);
+
+            case ElementType.ELEMENT_TYPE_VARIABLE:
+                return variable(e, context);
+
+            case ElementType.ELEMENT_TYPE_UNARY_OPERATION:
+            case ElementType.ELEMENT_TYPE_BINARY_OPERATION:
+                return runOperation(e, type, context, stack, level);
+
+            case ElementType.ELEMENT_TYPE_LET:
+                return runLet((LetElement) e, context, stack, level);
+
+            case ElementType.ELEMENT_TYPE_BINDING:
+                return runBinding((BindingElement) e, context, stack, level);
+
+            case ElementType.ELEMENT_TYPE_FUNCTION:
+                return runSteps(stack.push(e, type), context, stack, level);
+        }
+        return error(e, "未知元素类型 " + type);
+    }
+
+    private Pair<Object, String> runOperation(IElement e, int type, EvaluationContext context, Stack stack, int level)
+    {
+        Pair<Object, String> r1 = run(e.getParams().get(0).value, context, stack, level + 1);
+        if (r1.getKey() == null)
+            return r1;
+        if (type == ElementType.ELEMENT_TYPE_UNARY_OPERATION)
+            return unary(e, r1.getKey());
+
+        String op = e.getName();
+        if (shortCircuit(op, r1.getKey()))
+            return r1;
+        Pair<Object, String> r2 = run(e.getParams().get(1).value, context, stack, level + 1);
+        if (r2.getKey() == null)
+            return r2;
+        return binary(e, op, r1.getKey(), r2, context);
+    }
+
+    private Pair<Object, String> runLet(LetElement let, EvaluationContext context, Stack stack, int level)
+    {
+        LetFrame frame = enterLet(let, context);
+        Pair<Object, String> r = run(let.getBody(), context, stack, level + 1);
+        context.setLetFrame(frame.previous);
+        return r;
+    }
+
+    private Pair<Object, String> runBinding(BindingElement b, EvaluationContext context, Stack stack, int level)
+    {
+        LetFrame frame = LetFrame.find(context.getLetFrame(), b.getSlot(), b.getValue());
+        if (frame == null)
+            return unbound(b);
+        Object v = frame.values[b.getSlot()];
+        if (v != null)
+            return new Pair<>(v, "");
+
+        Pair<Object, String> r = run(b.getValue(), context, stack, level + 1);
+        if (r.getKey() != null)
+            frame.values[b.getSlot()] = r.getKey();
+        return r;
+    }
+
+    //已压栈的 t 按 step 求值, 子元素递归求值
+    private Pair<Object, String> runSteps(Task t, EvaluationContext context, Stack stack, int level)
+    {
+        Pair<Object, String> r = null;
+        while (true)
+        {
+            r = step(t, r, context);
+            if (r != null)
+            {
+                stack.pop();
+                return r;
+            }
+            r = run(t.child, context, stack, level + 1);
+        }
+    }
+
+    //用显式的栈求值 e, 栈中已有的元素不受影响
+    private Pair<Object, String> iterate(IElement e, EvaluationContext context, Stack stack)
+    {
+        int base = stack.depth;
+        Pair<Object, String> r = enter(e, context, stack);
+        while (stack.depth > base)
+        {
+            Task t = stack.tasks[stack.depth - 1];
+            Pair<Object, String> ret = step(t, r, context);
+            if (ret != null)
+            {
+                stack.pop();
+                r = ret;
+            }
+            else
+                r = enter(t.child, context, stack);
+        }
+        return r;
+    }
+
+    //与 evaluate 相同, 结果中带有是否超出预算及超出的是哪一项
+    public EvaluationResult<Object> evaluateResult(IElement e, EvaluationContext context)
+    {
+        return EvaluationResult.of(evaluate(e, context), context.getBudget());
+    }
+
+    //求值中的元素, 每层的 Task 复用
+    private static final class Task
+    {
+        IElement e;
+        int type;               //e 的元素类型
+        int step;               //0 为刚进入, 其余含义由元素类型决定
+        int index;              //下一个要求值的参数
+        IElement child;         //step 返回 null 时要求值的子元素
+        Object target;          //调用对象或二元运算的左值
+        Object[] values;        //参数的值
+        FunctionImplementation impl;
+        FunctionElement current;            //聚合函数: 正在求值参数的过滤函数
+        ArrayList<SampleFilter> filters;
+        LetFrame frame;
+
+        void clear()
+        {
+            e = child = null;
+            target = null;
+            values = null;
+            impl = null;
+            current = null;
+            filters = null;
+            frame = null;
+        }
+    }
+
+    static final class Stack
+    {
+        Task[] tasks = new Task[16];
+        int depth = 0;
+
+        Task push(IElement e, int type)
+        {
+            if (depth == tasks.length)
+                tasks = Arrays.copyOf(tasks, depth << 1);
+            Task t = tasks[depth];
+            if (t == null)
+                t = tasks[depth] = new Task();
+            depth++;
+            t.e = e;
+            t.type = type;
+            t.step = 0;
+            t.index = 0;
+            return t;
+        }
+
+        void pop()
+        {
+            tasks[--depth].clear();
+        }
+    }
+
+    //进入元素: 常量、变量及超出预算时直接返回结果, 否则压栈并返回 null
+    private Pair<Object, String> enter(IElement e, EvaluationContext context, Stack stack)
+    {
+        EvaluationBudget budget = context.getBudget();
+        if (budget != null && !budget.enterNodes(1))
+            return exceeded(e, budget);
+
+        int type = e.getType();
+        switch (type)
+        {
+            case ElementType.ELEMENT_TYPE_LITERAL_CONSTANT:
+                return literal(e);
+
+            case ElementType.ELEMENT_TYPE_VARIABLE:
+                return variable(e, context);
+
+            case ElementType.ELEMENT_TYPE_UNARY_OPERATION:
+            case ElementType.ELEMENT_TYPE_BINARY_OPERATION:
+            case ElementType.ELEMENT_TYPE_FUNCTION:
+            case ElementType.ELEMENT_TYPE_LET:
+            case ElementType.ELEMENT_TYPE_BINDING:
+                stack.push(e, type);
+                return null;
+        }
+
+        return error(e, "未知元素类型 " + type);
+    }
+
+    private static Pair<Object, String> literal(IElement e)
+    {
+        Object v = ((LiteralConstantElement) e).getValue();
+        if (v == null)
+            return error(e, "无法识别的字面值 '" + e.getName() + "'");
+        return new Pair<>(v, "");
+    }
+
+    private static Pair<Object, String> variable(IElement e, EvaluationContext context)
+    {
+        if (!context.hasVariable(e.getName()))
+            return error(e, "变量 '" + e.getName() + "' 未赋值");
+        return new Pair<>(context.getVariable(e.getName()), "");
+    }
+
+    /*
+    * 继续求值 t, r 为上一个子元素的结果(刚进入时为 null)
+    * 求值完成时返回结果, 需要先求值子元素时设置 t.child 并返回 null
+    * */
+    private Pair<Object, String> step(Task t, Pair<Object, String> r, EvaluationContext context)
+    {
+        switch (t.type)
+        {
+            case ElementType.ELEMENT_TYPE_UNARY_OPERATION:
+                return stepUnary(t, r);
+
+            case ElementType.ELEMENT_TYPE_BINARY_OPERATION:
+                return stepBinary(t, r, context);
+
+            case ElementType.ELEMENT_TYPE_FUNCTION:
+                return stepFunction(t, r, context);
+
+            case ElementType.ELEMENT_TYPE_LET:
+                return stepLet(t, r, context);
+
+            case ElementType.ELEMENT_TYPE_BINDING:
+                return stepBinding(t, r, context);
+        }
+        return error(t.e, "未知元素类型 " + t.type);
+    }
+
+    private Pair<Object, String> stepUnary(Task t, Pair<Object, String> r)
+    {
+        IElement e = t.e;
+        if (t.step == 0)
+        {
+            t.step = 1;
+            t.child = e.getParams().get(0).value;
+            return null;
+        }
+        if (r.getKey() == null)
+            return r;
+        return unary(e, r.getKey());
+    }
+
+    private static Pair<Object, String> unary(IElement e, Object v)
+    {
+        switch (e.getName())
+        {
+            case "-":
+                return new Pair<Object, String>(-(Double) v, "");
+            case "~":
+                return new Pair<Object, String>((double) ~((Double) v).longValue(), "");
+            case "!":
+                return new Pair<Object, String>(!(Boolean) v, "");
+        }
+        return error(e, "未知操作符 '" + e.getName() + "'");
+    }
+
+    private Pair<Object, String> stepBinary(Task t, Pair<Object, String> r, EvaluationContext context)
+    {
+        IElement e = t.e;
+        String op = e.getName();
+        if (t.step == 0)
+        {
+            t.step = 1;
+            t.child = e.getParams().get(0).value;
+            return null;
+        }
+        if (r.getKey() == null)
+            return r;
+
+        if (t.step == 1)
+        {
+            if (shortCircuit(op, r.getKey()))
+                return r;
+
+            t.target = r.getKey();
+            t.step = 2;
+            t.child = e.getParams().get(1).value;
+            return null;
+        }
+        return binary(e, op, t.target, r, context);
+    }
+
+    //逻辑运算短路: 左值已能决定结果
+    private static boolean shortCircuit(String op, Object v1)
+    {
+        if (op.equals("&&"))
+            return !(Boolean) v1;
+        if (op.equals("||"))
+            return (Boolean) v1;
+        return false;
+    }
+
+    //二元运算的结果, r2 为右值
+    private static Pair<Object, String> binary(IElement e, String op, Object v1, Pair<Object, String> r2, EvaluationContext context)
+    {
+        Object v2 = r2.getKey();
+        if (op.equals("&&") || op.equals("||"))
+            return r2;
+
+        if (v1 instanceof String || v2 instanceof String)
+        {
+            if (op.equals("+"))
+            {
+                String v = toString(v1) + toString(v2);
+                EvaluationBudget budget = context.getBudget();
+                if (budget != null && !budget.allocate(2L * v.length()))
+                    return exceeded(e, budget);
+                return new Pair<Object, String>(v, "");
+            }
+            if (op.equals("=="))
+                return new Pair<Object, String>(v1.equals(v2), "");
+            if (op.equals("!="))
+                return new Pair<Object, String>(!v1.equals(v2), "");
+            return error(e, "操作符 '" + op + "' 不能作用于字符串");
+        }
+
+        if (!(v1 instanceof Double) || !(v2 instanceof Double))
+        {
+            if (op.equals("=="))
+                return new Pair<Object, String>(v1.equals(v2), "");
+            if (op.equals("!="))
+                return new Pair<Object, String>(!v1.equals(v2), "");
+            return error(e, "操作符 '" + op + "' 不能作用于 '" + e.getParams().get(0).value.getResultType().getName() + "'");
+        }
+
+        Object v = binary(op, (Double) v1, (Double) v2);
+        if (v == null)
+            return error(e, "未知操作符 '" + op + "'");
+        return new Pair<>(v, "");
+    }
+
+    //数字的二元运算, 位运算按 long 计算; 未知操作符返回 null
+    static Object binary(String op, double a, double b)
+    {
+        switch (op)
+        {
+            case "+": return a + b;
+            case "-": return a - b;
+            case "*": return a * b;
+            case "/": return a / b;
+            case "%": return a % b;
+            case ">": return a > b;
+            case ">=": return a >= b;
+            case "<": return a < b;
+            case "<=": return a <= b;
+            case "==": return a == b;
+            case "!=": return a != b;
+            case "&": return (double) ((long) a & (long) b);
+            case "|": return (double) ((long) a | (long) b);
+            case "^": return (double) ((long) a ^ (long) b);
+            case "<<": return (double) ((long) a << (long) b);
+            case ">>": return (double) ((long) a >> (long) b);
+        }
+        return null;
+    }
+
+    /*
+    * 函数调用, step: 1 为正在求值调用对象, 2 为正在求值参数
+    * 聚合函数及窗口函数分别转到 stepAggregate、stepWindow
+    * */
+    private Pair<Object, String> stepFunction(Task t, Pair<Object, String> r, EvaluationContext context)
+    {
+        FunctionElement f = (FunctionElement) t.e;
+        if (t.step == 0)
+        {
+            FunctionImplementation impl = library.lookup(f.getName());
+            if (impl == null)
+                return error(f, "函数 '" + f.getName() + "' 未实现");
+            t.impl = impl;
+
+            //聚合函数的调用对象为过滤函数链时, 融合为一次遍历
+            if (impl instanceof AggregateFunction)
+                return stepAggregate(t, null);
+
+            if (impl instanceof WindowFunction)
+            {
+                if (context.getWindowStore() == null)
+                    return error(f, "窗口函数 '" + f.getName() + "' 只能在流求值中使用");
+            }
+            else if (f.getLeading() instanceof FunctionElement.ExpressionLeading)
+            {
+                t.step = 1;
+                t.child = ((FunctionElement.ExpressionLeading) f.getLeading()).getElement();
+                return null;
+            }
+            t.values = new Object[f.getParams().size()];
+            t.step = 2;
+        }
+        else if (t.impl instanceof AggregateFunction)
+            return stepAggregate(t, r);
+        else
+        {
+            if (r.getKey() == null)
+                return r;
+            if (t.step == 1)
+            {
+                t.target = r.getKey();
+                t.values = new Object[f.getParams().size()];
+                t.step = 2;
+            }
+            else
+                t.values[t.index++] = r.getKey();
+        }
+
+        if (t.index < t.values.length)
+        {
+            t.child = f.getParams().get(t.index).value;
+            return null;
+        }
+
+        if (t.impl instanceof WindowFunction)
+            return window(f, (WindowFunction) t.impl, t.values, context);
+
+        Pair<Object, String> ret = t.impl.invoke(context, t.target, t.values);
+        if (ret.getKey() == null)
+        {
+            if (context.getBudget() != null && context.getBudget().isExceeded())
+                return exceeded(f, context.getBudget());
+            return error(f, ret.getValue());
+        }
+        return ret;
+    }
+
+    /*
+    * 如 getMeasuringValue(...).filterAbove(10).filterBelow(100).sum()
+    * 从聚合函数沿调用对象向内收集连续的过滤函数, 对最内层的 SamplePointList 只遍历一次,
+    * 依次经过各过滤条件后直接聚合, 不生成中间列表
+    * step: 2 为正在求值 t.current 的参数, 3 为正在求值最内层的调用对象
+    * */
+    private Pair<Object, String> stepAggregate(Task t, Pair<Object, String> r)
+    {
+        FunctionElement f = (FunctionElement) t.e;
+        if (t.step == 0)
+        {
+            if (!(f.getLeading() instanceof FunctionElement.ExpressionLeading))
+                return error(f, "函数 '" + f.getName() + "' 缺少调用对象");
+            t.filters = new ArrayList<>();
+            t.child = ((FunctionElement.ExpressionLeading) f.getLeading()).getElement();
+        }
+        else
+        {
+            if (r.getKey() == null)
+                return r;
+            if (t.step == 3)
+            {
+                if (!(r.getKey() instanceof SamplePointList))
+                    return error(f, "函数 '" + f.getName() + "' 的调用对象不是 SamplePointList");
+                double v = ((AggregateFunction) t.impl).aggregate((SamplePointList) r.getKey(), t.filters.isEmpty() ? null : t.filters.toArray(new SampleFilter[0]));
+                return new Pair<Object, String>(v, "");
+            }
+            t.values[t.index++] = r.getKey();
+        }
+
+        //t.child 为下一个可能是过滤函数的调用对象
+        while (true)
+        {
+            if (t.current != null)
+            {
+                if (t.index < t.values.length)
+                {
+                    t.step = 2;
+                    t.child = t.current.getParams().get(t.index).value;
+                    return null;
+                }
+                FilterFunction filter = (FilterFunction) library.lookup(t.current.getName());
+                t.filters.add(0, filter.newFilter(t.values));
+                t.child = ((FunctionElement.ExpressionLeading) t.current.getLeading()).getElement();
+                t.current = null;
+            }
+
+            if (!(t.child instanceof FunctionElement))
+                break;
+            FunctionElement fe = (FunctionElement) t.child;
+            if (!(library.lookup(fe.getName()) instanceof FilterFunction) || !(fe.getLeading() instanceof FunctionElement.ExpressionLeading))
+                break;
+            t.current = fe;
+            t.values = new Object[fe.getParams().size()];
+            t.index = 0;
+        }
+
+        t.step = 3;
+        return null;
+    }
+
+    //窗口函数: 当前样本加入本调用位置的窗口后取聚合结果
+    private static Pair<Object, String> window(FunctionElement f, WindowFunction window, Object[] args, EvaluationContext context)
+    {
+        long length = ((Double) args[1]).longValue();
+        if (length <= 0)
+            return error(f, "窗口长度必须大于 0");
+
+        SlidingWindow w = context.getWindowStore().get(f, window.isCountBased(), length);
+        w.add(context.getSampleTime(), (Double) args[0]);
+        return new Pair<Object, String>(window.result(w), "");
+    }
+
+    //let 表达式: 绑定在首次被引用时求值, 同一次求值中之后的引用直接取值
+    private static Pair<Object, String> stepLet(Task t, Pair<Object, String> r, EvaluationContext context)
+    {
+        LetElement let = (LetElement) t.e;
+        if (t.step == 0)
+        {
+            t.frame = enterLet(let, context);
+            t.step = 1;
+            t.child = let.getBody();
+            return null;
+        }
+        context.setLetFrame(t.frame.previous);
+        return r;
+    }
+
+    private static LetFrame enterLet(LetElement let, EvaluationContext context)
+    {
+        LetFrame frame = new LetFrame(let, new Object[let.getBindingCount()], context.getLetFrame());
+        context.setLetFrame(frame);
+        return frame;
+    }
+
+    private static Pair<Object, String> unbound(BindingElement b)
+    {
+        return error(b, "绑定 '" + b.getName() + "' 不在 let 作用域内");
+    }
+
+    private static Pair<Object, String> stepBinding(Task t, Pair<Object, String> r, EvaluationContext context)
+    {
+        BindingElement b = (BindingElement) t.e;
+        if (t.step == 0)
+        {
+            LetFrame frame = LetFrame.find(context.getLetFrame(), b.getSlot(), b.getValue());
+            if (frame == null)
+                return unbound(b);
+
+            Object v = frame.values[b.getSlot()];
+            if (v != null)
+                return new Pair<>(v, "");
+
+            t.frame = frame;
+            t.step = 1;
+            t.child = b.getValue();
+            return null;
+        }
+        if (r.getKey() != null)
+            t.frame.values[b.getSlot()] = r.getKey();
+        return r;
+    }
+
+    static String toString(Object v)
+    {
+        if (v instanceof Double)
+        {
+            double d = (Double) v;
+            if (d == Math.rint(d) && Math.abs(d) < 1e15)
+                return Long.toString((long) d);
+            return Double.toString(d);
+        }
+        return String.valueOf(v);
+    }
+
+    private static Pair<Object, String> error(IElement e, String message)
+    {
+        return new Pair<>(null, "[" + e.getLine() + ":" + e.getColumn() + "]: " + message);
+    }
+
+    static Pair<Object, String> exceeded(IElement e, EvaluationBudget budget)
+    {
+        return error(e, "超出求值预算: " + budget.getReason());
+    }
+}
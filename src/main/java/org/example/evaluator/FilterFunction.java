@@ -0,0 +1,34 @@
+package org.example.evaluator;
+
+import javafx.util.Pair;
+import org.example.data.SamplePointList;
+
+/*
+*   SamplePointList 的过滤类成员函数, 如 filterAbove(10)
+*   单独调用时生成过滤后的列表; 作为聚合函数的调用对象时由 Evaluator 融合为一次遍历, 不生成中间列表
+* */
+public abstract class FilterFunction implements FunctionImplementation
+{
+    //根据参数创建过滤条件
+    public abstract SampleFilter newFilter(Object[] args);
+
+    @Override
+    public Pair<Object, String> invoke(EvaluationContext context, Object target, Object[] args)
+    {
+        SamplePointList list = (SamplePointList) target;
+        SampleFilter filter = newFilter(args);
+        SamplePointList ret = new SamplePointList();
+        SamplePointList.Cursor c = list.cursor();
+        while (c.next())
+        {
+            if (filter.accept(c.time(), c.value()))
+                ret.add(c.time(), c.value());
+        }
+
+        //与数据函数生成的列表一样计入预算
+        EvaluationBudget budget = context.getBudget();
+        if (budget != null && !budget.allocate(ret.memoryUsage()))
+            return new Pair<>(null, budget.getReason());
+        return new Pair<Object, String>(ret, "");
+    }
+}
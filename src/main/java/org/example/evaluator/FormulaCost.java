@@ -0,0 +1,176 @@
+package org.example.evaluator;
+
+import javafx.util.Pair;
+import org.example.analyzer.element.*;
+import org.example.data.Grouping;
+import org.example.data.SampleTime;
+
+import java.util.IdentityHashMap;
+
+/*
+*   公式开销的静态估计, 由编译后的元素树及函数定义中注册的 FunctionCost 计算, 不访问数据层
+*   普通节点的开销为 1; 函数调用为 base 加上每个样本的开销, 访问数据层的函数再乘以 fanOut
+*   数据函数的样本数由时间窗口估计: 窗口长度 / 采样间隔, 分组查询时不超过分组个数
+*   返回 SamplePointList 的成员函数(如过滤)按调用对象的样本数传递, 其它成员函数(如聚合)消耗调用对象的样本
+*   时间窗口或分组规则不是字面值时按 defaultWindow 及不分组估计, 并标记为无界(isBounded 为 false)
+*   let 绑定的值只计算一次, 与求值时绑定只求值一次一致
+* */
+public class FormulaCost
+{
+    public static final long DEFAULT_SAMPLE_INTERVAL = 60000L;         //1 分钟
+    public static final long DEFAULT_WINDOW = 24 * 3600000L;           //1 天
+
+    private static final long[] BUCKETS = { 0, 3600000L, 24 * 3600000L, 30 * 24 * 3600000L, 365 * 24 * 3600000L };     //各分组规则的近似长度
+    private static final Object ABSENT = new Object();
+    private static final Object NOT_LITERAL = new Object();
+
+    private final int[] nodes = new int[ElementType.ELEMENT_TYPE_BINDING + 1];
+    private double cost = 0;
+    private long dataCalls = 0;
+    private double samples = 0;         //数据函数查询出的样本总数
+    private boolean bounded = true;
+
+    private FormulaCost()
+    {
+    }
+
+    public static FormulaCost of(IElement e, FunctionElementFactory funcFactory)
+    {
+        return of(e, funcFactory, DEFAULT_SAMPLE_INTERVAL, DEFAULT_WINDOW);
+    }
+
+    //sampleInterval 为数据的平均采样间隔(毫秒), defaultWindow 为时间窗口不是字面值时假定的窗口长度(毫秒)
+    public static FormulaCost of(IElement e, final FunctionElementFactory funcFactory, final long sampleInterval, final long defaultWindow)
+    {
+        final FormulaCost ret = new FormulaCost();
+        final IdentityHashMap<IElement, Double> lists = new IdentityHashMap<>();       //返回 SamplePointList 的节点的样本数
+        ElementTraversal.walk(e, true, new ElementTraversal.Visitor()
+        {
+            @Override
+            public boolean leave(IElement e)
+            {
+                ret.nodes[e.getType()]++;
+                if (e.getType() != ElementType.ELEMENT_TYPE_FUNCTION)
+                {
+                    ret.cost += 1;
+                    return true;
+                }
+
+                FunctionCost c = funcFactory.getCost(e.getName());
+                //调用对象为绑定引用时取被绑定表达式的样本数, 每次引用都遍历一次
+                IElement receiver = ElementTraversal.receiver(e);
+                if (receiver instanceof BindingElement)
+                    receiver = ((BindingElement) receiver).getValue();
+                Double in = receiver == null ? null : lists.get(receiver);
+                double n = in == null ? 0 : in;
+
+                int calls = 1;
+                if (c.getFanOut() > 0)
+                {
+                    calls = c.getFanOut();
+                    ret.dataCalls += calls;
+                    if (c.getStartParam() >= 0)
+                    {
+                        n = ret.samples(e, c, sampleInterval, defaultWindow);
+                        ret.samples += n * calls;
+                    }
+                }
+                ret.cost += calls * (c.getBase() + c.getPerSample() * n);
+
+                if (e.getResultType() != null && FunctionLibrary.CLASS_SAMPLE_POINT_LIST.equals(e.getResultType().getName()))
+                    lists.put(e, n * calls);
+                return true;
+            }
+        });
+        return ret;
+    }
+
+    //一次数据调用的样本数
+    private double samples(IElement f, FunctionCost c, long sampleInterval, long defaultWindow)
+    {
+        long window = -1;
+        Object start = literal(f, c.getStartParam());
+        Object end = literal(f, c.getEndParam());
+        if (start instanceof String && (end instanceof String || end == ABSENT))
+        {
+            Pair<Long, String> s = SampleTime.parse((String) start, Long.MIN_VALUE);
+            //未指定结束时间时到当前时间为止
+            Pair<Long, String> t = end == ABSENT ? new Pair<>(System.currentTimeMillis(), "") : SampleTime.parse((String) end, Long.MAX_VALUE);
+            if (s.getKey() != null && t.getKey() != null && s.getKey() != Long.MIN_VALUE && t.getKey() != Long.MAX_VALUE)
+                window = Math.max(t.getKey() - s.getKey(), 0);
+        }
+        if (window < 0)
+        {
+            bounded = false;
+            window = defaultWindow;
+        }
+
+        double n = (double) window / Math.max(sampleInterval, 1);
+        Object g = literal(f, c.getGroupingParam());
+        if (g instanceof Double)
+        {
+            int grouping = ((Double) g).intValue();
+            if (Grouping.isValid(grouping) && grouping != Grouping.GROUP_ALL)
+                n = Math.min(n, Math.ceil((double) window / BUCKETS[grouping]));
+        }
+        else if (g != ABSENT)
+        {
+            bounded = false;
+        }
+        return n;
+    }
+
+    //参数的字面值; 没有该参数或参数未给出时为 ABSENT, 不是字面值时为 NOT_LITERAL
+    private static Object literal(IElement f, int index)
+    {
+        if (index < 0 || index >= f.getParams().size() || f.getParams().get(index).value == null)
+            return ABSENT;
+        IElement v = f.getParams().get(index).value;
+        Object ret = v instanceof LiteralConstantElement ? ((LiteralConstantElement) v).getValue() : null;
+        return ret == null ? NOT_LITERAL : ret;
+    }
+
+    //估计的总开销
+    public double getCost()
+    {
+        return cost;
+    }
+
+    //访问数据层的次数(含扇出)
+    public long getDataCalls()
+    {
+        return dataCalls;
+    }
+
+    //数据函数查询出的样本总数
+    public double getSamples()
+    {
+        return samples;
+    }
+
+    //时间窗口及分组规则是否都是字面值
+    public boolean isBounded()
+    {
+        return bounded;
+    }
+
+    //type 为 ElementType.ELEMENT_TYPE_*
+    public int getNodeCount(int type)
+    {
+        return nodes[type];
+    }
+
+    public int getNodeCount()
+    {
+        int n = 0;
+        for (int c : nodes)
+            n += c;
+        return n;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("cost %.1f, nodes %d, data calls %d, samples %.0f%s", cost, getNodeCount(), dataCalls, samples, bounded ? "" : ", unbounded");
+    }
+}
@@ -0,0 +1,16 @@
+package org.example.evaluator;
+
+import javafx.util.Pair;
+
+/*
+*   函数的实现, 与 FunctionElementFactory 中注册的函数定义通过 name(类名.函数名) 对应
+* */
+public interface FunctionImplementation
+{
+    /*
+    * target 为成员函数的调用对象(E.FUNC 中 E 的值), 类函数及全局函数为 null
+    * args 为已求值的参数, 与函数定义的参数一一对应
+    * 返回值的 key 为结果, 出错时 key 为 null, value 为错误提示
+    * */
+    Pair<Object, String> invoke(EvaluationContext context, Object target, Object[] args);
+}
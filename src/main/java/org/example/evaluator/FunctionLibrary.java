@@ -0,0 +1,392 @@
+package org.example.evaluator;
+
+import javafx.util.Pair;
+import org.example.data.CancellableDataProvider;
+import org.example.data.DataProvider;
+import org.example.data.MetadataProvider;
+import org.example.data.SamplePointList;
+import org.example.data.SeriesKey;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+*   函数实现表, key 为函数的 name(类名.函数名), 如 math.sin, SamplePointList.sum
+* */
+public class FunctionLibrary
+{
+    static final public String CLASS_MATH = "math";
+    static final public String CLASS_SAMPLE_POINT_LIST = "SamplePointList";
+    static final public String CLASS_WINDOW = "window";
+
+    private Map<String, FunctionImplementation> implementations = new HashMap<>();
+
+    public FunctionLibrary()
+    {
+
+    }
+
+    public void register(String name, FunctionImplementation implementation)
+    {
+        implementations.put(name, implementation);
+    }
+
+    public FunctionImplementation lookup(String name)
+    {
+        return implementations.get(name);
+    }
+
+    //一元数学函数
+    static abstract class MathFunction implements FunctionImplementation
+    {
+        abstract double apply(double v);
+
+        @Override
+        public Pair<Object, String> invoke(EvaluationContext context, Object target, Object[] args)
+        {
+            return new Pair<Object, String>(apply((Double) args[0]), "");
+        }
+    }
+
+    //二元数学函数
+    static abstract class BinaryMathFunction implements FunctionImplementation
+    {
+        abstract double apply(double v1, double v2);
+
+        @Override
+        public Pair<Object, String> invoke(EvaluationContext context, Object target, Object[] args)
+        {
+            return new Pair<Object, String>(apply((Double) args[0], (Double) args[1]), "");
+        }
+    }
+
+    //内置函数: 数学函数、数据函数、SamplePointList 的聚合/过滤成员函数及窗口函数
+    public static FunctionLibrary createDefault()
+    {
+        FunctionLibrary library = new FunctionLibrary();
+        registerMath(library);
+        registerData(library);
+        registerSamplePointList(library);
+        registerWindow(library);
+        return library;
+    }
+
+    private static void registerMath(FunctionLibrary library)
+    {
+        library.register(CLASS_MATH + ".abs", new MathFunction() { double apply(double v) { return Math.abs(v); } });
+        library.register(CLASS_MATH + ".round", new MathFunction() { double apply(double v) { return Math.round(v); } });
+        library.register(CLASS_MATH + ".floor", new MathFunction() { double apply(double v) { return Math.floor(v); } });
+        library.register(CLASS_MATH + ".ceil", new MathFunction() { double apply(double v) { return Math.ceil(v); } });
+        library.register(CLASS_MATH + ".sqrt", new MathFunction() { double apply(double v) { return Math.sqrt(v); } });
+        library.register(CLASS_MATH + ".log", new MathFunction() { double apply(double v) { return Math.log(v); } });
+        library.register(CLASS_MATH + ".log10", new MathFunction() { double apply(double v) { return Math.log10(v); } });
+        library.register(CLASS_MATH + ".sin", new MathFunction() { double apply(double v) { return Math.sin(v); } });
+        library.register(CLASS_MATH + ".cos", new MathFunction() { double apply(double v) { return Math.cos(v); } });
+        library.register(CLASS_MATH + ".tan", new MathFunction() { double apply(double v) { return Math.tan(v); } });
+        library.register(CLASS_MATH + ".atan", new MathFunction() { double apply(double v) { return Math.atan(v); } });
+        library.register(CLASS_MATH + ".acos", new MathFunction() { double apply(double v) { return Math.acos(v); } });
+        library.register(CLASS_MATH + ".asin", new MathFunction() { double apply(double v) { return Math.asin(v); } });
+        library.register(CLASS_MATH + ".pow", new BinaryMathFunction() { double apply(double v1, double v2) { return Math.pow(v1, v2); } });
+    }
+
+    private static void registerData(FunctionLibrary library)
+    {
+        //getQuantity(测量点id, 测量编码, 测量编号, 开始时间, 结束时间)
+        library.register("getQuantity", new FunctionImplementation()
+        {
+            @Override
+            public Pair<Object, String> invoke(EvaluationContext context, Object target, Object[] args)
+            {
+                DataProvider provider = context.getDataProvider();
+                if (provider == null)
+                    return new Pair<>(null, "未设置数据层");
+                EvaluationBudget budget = context.getBudget();
+                if (budget != null && !budget.enterDataCall())
+                    return new Pair<>(null, budget.getReason());
+
+                Pair<Double, String> r = provider.getQuantity(context.resolvePointId((Double) args[0]),
+                        ((Double) args[1]).longValue(), ((Double) args[2]).longValue(), (String) args[3], (String) args[4]);
+                return new Pair<Object, String>(r.getKey(), r.getValue());
+            }
+        });
+
+        //getMeasuringValue(测量点id, 测量编码, 测量编号, 开始时间, 结束时间, 分组规则)
+        library.register("getMeasuringValue", new FunctionImplementation()
+        {
+            @Override
+            public Pair<Object, String> invoke(EvaluationContext context, Object target, Object[] args)
+            {
+                DataProvider provider = context.getDataProvider();
+                if (provider == null)
+                    return new Pair<>(null, "未设置数据层");
+                EvaluationBudget budget = context.getBudget();
+                if (budget != null && !budget.enterDataCall())
+                    return new Pair<>(null, budget.getReason());
+
+                //设置了预算时, 查询过程中可以被取消
+                long pointId = context.resolvePointId((Double) args[0]);
+                long measureCode = ((Double) args[1]).longValue(), measureNo = ((Double) args[2]).longValue();
+                int grouping = ((Double) args[5]).intValue();
+                Pair<SamplePointList, String> r;
+                if (budget != null && provider instanceof CancellableDataProvider)
+                    r = ((CancellableDataProvider) provider).getMeasuringValue(pointId, measureCode, measureNo, (String) args[3], (String) args[4], grouping, budget);
+                else
+                    r = provider.getMeasuringValue(pointId, measureCode, measureNo, (String) args[3], (String) args[4], grouping);
+
+                if (budget != null && r.getKey() != null && !budget.allocate(r.getKey().memoryUsage()))
+                    return new Pair<>(null, budget.getReason());
+                return new Pair<Object, String>(r.getKey(), r.getValue());
+            }
+        });
+
+        //getMeasureParamValue(测量点id, 属性名称)
+        library.register("getMeasureParamValue", new FunctionImplementation()
+        {
+            @Override
+            public Pair<Object, String> invoke(EvaluationContext context, Object target, Object[] args)
+            {
+                MetadataProvider provider = context.getMetadataProvider();
+                if (provider == null)
+                    return new Pair<>(null, "未设置元数据层");
+                EvaluationBudget budget = context.getBudget();
+                if (budget != null && !budget.enterDataCall())
+                    return new Pair<>(null, budget.getReason());
+
+                Pair<String, String> r = provider.getMeasureParam(context.resolvePointId((Double) args[0]), (String) args[1]);
+                return new Pair<Object, String>(r.getKey(), r.getValue());
+            }
+        });
+
+        //getRentalAreaProperty(场地id, 属性名称)
+        library.register("getRentalAreaProperty", new FunctionImplementation()
+        {
+            @Override
+            public Pair<Object, String> invoke(EvaluationContext context, Object target, Object[] args)
+            {
+                MetadataProvider provider = context.getMetadataProvider();
+                if (provider == null)
+                    return new Pair<>(null, "未设置元数据层");
+                EvaluationBudget budget = context.getBudget();
+                if (budget != null && !budget.enterDataCall())
+                    return new Pair<>(null, budget.getReason());
+
+                Pair<String, String> r = provider.getRentalAreaProperty(((Double) args[0]).longValue(), (String) args[1]);
+                return new Pair<Object, String>(r.getKey(), r.getValue());
+            }
+        });
+
+        //getQuantityByContainer(测量点id, 容器名称, 测量项名称, 开始时间, 结束时间): 容器中该测量项各序列的用量之和, 每个序列计一次数据调用
+        library.register("getQuantityByContainer", new FunctionImplementation()
+        {
+            @Override
+            public Pair<Object, String> invoke(EvaluationContext context, Object target, Object[] args)
+            {
+                DataProvider provider = context.getDataProvider();
+                if (provider == null)
+                    return new Pair<>(null, "未设置数据层");
+                MetadataProvider metadata = context.getMetadataProvider();
+                if (metadata == null)
+                    return new Pair<>(null, "未设置元数据层");
+
+                Pair<List<SeriesKey>, String> series = metadata.getContainerSeries(context.resolvePointId((Double) args[0]), (String) args[1], (String) args[2]);
+                if (series.getKey() == null)
+                    return new Pair<>(null, series.getValue());
+
+                EvaluationBudget budget = context.getBudget();
+                double sum = 0;
+                for (SeriesKey key : series.getKey())
+                {
+                    if (budget != null && !budget.enterDataCall())
+                        return new Pair<>(null, budget.getReason());
+                    Pair<Double, String> r = provider.getQuantity(key.getPointId(), key.getMeasureCode(), key.getMeasureNo(), (String) args[3], (String) args[4]);
+                    if (r.getKey() == null)
+                        return new Pair<>(null, r.getValue());
+                    sum += r.getKey();
+                }
+                return new Pair<Object, String>(sum, "");
+            }
+        });
+    }
+
+    private static void registerSamplePointList(FunctionLibrary library)
+    {
+        String prefix = CLASS_SAMPLE_POINT_LIST + ".";
+
+        library.register(prefix + "sum", new AggregateFunction()
+        {
+            @Override
+            public SampleAggregator newAggregator()
+            {
+                return new SampleAggregator()
+                {
+                    double sum = 0;
+
+                    public void add(long time, double value) { sum += value; }
+
+                    public double result() { return sum; }
+                };
+            }
+        });
+
+        library.register(prefix + "count", new AggregateFunction()
+        {
+            @Override
+            public SampleAggregator newAggregator()
+            {
+                return new SampleAggregator()
+                {
+                    long count = 0;
+
+                    public void add(long time, double value) { count++; }
+
+                    public double result() { return count; }
+                };
+            }
+        });
+
+        //以下聚合在没有样本时结果为 NaN
+        library.register(prefix + "avg", new AggregateFunction()
+        {
+            @Override
+            public SampleAggregator newAggregator()
+            {
+                return new SampleAggregator()
+                {
+                    double sum = 0;
+                    long count = 0;
+
+                    public void add(long time, double value) { sum += value; count++; }
+
+                    public double result() { return count == 0 ? Double.NaN : sum / count; }
+                };
+            }
+        });
+
+        library.register(prefix + "min", new AggregateFunction()
+        {
+            @Override
+            public SampleAggregator newAggregator()
+            {
+                return new SampleAggregator()
+                {
+                    double min = Double.NaN;
+
+                    public void add(long time, double value) { if (Double.isNaN(min) || value < min) min = value; }
+
+                    public double result() { return min; }
+                };
+            }
+        });
+
+        library.register(prefix + "max", new AggregateFunction()
+        {
+            @Override
+            public SampleAggregator newAggregator()
+            {
+                return new SampleAggregator()
+                {
+                    double max = Double.NaN;
+
+                    public void add(long time, double value) { if (Double.isNaN(max) || value > max) max = value; }
+
+                    public double result() { return max; }
+                };
+            }
+        });
+
+        library.register(prefix + "first", new AggregateFunction()
+        {
+            @Override
+            public SampleAggregator newAggregator()
+            {
+                return new SampleAggregator()
+                {
+                    double first = Double.NaN;
+                    boolean found = false;
+
+                    public void add(long time, double value) { if (!found) { first = value; found = true; } }
+
+                    public double result() { return first; }
+                };
+            }
+        });
+
+        library.register(prefix + "last", new AggregateFunction()
+        {
+            @Override
+            public SampleAggregator newAggregator()
+            {
+                return new SampleAggregator()
+                {
+                    double last = Double.NaN;
+
+                    public void add(long time, double value) { last = value; }
+
+                    public double result() { return last; }
+                };
+            }
+        });
+
+        //filterAbove(x): 值大于 x 的样本
+        library.register(prefix + "filterAbove", new FilterFunction()
+        {
+            @Override
+            public SampleFilter newFilter(Object[] args)
+            {
+                final double threshold = (Double) args[0];
+                return new SampleFilter()
+                {
+                    public boolean accept(long time, double value) { return value > threshold; }
+                };
+            }
+        });
+
+        //filterBelow(x): 值小于 x 的样本
+        library.register(prefix + "filterBelow", new FilterFunction()
+        {
+            @Override
+            public SampleFilter newFilter(Object[] args)
+            {
+                final double threshold = (Double) args[0];
+                return new SampleFilter()
+                {
+                    public boolean accept(long time, double value) { return value < threshold; }
+                };
+            }
+        });
+
+        //filterBetween(下限, 上限): 值在 [下限, 上限] 内的样本
+        library.register(prefix + "filterBetween", new FilterFunction()
+        {
+            @Override
+            public SampleFilter newFilter(Object[] args)
+            {
+                final double low = (Double) args[0];
+                final double high = (Double) args[1];
+                return new SampleFilter()
+                {
+                    public boolean accept(long time, double value) { return value >= low && value <= high; }
+                };
+            }
+        });
+    }
+
+    /*
+    * window.sum/avg/min/max(值, 毫秒数): 时间窗口
+    * window.sumN/avgN/minN/maxN(值, 样本数): 样本数窗口
+    * */
+    private static void registerWindow(FunctionLibrary library)
+    {
+        String prefix = CLASS_WINDOW + ".";
+        boolean[] countBased = { false, true };
+        for (boolean c : countBased)
+        {
+            String suffix = c ? "N" : "";
+            library.register(prefix + "sum" + suffix, new WindowFunction(c) { public double result(SlidingWindow w) { return w.sum(); } });
+            library.register(prefix + "avg" + suffix, new WindowFunction(c) { public double result(SlidingWindow w) { return w.avg(); } });
+            library.register(prefix + "min" + suffix, new WindowFunction(c) { public double result(SlidingWindow w) { return w.min(); } });
+            library.register(prefix + "max" + suffix, new WindowFunction(c) { public double result(SlidingWindow w) { return w.max(); } });
+        }
+    }
+}
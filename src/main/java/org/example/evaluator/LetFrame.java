@@ -0,0 +1,32 @@
+package org.example.evaluator;
+
+import org.example.analyzer.element.LetElement;
+
+/*
+*   let 表达式的求值帧: 保存本次求值中各绑定的值, 未求值的绑定为 null
+*   帧按嵌套顺序串成链表, 由 EvaluationContext 持有栈顶
+* */
+class LetFrame
+{
+    final LetElement let;
+    final Object[] values;
+    final LetFrame previous;
+
+    LetFrame(LetElement let, Object[] values, LetFrame previous)
+    {
+        this.let = let;
+        this.values = values;
+        this.previous = previous;
+    }
+
+    //查找绑定所在的帧, 不在任何 let 作用域内时返回 null
+    static LetFrame find(LetFrame frame, int slot, Object value)
+    {
+        for (; frame != null; frame = frame.previous)
+        {
+            if (slot < frame.values.length && frame.let.getBindingValue(slot) == value)
+                return frame;
+        }
+        return null;
+    }
+}
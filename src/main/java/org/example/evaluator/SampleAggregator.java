@@ -0,0 +1,12 @@
+package org.example.evaluator;
+
+/*
+*   样本聚合器, 逐个接收样本, 最后给出聚合结果
+*   每次聚合使用一个新的实例
+* */
+public abstract class SampleAggregator
+{
+    public abstract void add(long time, double value);
+
+    public abstract double result();
+}
@@ -0,0 +1,7 @@
+package org.example.evaluator;
+
+//样本过滤条件, 用于 SamplePointList 的过滤类成员函数
+public interface SampleFilter
+{
+    boolean accept(long time, double value);
+}
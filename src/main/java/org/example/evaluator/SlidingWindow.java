@@ -0,0 +1,157 @@
+package org.example.evaluator;
+
+/*
+*   滑动窗口的增量聚合状态
+*   时间窗口保留时间在 (当前样本时间 - length, 当前样本时间] 内的样本, 样本数窗口保留最近 length 个样本
+*   样本按序号存放在环形数组中; 和随进出窗口增减, 最小/最大值各用一个单调队列(存放样本序号)维护,
+*   每个样本最多进出各队列一次, 更新的均摊复杂度为 O(1)
+*   值为 NaN 的样本不进入窗口
+* */
+public class SlidingWindow
+{
+    private final boolean countBased;
+    private final long length;
+
+    private long[] times = new long[16];
+    private double[] values = new double[16];
+    private long head = 0;      //窗口内第一个样本的序号
+    private long tail = 0;      //下一个样本的序号
+    private double sum = 0;
+
+    private long[] minQueue = new long[16];     //值单调递增的样本序号
+    private int minHead = 0, minSize = 0;
+    private long[] maxQueue = new long[16];     //值单调递减的样本序号
+    private int maxHead = 0, maxSize = 0;
+
+    public SlidingWindow(boolean countBased, long length)
+    {
+        this.countBased = countBased;
+        this.length = length;
+    }
+
+    public boolean isCountBased()
+    {
+        return countBased;
+    }
+
+    public long getLength()
+    {
+        return length;
+    }
+
+    public void add(long time, double value)
+    {
+        if (!Double.isNaN(value))
+        {
+            if (tail - head == times.length)
+                growSamples();
+            int slot = (int) (tail & (times.length - 1));
+            times[slot] = time;
+            values[slot] = value;
+            sum += value;
+
+            while (minSize > 0 && valueOf(minQueue[(minHead + minSize - 1) & (minQueue.length - 1)]) >= value)
+                minSize--;
+            if (minSize == minQueue.length)
+            {
+                minQueue = growQueue(minQueue, minHead, minSize);
+                minHead = 0;
+            }
+            minQueue[(minHead + minSize++) & (minQueue.length - 1)] = tail;
+
+            while (maxSize > 0 && valueOf(maxQueue[(maxHead + maxSize - 1) & (maxQueue.length - 1)]) <= value)
+                maxSize--;
+            if (maxSize == maxQueue.length)
+            {
+                maxQueue = growQueue(maxQueue, maxHead, maxSize);
+                maxHead = 0;
+            }
+            maxQueue[(maxHead + maxSize++) & (maxQueue.length - 1)] = tail;
+
+            tail++;
+        }
+        evict(time);
+    }
+
+    //移出窗口外的样本
+    private void evict(long now)
+    {
+        while (head < tail && (countBased ? tail - head > length : timeOf(head) <= now - length))
+        {
+            sum -= valueOf(head);
+            if (minSize > 0 && minQueue[minHead] == head)
+            {
+                minHead = (minHead + 1) & (minQueue.length - 1);
+                minSize--;
+            }
+            if (maxSize > 0 && maxQueue[maxHead] == head)
+            {
+                maxHead = (maxHead + 1) & (maxQueue.length - 1);
+                maxSize--;
+            }
+            head++;
+        }
+        //窗口清空时消除累计的舍入误差
+        if (head == tail)
+            sum = 0;
+    }
+
+    private long timeOf(long seq)
+    {
+        return times[(int) (seq & (times.length - 1))];
+    }
+
+    private double valueOf(long seq)
+    {
+        return values[(int) (seq & (values.length - 1))];
+    }
+
+    private void growSamples()
+    {
+        int n = times.length;
+        long[] t = new long[n << 1];
+        double[] v = new double[n << 1];
+        for (long seq = head; seq < tail; seq++)
+        {
+            t[(int) (seq & (t.length - 1))] = times[(int) (seq & (n - 1))];
+            v[(int) (seq & (v.length - 1))] = values[(int) (seq & (n - 1))];
+        }
+        times = t;
+        values = v;
+    }
+
+    //扩容后队列从下标 0 开始
+    private static long[] growQueue(long[] queue, int head, int size)
+    {
+        long[] q = new long[queue.length << 1];
+        for (int i = 0; i < size; i++)
+            q[i] = queue[(head + i) & (queue.length - 1)];
+        return q;
+    }
+
+    public int count()
+    {
+        return (int) (tail - head);
+    }
+
+    public double sum()
+    {
+        return sum;
+    }
+
+    //以下结果在窗口为空时为 NaN
+    public double avg()
+    {
+        return head == tail ? Double.NaN : sum / (tail - head);
+    }
+
+    public double min()
+    {
+        return minSize == 0 ? Double.NaN : valueOf(minQueue[minHead]);
+    }
+
+    public double max()
+    {
+        return maxSize == 0 ? Double.NaN : valueOf(maxQueue[maxHead]);
+    }
+}
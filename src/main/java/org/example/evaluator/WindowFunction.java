@@ -0,0 +1,32 @@
+package org.example.evaluator;
+
+import javafx.util.Pair;
+
+/*
+*   窗口聚合函数, 如 window.sum(v, 300000) 表示最近 5 分钟内 v 的和
+*   参数为 (值, 窗口长度), 时间窗口的长度单位为毫秒, 样本数窗口的长度为样本个数
+*   每次求值把当前样本(EvaluationContext 中的样本时间与第一个参数的值)加入窗口, 再给出窗口内的聚合结果
+*   状态保存在 EvaluationContext 的 WindowStore 中, 由 Evaluator 按调用位置取出
+* */
+public abstract class WindowFunction implements FunctionImplementation
+{
+    private final boolean countBased;
+
+    protected WindowFunction(boolean countBased)
+    {
+        this.countBased = countBased;
+    }
+
+    public boolean isCountBased()
+    {
+        return countBased;
+    }
+
+    public abstract double result(SlidingWindow window);
+
+    @Override
+    public Pair<Object, String> invoke(EvaluationContext context, Object target, Object[] args)
+    {
+        return new Pair<>(null, "窗口函数只能在流求值中使用");
+    }
+}
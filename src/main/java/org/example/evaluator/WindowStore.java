@@ -0,0 +1,36 @@
+package org.example.evaluator;
+
+import org.example.analyzer.element.IElement;
+
+import java.util.IdentityHashMap;
+
+/*
+*   窗口函数的状态, 每个调用位置(元素树中的函数元素)一个滑动窗口
+*   流求值时每个订阅(一个公式 + 一个样本流)持有一个 WindowStore, 不同公式、不同测量点的状态互不影响
+* */
+public class WindowStore
+{
+    private final IdentityHashMap<IElement, SlidingWindow> windows = new IdentityHashMap<>();
+
+    //窗口长度取第一次求值时的值
+    SlidingWindow get(IElement e, boolean countBased, long length)
+    {
+        SlidingWindow w = windows.get(e);
+        if (w == null)
+        {
+            w = new SlidingWindow(countBased, length);
+            windows.put(e, w);
+        }
+        return w;
+    }
+
+    public int size()
+    {
+        return windows.size();
+    }
+
+    public void clear()
+    {
+        windows.clear();
+    }
+}
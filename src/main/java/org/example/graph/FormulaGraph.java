@@ -0,0 +1,431 @@
+package org.example.graph;
+
+import javafx.util.Pair;
+import org.example.analyzer.element.*;
+import org.example.data.SeriesKey;
+import org.example.evaluator.EvaluationContext;
+import org.example.evaluator.Evaluator;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/*
+*   公式网络: 公式的结果以公式名作为变量供其它公式引用(如由实际表计组合出的虚拟表计)
+*   依赖从元素树的叶子中提取:
+*       变量元素     依赖同名的输入变量或公式
+*       数据函数     getQuantity/getMeasuringValue 的前三个参数为字面值时依赖对应的样本流, 否则依赖所有样本流
+*                   其它访问数据层的函数(FunctionCost.getFanOut() > 0, 如 getQuantityByContainer)依赖所有样本流
+*   公式之间的依赖构成有向无环图, 定义公式时检测环
+*   输入变量或样本流变化后, recompute 只重算受影响的下游公式, 按拓扑分层, 同一层的公式互不依赖, 可以并行求值
+*   公式引用其它公式时, 公式名需事先在 VariableElementFactory 中注册为变量, 否则无法通过语法分析
+* */
+public class FormulaGraph
+{
+    private static final Set<String> SERIES_FUNCTIONS = new HashSet<>(Arrays.asList("getQuantity", "getMeasuringValue"));     //前三个参数确定样本流的数据函数
+
+    private static class Node
+    {
+        final String name;
+        final IElement formula;
+        final Set<String> variables = new HashSet<>();      //引用的变量名, 其中同名公式即为上游公式
+        final Set<SeriesKey> series = new HashSet<>();      //依赖的样本流
+        boolean anySeries = false;      //依赖无法确定的样本流
+
+        Node(String name, IElement formula)
+        {
+            this.name = name;
+            this.formula = formula;
+        }
+    }
+
+    private final Evaluator evaluator;
+    private final EvaluationContext context;       //输入变量及公式结果
+    private final ExecutorService executor;
+    private final FunctionElementFactory funcFactory;      //查询函数开销, 判断是否为数据函数
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final Map<String, Set<String>> readers = new HashMap<>();      //变量名 -> 引用该变量的公式
+    private final Set<String> dirty = new HashSet<>();      //待重算的公式
+
+    /*
+    * context 提供输入变量、数据层及本测量点, 公式结果也写入 context
+    * executor 用于并行求值同一层的公式, 为 null 时顺序求值
+    * */
+    public FormulaGraph(Evaluator evaluator, EvaluationContext context, ExecutorService executor)
+    {
+        this(evaluator, context, executor, new FunctionElementFactory());
+    }
+
+    public FormulaGraph(Evaluator evaluator, EvaluationContext context, ExecutorService executor, FunctionElementFactory funcFactory)
+    {
+        this.evaluator = evaluator;
+        this.context = context;
+        this.executor = executor;
+        this.funcFactory = funcFactory;
+    }
+
+    //定义或替换公式, 产生环时返回错误且不做修改
+    public synchronized Pair<Boolean, String> define(String name, IElement formula)
+    {
+        Node node = new Node(name, formula);
+        collect(node, formula);
+
+        List<String> cycle = findCycle(node);
+        if (cycle != null)
+            return new Pair<>(false, "公式 '" + name + "' 产生循环依赖: " + join(cycle, " -> "));
+
+        Node old = nodes.put(name, node);
+        if (old != null)
+            unlink(old);
+        for (String v : node.variables)
+            readersOf(v).add(name);
+
+        markDirty(name);
+        return new Pair<>(true, "");
+    }
+
+    //删除公式, 仍被其它公式引用时返回错误
+    public synchronized Pair<Boolean, String> remove(String name)
+    {
+        Node node = nodes.get(name);
+        if (node == null)
+            return new Pair<>(false, "公式 '" + name + "' 不存在");
+
+        Set<String> r = readers.get(name);
+        if (r != null && !r.isEmpty())
+            return new Pair<>(false, "公式 '" + name + "' 被 " + join(r, ", ") + " 引用");
+
+        nodes.remove(name);
+        unlink(node);
+        dirty.remove(name);
+        return new Pair<>(true, "");
+    }
+
+    //设置输入变量, 引用它的公式及其下游在下次 recompute 时重算
+    public synchronized void setInput(String name, Object value)
+    {
+        context.setVariable(name, value);
+        Set<String> r = readers.get(name);
+        if (r != null)
+        {
+            for (String f : r)
+                markDirty(f);
+        }
+    }
+
+    //样本流 key 的数据发生变化
+    public synchronized void invalidateSeries(SeriesKey key)
+    {
+        for (Node n : nodes.values())
+        {
+            if (n.anySeries || n.series.contains(key))
+                markDirty(n.name);
+        }
+    }
+
+    public synchronized Object getValue(String name)
+    {
+        return nodes.containsKey(name) ? context.getVariable(name) : null;
+    }
+
+    public synchronized boolean isDirty(String name)
+    {
+        return dirty.contains(name);
+    }
+
+    //直接引用的上游公式
+    public synchronized List<String> dependenciesOf(String name)
+    {
+        ArrayList<String> ret = new ArrayList<>();
+        Node n = nodes.get(name);
+        if (n != null)
+        {
+            for (String v : n.variables)
+            {
+                if (nodes.containsKey(v))
+                    ret.add(v);
+            }
+        }
+        Collections.sort(ret);
+        return ret;
+    }
+
+    //直接引用它的下游公式
+    public synchronized List<String> dependentsOf(String name)
+    {
+        Set<String> r = readers.get(name);
+        ArrayList<String> ret = r == null ? new ArrayList<String>() : new ArrayList<>(r);
+        Collections.sort(ret);
+        return ret;
+    }
+
+    /*
+    * 重算受影响的公式, 返回值的 key 为重算的公式个数
+    * 出错的公式结果被清除, 其下游也会因变量未赋值而出错; value 为所有错误, 以换行分隔
+    * */
+    public synchronized Pair<Integer, String> recompute()
+    {
+        if (dirty.isEmpty())
+            return new Pair<>(0, "");
+
+        //受影响的公式中, 每个公式未重算的上游个数
+        Map<String, Integer> pending = new HashMap<>();
+        for (String name : dirty)
+        {
+            int n = 0;
+            for (String v : nodes.get(name).variables)
+            {
+                if (dirty.contains(v))
+                    n++;
+            }
+            pending.put(name, n);
+        }
+
+        ArrayList<String> level = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : pending.entrySet())
+        {
+            if (entry.getValue() == 0)
+                level.add(entry.getKey());
+        }
+
+        int count = 0;
+        StringBuilder errors = new StringBuilder();
+        while (!level.isEmpty())
+        {
+            List<Pair<Object, String>> results = evaluateLevel(level);
+            ArrayList<String> next = new ArrayList<>();
+            for (int i = 0; i < level.size(); i++)
+            {
+                String name = level.get(i);
+                Pair<Object, String> r = results.get(i);
+                if (r.getKey() == null)
+                {
+                    context.setVariable(name, null);
+                    if (errors.length() > 0)
+                        errors.append('\n');
+                    errors.append(name).append(": ").append(r.getValue());
+                }
+                else
+                {
+                    context.setVariable(name, r.getKey());
+                }
+                dirty.remove(name);
+                count++;
+
+                Set<String> r2 = readers.get(name);
+                if (r2 == null)
+                    continue;
+                for (String d : r2)
+                {
+                    Integer p = pending.get(d);
+                    if (p == null)
+                        continue;
+                    pending.put(d, p - 1);
+                    if (p == 1)
+                        next.add(d);
+                }
+            }
+            level = next;
+        }
+        return new Pair<>(count, errors.toString());
+    }
+
+    private List<Pair<Object, String>> evaluateLevel(List<String> level)
+    {
+        ArrayList<Pair<Object, String>> results = new ArrayList<>();
+        if (executor == null || level.size() == 1)
+        {
+            for (String name : level)
+                results.add(evaluate(name));
+            return results;
+        }
+
+        ArrayList<Callable<Pair<Object, String>>> tasks = new ArrayList<>();
+        for (final String name : level)
+        {
+            tasks.add(new Callable<Pair<Object, String>>()
+            {
+                @Override
+                public Pair<Object, String> call()
+                {
+                    return evaluate(name);
+                }
+            });
+        }
+
+        try
+        {
+            for (Future<Pair<Object, String>> f : executor.invokeAll(tasks))
+                results.add(f.get());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            results.clear();
+            for (int i = 0; i < level.size(); i++)
+                results.add(new Pair<Object, String>(null, "重算被中断"));
+        }
+        catch (ExecutionException e)
+        {
+            results.clear();
+            for (int i = 0; i < level.size(); i++)
+                results.add(new Pair<Object, String>(null, "求值失败: " + e.getCause()));
+        }
+        return results;
+    }
+
+    //同一层的公式并行求值时只读取 context, 各自使用一份副本
+    private Pair<Object, String> evaluate(String name)
+    {
+        Node n = nodes.get(name);
+        for (String v : n.variables)
+        {
+            if (nodes.containsKey(v) && context.getVariable(v) == null)
+                return new Pair<>(null, "上游公式 '" + v + "' 没有结果");
+        }
+        return evaluator.evaluate(n.formula, executor == null ? context : new EvaluationContext(context));
+    }
+
+    //标记 name 及其所有下游公式, 用工作表代替递归, 长的公式链不会耗尽线程栈
+    private void markDirty(String name)
+    {
+        ArrayDeque<String> work = new ArrayDeque<>();
+        work.add(name);
+        while (!work.isEmpty())
+        {
+            String f = work.poll();
+            if (!dirty.add(f))
+                continue;
+            Set<String> r = readers.get(f);
+            if (r != null)
+                work.addAll(r);
+        }
+    }
+
+    private Set<String> readersOf(String variable)
+    {
+        Set<String> r = readers.get(variable);
+        if (r == null)
+        {
+            r = new HashSet<>();
+            readers.put(variable, r);
+        }
+        return r;
+    }
+
+    private void unlink(Node node)
+    {
+        for (String v : node.variables)
+        {
+            Set<String> r = readers.get(v);
+            if (r == null)
+                continue;
+            r.remove(node.name);
+            if (r.isEmpty())
+                readers.remove(v);
+        }
+    }
+
+    //从 node 出发沿上游公式查找回到 node 的路径, 不存在时返回 null
+    //深度优先, 每层的迭代器保存在 stack 中, path 与 stack 一一对应
+    private List<String> findCycle(Node node)
+    {
+        ArrayList<String> path = new ArrayList<>();
+        ArrayList<Iterator<String>> stack = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        path.add(node.name);
+        stack.add(node.variables.iterator());
+        while (!stack.isEmpty())
+        {
+            Iterator<String> it = stack.get(stack.size() - 1);
+            if (!it.hasNext())
+            {
+                stack.remove(stack.size() - 1);
+                path.remove(path.size() - 1);
+                continue;
+            }
+
+            String v = it.next();
+            if (v.equals(node.name))
+            {
+                path.add(v);
+                return path;
+            }
+            Node n = nodes.get(v);
+            if (n == null || !visited.add(v))
+                continue;
+            path.add(v);
+            stack.add(n.variables.iterator());
+        }
+        return null;
+    }
+
+    private void collect(final Node node, IElement root)
+    {
+        if (root == null)
+            return;
+
+        ElementTraversal.walk(root, true, new ElementTraversal.Visitor()
+        {
+            @Override
+            public int enter(IElement e)
+            {
+                collectNode(node, e);
+                return ElementTraversal.CONTINUE;
+            }
+        });
+    }
+
+    private void collectNode(Node node, IElement e)
+    {
+        if (e.getType() == ElementType.ELEMENT_TYPE_VARIABLE)
+            node.variables.add(e.getName());
+
+        if (e.getType() == ElementType.ELEMENT_TYPE_FUNCTION)
+        {
+            FunctionElement f = (FunctionElement) e;
+            if (SERIES_FUNCTIONS.contains(f.getName()))
+            {
+                SeriesKey key = seriesOf(f);
+                if (key == null)
+                    node.anySeries = true;
+                else
+                    node.series.add(key);
+            }
+            else if (funcFactory.getCost(f.getName()).getFanOut() > 0)
+            {
+                node.anySeries = true;
+            }
+        }
+    }
+
+    //数据函数的 测量点id/测量编码/测量编号 均为字面值时返回对应的样本流
+    private SeriesKey seriesOf(FunctionElement f)
+    {
+        long[] ids = new long[3];
+        for (int i = 0; i < 3; i++)
+        {
+            if (f.getParams().size() <= i)
+                return null;
+            IElement p = f.getParams().get(i).value;
+            if (!(p instanceof LiteralConstantElement) || !(((LiteralConstantElement) p).getValue() instanceof Double))
+                return null;
+            ids[i] = ((Double) ((LiteralConstantElement) p).getValue()).longValue();
+        }
+        return new SeriesKey(ids[0] == 0 ? context.getPointId() : ids[0], ids[1], ids[2]);
+    }
+
+    private static String join(Collection<String> names, String separator)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (String n : names)
+        {
+            if (sb.length() > 0)
+                sb.append(separator);
+            sb.append(n);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,225 @@
+package org.example.library;
+
+import javafx.util.Pair;
+import org.example.analyzer.Analyzer;
+import org.example.analyzer.BulkCompiler;
+import org.example.analyzer.element.ClassDictionary;
+import org.example.analyzer.element.FunctionElementFactory;
+import org.example.analyzer.element.IElement;
+import org.example.analyzer.element.VariableElementFactory;
+import org.example.evaluator.AdmissionPolicy;
+import org.example.evaluator.FormulaCost;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+*   公式库: 按名称保存公式的源码及编译后的元素树, 编译时同步维护符号倒排索引
+*   变量、函数或 Class 接收规则变化后, 通过索引找出受影响的公式并只重新编译这些公式
+*   编译结果逐个原子地替换, get 不加锁, 求值线程在重新编译期间不会被阻塞
+*   编译成功的公式同时估计开销(FormulaCost); 设置了准入策略时, 未被接受的公式按编译失败处理
+* */
+public class FormulaRepository
+{
+    private final FunctionElementFactory funcFactory;
+    private final VariableElementFactory varFactory;
+    private final ClassDictionary classDictionary;
+
+    private final Map<String, String> sources = new HashMap<>();
+    private final ConcurrentHashMap<String, IElement> compiled = new ConcurrentHashMap<>();     //当前生效的编译结果
+    private final Map<String, String> errors = new HashMap<>();       //最近一次编译失败的公式及错误提示
+    private final SymbolIndex index = new SymbolIndex();
+    private final ConcurrentHashMap<String, FormulaCost> costs = new ConcurrentHashMap<>();     //当前生效的编译结果的开销
+    private AdmissionPolicy admission = null;
+
+    public FormulaRepository(FunctionElementFactory funcFactory, VariableElementFactory varFactory, ClassDictionary classDictionary)
+    {
+        this.funcFactory = funcFactory;
+        this.varFactory = varFactory;
+        this.classDictionary = classDictionary;
+    }
+
+    public SymbolIndex getIndex()
+    {
+        return index;
+    }
+
+    //之后编译的公式按 admission 准入, 为 null 时全部接受; 不影响已编译的公式
+    public synchronized void setAdmission(AdmissionPolicy admission)
+    {
+        this.admission = admission;
+    }
+
+    //当前生效的编译结果的开销估计, 不加锁
+    public FormulaCost getCost(String name)
+    {
+        return costs.get(name);
+    }
+
+    /*
+    * 编译并保存公式, 同名公式被替换
+    * 编译失败时仍保存源码, 但移除旧的编译结果, 返回值的 key 为 null, value 为错误提示
+    * */
+    public synchronized Pair<IElement, String> compile(String name, String source)
+    {
+        return compile(name, source, false);
+    }
+
+    //keepLastGood 为 true 时, 编译失败保留上一次成功的编译结果及其索引
+    private Pair<IElement, String> compile(String name, String source, boolean keepLastGood)
+    {
+        sources.put(name, source);
+        Pair<IElement, String> r = Analyzer.toElement(source, funcFactory, varFactory, classDictionary);
+        FormulaCost cost = null;
+        if (r.getKey() != null)
+        {
+            cost = FormulaCost.of(r.getKey(), funcFactory);
+            r = admit(r, cost);
+        }
+        if (r.getKey() == null)
+        {
+            errors.put(name, r.getValue());
+            if (!keepLastGood)
+            {
+                compiled.remove(name);
+                costs.remove(name);
+                index.remove(name);
+            }
+            return r;
+        }
+
+        errors.remove(name);
+        compiled.put(name, r.getKey());
+        costs.put(name, cost);
+        index.add(name, r.getKey());
+        return r;
+    }
+
+    private Pair<IElement, String> admit(Pair<IElement, String> r, FormulaCost cost)
+    {
+        if (admission == null)
+            return r;
+        Pair<Boolean, String> a = admission.admit(cost);
+        return a.getKey() ? r : new Pair<IElement, String>(null, "公式未被接受: " + a.getValue());
+    }
+
+    /*
+    * 批量编译并保存公式, 编译在 compiler 的线程池中并行进行, 索引在当前线程中按输入顺序更新
+    * 持有公式库锁, 编译期间热更新不会修改定义; 返回编译失败的公式及错误提示
+    * */
+    public synchronized Map<String, String> compileAll(Map<String, String> formulas, BulkCompiler compiler)
+    {
+        ArrayList<String> names = new ArrayList<>(formulas.keySet());
+        String[] expressions = new String[names.size()];
+        for (int i = 0; i < expressions.length; i++)
+            expressions[i] = formulas.get(names.get(i));
+
+        List<Pair<IElement, String>> results = compiler.compile(expressions).getItems();
+        Map<String, String> failures = new LinkedHashMap<>();
+        for (int i = 0; i < expressions.length; i++)
+        {
+            String name = names.get(i);
+            Pair<IElement, String> r = results.get(i);
+            sources.put(name, expressions[i]);
+            FormulaCost cost = null;
+            if (r.getKey() != null)
+            {
+                cost = FormulaCost.of(r.getKey(), funcFactory);
+                r = admit(r, cost);
+            }
+            if (r.getKey() == null)
+            {
+                errors.put(name, r.getValue());
+                compiled.remove(name);
+                costs.remove(name);
+                index.remove(name);
+                failures.put(name, r.getValue());
+                continue;
+            }
+            errors.remove(name);
+            compiled.put(name, r.getKey());
+            costs.put(name, cost);
+            index.add(name, r.getKey());
+        }
+        return failures;
+    }
+
+    public synchronized void remove(String name)
+    {
+        sources.remove(name);
+        compiled.remove(name);
+        costs.remove(name);
+        errors.remove(name);
+        index.remove(name);
+    }
+
+    //当前生效的编译结果, 不加锁
+    public IElement get(String name)
+    {
+        return compiled.get(name);
+    }
+
+    //最近一次编译的错误提示, 编译成功时为 null
+    public synchronized String getError(String name)
+    {
+        return errors.get(name);
+    }
+
+    public synchronized String getSource(String name)
+    {
+        return sources.get(name);
+    }
+
+    public synchronized Set<String> names()
+    {
+        return new HashSet<>(sources.keySet());
+    }
+
+    public synchronized int size()
+    {
+        return sources.size();
+    }
+
+    //最近一次编译失败的公式, 其中可能有仍保留上一次编译结果的公式
+    public synchronized List<String> failed()
+    {
+        ArrayList<String> ret = new ArrayList<>(errors.keySet());
+        Collections.sort(ret);
+        return ret;
+    }
+
+    /*
+    * 重新编译 names 中的公式(如索引查询出的受影响公式)
+    * 编译失败的公式保留上一次成功的编译结果, 返回编译失败的公式及错误提示
+    * */
+    public synchronized Map<String, String> recompile(Collection<String> names)
+    {
+        Map<String, String> failures = new LinkedHashMap<>();
+        for (String name : names)
+        {
+            String source = sources.get(name);
+            if (source == null)
+                continue;
+            Pair<IElement, String> r = compile(name, source, true);
+            if (r.getKey() == null)
+                failures.put(name, r.getValue());
+        }
+        return failures;
+    }
+
+    /*
+    * 重新编译引用符号的公式, kind 为 SymbolIndex.KIND_*
+    * 编译失败的公式不一定在索引中, 也会一并重新编译, 以便新增的定义使其通过
+    * */
+    public synchronized Map<String, String> recompileAffected(int kind, String symbol)
+    {
+        LinkedHashSet<String> names = new LinkedHashSet<>(index.lookup(kind, symbol));
+        names.addAll(errors.keySet());
+        return recompile(names);
+    }
+
+    ClassDictionary getClassDictionary()
+    {
+        return classDictionary;
+    }
+}
@@ -0,0 +1,527 @@
+package org.example.library;
+
+import javafx.util.Pair;
+import org.example.analyzer.Analyzer;
+import org.example.analyzer.BulkCompiler;
+import org.example.analyzer.element.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/*
+*   预编译公式库文件: 公式源码及编译后的元素树(ElementBinaryWriter 编码), 通过 FileChannel.map 映射
+*   文件结构:
+*       文件头 | 名称散列表(槽位保存条目偏移 + 1, 0 为空) | 条目(名称、源码指纹、源码、元素树序号)... | 元素树编码
+*   打开时只读取文件头及元素树编码的文件头, 公式在第一次 get 时按名称查散列表并解码, 解码结果放入有界的 LRU 缓存
+*   条目以源码指纹及注册表版本为键: 源码与调用者给出的不一致或定义已变化时条目过期,
+*   过期条目当场从源码编译并返回, 同时在后台重建整个文件, 重建完成后原子替换文件及映射
+*   重建时未变化的条目直接复制原有的元素树编码, 只编译变化的公式; 定义已变化时全部重新编译, 由 BulkCompiler 并行完成
+* */
+public class FormulaStore
+{
+    private static final int MAGIC = 0x464D4C53;        //"FMLS"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 40;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final File file;
+    private final ExecutorService executor;
+    private final FunctionElementFactory funcFactory;
+    private final VariableElementFactory varFactory;
+    private final ClassDictionary classDictionary;
+    private final LinkedHashMap<String, Pair<String, IElement>> cache;     //公式名称 -> (编译时的源码, 编译结果)
+
+    private volatile Mapping mapping;
+    private long registryVersion;                               //当前定义的注册表版本
+    private final Map<String, String> changed = new HashMap<>();     //源码已变化、等待重建写入文件的公式
+    private Future<Pair<Boolean, String>> rebuilding = null;
+
+    //一次映射的文件内容, 重建后整体替换
+    private static class Mapping
+    {
+        final MappedByteBuffer buffer;
+        final long registryVersion;
+        final int count;
+        final int tableSize;
+        final ElementBinaryReader reader;      //注册表版本不一致时为 null, 全部条目过期
+
+        Mapping(MappedByteBuffer buffer, long registryVersion, int count, int tableSize, ElementBinaryReader reader)
+        {
+            this.buffer = buffer;
+            this.registryVersion = registryVersion;
+            this.count = count;
+            this.tableSize = tableSize;
+            this.reader = reader;
+        }
+    }
+
+    //文件中的一个条目
+    private static class Entry
+    {
+        String name;
+        long sourceHash;
+        String source;
+        int tree;       //编译失败时为 -1
+    }
+
+    private FormulaStore(File file, final int cacheSize, ExecutorService executor,
+            FunctionElementFactory funcFactory, VariableElementFactory varFactory, ClassDictionary classDictionary)
+    {
+        this.file = file;
+        this.executor = executor;
+        this.funcFactory = funcFactory;
+        this.varFactory = varFactory;
+        this.classDictionary = classDictionary;
+        this.cache = new LinkedHashMap<String, Pair<String, IElement>>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Pair<String, IElement>> eldest)
+            {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /*
+    * 编译 sources 中的公式并写入 file, 先写临时文件再替换, 已打开的映射不受影响
+    * 编译失败的公式只保存源码, 读取时重新编译以得到错误提示
+    * */
+    public static Pair<Boolean, String> build(File file, Map<String, String> sources,
+            FunctionElementFactory funcFactory, VariableElementFactory varFactory, ClassDictionary classDictionary)
+    {
+        Registry registry = Registry.current();         //版本与编译依据同一快照
+        long version = RegistryVersion.of(registry, classDictionary);
+        ArrayList<String> names = new ArrayList<>(sources.keySet());
+        Collections.sort(names);
+
+        ElementBinaryWriter trees = new ElementBinaryWriter(version, true);
+        int[] indexes = new int[names.size()];
+        compile(names, sources, indexes, trees, registry, funcFactory, varFactory, classDictionary);
+        return write(file, version, names, sources, indexes, trees);
+    }
+
+    //按 registry 快照并行编译 names 中的公式, 编译结果依次加入 trees, 元素树序号写入 indexes 的对应位置, 编译失败时为 -1
+    private static void compile(List<String> names, Map<String, String> sources, int[] indexes, ElementBinaryWriter trees, Registry registry,
+            FunctionElementFactory funcFactory, VariableElementFactory varFactory, ClassDictionary classDictionary)
+    {
+        String[] texts = new String[names.size()];
+        for (int i = 0; i < texts.length; i++)
+            texts[i] = sources.get(names.get(i));
+        BulkCompiler compiler = new BulkCompiler(ForkJoinPool.commonPool(), funcFactory, varFactory, classDictionary);
+        List<Pair<IElement, String>> compiled = compiler.compile(texts, registry).getItems();
+        for (int i = 0; i < texts.length; i++)
+        {
+            IElement e = compiled.get(i).getKey();
+            indexes[i] = e == null ? -1 : trees.add(e);
+        }
+    }
+
+    //写入按名称排序的 names 的条目, indexes 为各条目在 trees 中的元素树序号
+    private static Pair<Boolean, String> write(File file, long version, List<String> names, Map<String, String> sources, int[] indexes,
+            ElementBinaryWriter trees)
+    {
+        byte[][] entries = new byte[names.size()][];
+        int entriesSize = 0;
+        for (int i = 0; i < entries.length; i++)
+        {
+            String source = sources.get(names.get(i));
+            byte[] name = names.get(i).getBytes(StandardCharsets.UTF_8);
+            byte[] text = source.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer b = ByteBuffer.allocate(4 + name.length + 8 + 4 + text.length + 4);
+            b.putInt(name.length).put(name).putLong(hash(source)).putInt(text.length).put(text);
+            b.putInt(indexes[i]);
+            entries[i] = b.array();
+            entriesSize += entries[i].length;
+        }
+
+        int tableSize = 16;
+        while (tableSize < entries.length * 2)
+            tableSize <<= 1;
+        ByteBuffer blob = trees.toByteBuffer();
+        int entriesOffset = HEADER_SIZE + tableSize * 4;
+        int blobOffset = entriesOffset + entriesSize;
+
+        ByteBuffer out = ByteBuffer.allocate(blobOffset + blob.remaining());
+        out.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(version).putInt(entries.length).putInt(tableSize)
+                .putInt(entriesOffset).putInt(blobOffset).putInt(blob.remaining()).putInt(0);
+        int offset = entriesOffset;
+        for (int i = 0; i < entries.length; i++)
+        {
+            int slot = (int) hash(names.get(i)) & (tableSize - 1);
+            while (out.getInt(HEADER_SIZE + slot * 4) != 0)
+                slot = (slot + 1) & (tableSize - 1);
+            out.putInt(HEADER_SIZE + slot * 4, offset + 1);
+            out.position(offset);
+            out.put(entries[i]);
+            offset += entries[i].length;
+        }
+        out.put(blob);
+        out.flip();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try
+        {
+            try (RandomAccessFile f = new RandomAccessFile(tmp, "rw"))
+            {
+                f.setLength(0);
+                FileChannel channel = f.getChannel();
+                while (out.hasRemaining())
+                    channel.write(out);
+                channel.force(true);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            return new Pair<>(false, "写入 " + file + " 失败: " + e.getMessage());
+        }
+        return new Pair<>(true, "");
+    }
+
+    /*
+    * 打开公式库文件, 不解码任何公式
+    * 最多缓存 cacheSize 个解码后的元素树; executor 用于后台重建
+    * */
+    public static Pair<FormulaStore, String> open(File file, int cacheSize, ExecutorService executor,
+            FunctionElementFactory funcFactory, VariableElementFactory varFactory, ClassDictionary classDictionary)
+    {
+        FormulaStore store = new FormulaStore(file, cacheSize, executor, funcFactory, varFactory, classDictionary);
+        store.registryVersion = RegistryVersion.of(funcFactory, varFactory, classDictionary);
+        Pair<Mapping, String> m = store.map();
+        if (m.getKey() == null)
+            return new Pair<>(null, m.getValue());
+        store.mapping = m.getKey();
+        if (store.mapping.reader == null)
+            store.scheduleRebuild();
+        return new Pair<>(store, "");
+    }
+
+    private Pair<Mapping, String> map()
+    {
+        MappedByteBuffer b;
+        try (RandomAccessFile f = new RandomAccessFile(file, "r"))
+        {
+            b = f.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, f.length());
+        }
+        catch (IOException e)
+        {
+            return new Pair<>(null, "映射 " + file + " 失败: " + e.getMessage());
+        }
+
+        if (b.limit() < HEADER_SIZE || b.getInt(0) != MAGIC)
+            return new Pair<>(null, file + " 不是公式库文件");
+        if (b.getInt(4) != FORMAT_VERSION)
+            return new Pair<>(null, file + " 的格式版本 " + b.getInt(4) + " 不受支持");
+        long version = b.getLong(8);
+        int count = b.getInt(16), tableSize = b.getInt(20), blobOffset = b.getInt(28), blobLength = b.getInt(32);
+        if (blobOffset + (long) blobLength > b.limit())
+            return new Pair<>(null, file + " 不完整");
+
+        ElementBinaryReader reader = null;
+        if (version == registryVersion)
+        {
+            b.position(blobOffset).limit(blobOffset + blobLength);
+            Pair<ElementBinaryReader, String> r = ElementBinaryReader.open(b, version, funcFactory, varFactory, classDictionary);
+            b.clear();
+            if (r.getKey() == null)
+                return new Pair<>(null, file + ": " + r.getValue());
+            reader = r.getKey();
+        }
+        return new Pair<>(new Mapping(b, version, count, tableSize, reader), "");
+    }
+
+    /*
+    * 取出公式的编译结果, 公式不存在时返回值的 key 为 null
+    * 注册表版本已变化时从文件中的源码编译
+    * */
+    public Pair<IElement, String> get(String name)
+    {
+        return get(name, null);
+    }
+
+    /*
+    * 取出源码为 source 的公式的编译结果
+    * 文件中的源码与 source 不一致(或不存在)时当场编译 source, 并在后台重建文件
+    * */
+    public Pair<IElement, String> get(String name, String source)
+    {
+        synchronized (this)
+        {
+            Pair<String, IElement> cached = cache.get(name);
+            if (cached != null && (source == null || source.equals(cached.getKey())))
+                return new Pair<>(cached.getValue(), "");
+        }
+
+        Mapping m = mapping;
+        Entry entry = lookup(m, name);
+        String compiledSource;
+        Pair<IElement, String> r;
+        if (source != null && (entry == null || entry.sourceHash != hash(source) || !entry.source.equals(source)))
+        {
+            compiledSource = source;
+            r = Analyzer.toElement(source, funcFactory, varFactory, classDictionary);
+            synchronized (this)
+            {
+                changed.put(name, source);
+                scheduleRebuild();
+            }
+        }
+        else if (entry == null)
+        {
+            synchronized (this)
+            {
+                compiledSource = changed.get(name);
+            }
+            if (compiledSource == null)
+                return new Pair<>(null, "公式 '" + name + "' 不存在");
+            r = Analyzer.toElement(compiledSource, funcFactory, varFactory, classDictionary);
+        }
+        else
+        {
+            compiledSource = entry.source;
+            r = m.reader == null || entry.tree < 0 ? null : m.reader.get(entry.tree);
+            //编码损坏时从源码编译
+            if (r == null || r.getKey() == null)
+                r = Analyzer.toElement(entry.source, funcFactory, varFactory, classDictionary);
+        }
+
+        if (r.getKey() != null)
+        {
+            synchronized (this)
+            {
+                if (mapping == m)
+                    cache.put(name, new Pair<>(compiledSource, r.getKey()));
+            }
+        }
+        return r;
+    }
+
+    //文件中的源码, 不存在时为 null
+    public String getSource(String name)
+    {
+        Entry entry = lookup(mapping, name);
+        return entry == null ? null : entry.source;
+    }
+
+    public int size()
+    {
+        return mapping.count;
+    }
+
+    public synchronized int cachedCount()
+    {
+        return cache.size();
+    }
+
+    //文件中的条目是否已过期(定义已变化或有源码变化尚未写入)
+    public synchronized boolean isStale()
+    {
+        return mapping.reader == null || !changed.isEmpty();
+    }
+
+    /*
+    * 定义变化后(如 HotReloader 应用修改后)调用: 重新计算注册表版本, 不一致时清空缓存并在后台重建
+    * 返回值为重建任务, 无需重建时为 null
+    * */
+    public synchronized Future<Pair<Boolean, String>> refresh()
+    {
+        long version = RegistryVersion.of(funcFactory, varFactory, classDictionary);
+        if (version == registryVersion)
+            return null;
+        registryVersion = version;
+        cache.clear();
+        Mapping m = mapping;
+        mapping = new Mapping(m.buffer, m.registryVersion, m.count, m.tableSize, null);
+        return scheduleRebuild();
+    }
+
+    //等待当前的后台重建, 没有重建时返回 null
+    public Future<Pair<Boolean, String>> getRebuilding()
+    {
+        synchronized (this)
+        {
+            return rebuilding;
+        }
+    }
+
+    private Future<Pair<Boolean, String>> scheduleRebuild()
+    {
+        if (rebuilding != null && !rebuilding.isDone())
+            return rebuilding;
+        rebuilding = executor.submit(new Callable<Pair<Boolean, String>>()
+        {
+            @Override
+            public Pair<Boolean, String> call()
+            {
+                return rebuild();
+            }
+        });
+        return rebuilding;
+    }
+
+    /*
+    * 合并文件中的源码与变化的源码, 重新写入文件并替换映射; 重建期间新的变化留待下一次重建
+    * 注册表版本未变化时, 源码未变化的条目复制原有编码(编译失败的条目仍只保存源码), 只编译变化的公式
+    * */
+    private Pair<Boolean, String> rebuild()
+    {
+        Map<String, String> sources = new HashMap<>();
+        Map<String, Integer> stored = new HashMap<>();          //文件中各条目的元素树序号
+        Map<String, String> applied;
+        long expected;          //开始重建时的 registryVersion
+        Mapping m = mapping;
+        for (int i = 0; i < m.tableSize; i++)
+        {
+            int offset = m.buffer.getInt(HEADER_SIZE + i * 4);
+            if (offset != 0)
+            {
+                Entry e = readEntry(m.buffer, offset - 1);
+                sources.put(e.name, e.source);
+                stored.put(e.name, e.tree);
+            }
+        }
+        synchronized (this)
+        {
+            applied = new HashMap<>(changed);
+            expected = registryVersion;
+        }
+        sources.putAll(applied);
+
+        Registry registry = Registry.current();         //版本与编译依据同一快照
+        long version = RegistryVersion.of(registry, classDictionary);
+        ElementBinaryWriter trees = null;
+        if (m.reader != null && m.reader.getRegistryVersion() == version)
+            trees = ElementBinaryWriter.extend(m.reader).getKey();
+
+        ArrayList<String> names = new ArrayList<>(sources.keySet());
+        Collections.sort(names);
+        int[] indexes = new int[names.size()];
+        ArrayList<String> pending = new ArrayList<>();          //需要编译的公式
+        ArrayList<Integer> pendingAt = new ArrayList<>();
+        for (int i = 0; i < indexes.length; i++)
+        {
+            String name = names.get(i);
+            Integer tree = stored.get(name);
+            if (trees != null && tree != null && !applied.containsKey(name))
+            {
+                indexes[i] = tree < 0 ? -1 : trees.copy(tree);
+                if (tree < 0 || indexes[i] >= 0)
+                    continue;
+            }
+            pending.add(name);
+            pendingAt.add(i);
+        }
+
+        if (trees == null)
+            trees = new ElementBinaryWriter(version, true);
+        int[] compiled = new int[pending.size()];
+        compile(pending, sources, compiled, trees, registry, funcFactory, varFactory, classDictionary);
+        for (int i = 0; i < compiled.length; i++)
+            indexes[pendingAt.get(i)] = compiled[i];
+
+        Pair<Boolean, String> r = write(file, version, names, sources, indexes, trees);
+        if (!r.getKey())
+            return r;
+
+        synchronized (this)
+        {
+            /*
+            * 定义已变化但没有调用 refresh 时, 采用本次编译所依据的版本, 否则新文件与 registryVersion 不一致会不断重建
+            * 重建期间 refresh 过的版本以 refresh 为准, 不一致时下面会再重建一次
+            * */
+            if (registryVersion == expected)
+                registryVersion = version;
+            Pair<Mapping, String> mapped = map();
+            if (mapped.getKey() == null)
+                return new Pair<>(false, mapped.getValue());
+            mapping = mapped.getKey();
+            for (Map.Entry<String, String> e : applied.entrySet())
+            {
+                if (e.getValue().equals(changed.get(e.getKey())))
+                    changed.remove(e.getKey());
+            }
+            cache.clear();
+            if (mapping.reader == null || !changed.isEmpty())
+            {
+                rebuilding = null;
+                scheduleRebuild();
+            }
+        }
+        return new Pair<>(true, "");
+    }
+
+    //探测到的条目先按字节比较名称, 名称一致时才解码整个条目
+    private static Entry lookup(Mapping m, String name)
+    {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int mask = m.tableSize - 1;
+        int slot = (int) hash(name) & mask;
+        for (int i = 0; i < m.tableSize; i++, slot = (slot + 1) & mask)
+        {
+            int offset = m.buffer.getInt(HEADER_SIZE + slot * 4);
+            if (offset == 0)
+                return null;
+            if (nameEquals(m.buffer, offset - 1, key))
+                return readEntry(m.buffer, offset - 1);
+        }
+        return null;
+    }
+
+    private static boolean nameEquals(ByteBuffer b, int offset, byte[] name)
+    {
+        if (b.getInt(offset) != name.length)
+            return false;
+        for (int i = 0; i < name.length; i++)
+        {
+            if (b.get(offset + 4 + i) != name[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static Entry readEntry(ByteBuffer b, int offset)
+    {
+        Entry e = new Entry();
+        int n = b.getInt(offset);
+        e.name = string(b, offset + 4, n);
+        offset += 4 + n;
+        e.sourceHash = b.getLong(offset);
+        n = b.getInt(offset + 8);
+        e.source = string(b, offset + 12, n);
+        e.tree = b.getInt(offset + 12 + n);
+        return e;
+    }
+
+    private static String string(ByteBuffer b, int offset, int length)
+    {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = b.get(offset + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //FNV-1a 64 位指纹
+    private static long hash(String s)
+    {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < s.length(); i++)
+        {
+            h ^= s.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+}
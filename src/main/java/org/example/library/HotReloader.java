@@ -0,0 +1,126 @@
+package org.example.library;
+
+import javafx.util.Pair;
+import org.example.analyzer.element.Registry;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/*
+*   定义的热更新
+*   在公式库锁内把一批 RegistryChange 应用到注册表的副本上, 再以一次 volatile 写发布(Registry.commit),
+*   之后通过符号索引找出受影响的公式(及之前编译失败的公式)并只重新编译这些公式
+*   已编译的元素树持有各自的 Class 引用及 Param 副本, 修改定义不会影响正在使用的旧版本;
+*   重新编译成功的公式逐个原子替换, 失败的公式保留上一次成功的版本并在结果中报告
+*   公式库之外同时进行的编译每次查找定义时看到的是发布前或发布后的完整注册表, 不会读到修改了一半的定义
+* */
+public class HotReloader
+{
+    private final FormulaRepository repository;
+    private final ExecutorService executor;
+    private int version = 0;
+
+    public static class Result
+    {
+        private final int version;
+        private final List<String> recompiled;
+        private final Map<String, String> failures;
+        private final List<String> changeErrors;
+
+        Result(int version, List<String> recompiled, Map<String, String> failures, List<String> changeErrors)
+        {
+            this.version = version;
+            this.recompiled = recompiled;
+            this.failures = failures;
+            this.changeErrors = changeErrors;
+        }
+
+        //应用后的定义版本号
+        public int getVersion()
+        {
+            return version;
+        }
+
+        //重新编译的公式
+        public List<String> getRecompiled()
+        {
+            return recompiled;
+        }
+
+        //不再通过类型检查的公式及错误提示, 这些公式仍使用上一次成功的版本
+        public Map<String, String> getFailures()
+        {
+            return failures;
+        }
+
+        //无法应用的修改
+        public List<String> getChangeErrors()
+        {
+            return changeErrors;
+        }
+    }
+
+    //executor 用于在后台执行热更新
+    public HotReloader(FormulaRepository repository, ExecutorService executor)
+    {
+        this.repository = repository;
+        this.executor = executor;
+    }
+
+    public synchronized int getVersion()
+    {
+        return version;
+    }
+
+    //在后台应用修改
+    public Future<Result> reload(final List<RegistryChange> changes)
+    {
+        return executor.submit(new Callable<Result>()
+        {
+            @Override
+            public Result call()
+            {
+                return apply(changes);
+            }
+        });
+    }
+
+    //在当前线程应用修改
+    public Result apply(List<RegistryChange> changes)
+    {
+        synchronized (repository)
+        {
+            ArrayList<String> changeErrors;
+            LinkedHashSet<String> affected;
+            Registry.Builder registry;
+            //期间有公式库之外的注册发布时在新的快照上重新应用
+            do
+            {
+                changeErrors = new ArrayList<>();
+                affected = new LinkedHashSet<>();
+                registry = Registry.edit();
+                for (RegistryChange c : changes)
+                {
+                    Pair<Boolean, String> r = c.apply(registry, repository.getClassDictionary());
+                    if (!r.getKey())
+                    {
+                        changeErrors.add(r.getValue());
+                        continue;
+                    }
+                    affected.addAll(repository.getIndex().lookup(c.getKind(), c.getSymbol()));
+                }
+            } while (!Registry.commit(registry));
+            affected.addAll(repository.failed());
+
+            Map<String, String> failures = repository.recompile(affected);
+            int v;
+            synchronized (this)
+            {
+                v = ++version;
+            }
+            return new Result(v, new ArrayList<>(affected), failures, changeErrors);
+        }
+    }
+}
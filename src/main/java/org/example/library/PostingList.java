@@ -0,0 +1,95 @@
+package org.example.library;
+
+import java.util.Arrays;
+
+/*
+*   倒排表: 递增的公式编号序列
+*   编号按差值以变长整数(每字节 7 位, 最高位表示后面还有字节)存放, 相邻编号接近时每个编号约占 1 字节
+*   只能按递增顺序追加
+* */
+class PostingList
+{
+    private byte[] data = new byte[4];
+    private int length = 0;     //已使用的字节数
+    private int count = 0;
+    private int last = -1;
+
+    //追加编号, 不大于最后一个编号时忽略
+    void add(int id)
+    {
+        if (id <= last)
+            return;
+
+        int delta = id - last;
+        if (length + 5 > data.length)
+            data = Arrays.copyOf(data, Math.max(data.length << 1, length + 5));
+        while ((delta & ~0x7F) != 0)
+        {
+            data[length++] = (byte) ((delta & 0x7F) | 0x80);
+            delta >>>= 7;
+        }
+        data[length++] = (byte) delta;
+        last = id;
+        count++;
+    }
+
+    int size()
+    {
+        return count;
+    }
+
+    int last()
+    {
+        return last;
+    }
+
+    long memoryUsage()
+    {
+        return data.length;
+    }
+
+    //释放多余的空间
+    void trim()
+    {
+        if (data.length > length)
+            data = Arrays.copyOf(data, length);
+    }
+
+    Cursor cursor()
+    {
+        return new Cursor();
+    }
+
+    /*
+    *   顺序解码
+    *   while (c.next()) { c.id(); }
+    * */
+    class Cursor
+    {
+        private int position = 0;
+        private int id = -1;
+
+        boolean next()
+        {
+            if (position >= length)
+                return false;
+
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                b = data[position++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            id += delta;
+            return true;
+        }
+
+        int id()
+        {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.example.library;
+
+import javafx.util.Pair;
+import org.example.analyzer.element.*;
+import org.example.analyzer.element.Class;
+
+import java.util.ArrayList;
+
+/*
+*   对函数/变量定义及 Class 接收规则的一次修改, 由 HotReloader 在公式库锁内应用到注册表的副本(Registry.Builder)上
+*   每个修改对应 SymbolIndex 中的一个符号, 引用该符号的公式需要重新编译
+*   结果类型以类型名给出, 应用时再从 ClassDictionary 中查找, 因此可以引用同一批修改中新增的类型
+*   新增的类型直接加入 ClassDictionary, 在引用它的定义及规则发布之前不会被用到
+* */
+public abstract class RegistryChange
+{
+    private final int kind;
+    private final String symbol;
+
+    protected RegistryChange(int kind, String symbol)
+    {
+        this.kind = kind;
+        this.symbol = symbol;
+    }
+
+    //符号类型, 为 SymbolIndex.KIND_*
+    public int getKind()
+    {
+        return kind;
+    }
+
+    public String getSymbol()
+    {
+        return symbol;
+    }
+
+    //应用修改, 返回值的 key 表示是否成功, 失败时 value 为错误提示
+    abstract Pair<Boolean, String> apply(Registry.Builder registry, ClassDictionary classDictionary);
+
+    private static String buildName(String className, String name)
+    {
+        return className.isEmpty() ? name : className + "." + name;
+    }
+
+    //注册或替换函数定义, 替换时保留原定义的求值开销
+    public static RegistryChange function(final String displayName, final String className, final String funcName, final String hint,
+                                          final ArrayList<IElement.Param> params, final String resultType)
+    {
+        return function(displayName, className, funcName, hint, params, resultType, null);
+    }
+
+    //注册或替换函数定义, cost 为 null 时保留原定义的求值开销(新函数为 FunctionCost.DEFAULT)
+    public static RegistryChange function(final String displayName, final String className, final String funcName, final String hint,
+                                          final ArrayList<IElement.Param> params, final String resultType, final FunctionCost cost)
+    {
+        return new RegistryChange(SymbolIndex.KIND_FUNCTION, buildName(className, funcName))
+        {
+            @Override
+            Pair<Boolean, String> apply(Registry.Builder registry, ClassDictionary classDictionary)
+            {
+                Class c = classDictionary.lookup(resultType);
+                if (c == null)
+                    return new Pair<>(false, "函数 '" + getSymbol() + "' 的结果类型 '" + resultType + "' 不存在");
+                registry.registerFunction(displayName, className, funcName, hint, params, c, cost != null ? cost : registry.getCost(getSymbol()));
+                return new Pair<>(true, "");
+            }
+        };
+    }
+
+    public static RegistryChange removeFunction(final String className, final String funcName)
+    {
+        return new RegistryChange(SymbolIndex.KIND_FUNCTION, buildName(className, funcName))
+        {
+            @Override
+            Pair<Boolean, String> apply(Registry.Builder registry, ClassDictionary classDictionary)
+            {
+                registry.unregisterFunction(className, funcName);
+                return new Pair<>(true, "");
+            }
+        };
+    }
+
+    //注册或替换变量定义
+    public static RegistryChange variable(final String displayName, final String className, final String varName, final String hint,
+                                          final String resultType)
+    {
+        return new RegistryChange(SymbolIndex.KIND_VARIABLE, buildName(className, varName))
+        {
+            @Override
+            Pair<Boolean, String> apply(Registry.Builder registry, ClassDictionary classDictionary)
+            {
+                Class c = classDictionary.lookup(resultType);
+                if (c == null)
+                    return new Pair<>(false, "变量 '" + getSymbol() + "' 的类型 '" + resultType + "' 不存在");
+                registry.registerVariable(displayName, className, varName, hint, c);
+                return new Pair<>(true, "");
+            }
+        };
+    }
+
+    public static RegistryChange removeVariable(final String className, final String varName)
+    {
+        return new RegistryChange(SymbolIndex.KIND_VARIABLE, buildName(className, varName))
+        {
+            @Override
+            Pair<Boolean, String> apply(Registry.Builder registry, ClassDictionary classDictionary)
+            {
+                registry.unregisterVariable(className, varName);
+                return new Pair<>(true, "");
+            }
+        };
+    }
+
+    //新增类型, 已存在时不做修改
+    public static RegistryChange addClass(final String name)
+    {
+        return new RegistryChange(SymbolIndex.KIND_CLASS, name)
+        {
+            @Override
+            Pair<Boolean, String> apply(Registry.Builder registry, ClassDictionary classDictionary)
+            {
+                if (classDictionary.lookup(name) == null)
+                    classDictionary.add(new Class(name));
+                return new Pair<>(true, "");
+            }
+        };
+    }
+
+    //添加或替换接收规则 className operation otherType -> resultType, 一元操作符的 otherType 为 ""
+    public static RegistryChange accept(final String className, final String operation, final String otherType, final String resultType)
+    {
+        return new RegistryChange(SymbolIndex.KIND_ACCEPT, SymbolIndex.acceptKey(className, operation, otherType))
+        {
+            @Override
+            Pair<Boolean, String> apply(Registry.Builder registry, ClassDictionary classDictionary)
+            {
+                Class c = classDictionary.lookup(className);
+                if (c == null)
+                    return new Pair<>(false, "类型 '" + className + "' 不存在");
+                if (classDictionary.lookup(resultType) == null)
+                    return new Pair<>(false, "类型 '" + resultType + "' 不存在");
+                registry.addAccept(c, operation, otherType, resultType);
+                return new Pair<>(true, "");
+            }
+        };
+    }
+
+    public static RegistryChange removeAccept(final String className, final String operation, final String otherType)
+    {
+        return new RegistryChange(SymbolIndex.KIND_ACCEPT, SymbolIndex.acceptKey(className, operation, otherType))
+        {
+            @Override
+            Pair<Boolean, String> apply(Registry.Builder registry, ClassDictionary classDictionary)
+            {
+                Class c = classDictionary.lookup(className);
+                if (c == null)
+                    return new Pair<>(false, "类型 '" + className + "' 不存在");
+                registry.removeAccept(c, operation, otherType);
+                return new Pair<>(true, "");
+            }
+        };
+    }
+}
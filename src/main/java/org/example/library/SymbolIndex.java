@@ -0,0 +1,237 @@
+package org.example.library;
+
+import org.example.analyzer.element.*;
+
+import java.util.*;
+
+/*
+*   符号到公式的倒排索引, 在编译公式时维护
+*   符号分为:
+*       变量         变量的 name, 如 v, math.PI
+*       函数         函数的 name(类名.函数名), 如 math.sin, getQuantity
+*       操作符       一元/二元操作符, 如 +, !
+*       接收规则     Class 的 addAccept 规则, 由 acceptKey(类型, 操作符, 另一个类型) 表示, 如 Number + Quantity
+*       结果类型     公式中任一元素的结果类型, 如 Quantity
+*   每个公式分配一个递增的编号, 倒排表按编号递增追加; 公式被替换或删除时只标记旧编号失效,
+*   失效编号过多时 compact 重新编号并重建倒排表
+* */
+public class SymbolIndex
+{
+    public static final int KIND_VARIABLE = 0;
+    public static final int KIND_FUNCTION = 1;
+    public static final int KIND_OPERATOR = 2;
+    public static final int KIND_ACCEPT = 3;
+    public static final int KIND_CLASS = 4;
+    public static final int KIND_SIZE = 5;
+
+    private ArrayList<Map<String, PostingList>> postings = new ArrayList<>();
+    private ArrayList<String> names = new ArrayList<>();     //编号 -> 公式名, 失效编号为 null
+    private Map<String, Integer> ids = new HashMap<>();      //公式名 -> 当前编号
+    private int deleted = 0;
+
+    public SymbolIndex()
+    {
+        for (int i = 0; i < KIND_SIZE; i++)
+            postings.add(new HashMap<String, PostingList>());
+    }
+
+    //接收规则的符号, 一元操作符的 otherType 为 ""
+    public static String acceptKey(String className, String operation, String otherType)
+    {
+        return className + " " + operation + " " + otherType;
+    }
+
+    //添加或替换公式 name 的符号
+    public synchronized void add(String name, IElement root)
+    {
+        remove(name);
+
+        int id = names.size();
+        names.add(name);
+        ids.put(name, id);
+
+        ArrayList<Set<String>> symbols = new ArrayList<>();
+        for (int i = 0; i < KIND_SIZE; i++)
+            symbols.add(new HashSet<String>());
+        collect(root, symbols);
+
+        for (int kind = 0; kind < KIND_SIZE; kind++)
+        {
+            Map<String, PostingList> m = postings.get(kind);
+            for (String s : symbols.get(kind))
+            {
+                PostingList p = m.get(s);
+                if (p == null)
+                {
+                    p = new PostingList();
+                    m.put(s, p);
+                }
+                p.add(id);
+            }
+        }
+    }
+
+    public synchronized void remove(String name)
+    {
+        Integer id = ids.remove(name);
+        if (id == null)
+            return;
+        names.set(id, null);
+        deleted++;
+        if (deleted > 1024 && deleted > ids.size())
+            compact();
+    }
+
+    public synchronized boolean contains(String name)
+    {
+        return ids.containsKey(name);
+    }
+
+    public synchronized int size()
+    {
+        return ids.size();
+    }
+
+    //引用符号的公式名, 按编译的先后排列
+    public synchronized List<String> lookup(int kind, String symbol)
+    {
+        ArrayList<String> ret = new ArrayList<>();
+        PostingList p = postings.get(kind).get(symbol);
+        if (p == null)
+            return ret;
+
+        PostingList.Cursor c = p.cursor();
+        while (c.next())
+        {
+            String n = names.get(c.id());
+            if (n != null)
+                ret.add(n);
+        }
+        return ret;
+    }
+
+    //引用符号的公式个数(不含失效编号)的上限, 用于影响评估
+    public synchronized int estimate(int kind, String symbol)
+    {
+        PostingList p = postings.get(kind).get(symbol);
+        return p == null ? 0 : p.size();
+    }
+
+    //受接收规则 className operation otherType 变化影响的公式
+    public List<String> lookupAccept(String className, String operation, String otherType)
+    {
+        return lookup(KIND_ACCEPT, acceptKey(className, operation, otherType));
+    }
+
+    //某类符号中出现过的所有符号
+    public synchronized Set<String> symbols(int kind)
+    {
+        return new HashSet<>(postings.get(kind).keySet());
+    }
+
+    //去掉失效编号, 重新编号并重建倒排表
+    public synchronized void compact()
+    {
+        int[] remap = new int[names.size()];
+        ArrayList<String> newNames = new ArrayList<>(ids.size());
+        for (int i = 0; i < names.size(); i++)
+        {
+            String n = names.get(i);
+            if (n == null)
+            {
+                remap[i] = -1;
+                continue;
+            }
+            remap[i] = newNames.size();
+            ids.put(n, newNames.size());
+            newNames.add(n);
+        }
+
+        for (int kind = 0; kind < KIND_SIZE; kind++)
+        {
+            Map<String, PostingList> rebuilt = new HashMap<>();
+            for (Map.Entry<String, PostingList> entry : postings.get(kind).entrySet())
+            {
+                PostingList p = new PostingList();
+                PostingList.Cursor c = entry.getValue().cursor();
+                while (c.next())
+                {
+                    if (remap[c.id()] >= 0)
+                        p.add(remap[c.id()]);
+                }
+                if (p.size() == 0)
+                    continue;
+                p.trim();
+                rebuilt.put(entry.getKey(), p);
+            }
+            postings.set(kind, rebuilt);
+        }
+
+        names = newNames;
+        deleted = 0;
+    }
+
+    //倒排表占用的字节数
+    public synchronized long memoryUsage()
+    {
+        long n = 0;
+        for (Map<String, PostingList> m : postings)
+        {
+            for (PostingList p : m.values())
+                n += p.memoryUsage();
+        }
+        return n;
+    }
+
+    private static void collect(IElement root, final ArrayList<Set<String>> symbols)
+    {
+        if (root == null)
+            return;
+
+        ElementTraversal.walk(root, true, new ElementTraversal.Visitor()
+        {
+            @Override
+            public int enter(IElement e)
+            {
+                collectNode(e, symbols);
+                return ElementTraversal.CONTINUE;
+            }
+        });
+    }
+
+    private static void collectNode(IElement e, ArrayList<Set<String>> symbols)
+    {
+        if (e.getResultType() != null)
+            symbols.get(KIND_CLASS).add(e.getResultType().getName());
+
+        switch (e.getType())
+        {
+            case ElementType.ELEMENT_TYPE_VARIABLE:
+                symbols.get(KIND_VARIABLE).add(e.getName());
+                break;
+
+            case ElementType.ELEMENT_TYPE_FUNCTION:
+                symbols.get(KIND_FUNCTION).add(e.getName());
+                break;
+
+            case ElementType.ELEMENT_TYPE_UNARY_OPERATION:
+            {
+                symbols.get(KIND_OPERATOR).add(e.getName());
+                IElement operand = e.getParams().get(0).value;
+                if (operand != null && operand.getResultType() != null)
+                    symbols.get(KIND_ACCEPT).add(acceptKey(operand.getResultType().getName(), e.getName(), ""));
+                break;
+            }
+
+            case ElementType.ELEMENT_TYPE_BINARY_OPERATION:
+            {
+                symbols.get(KIND_OPERATOR).add(e.getName());
+                IElement left = e.getParams().get(0).value;
+                IElement right = e.getParams().get(1).value;
+                if (left != null && right != null && left.getResultType() != null && right.getResultType() != null)
+                    symbols.get(KIND_ACCEPT).add(acceptKey(left.getResultType().getName(), e.getName(), right.getResultType().getName()));
+                break;
+            }
+        }
+    }
+}
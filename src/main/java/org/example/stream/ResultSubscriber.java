@@ -0,0 +1,22 @@
+package org.example.stream;
+
+import org.example.evaluator.Column;
+
+/*
+*   公式结果的下游订阅者
+*   onSubscribe 之后需调用 Subscription.request(n) 申请批次, 未申请时样本在有界队列中积压, 队列满后反压到数据接入端
+*   同一订阅的回调不会并发调用
+* */
+public interface ResultSubscriber
+{
+    void onSubscribe(Subscription subscription);
+
+    //一个批次的结果, times[i] 为第 i 个样本的时间, values.get(i) 为对应的公式值
+    void onNext(long[] times, Column values);
+
+    //求值出错, 之后订阅自动取消
+    void onError(String message);
+
+    //样本流结束且已全部发送
+    void onComplete();
+}
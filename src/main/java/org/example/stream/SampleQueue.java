@@ -0,0 +1,79 @@
+package org.example.stream;
+
+/*
+*   有界的样本环形队列, 时间与值分别存放在 long[] 与 double[] 中, 入队不产生对象
+*   队列满时生产者等待, 由此把下游的消费速度反压到数据接入端
+* */
+class SampleQueue
+{
+    private final long[] times;
+    private final double[] values;
+    private int head = 0;
+    private int size = 0;
+    private long oldestArrival = 0;     //队首样本入队时的 System.nanoTime()
+    private boolean closed = false;
+
+    SampleQueue(int capacity)
+    {
+        times = new long[capacity];
+        values = new double[capacity];
+    }
+
+    //入队, 队列满时最多等待 timeoutMillis 毫秒; 超时或队列已关闭时返回 false
+    synchronized boolean offer(long time, double value, long timeoutMillis) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (size == times.length && !closed)
+        {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0)
+                return false;
+            wait(wait);
+        }
+        if (closed)
+            return false;
+
+        int tail = (head + size) % times.length;
+        times[tail] = time;
+        values[tail] = value;
+        if (size == 0)
+            oldestArrival = System.nanoTime();
+        size++;
+        return true;
+    }
+
+    //取出最多 times.length 个样本, 返回取出的个数
+    synchronized int drain(long[] toTimes, double[] toValues)
+    {
+        int n = Math.min(size, toTimes.length);
+        for (int i = 0; i < n; i++)
+        {
+            toTimes[i] = times[head];
+            toValues[i] = values[head];
+            head = (head + 1) % times.length;
+        }
+        size -= n;
+        //剩余样本的准确入队时间未记录, 按当前时间重新计算等待
+        if (size > 0)
+            oldestArrival = System.nanoTime();
+        notifyAll();
+        return n;
+    }
+
+    synchronized int size()
+    {
+        return size;
+    }
+
+    //队首样本已等待的纳秒数, 队列为空时返回 0
+    synchronized long age()
+    {
+        return size == 0 ? 0 : System.nanoTime() - oldestArrival;
+    }
+
+    synchronized void close()
+    {
+        closed = true;
+        notifyAll();
+    }
+}
@@ -0,0 +1,159 @@
+package org.example.stream;
+
+import javafx.util.Pair;
+import org.example.analyzer.element.IElement;
+import org.example.data.SeriesKey;
+import org.example.evaluator.BatchEvaluator;
+import org.example.evaluator.EvaluationContext;
+import org.example.evaluator.Evaluator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+*   推送式的流求值
+*   数据接入端按测量点/测量编码/测量编号推送样本, 订阅该样本流的公式把样本值作为变量, 攒成小批按列求值后发送给下游
+*   批次在样本数达到 batchSize 或队首样本等待超过 maxLatencyMillis 时产生
+*   线程数固定为 threads; 每个订阅的队列最多容纳 queueCapacity 个样本, 下游未申请批次时积压的样本不会超过该上限
+* */
+public class StreamEvaluator
+{
+    private final BatchEvaluator batchEvaluator;
+    private final int batchSize;
+    private final long maxLatencyNanos;
+    private final int queueCapacity;
+    private final ScheduledThreadPoolExecutor executor;
+    private final ConcurrentMap<SeriesKey, CopyOnWriteArrayList<Subscription>> subscriptions = new ConcurrentHashMap<>();
+
+    private StreamEvaluator(Evaluator evaluator, int threads, int batchSize, long maxLatencyMillis, int queueCapacity)
+    {
+        this.batchEvaluator = new BatchEvaluator(evaluator);
+        this.batchSize = batchSize;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+        this.queueCapacity = queueCapacity;
+        this.executor = new ScheduledThreadPoolExecutor(threads);
+    }
+
+    public static Pair<StreamEvaluator, String> create(Evaluator evaluator, int threads, int batchSize, long maxLatencyMillis, int queueCapacity)
+    {
+        if (threads <= 0)
+            return new Pair<>(null, "线程数必须大于 0");
+        if (batchSize <= 0)
+            return new Pair<>(null, "批次大小必须大于 0");
+        if (maxLatencyMillis <= 0)
+            return new Pair<>(null, "最大延迟必须大于 0");
+        if (queueCapacity < batchSize)
+            return new Pair<>(null, "队列容量不能小于批次大小");
+        return new Pair<>(new StreamEvaluator(evaluator, threads, batchSize, maxLatencyMillis, queueCapacity), "");
+    }
+
+    /*
+    * 订阅样本流 key, 公式中名为 variable 的变量取样本值, 其它变量及数据层从 context 的副本中取
+    * 公式中的窗口函数(window.sum 等)以样本时间滑动, 状态属于本订阅
+    * */
+    public Subscription subscribe(SeriesKey key, IElement formula, EvaluationContext context, String variable, ResultSubscriber subscriber)
+    {
+        final Subscription s = new Subscription(this, key, formula, context, variable, subscriber);
+        CopyOnWriteArrayList<Subscription> list = subscriptions.get(key);
+        if (list == null)
+        {
+            CopyOnWriteArrayList<Subscription> created = new CopyOnWriteArrayList<>();
+            list = subscriptions.putIfAbsent(key, created);
+            if (list == null)
+                list = created;
+        }
+        list.add(s);
+
+        //未攒满的批次按最大延迟定时检查
+        long period = Math.max(maxLatencyNanos / 2, 1);
+        s.setTimer(executor.scheduleAtFixedRate(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                s.schedule();
+            }
+        }, period, period, TimeUnit.NANOSECONDS));
+
+        subscriber.onSubscribe(s);
+        return s;
+    }
+
+    /*
+    * 推送一个样本到订阅了 key 的所有公式
+    * 某个订阅的队列已满时最多等待 timeoutMillis 毫秒, 超时则该订阅丢失此样本并返回 false
+    * */
+    public boolean publish(SeriesKey key, long time, double value, long timeoutMillis) throws InterruptedException
+    {
+        List<Subscription> list = subscriptions.get(key);
+        if (list == null)
+            return true;
+
+        boolean ret = true;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Subscription s : list)
+        {
+            if (!s.offer(time, value, Math.max(deadline - System.currentTimeMillis(), 0)))
+                ret = false;
+        }
+        return ret;
+    }
+
+    //样本流 key 结束, 各订阅发送完剩余样本后收到 onComplete
+    public void complete(SeriesKey key)
+    {
+        List<Subscription> list = subscriptions.get(key);
+        if (list == null)
+            return;
+        for (Subscription s : list)
+            s.complete();
+    }
+
+    //取消所有订阅并停止线程池
+    public void shutdown()
+    {
+        List<Subscription> all = new ArrayList<>();
+        for (List<Subscription> list : subscriptions.values())
+            all.addAll(list);
+        for (Subscription s : all)
+            s.cancel();
+        executor.shutdown();
+    }
+
+    void remove(Subscription s)
+    {
+        List<Subscription> list = subscriptions.get(s.getKey());
+        if (list != null)
+            list.remove(s);
+    }
+
+    void execute(Runnable task)
+    {
+        executor.execute(task);
+    }
+
+    BatchEvaluator getBatchEvaluator()
+    {
+        return batchEvaluator;
+    }
+
+    int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    long getMaxLatencyNanos()
+    {
+        return maxLatencyNanos;
+    }
+
+    int getQueueCapacity()
+    {
+        return queueCapacity;
+    }
+}
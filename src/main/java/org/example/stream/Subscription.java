@@ -0,0 +1,201 @@
+package org.example.stream;
+
+import javafx.util.Pair;
+import org.example.analyzer.element.IElement;
+import org.example.data.SeriesKey;
+import org.example.evaluator.Column;
+import org.example.evaluator.EvaluationContext;
+import org.example.evaluator.WindowStore;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+*   一个公式对一个样本流的订阅
+*   样本进入有界队列, 攒满一批或队首样本等待超过最大延迟时, 在线程池中按列求值一批并发送给订阅者
+*   同一订阅任意时刻最多只有一个线程在处理, 保证回调按顺序且不并发
+*   每个订阅持有独立的上下文副本及窗口函数状态
+* */
+public class Subscription
+{
+    private final StreamEvaluator owner;
+    private final SeriesKey key;
+    private final IElement formula;
+    private final EvaluationContext context;
+    private final String variable;
+    private final ResultSubscriber subscriber;
+    private final SampleQueue queue;
+
+    private final AtomicLong demand = new AtomicLong(0);       //下游申请但尚未发送的批次数
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile boolean completed = false;     //样本流已结束
+    private volatile boolean cancelled = false;
+    private volatile ScheduledFuture<?> timer = null;
+
+    Subscription(StreamEvaluator owner, SeriesKey key, IElement formula, EvaluationContext context, String variable, ResultSubscriber subscriber)
+    {
+        this.owner = owner;
+        this.key = key;
+        this.formula = formula;
+        this.context = new EvaluationContext(context);
+        this.context.setWindowStore(new WindowStore());
+        this.variable = variable;
+        this.subscriber = subscriber;
+        this.queue = new SampleQueue(owner.getQueueCapacity());
+    }
+
+    public SeriesKey getKey()
+    {
+        return key;
+    }
+
+    //队列中等待求值的样本数
+    public int pending()
+    {
+        return queue.size();
+    }
+
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    //申请 n 个批次
+    public void request(long n)
+    {
+        if (n <= 0 || cancelled)
+            return;
+        long d, next;
+        do
+        {
+            d = demand.get();
+            next = d + n < 0 ? Long.MAX_VALUE : d + n;
+        } while (!demand.compareAndSet(d, next));
+        schedule();
+    }
+
+    //取消订阅, 队列中的样本被丢弃, 之后不再有回调
+    public void cancel()
+    {
+        if (cancelled)
+            return;
+        cancelled = true;
+        queue.close();
+        ScheduledFuture<?> t = timer;
+        if (t != null)
+            t.cancel(false);
+        owner.remove(this);
+    }
+
+    void setTimer(ScheduledFuture<?> timer)
+    {
+        this.timer = timer;
+    }
+
+    boolean offer(long time, double value, long timeoutMillis) throws InterruptedException
+    {
+        if (!queue.offer(time, value, timeoutMillis))
+            return false;
+        if (queue.size() >= owner.getBatchSize())
+            schedule();
+        return true;
+    }
+
+    void complete()
+    {
+        completed = true;
+        schedule();
+    }
+
+    //有可发送的批次时提交到线程池
+    void schedule()
+    {
+        if (!cancelled && ready() && running.compareAndSet(false, true))
+        {
+            try
+            {
+                owner.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        drain();
+                    }
+                });
+            }
+            catch (RuntimeException e)
+            {
+                //线程池已关闭
+                running.set(false);
+            }
+        }
+    }
+
+    private boolean ready()
+    {
+        int size = queue.size();
+        if (size == 0)
+            return completed;
+        if (demand.get() <= 0)
+            return false;
+        return completed || size >= owner.getBatchSize() || queue.age() >= owner.getMaxLatencyNanos();
+    }
+
+    private void drain()
+    {
+        try
+        {
+            int batchSize = owner.getBatchSize();
+            while (!cancelled && ready())
+            {
+                if (queue.size() == 0)
+                {
+                    //流结束且队列已清空
+                    cancel();
+                    subscriber.onComplete();
+                    return;
+                }
+
+                long[] times = new long[Math.min(queue.size(), batchSize)];
+                double[] values = new double[times.length];
+                int n = queue.drain(times, values);
+                if (n < times.length)
+                {
+                    long[] t = new long[n];
+                    double[] v = new double[n];
+                    System.arraycopy(times, 0, t, 0, n);
+                    System.arraycopy(values, 0, v, 0, n);
+                    times = t;
+                    values = v;
+                }
+
+                Map<String, double[]> columns = new HashMap<>();
+                columns.put(variable, values);
+                Pair<Column, String> r = owner.getBatchEvaluator().evaluate(formula, context, columns, times);
+                if (r.getKey() == null)
+                {
+                    cancel();
+                    subscriber.onError(r.getValue());
+                    return;
+                }
+
+                demand.decrementAndGet();
+                subscriber.onNext(times, r.getKey());
+            }
+        }
+        catch (RuntimeException e)
+        {
+            cancel();
+            subscriber.onError("订阅 " + key + " 处理失败: " + e);
+        }
+        finally
+        {
+            running.set(false);
+        }
+        //处理期间到达的样本或申请
+        schedule();
+    }
+}
@@ -0,0 +1,16 @@
+package org.example;
+
+import org.example.analyzer.element.ClassDictionary;
+import org.example.analyzer.element.FunctionElementFactory;
+import org.example.analyzer.element.VariableElementFactory;
+
+/*
+*   测试用的注册表, 与 App 中的初始化代码相同
+* */
+public class TestSupport
+{
+    public static void init(FunctionElementFactory funcFactory, VariableElementFactory varFactory, ClassDictionary classDictionary)
+    {
+        App.init(funcFactory, varFactory, classDictionary);
+    }
+}
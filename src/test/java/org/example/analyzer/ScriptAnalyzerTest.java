@@ -0,0 +1,71 @@
+package org.example.analyzer;
+
+import org.example.TestSupport;
+import org.example.analyzer.element.ClassDictionary;
+import org.example.analyzer.element.FunctionElementFactory;
+import org.example.analyzer.element.VariableElementFactory;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ScriptAnalyzerTest
+{
+    private static FunctionElementFactory funcFactory = new FunctionElementFactory();
+    private static VariableElementFactory varFactory = new VariableElementFactory();
+    private static ClassDictionary classDictionary = new ClassDictionary();
+
+    @BeforeClass
+    public static void init()
+    {
+        TestSupport.init(funcFactory, varFactory, classDictionary);
+    }
+
+    private static List<ScriptAnalyzer.Statement> analyze(String script, CompileLimits limits) throws IOException
+    {
+        final ArrayList<ScriptAnalyzer.Statement> ret = new ArrayList<>();
+        new ScriptAnalyzer(funcFactory, varFactory, classDictionary).analyze(new StringReader(script), new ScriptAnalyzer.Handler()
+        {
+            @Override
+            public void onStatement(ScriptAnalyzer.Statement statement)
+            {
+                ret.add(statement);
+            }
+        }, limits);
+        return ret;
+    }
+
+    //上限对每个表达式单独计算, 超出上限的表达式不影响后续表达式
+    @Test
+    public void limitsApplyPerStatement() throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 8; i++)
+            sb.append("1 + 2 + 3;");
+        List<ScriptAnalyzer.Statement> all = analyze(sb.toString(), new CompileLimits(20, 10, 0, 0, 0));
+        assertEquals(8, all.size());
+        for (ScriptAnalyzer.Statement s : all)
+            assertNotNull(s.result.getValue(), s.result.getKey());
+
+        CompileLimits limits = new CompileLimits(20, 10, 0, 0, 0);
+        List<ScriptAnalyzer.Statement> r = analyze("1 + 2; 1+2+3+4+5+6; let q = v; q + 1; 1 +                   2; v", limits);
+        assertEquals(5, r.size());
+        assertNotNull(r.get(0).result.getKey());
+        assertNull(r.get(1).result.getKey());
+        assertTrue(r.get(1).result.getValue(), r.get(1).result.getValue().contains("超过上限 10"));
+        assertNotNull(r.get(2).result.getValue(), r.get(2).result.getKey());
+        assertNull(r.get(3).result.getKey());
+        assertTrue(r.get(3).result.getValue(), r.get(3).result.getValue().contains("超过上限 20"));
+        assertNotNull(r.get(4).result.getKey());
+        assertEquals(1, limits.getRejected(CompileLimits.LIMIT_TOKENS));
+        assertEquals(1, limits.getRejected(CompileLimits.LIMIT_CHARS));
+    }
+}
@@ -0,0 +1,129 @@
+package org.example.analyzer.element;
+
+import javafx.util.Pair;
+import org.example.TestSupport;
+import org.example.analyzer.Analyzer;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/*
+*   深度为 1,000,000 的元素树: 编译、输出及 JSON、二进制的还原都不依赖线程栈的大小
+* */
+public class DeepElementTest
+{
+    private static final int DEPTH = 1000000;
+
+    private static FunctionElementFactory funcFactory = new FunctionElementFactory();
+    private static VariableElementFactory varFactory = new VariableElementFactory();
+    private static ClassDictionary classDictionary = new ClassDictionary();
+    private static long version;
+
+    @BeforeClass
+    public static void init()
+    {
+        TestSupport.init(funcFactory, varFactory, classDictionary);
+        version = RegistryVersion.of(funcFactory, varFactory, classDictionary);
+    }
+
+    //v + 1 + 1 + ..., 左侧逐层嵌套
+    static String chain(int depth)
+    {
+        StringBuilder sb = new StringBuilder(4 * depth + 1).append('v');
+        for (int i = 0; i < depth; i++)
+            sb.append(" + 1");
+        return sb.toString();
+    }
+
+    //~~...~v, 一元运算逐层嵌套
+    static String negations(int depth)
+    {
+        char[] c = new char[depth];
+        Arrays.fill(c, '~');
+        return new String(c) + "v";
+    }
+
+    //x.filterAbove(1).filterAbove(1)..., 调用对象逐层嵌套
+    static String members(int depth)
+    {
+        StringBuilder sb = new StringBuilder(16 * depth + 64).append("getMeasuringValue(0, 1, 2, startTime, endTime, 0)");
+        for (int i = 0; i < depth; i++)
+            sb.append(".filterAbove(1)");
+        return sb.append(".count()").toString();
+    }
+
+    private static IElement compile(String expression)
+    {
+        Pair<IElement, String> r = Analyzer.toElement(expression, funcFactory, varFactory, classDictionary);
+        assertNotNull(r.getValue(), r.getKey());
+        return r.getKey();
+    }
+
+    /*
+    * 编码为 JSON(写入临时文件)及二进制后还原, 与原来的表达式比较
+    * 还原前释放原来的元素树, 同时存在的只有一棵树
+    * */
+    private static void assertRoundTrip(String expression) throws IOException
+    {
+        IElement e = compile(expression);
+        String expected = e.toExpressionString();
+
+        File file = File.createTempFile("deep", ".json");
+        try
+        {
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)))
+            {
+                new ElementJsonWriter(out, false, true).writeDocument(e, version);
+            }
+            ElementBinaryWriter writer = new ElementBinaryWriter(version, true);
+            writer.add(e);
+            ByteBuffer binary = writer.toByteBuffer();
+            e = null;
+
+            Pair<IElement, String> r;
+            try (Reader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))
+            {
+                r = new ElementJsonReader(funcFactory, varFactory, classDictionary).read(in);
+            }
+            assertNotNull(r.getValue(), r.getKey());
+            assertEquals(expected, r.getKey().toExpressionString());
+            r = null;
+
+            ElementBinaryReader reader = ElementBinaryReader.open(binary, version, funcFactory, varFactory, classDictionary).getKey();
+            assertNotNull(reader);
+            r = reader.get(0);
+            assertNotNull(r.getValue(), r.getKey());
+            assertEquals(expected, r.getKey().toExpressionString());
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void deepBinaryChain() throws IOException
+    {
+        assertRoundTrip(chain(DEPTH));
+    }
+
+    @Test
+    public void deepUnaryNesting() throws IOException
+    {
+        assertRoundTrip(negations(DEPTH));
+    }
+
+    //每层是带参数的函数调用, 元素较多, 深度取 DEPTH / 10 以控制内存
+    @Test
+    public void deepMemberCalls() throws IOException
+    {
+        assertRoundTrip(members(DEPTH / 10));
+    }
+}
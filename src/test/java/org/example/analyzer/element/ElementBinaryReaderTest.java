@@ -0,0 +1,187 @@
+package org.example.analyzer.element;
+
+import javafx.util.Pair;
+import org.example.TestSupport;
+import org.example.analyzer.Analyzer;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ElementBinaryReaderTest
+{
+    private static final String[] EXPRESSIONS = {
+            "v +3  > math.sin(0.8 + 0x55)",
+            "getMeasuringValue(0, 1, 2, startTime, endTime, 0).filterAbove(10).sum() > v",
+            "'a\"b\\\\c\\n中' + v",
+            "let q = v * 2; let r = q + 1; q * 3 > 100 || r < 5",
+            "!(v > 3) && -v < ~4",
+            "-12 + 7 * 1.5"
+    };
+
+    private static FunctionElementFactory funcFactory = new FunctionElementFactory();
+    private static VariableElementFactory varFactory = new VariableElementFactory();
+    private static ClassDictionary classDictionary = new ClassDictionary();
+    private static List<IElement> elements = new ArrayList<>();
+    private static long version;
+
+    @BeforeClass
+    public static void init()
+    {
+        TestSupport.init(funcFactory, varFactory, classDictionary);
+        version = RegistryVersion.of(funcFactory, varFactory, classDictionary);
+        for (String s : EXPRESSIONS)
+        {
+            Pair<IElement, String> r = Analyzer.toElement(s, funcFactory, varFactory, classDictionary);
+            assertNotNull(s + ": " + r.getValue(), r.getKey());
+            elements.add(r.getKey());
+        }
+    }
+
+    private static ByteBuffer encode(List<IElement> elements, boolean positions)
+    {
+        ElementBinaryWriter writer = new ElementBinaryWriter(version, positions);
+        for (IElement e : elements)
+            writer.add(e);
+        return writer.toByteBuffer();
+    }
+
+    @Test
+    public void roundTrip()
+    {
+        for (boolean positions : new boolean[] { true, false })
+        {
+            ElementBinaryReader reader = ElementBinaryReader.open(encode(elements, positions), version, funcFactory, varFactory, classDictionary).getKey();
+            assertNotNull(reader);
+            assertEquals(elements.size(), reader.size());
+            for (int i = 0; i < reader.size(); i++)
+            {
+                Pair<IElement, String> r = reader.get(i);
+                assertNotNull(r.getValue(), r.getKey());
+                assertEquals(elements.get(i).toExpressionString(), r.getKey().toExpressionString());
+                assertEquals(elements.get(i).toJson(), r.getKey().toJson());
+                if (positions)
+                    assertEquals(elements.get(i).getColumn(), r.getKey().getColumn());
+            }
+        }
+    }
+
+    //二进制编码小于 toJson, 且可以完整还原
+    @Test
+    public void smallerThanJson() throws IOException
+    {
+        List<IElement> many = new ArrayList<>();
+        for (int i = 0; i < 5000; i++)
+            many.add(elements.get(i % elements.size()));
+
+        long jsonBytes = 0;
+        for (IElement e : many)
+            jsonBytes += e.toJson().getBytes(StandardCharsets.UTF_8).length;
+        ByteBuffer binary = encode(many, false);
+        assertTrue(binary.remaining() < jsonBytes);
+
+        ElementBinaryReader reader = ElementBinaryReader.open(binary, version, funcFactory, varFactory, classDictionary).getKey();
+        assertEquals(many.size(), reader.size());
+        for (int i = 0; i < reader.size(); i++)
+            assertNotNull(reader.get(i).getKey());
+    }
+
+    //由 extend 创建的写入器直接复制原有编码, 新加入的元素树沿用原有符号
+    @Test
+    public void copyKeepsEncodings()
+    {
+        ElementBinaryReader base = ElementBinaryReader.open(encode(elements, true), version, funcFactory, varFactory, classDictionary).getKey();
+        ElementBinaryWriter writer = ElementBinaryWriter.extend(base).getKey();
+        assertNotNull(writer);
+        for (int i = base.size() - 1; i >= 0; i--)
+            assertEquals(base.size() - 1 - i, writer.copy(i));
+        writer.add(elements.get(0));
+        assertEquals(-1, writer.copy(base.size()));
+
+        ElementBinaryReader reader = ElementBinaryReader.open(writer.toByteBuffer(), version, funcFactory, varFactory, classDictionary).getKey();
+        assertNotNull(reader);
+        assertEquals(base.size() + 1, reader.size());
+        assertEquals(base.symbolCount(), reader.symbolCount());
+        for (int i = 0; i < base.size(); i++)
+        {
+            assertEquals(base.sizeOf(i), reader.sizeOf(base.size() - 1 - i));
+            assertEquals(elements.get(i).toJson(), reader.get(base.size() - 1 - i).getKey().toJson());
+        }
+        assertEquals(elements.get(0).toJson(), reader.get(base.size()).getKey().toJson());
+    }
+
+    @Test
+    public void rejectsOtherRegistryVersion()
+    {
+        Pair<ElementBinaryReader, String> r = ElementBinaryReader.open(encode(elements, false), version + 1, funcFactory, varFactory, classDictionary);
+        assertNull(r.getKey());
+    }
+
+    //截断或改写任意字节后只返回错误, 不抛出异常, 也不按损坏的长度分配内存
+    @Test
+    public void corruptInputReturnsErrors()
+    {
+        ByteBuffer b = encode(elements, true);
+        byte[] valid = new byte[b.remaining()];
+        b.get(valid);
+
+        Random random = new Random(1);
+        Pair<ElementBinaryReader, String> r;
+        for (int n = 0; n < 50000; n++)
+        {
+            byte[] data = valid.clone();
+            int length = data.length;
+            switch (n % 3)
+            {
+                case 0:
+                    length = random.nextInt(data.length);
+                    break;
+                case 1:
+                    data[4 + random.nextInt(data.length - 4)] = (byte) random.nextInt(256);
+                    break;
+                default:
+                    //超长的 varint, 解码为负数或极大的长度
+                    int p = 4 + random.nextInt(data.length - 4);
+                    for (int i = p; i < Math.min(p + 5, data.length); i++)
+                        data[i] = (byte) 0xff;
+                    break;
+            }
+
+            r = ElementBinaryReader.open(ByteBuffer.wrap(data, 0, length), version, funcFactory, varFactory, classDictionary);
+            if (r.getKey() == null)
+                continue;
+            for (int i = 0; i < r.getKey().size(); i++)
+                r.getKey().get(i);
+        }
+
+        //符号个数、元素树个数被改为 2^31 - 1
+        int header = 4 + 1 + 1 + 8;
+        for (int field = 0; field < 2; field++)
+        {
+            ByteBuffer forged = ByteBuffer.wrap(valid.clone());
+            forged.putInt(header + field * 4, Integer.MAX_VALUE);
+            assertNull(ElementBinaryReader.open(forged, version, funcFactory, varFactory, classDictionary).getKey());
+        }
+
+        //偏移表中的偏移被改为越界或倒序时 get 返回错误
+        ByteBuffer forged = ByteBuffer.wrap(valid.clone());
+        int symbolCount = forged.getInt(header);
+        int treeTable = header + 8 + symbolCount * 4 + forged.getInt(header + 8 + (symbolCount - 1) * 4);
+        forged.putInt(treeTable, Integer.MAX_VALUE);
+        r = ElementBinaryReader.open(forged, version, funcFactory, varFactory, classDictionary);
+        assertNotNull(r.getKey());
+        assertNull(r.getKey().get(0).getKey());
+        assertNull(r.getKey().get(1).getKey());
+        assertEquals(-1, r.getKey().sizeOf(1));
+    }
+}
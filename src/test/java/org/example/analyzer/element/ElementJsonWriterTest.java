@@ -0,0 +1,84 @@
+package org.example.analyzer.element;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import org.example.TestSupport;
+import org.example.analyzer.Analyzer;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/*
+*   流式输出与构造 JSONObject 后输出(toJson 之前的实现)的结果相同
+* */
+public class ElementJsonWriterTest
+{
+    private static final String[] EXPRESSIONS = {
+            "v +3  > math.sin(0.8 + 0x55)",
+            "getMeasuringValue(0, 1, 2, startTime, endTime, 0).filterAbove(10).sum() > v",
+            "'a\"b\\\\c\\n' + v",
+            "(v + 2) * 3 > 100 || (v / 3) != 4"
+    };
+
+    private static FunctionElementFactory funcFactory = new FunctionElementFactory();
+    private static VariableElementFactory varFactory = new VariableElementFactory();
+    private static ClassDictionary classDictionary = new ClassDictionary();
+
+    @BeforeClass
+    public static void init()
+    {
+        TestSupport.init(funcFactory, varFactory, classDictionary);
+    }
+
+    @Test
+    public void streamingMatchesJsonObjectTree() throws IOException
+    {
+        for (String s : EXPRESSIONS)
+        {
+            IElement e = Analyzer.toElement(s, funcFactory, varFactory, classDictionary).getKey();
+            assertNotNull(s, e);
+
+            JSONObject root = new JSONObject();
+            tree(e, root);
+            StringBuilder sb = new StringBuilder(256);
+            new ElementJsonWriter(sb, true).write(e);
+
+            assertEquals(s, JSON.parse(root.toJSONString()), JSON.parse(sb.toString()));
+        }
+    }
+
+    //递归构造 JSONObject
+    private static void tree(IElement e, JSONObject dst)
+    {
+        dst.put("type", e.getType());
+        dst.put("name", e.getName());
+        dst.put("displayName", e.getDisplayName());
+        dst.put("hint", e.getHint());
+        dst.put("resultType", e.getResultType().getName());
+
+        JSONArray dstParams = new JSONArray();
+        ArrayList<IElement.Param> params = e.getParams();
+        for (IElement.Param param : params)
+        {
+            JSONObject dstParam = new JSONObject();
+            dstParam.put("displayName", param.displayName);
+            dstParam.put("hint", param.hint);
+            dstParam.put("type", param.type);
+            if (param.value != null)
+            {
+                JSONObject dstParamValue = new JSONObject();
+                tree(param.value, dstParamValue);
+                dstParam.put("value", dstParamValue);
+            }
+            dstParams.add(dstParam);
+        }
+
+        dst.put("params", dstParams);
+    }
+}
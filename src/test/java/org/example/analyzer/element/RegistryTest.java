@@ -0,0 +1,131 @@
+package org.example.analyzer.element;
+
+import javafx.util.Pair;
+import org.example.TestSupport;
+import org.example.analyzer.BulkCompiler;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RegistryTest
+{
+    private static FunctionElementFactory funcFactory = new FunctionElementFactory();
+    private static VariableElementFactory varFactory = new VariableElementFactory();
+    private static ClassDictionary classDictionary = new ClassDictionary();
+
+    @BeforeClass
+    public static void init()
+    {
+        TestSupport.init(funcFactory, varFactory, classDictionary);
+    }
+
+    //Builder 中的修改在 commit 之前不可见, commit 后全部可见
+    @Test
+    public void batchIsPublishedAtOnce()
+    {
+        Class number = classDictionary.lookup(Class.TYPE_NUMBER);
+        Registry before = Registry.current();
+
+        Registry.Builder b = Registry.edit();
+        b.registerVariable("临时", "", "registryTestVar", "", number);
+        b.addAccept(number, "registryTestOp", Class.TYPE_NUMBER, Class.TYPE_NUMBER);
+        b.unregisterFunction("math", "sin");
+
+        assertNull(varFactory.create("", "registryTestVar"));
+        assertFalse(number.isAccept("registryTestOp", Class.TYPE_NUMBER).getKey());
+        assertNotNull(funcFactory.create("math", "sin"));
+        assertTrue(Registry.current() == before);
+
+        assertTrue(Registry.commit(b));
+        assertNotNull(varFactory.create("", "registryTestVar"));
+        assertTrue(number.isAccept("registryTestOp", Class.TYPE_NUMBER).getKey());
+        assertNull(funcFactory.create("math", "sin"));
+
+        //旧快照不受影响
+        assertNotNull(before.functions.get("math.sin"));
+        assertNull(before.accept(number, "registryTestOp", Class.TYPE_NUMBER));
+
+        init();
+        varFactory.unregisterVariableElement("", "registryTestVar");
+        number.removeAccept("registryTestOp", Class.TYPE_NUMBER);
+    }
+
+    //builder 开始之后有其它修改发布时 commit 失败, 不覆盖其它修改
+    @Test
+    public void staleBuilderIsRejected()
+    {
+        Registry.Builder b = Registry.edit();
+        b.unregisterFunction("math", "cos");
+        funcFactory.registerFunctionElement("临时", "", "registryTestFunc", "", new ArrayList<IElement.Param>(), classDictionary.lookup(Class.TYPE_NUMBER));
+
+        assertFalse(Registry.commit(b));
+        assertNotNull(funcFactory.create("math", "cos"));
+        assertNotNull(funcFactory.create("", "registryTestFunc"));
+
+        funcFactory.unregisterFunctionElement("", "registryTestFunc");
+    }
+
+    //同名类型在不同 ClassDictionary 中的接收规则互不影响
+    @Test
+    public void acceptRulesBelongToClassObjects()
+    {
+        ClassDictionary other = new ClassDictionary();
+        Class quantity = classDictionary.lookup("Quantity");
+        assertTrue(classDictionary.lookup(Class.TYPE_NUMBER).isAccept("+", quantity.getName()).getKey());
+        assertFalse(other.lookup(Class.TYPE_NUMBER).isAccept("+", quantity.getName()).getKey());
+        assertEquals(Class.TYPE_NUMBER, other.lookup(Class.TYPE_NUMBER).isAccept("+", Class.TYPE_NUMBER).getValue());
+    }
+
+    //构造类型不发布新的快照, 注册表不阻止丢弃的 ClassDictionary 中的类型被回收
+    @Test
+    public void acceptRulesDoNotPinClasses() throws InterruptedException
+    {
+        Registry before = Registry.current();
+        ClassDictionary other = new ClassDictionary();
+        assertTrue(Registry.current() == before);
+        assertEquals(Class.TYPE_NUMBER, other.lookup(Class.TYPE_NUMBER).isAccept("+", Class.TYPE_NUMBER).getValue());
+
+        other.lookup(Class.TYPE_NUMBER).addAccept("registryTestOp", Class.TYPE_NUMBER, Class.TYPE_NUMBER);
+        WeakReference<Class> ref = new WeakReference<>(other.lookup(Class.TYPE_NUMBER));
+        other = null;
+        for (int i = 0; i < 100 && ref.get() != null; i++)
+        {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+    }
+
+    //一批编译按同一快照查找定义, 之后发布的修改不影响该批
+    @Test
+    public void bulkCompileUsesOneSnapshot()
+    {
+        Registry before = Registry.current();
+        funcFactory.registerFunctionElement("临时", "", "registryTestFunc", "", new ArrayList<IElement.Param>(), classDictionary.lookup(Class.TYPE_NUMBER));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try
+        {
+            BulkCompiler compiler = new BulkCompiler(pool, funcFactory, varFactory, classDictionary);
+            String[] expressions = { "registryTestFunc() + 1", "1 + 2" };
+            List<Pair<IElement, String>> old = compiler.compile(expressions, before).getItems();
+            assertNull(old.get(0).getKey());
+            assertNotNull(old.get(1).getKey());
+            assertNotNull(compiler.compile(expressions).getItems().get(0).getKey());
+        }
+        finally
+        {
+            pool.shutdown();
+            funcFactory.unregisterFunctionElement("", "registryTestFunc");
+        }
+    }
+}
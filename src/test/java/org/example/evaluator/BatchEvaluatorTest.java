@@ -0,0 +1,172 @@
+package org.example.evaluator;
+
+import javafx.util.Pair;
+import org.example.TestSupport;
+import org.example.analyzer.Analyzer;
+import org.example.analyzer.element.*;
+import org.example.data.DataProvider;
+import org.example.data.LocalDataProvider;
+import org.example.data.SamplePointList;
+import org.example.data.SampleTime;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/*
+*   按列求值的结果与逐行调用 Evaluator 的结果一致
+* */
+public class BatchEvaluatorTest
+{
+    private static FunctionElementFactory funcFactory = new FunctionElementFactory();
+    private static VariableElementFactory varFactory = new VariableElementFactory();
+    private static ClassDictionary classDictionary = new ClassDictionary();
+    private static LocalDataProvider dataProvider = new LocalDataProvider();
+    private static Evaluator evaluator = new Evaluator(FunctionLibrary.createDefault());
+    private static double[] column = new double[200];
+
+    @BeforeClass
+    public static void init()
+    {
+        TestSupport.init(funcFactory, varFactory, classDictionary);
+        long t0 = SampleTime.parse("2021-01-01", 0).getKey();
+        for (int i = 0; i < 100; i++)
+            dataProvider.append(7, 1, 2, t0 + i * 3600000L, i);
+        for (int i = 0; i < column.length; i++)
+            column[i] = (i * 37) % 150 + 1;
+    }
+
+    //记录数据调用次数, 测量点id 大于等于 100 时出错
+    private static class CountingProvider implements DataProvider
+    {
+        int calls = 0;
+
+        @Override
+        public Pair<Double, String> getQuantity(long pointId, long measureCode, long measureNo, String startTime, String endTime)
+        {
+            calls++;
+            if (pointId >= 100)
+                return new Pair<>(null, "测量点 " + pointId + " 不存在");
+            return dataProvider.getQuantity(7, measureCode, measureNo, startTime, endTime);
+        }
+
+        @Override
+        public Pair<SamplePointList, String> getMeasuringValue(long pointId, long measureCode, long measureNo, String startTime, String endTime, int grouping)
+        {
+            calls++;
+            if (pointId >= 100)
+                return new Pair<>(null, "测量点 " + pointId + " 不存在");
+            return dataProvider.getMeasuringValue(7, measureCode, measureNo, startTime, endTime, grouping);
+        }
+    }
+
+    private static EvaluationContext context(DataProvider dataProvider)
+    {
+        EvaluationContext context = new EvaluationContext(dataProvider, 7);
+        context.setVariable("startTime", "2021-01-01");
+        context.setVariable("endTime", "2021-01-02");
+        return context;
+    }
+
+    private static IElement compile(String expression)
+    {
+        Pair<IElement, String> r = Analyzer.toElement(expression, funcFactory, varFactory, classDictionary);
+        assertNotNull(expression + ": " + r.getValue(), r.getKey());
+        return r.getKey();
+    }
+
+    //逐行求值与按列求值的结果逐行比较
+    private static void assertSameAsScalar(IElement e, EvaluationContext context)
+    {
+        Map<String, double[]> columns = new HashMap<>();
+        columns.put("v", column);
+        Pair<Column, String> batch = new BatchEvaluator(evaluator).evaluate(e, context, columns);
+        assertNotNull(batch.getValue(), batch.getKey());
+        for (int i = 0; i < column.length; i++)
+        {
+            context.setVariable("v", column[i]);
+            assertEquals("行 " + i, evaluator.evaluate(e, context).getKey(), batch.getKey().get(i));
+        }
+    }
+
+    //内层 let 中逐行求值的元素引用外层的绑定, JSON 及二进制的读取结果可以是这样的嵌套 let
+    @Test
+    public void nestedLetSeesOuterBindings()
+    {
+        LetElement flat = (LetElement) compile("let a = v * 3; let b = a + 1; getMeasuringValue(a, 1, 2, startTime, endTime, 0).count() + b > 10");
+        IElement b = flat.getBindingValue(1);
+        IElement body = flat.getBody();
+        //主体中对 b 的引用改为内层 let 的第 0 个绑定
+        IElement sum = body.getParams().get(0).value;
+        sum.setParam(1, new BindingElement("b", 0, b));
+        LetElement inner = new LetElement(Arrays.asList("b"), Arrays.asList(b), body);
+        LetElement outer = new LetElement(Arrays.asList("a"), Arrays.<IElement>asList(flat.getBindingValue(0)), inner);
+
+        assertSameAsScalar(outer, context(dataProvider));
+    }
+
+    //&& 与 || 的右侧只在左侧未决定结果的行上求值: 数据调用次数与逐行求值相同, 其它行上右侧出错不影响结果
+    @Test
+    public void logicalOperatorsShortCircuit()
+    {
+        String[] expressions = {
+                "v < 100 && getMeasuringValue(v, 1, 2, startTime, endTime, 0).count() > 3",
+                "v >= 100 || getMeasuringValue(v, 1, 2, startTime, endTime, 0).count() > 3",
+                "v < 50 && (v > 20 || getMeasuringValue(v, 1, 2, startTime, endTime, 0).count() > 0)",
+                "let a = getMeasuringValue(v, 1, 2, startTime, endTime, 0).count(); v < 20 && a > 1 || v < 40 && a > 2 || v < 60 && a > 3",
+                "v > 500 && getMeasuringValue(999, 1, 2, startTime, endTime, 0).count() > 0"
+        };
+        Map<String, double[]> columns = new HashMap<>();
+        columns.put("v", column);
+        for (String s : expressions)
+        {
+            IElement e = compile(s);
+            CountingProvider provider = new CountingProvider();
+            EvaluationContext context = context(provider);
+            Pair<Column, String> batch = new BatchEvaluator(evaluator).evaluate(e, context, columns);
+            assertNotNull(s + ": " + batch.getValue(), batch.getKey());
+            int batchCalls = provider.calls;
+
+            provider.calls = 0;
+            for (int i = 0; i < column.length; i++)
+            {
+                context.setVariable("v", column[i]);
+                assertEquals(s + " 行 " + i, evaluator.evaluate(e, context).getKey(), batch.getKey().get(i));
+            }
+            assertEquals(s, provider.calls, batchCalls);
+        }
+    }
+
+    //超出预算的结果与普通错误可以直接从结果中区分
+    @Test
+    public void exceededResultIsTyped()
+    {
+        IElement e = compile("v < 100 && getMeasuringValue(v, 1, 2, startTime, endTime, 0).count() > 3");
+        Map<String, double[]> columns = new HashMap<>();
+        columns.put("v", column);
+        EvaluationContext context = context(new CountingProvider());
+        context.setBudget(new EvaluationBudget(0, 0, 10, 0));
+        EvaluationResult<Column> r = new BatchEvaluator(evaluator).evaluateResult(e, context, columns, null);
+        assertNull(r.getValue());
+        assertTrue(r.isExceeded());
+        assertEquals(EvaluationBudget.EXCEEDED_DATA_CALLS, r.getExceeded());
+
+        context.setBudget(new EvaluationBudget(0, 0, 0, 0));
+        r = new BatchEvaluator(evaluator).evaluateResult(compile("getMeasuringValue(v + 100, 1, 2, startTime, endTime, 0).count() > 3"), context, columns, null);
+        assertFalse(r.isOk());
+        assertFalse(r.isExceeded());
+        assertTrue(r.getError(), r.getError().contains("不存在"));
+
+        r = new BatchEvaluator(evaluator).evaluateResult(e, context, columns, null);
+        assertTrue(r.isOk());
+        assertEquals(EvaluationBudget.EXCEEDED_NONE, r.getExceeded());
+    }
+}
@@ -0,0 +1,104 @@
+package org.example.evaluator;
+
+import javafx.util.Pair;
+import org.example.TestSupport;
+import org.example.analyzer.Analyzer;
+import org.example.analyzer.element.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/*
+*   深度为 1,000,000 的元素树的逐行求值及按列求值, 不依赖线程栈的大小
+* */
+public class DeepEvaluationTest
+{
+    private static final int DEPTH = 1000000;
+
+    private static FunctionElementFactory funcFactory = new FunctionElementFactory();
+    private static VariableElementFactory varFactory = new VariableElementFactory();
+    private static ClassDictionary classDictionary = new ClassDictionary();
+    private static Evaluator evaluator = new Evaluator(FunctionLibrary.createDefault());
+    private static double[] column = { 0, 1, 2, 3 };
+
+    @BeforeClass
+    public static void init()
+    {
+        TestSupport.init(funcFactory, varFactory, classDictionary);
+    }
+
+    private static IElement compile(String expression)
+    {
+        Pair<IElement, String> r = Analyzer.toElement(expression, funcFactory, varFactory, classDictionary);
+        assertNotNull(r.getValue(), r.getKey());
+        return r.getKey();
+    }
+
+    //逐行求值及按列求值的结果都为 f(v) = v + offset
+    private static void assertEvaluatesTo(IElement e, double offset)
+    {
+        EvaluationContext context = new EvaluationContext(null, 7);
+        context.setVariable("v", 2.0);
+        Pair<Object, String> r = evaluator.evaluate(e, context);
+        assertNotNull(r.getValue(), r.getKey());
+        assertEquals(2 + offset, r.getKey());
+
+        Map<String, double[]> columns = new HashMap<>();
+        columns.put("v", column);
+        Pair<Column, String> batch = new BatchEvaluator(evaluator).evaluate(e, context, columns);
+        assertNotNull(batch.getValue(), batch.getKey());
+        for (int i = 0; i < column.length; i++)
+            assertEquals(column[i] + offset, batch.getKey().get(i));
+    }
+
+    //v + 1 + 1 + ..., 左侧逐层嵌套
+    @Test
+    public void deepBinaryChain()
+    {
+        StringBuilder sb = new StringBuilder(4 * DEPTH + 1).append('v');
+        for (int i = 0; i < DEPTH; i++)
+            sb.append(" + 1");
+        assertEvaluatesTo(compile(sb.toString()), DEPTH);
+    }
+
+    //~~...~v, 偶数层按位取反的结果为 v
+    @Test
+    public void deepUnaryNesting()
+    {
+        char[] c = new char[DEPTH];
+        Arrays.fill(c, '~');
+        assertEvaluatesTo(compile(new String(c) + "v"), 0);
+    }
+
+    /*
+    * let a0 = v; let a1 = a0 + 1; ...; a999999, 每个绑定的值引用前一个绑定, 求值时逐层进入
+    * 直接构造元素树, 语法分析处理大量绑定较慢
+    * */
+    @Test
+    public void deepBindingChain()
+    {
+        IElement one = compile("1");
+        ArrayList<String> names = new ArrayList<>(DEPTH);
+        ArrayList<IElement> values = new ArrayList<>(DEPTH);
+        names.add("a0");
+        values.add(compile("v"));
+        for (int i = 1; i < DEPTH; i++)
+        {
+            IElement sum = new BinaryOperationElement("+", "+", "+");
+            sum.setParam(0, new BindingElement("a" + (i - 1), i - 1, values.get(i - 1)));
+            sum.setParam(1, one);
+            sum.setResultType(one.getResultType());
+            names.add("a" + i);
+            values.add(sum);
+        }
+        LetElement let = new LetElement(names, values, new BindingElement("a" + (DEPTH - 1), DEPTH - 1, values.get(DEPTH - 1)));
+        assertEvaluatesTo(let, DEPTH - 1);
+    }
+}
@@ -0,0 +1,130 @@
+package org.example.evaluator;
+
+import javafx.util.Pair;
+import org.example.TestSupport;
+import org.example.analyzer.Analyzer;
+import org.example.analyzer.element.*;
+import org.example.analyzer.element.Class;
+import org.example.data.LocalDataProvider;
+import org.example.data.LocalMetadataProvider;
+import org.example.data.SampleTime;
+import org.example.data.SeriesKey;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FunctionLibraryTest
+{
+    private static FunctionElementFactory funcFactory = new FunctionElementFactory();
+    private static VariableElementFactory varFactory = new VariableElementFactory();
+    private static ClassDictionary classDictionary = new ClassDictionary();
+    private static Evaluator evaluator = new Evaluator(FunctionLibrary.createDefault());
+    private static LocalDataProvider dataProvider = new LocalDataProvider();
+    private static LocalMetadataProvider metadataProvider = new LocalMetadataProvider();
+
+    @BeforeClass
+    public static void init()
+    {
+        TestSupport.init(funcFactory, varFactory, classDictionary);
+        long t0 = SampleTime.parse("2021-01-01", 0).getKey();
+        for (int i = 0; i < 24; i++)
+        {
+            dataProvider.append(7, 1, 1, t0 + i * 3600000L, 1);
+            dataProvider.append(8, 1, 1, t0 + i * 3600000L, 2);
+        }
+        metadataProvider.setMeasureParam(7, "倍率", "40");
+        metadataProvider.setRentalAreaProperty(3, "面积", "120.5");
+        metadataProvider.addContainerSeries(7, "配电柜", "电", new SeriesKey(7, 1, 1));
+        metadataProvider.addContainerSeries(7, "配电柜", "电", new SeriesKey(8, 1, 1));
+    }
+
+    private static Pair<Object, String> evaluate(String expression, boolean metadata)
+    {
+        Pair<IElement, String> e = Analyzer.toElement(expression, funcFactory, varFactory, classDictionary);
+        assertNotNull(expression + ": " + e.getValue(), e.getKey());
+        EvaluationContext context = new EvaluationContext(dataProvider, 7);
+        if (metadata)
+            context.setMetadataProvider(metadataProvider);
+        return evaluator.evaluate(e.getKey(), context);
+    }
+
+    //注册的元数据函数都有实现, 未设置元数据层时返回错误
+    @Test
+    public void metadataFunctions()
+    {
+        assertEquals("40", evaluate("getMeasureParamValue(0, '倍率')", true).getKey());
+        assertEquals("120.5", evaluate("getRentalAreaProperty(3, '面积')", true).getKey());
+        assertEquals(72.0, evaluate("getQuantityByContainer(0, '配电柜', '电', '2021-01-01', '2021-01-02')", true).getKey());
+        assertEquals(0.0, evaluate("getQuantityByContainer(0, '配电柜', '水', '2021-01-01', '2021-01-02')", true).getKey());
+
+        assertNull(evaluate("getMeasureParamValue(0, '不存在')", true).getKey());
+        Pair<Object, String> r = evaluate("getMeasureParamValue(0, '倍率')", false);
+        assertNull(r.getKey());
+        assertTrue(r.getValue(), r.getValue().contains("未设置元数据层"));
+    }
+
+    //按容器查询时每个序列计一次数据调用
+    @Test
+    public void containerQueryChargesEachSeries()
+    {
+        Pair<IElement, String> e = Analyzer.toElement("getQuantityByContainer(0, '配电柜', '电', '2021-01-01', '2021-01-02')", funcFactory, varFactory, classDictionary);
+        EvaluationContext context = new EvaluationContext(dataProvider, 7);
+        context.setMetadataProvider(metadataProvider);
+        context.setBudget(new EvaluationBudget(0, 0, 1, 0));
+        EvaluationResult<Object> r = evaluator.evaluateResult(e.getKey(), context);
+        assertNull(r.getValue());
+        assertTrue(r.isExceeded());
+        assertEquals(EvaluationBudget.EXCEEDED_DATA_CALLS, r.getExceeded());
+    }
+
+    private static long allocated(IElement e, EvaluationBudget budget)
+    {
+        EvaluationContext context = new EvaluationContext(dataProvider, 7);
+        context.setBudget(budget);
+        assertEquals(24.0, evaluator.evaluate(e, context).getKey());
+        return budget.getAllocated();
+    }
+
+    //单独调用的过滤函数生成的列表计入分配预算
+    @Test
+    public void filterChargesAllocation()
+    {
+        IElement plain = Analyzer.toElement("let f = getMeasuringValue(0, 1, 1, '2021-01-01', '2021-01-02', 0); f.count()", funcFactory, varFactory, classDictionary).getKey();
+        IElement filtered = Analyzer.toElement("let f = getMeasuringValue(0, 1, 1, '2021-01-01', '2021-01-02', 0).filterAbove(0); f.count()", funcFactory, varFactory, classDictionary).getKey();
+        long base = allocated(plain, new EvaluationBudget(0, 0, 0, 0));
+        assertTrue(allocated(filtered, new EvaluationBudget(0, 0, 0, 0)) > base);
+
+        allocated(plain, new EvaluationBudget(0, 0, 0, base));
+        EvaluationContext context = new EvaluationContext(dataProvider, 7);
+        context.setBudget(new EvaluationBudget(0, 0, 0, base));
+        assertEquals(EvaluationBudget.EXCEEDED_ALLOCATION, evaluator.evaluateResult(filtered, context).getExceeded());
+    }
+
+    //注册了需要参数的全局 sum(x) 后, 成员函数 sum() 仍可调用, 全局 sum() 报告参数个数错误
+    @Test
+    public void memberCallIgnoresGlobalArity()
+    {
+        ArrayList<IElement.Param> params = new ArrayList<>();
+        params.add(new IElement.Param("x", "数值", Class.TYPE_NUMBER));
+        funcFactory.registerFunctionElement("全局求和", "", "sum", "测试用", params, classDictionary.lookup(Class.TYPE_NUMBER));
+        try
+        {
+            Pair<IElement, String> member = Analyzer.toElement("getMeasuringValue(0, 1, 1, '2021-01-01', '2021-01-02', 0).sum()", funcFactory, varFactory, classDictionary);
+            assertNotNull(member.getValue(), member.getKey());
+
+            Pair<IElement, String> global = Analyzer.toElement("sum()", funcFactory, varFactory, classDictionary);
+            assertNull(global.getKey());
+            assertTrue(global.getValue(), global.getValue().contains("不能接受 0 个参数"));
+        }
+        finally
+        {
+            funcFactory.unregisterFunctionElement("", "sum");
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.graph;
+
+import javafx.util.Pair;
+import org.example.TestSupport;
+import org.example.analyzer.Analyzer;
+import org.example.analyzer.element.*;
+import org.example.data.SeriesKey;
+import org.example.evaluator.EvaluationContext;
+import org.example.evaluator.Evaluator;
+import org.example.evaluator.FunctionLibrary;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FormulaGraphTest
+{
+    private static final int DEPTH = 1000000;
+
+    private static FunctionElementFactory funcFactory = new FunctionElementFactory();
+    private static VariableElementFactory varFactory = new VariableElementFactory();
+    private static ClassDictionary classDictionary = new ClassDictionary();
+
+    @BeforeClass
+    public static void init()
+    {
+        TestSupport.init(funcFactory, varFactory, classDictionary);
+    }
+
+    /*
+    * f0 = f1, f1 = f2, ..., 长度为 1,000,000 的依赖链
+    * 检测环及标记下游都不依赖线程栈的大小
+    * */
+    @Test
+    public void deepDependencyChain()
+    {
+        IElement number = Analyzer.toElement("1", funcFactory, varFactory, classDictionary).getKey();
+        FormulaGraph graph = new FormulaGraph(new Evaluator(FunctionLibrary.createDefault()), new EvaluationContext(null, 7), null);
+        for (int i = 0; i < DEPTH; i++)
+            assertTrue(graph.define("f" + i, new VariableElement("f" + (i + 1), "", "f" + (i + 1), "", number.getResultType())).getKey());
+
+        //沿整条链回到 fN
+        String last = "f" + DEPTH;
+        Pair<Boolean, String> cycle = graph.define(last, new VariableElement("f0", "", "f0", "", number.getResultType()));
+        assertFalse(cycle.getKey());
+        assertTrue(cycle.getValue().contains(last + " -> f0 -> f1 -> "));
+        assertTrue(cycle.getValue().endsWith(" -> f" + (DEPTH - 1) + " -> " + last));
+
+        graph.setInput(last, 1.0);
+        assertEquals(DEPTH, (int) graph.recompute().getKey());
+        assertEquals(1.0, graph.getValue("f0"));
+
+        graph.setInput(last, 2.0);
+        assertTrue(graph.isDirty("f0"));
+        assertEquals(DEPTH, (int) graph.recompute().getKey());
+        assertEquals(2.0, graph.getValue("f0"));
+    }
+
+    //按容器查询等访问数据层的函数依赖所有样本流, 任一样本流变化后都需要重算
+    @Test
+    public void containerQueryDependsOnAnySeries()
+    {
+        IElement byContainer = Analyzer.toElement("getQuantityByContainer(0, '配电柜', '电', '2021-01-01', '2021-01-02')", funcFactory, varFactory, classDictionary).getKey();
+        IElement bySeries = Analyzer.toElement("getQuantity(0, 1, 1, '2021-01-01', '2021-01-02')", funcFactory, varFactory, classDictionary).getKey();
+        FormulaGraph graph = new FormulaGraph(new Evaluator(FunctionLibrary.createDefault()), new EvaluationContext(null, 7), null, funcFactory);
+        assertTrue(graph.define("c", byContainer).getKey());
+        assertTrue(graph.define("q", bySeries).getKey());
+        graph.recompute();
+        assertFalse(graph.isDirty("c"));
+        assertFalse(graph.isDirty("q"));
+
+        graph.invalidateSeries(new SeriesKey(9, 1, 1));
+        assertTrue(graph.isDirty("c"));
+        assertFalse(graph.isDirty("q"));
+    }
+}
@@ -0,0 +1,109 @@
+package org.example.library;
+
+import javafx.util.Pair;
+import org.example.TestSupport;
+import org.example.analyzer.element.*;
+import org.example.analyzer.element.Class;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FormulaStoreTest
+{
+    private static final int DEPTH = 1000000;
+
+    private static FunctionElementFactory funcFactory = new FunctionElementFactory();
+    private static VariableElementFactory varFactory = new VariableElementFactory();
+    private static ClassDictionary classDictionary = new ClassDictionary();
+
+    @BeforeClass
+    public static void init()
+    {
+        TestSupport.init(funcFactory, varFactory, classDictionary);
+    }
+
+    //深度为 1,000,000 的公式写入公式库后可以解码
+    @Test
+    public void deepFormula() throws IOException
+    {
+        StringBuilder sb = new StringBuilder(4 * DEPTH + 1).append('v');
+        for (int i = 0; i < DEPTH; i++)
+            sb.append(" + 1");
+        Map<String, String> sources = new HashMap<>();
+        sources.put("deep", sb.toString());
+
+        File file = File.createTempFile("formulas", ".fmls");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Pair<Boolean, String> built = FormulaStore.build(file, sources, funcFactory, varFactory, classDictionary);
+            assertTrue(built.getValue(), built.getKey());
+
+            Pair<FormulaStore, String> store = FormulaStore.open(file, 1, executor, funcFactory, varFactory, classDictionary);
+            assertNotNull(store.getValue(), store.getKey());
+            Pair<IElement, String> deep = store.getKey().get("deep");
+            assertNotNull(deep.getValue(), deep.getKey());
+            assertEquals(ElementType.ELEMENT_TYPE_BINARY_OPERATION, deep.getKey().getType());
+            assertEquals(sources.get("deep"), deep.getKey().toExpressionString());
+        }
+        finally
+        {
+            executor.shutdown();
+            file.delete();
+        }
+    }
+
+    //定义变化后没有调用 refresh, 重建写入的版本即为之后使用的版本, 不会反复重建
+    @Test
+    public void rebuildAfterRegistryChange() throws Exception
+    {
+        Map<String, String> sources = new HashMap<>();
+        sources.put("a", "v + 1");
+
+        File file = File.createTempFile("formulas", ".fmls");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Pair<Boolean, String> built = FormulaStore.build(file, sources, funcFactory, varFactory, classDictionary);
+            assertTrue(built.getValue(), built.getKey());
+            FormulaStore store = FormulaStore.open(file, 4, executor, funcFactory, varFactory, classDictionary).getKey();
+            assertNotNull(store);
+
+            ArrayList<IElement.Param> params = new ArrayList<>();
+            params.add(new IElement.Param("值", "值", Class.TYPE_NUMBER));
+            funcFactory.registerFunctionElement("探测", "", "storeProbe", "探测", params, classDictionary.lookup(Class.TYPE_NUMBER));
+
+            Pair<IElement, String> r = store.get("a", "v + 2");
+            assertNotNull(r.getValue(), r.getKey());
+            Future<Pair<Boolean, String>> rebuilding = store.getRebuilding();
+            assertNotNull(rebuilding);
+            Pair<Boolean, String> rebuilt = rebuilding.get();
+            assertTrue(rebuilt.getValue(), rebuilt.getKey());
+
+            assertSame(rebuilding, store.getRebuilding());
+            assertFalse(store.isStale());
+            assertEquals("v + 2", store.getSource("a"));
+            assertNotNull(store.get("a").getKey());
+        }
+        finally
+        {
+            funcFactory.unregisterFunctionElement("", "storeProbe");
+            executor.shutdown();
+            file.delete();
+        }
+    }
+}